@@ -19,11 +19,13 @@
 package org.forome.annotation;
 
 import com.infomaximum.querypool.*;
+import org.forome.annotation.annotator.executor.AnnotatorWorkerPool;
 import org.forome.annotation.config.Config;
 import org.forome.annotation.config.ServiceConfig;
 import org.forome.annotation.data.DatabaseConnector;
 import org.forome.annotation.data.anfisa.AnfisaConnector;
 import org.forome.annotation.data.clinvar.ClinvarConnector;
+import org.forome.annotation.data.clinvar.memory.ClinvarConnectorMemory;
 import org.forome.annotation.data.clinvar.mysql.ClinvarConnectorMysql;
 import org.forome.annotation.data.gnomad.GnomadConnectorImpl;
 import org.forome.annotation.data.gnomad.datasource.http.GnomadDataSourceHttp;
@@ -31,6 +33,8 @@ import org.forome.annotation.data.gtex.GTEXConnector;
 import org.forome.annotation.data.gtex.mysql.GTEXConnectorMysql;
 import org.forome.annotation.data.gtf.GTFConnector;
 import org.forome.annotation.data.gtf.GTFConnectorImpl;
+import org.forome.annotation.data.gtf.datasource.GTFDataSource;
+import org.forome.annotation.data.gtf.datasource.memory.GTFDataSourceMemory;
 import org.forome.annotation.data.gtf.datasource.mysql.GTFDataConnector;
 import org.forome.annotation.data.hgmd.HgmdConnector;
 import org.forome.annotation.data.hgmd.mysql.HgmdConnectorMysql;
@@ -45,14 +49,18 @@ import org.forome.annotation.exception.AnnotatorException;
 import org.forome.annotation.exception.QueryPoolExceptionBuilder;
 import org.forome.annotation.network.NetworkService;
 import org.forome.annotation.network.component.UserEditableComponent;
+import org.forome.annotation.processing.Processing;
+import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.service.database.DatabaseConnectService;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
+import org.forome.annotation.service.ensemblvep.cache.EnsemblVepCacheService;
 import org.forome.annotation.service.ensemblvep.external.EnsemblVepExternalService;
 import org.forome.annotation.service.notification.NotificationService;
 import org.forome.annotation.service.source.SourceService;
 import org.forome.annotation.service.ssh.SSHConnectService;
 import org.forome.annotation.utils.ArgumentParser;
 import org.forome.astorage.core.liftover.LiftoverConnector;
+import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -116,6 +124,9 @@ public class Service {
 	private final EnsemblVepService ensemblVepService;
 	private final AnfisaConnector anfisaConnector;
 
+	//Общий на все запросы контроллеров
+	private final Processing processing;
+	private final AnnotatorWorkerPool annotatorWorkerPool;
 
 	private final NotificationService notificationService;
 
@@ -160,16 +171,26 @@ public class Service {
 		this.hgmdConnector = new HgmdConnectorMysql(databaseConnectService, liftoverConnector, serviceConfig.hgmdConfigConnector);
 
 //		this.clinvarConnector = new ClinvarConnectorHttp();
-		this.clinvarConnector = new ClinvarConnectorMysql(databaseConnectService, liftoverConnector, serviceConfig.foromeConfigConnector);
+		if (serviceConfig.clinvarConfigConnector.memory) {
+			this.clinvarConnector = new ClinvarConnectorMemory(databaseConnectService, liftoverConnector, serviceConfig.foromeConfigConnector, serviceConfig.clinvarConfigConnector);
+		} else {
+			this.clinvarConnector = new ClinvarConnectorMysql(databaseConnectService, liftoverConnector, serviceConfig.foromeConfigConnector);
+		}
 
 //		this.gtfConnector = new GTFConnectorImpl(
 //				new GTFDataSourceHttp(databaseConnectService, liftoverConnector, serviceConfig.aStorageConfigConnector),
 //				uncaughtExceptionHandler
 //		);
+		GTFDataSource gtfDataSource;
+		if (!serviceConfig.gtfConfigConnector.files.isEmpty()) {
+			gtfDataSource = new GTFDataSourceMemory(serviceConfig.gtfConfigConnector.files);
+		} else {
+			gtfDataSource = new GTFDataConnector(
+					new DatabaseConnector(databaseConnectService, serviceConfig.gtfConfigConnector)
+			);
+		}
 		this.gtfConnector = new GTFConnectorImpl(
-				new GTFDataConnector(
-						new DatabaseConnector(databaseConnectService, serviceConfig.gtfConfigConnector)
-				),
+				gtfDataSource,
 				liftoverConnector,
 				uncaughtExceptionHandler
 		);
@@ -184,7 +205,17 @@ public class Service {
 //				databaseConnectService, liftoverConnector
 //		);
 
-		this.ensemblVepService = new EnsemblVepExternalService(uncaughtExceptionHandler);
+		EnsemblVepService ensemblVepExternalService = new EnsemblVepExternalService(
+				uncaughtExceptionHandler, sourceService.dataSource.getSource(Assembly.GRCh37)
+		);
+		if (serviceConfig.ensemblVepConfigConnector.cacheConfig != null) {
+			this.ensemblVepService = new EnsemblVepCacheService(
+					ensemblVepExternalService, Assembly.GRCh37,
+					serviceConfig.ensemblVepConfigConnector.cacheConfig, uncaughtExceptionHandler
+			);
+		} else {
+			this.ensemblVepService = ensemblVepExternalService;
+		}
 //        this.ensemblVepService = new EnsemblVepInlineService(
 //                sshTunnelService,
 //                serviceConfig.ensemblVepConfigConnector,
@@ -200,11 +231,21 @@ public class Service {
 				liftoverConnector,
 				gtfConnector,
 				gtexConnector,
-				pharmGKBConnector
+				pharmGKBConnector,
+				serviceConfig.annotatorConfig.getLookupThreads(AnfisaConnector.DEFAULT_LOOKUP_THREADS)
 //				,
 //				sourceHttp38
 		);
 
+		this.processing = new Processing(
+				sourceService.dataSource.getSource(Assembly.GRCh37), anfisaConnector, TypeQuery.PATIENT_HG19
+		);
+		this.annotatorWorkerPool = new AnnotatorWorkerPool(
+				serviceConfig.annotatorConfig.getPoolThreads(),
+				serviceConfig.annotatorConfig.poolMaxRequests,
+				uncaughtExceptionHandler
+		);
+
 		queryPool.execute(this.databaseService.getDomainObjectSource(), new Query<Void>() {
 
 			private ReadableResource<UserReadable> userReadableResource;
@@ -278,11 +319,20 @@ public class Service {
 		return anfisaConnector;
 	}
 
+	public Processing getProcessing() {
+		return processing;
+	}
+
+	public AnnotatorWorkerPool getAnnotatorWorkerPool() {
+		return annotatorWorkerPool;
+	}
+
 	public NotificationService getNotificationService() {
 		return notificationService;
 	}
 
 	public void stop() {
+		annotatorWorkerPool.close();
 		anfisaConnector.close();
 		gtfConnector.close();
 		liftoverConnector.close();
@@ -291,6 +341,7 @@ public class Service {
 		spliceAIConnector.close();
 		gnomadConnector.close();
 		ensemblVepService.close();
+		sourceService.close();
 
 		databaseConnectService.close();
 		sshTunnelService.close();
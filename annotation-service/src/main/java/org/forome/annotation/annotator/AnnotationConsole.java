@@ -18,15 +18,22 @@
 
 package org.forome.annotation.annotator;
 
+import io.reactivex.Flowable;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.forome.annotation.Main;
 import org.forome.annotation.annotator.recovery.Recovery;
+import org.forome.annotation.annotator.recovery.RecoveryIndex;
+import org.forome.annotation.annotator.recovery.RecoveryIndexOutputStream;
 import org.forome.annotation.annotator.recovery.RecoveryResult;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
 import org.forome.annotation.annotator.struct.AnnotatorResult;
+import org.forome.annotation.annotator.utils.VepJsonBuilder;
 import org.forome.annotation.config.ServiceConfig;
+import org.forome.annotation.config.annotator.AnnotatorConfig;
 import org.forome.annotation.data.DatabaseConnector;
 import org.forome.annotation.data.anfisa.AnfisaConnector;
 import org.forome.annotation.data.clinvar.ClinvarConnector;
+import org.forome.annotation.data.clinvar.memory.ClinvarConnectorMemory;
 import org.forome.annotation.data.clinvar.mysql.ClinvarConnectorMysql;
 import org.forome.annotation.data.conservation.ConservationData;
 import org.forome.annotation.data.gnomad.GnomadConnectorImpl;
@@ -35,6 +42,8 @@ import org.forome.annotation.data.gtex.GTEXConnector;
 import org.forome.annotation.data.gtex.mysql.GTEXConnectorMysql;
 import org.forome.annotation.data.gtf.GTFConnector;
 import org.forome.annotation.data.gtf.GTFConnectorImpl;
+import org.forome.annotation.data.gtf.datasource.GTFDataSource;
+import org.forome.annotation.data.gtf.datasource.memory.GTFDataSourceMemory;
 import org.forome.annotation.data.gtf.datasource.mysql.GTFDataConnector;
 import org.forome.annotation.data.hgmd.HgmdConnector;
 import org.forome.annotation.data.hgmd.mysql.HgmdConnectorMysql;
@@ -43,10 +52,13 @@ import org.forome.annotation.data.pharmgkb.mysql.PharmGKBConnectorMysql;
 import org.forome.annotation.data.spliceai.SpliceAIConnector;
 import org.forome.annotation.data.spliceai.SpliceAIConnectorImpl;
 import org.forome.annotation.data.spliceai.datasource.http.SpliceAIDataSourceHttp;
+import org.forome.annotation.iterator.vcf.VCFFileIterator;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.TypeQuery;
+import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.database.DatabaseConnectService;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
+import org.forome.annotation.service.ensemblvep.cache.EnsemblVepCacheService;
 import org.forome.annotation.service.ensemblvep.external.EnsemblVepExternalService;
 import org.forome.annotation.service.notification.NotificationService;
 import org.forome.annotation.service.source.SourceService;
@@ -54,7 +66,8 @@ import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.service.ssh.SSHConnectService;
 import org.forome.annotation.struct.CasePlatform;
 import org.forome.annotation.utils.AppVersion;
-import org.forome.annotation.utils.RuntimeExec;
+import org.forome.annotation.utils.TailFileInputStream;
+import org.forome.annotation.utils.compression.ParallelBgzfOutputStream;
 import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
@@ -70,13 +83,14 @@ import java.time.format.DateTimeFormatter;
 import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class AnnotationConsole {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotationConsole.class);
 
+	//Кол-во записей исходных файлов между контрольными точками индекса восстановления
+	private static final int CHECKPOINT_INTERVAL = 1000;
+
 	private final String caseName;
 
 	private final Assembly assembly;
@@ -93,6 +107,7 @@ public class AnnotationConsole {
 	private final Path cnvFile;
 
 	private final int startPosition;
+	private final String shardSpec;
 
 	private final Path outFile;
 	private final Path recoveryAnfisaJson;
@@ -122,6 +137,8 @@ public class AnnotationConsole {
 	private AnfisaConnector anfisaConnector;
 	private Processing processing;
 
+	private VepJsonBuilder vepJsonBuilder;
+
 	public AnnotationConsole(
 			Path configFile,
 			String caseName,
@@ -131,6 +148,7 @@ public class AnnotationConsole {
 			Path vcfFile, Path vepJsonFile,
 			Path cnvFile,
 			int startPosition,
+			String shardSpec,
 			Path outFile,
 			Path recoveryAnfisaJson,
 			Supplier<String> arguments
@@ -151,6 +169,7 @@ public class AnnotationConsole {
 		this.cnvFile = cnvFile;
 
 		this.startPosition = startPosition;
+		this.shardSpec = shardSpec;
 
 		this.outFile = outFile;
 		this.recoveryAnfisaJson = recoveryAnfisaJson;
@@ -181,9 +200,9 @@ public class AnnotationConsole {
 
 			gnomadConnector = new GnomadConnectorImpl(
 					new GnomadDataSourceHttp(liftoverConnector, sourceService.dataSource),
-					(t, e) -> fail(e, null, arguments)
+					(t, e) -> fail(e, arguments)
 			);
-//			gnomadConnector = new GnomadConnectorImpl(databaseConnectService, serviceConfig.gnomadConfigConnector, (t, e) -> fail(e, null, arguments));
+//			gnomadConnector = new GnomadConnectorImpl(databaseConnectService, serviceConfig.gnomadConfigConnector, (t, e) -> fail(e, arguments));
 
 			spliceAIConnector = new SpliceAIConnectorImpl(
 					new SpliceAIDataSourceHttp(liftoverConnector)
@@ -194,18 +213,28 @@ public class AnnotationConsole {
 			this.hgmdConnector = new HgmdConnectorMysql(databaseConnectService, liftoverConnector, serviceConfig.hgmdConfigConnector);
 
 //			clinvarConnector = new ClinvarConnectorHttp();
-			clinvarConnector = new ClinvarConnectorMysql(databaseConnectService, liftoverConnector, serviceConfig.foromeConfigConnector);
+			if (serviceConfig.clinvarConfigConnector.memory) {
+				clinvarConnector = new ClinvarConnectorMemory(databaseConnectService, liftoverConnector, serviceConfig.foromeConfigConnector, serviceConfig.clinvarConfigConnector);
+			} else {
+				clinvarConnector = new ClinvarConnectorMysql(databaseConnectService, liftoverConnector, serviceConfig.foromeConfigConnector);
+			}
 
 //			this.gtfConnector = new GTFConnectorImpl(
 //					new GTFDataSourceHttp(databaseConnectService, liftoverConnector, serviceConfig.aStorageConfigConnector),
-//					(t, e) -> fail(e, null, arguments)
+//					(t, e) -> fail(e, arguments)
 //			);
+			GTFDataSource gtfDataSource;
+			if (!serviceConfig.gtfConfigConnector.files.isEmpty()) {
+				gtfDataSource = new GTFDataSourceMemory(serviceConfig.gtfConfigConnector.files);
+			} else {
+				gtfDataSource = new GTFDataConnector(
+						new DatabaseConnector(databaseConnectService, serviceConfig.gtfConfigConnector)
+				);
+			}
 			this.gtfConnector = new GTFConnectorImpl(
-					new GTFDataConnector(
-							new DatabaseConnector(databaseConnectService, serviceConfig.gtfConfigConnector)
-					),
+					gtfDataSource,
 					liftoverConnector,
-					(t, e) -> fail(e, null, arguments)
+					(t, e) -> fail(e, arguments)
 			);
 
 //			gtexConnector = new GTEXConnectorHttp();
@@ -218,7 +247,15 @@ public class AnnotationConsole {
 //					databaseConnectService, liftoverConnector
 //			);
 
-			ensemblVepService = new EnsemblVepExternalService((t, e) -> fail(e, null, arguments));
+			ensemblVepService = new EnsemblVepExternalService(
+					(t, e) -> fail(e, arguments), sourceService.dataSource.getSource(Assembly.GRCh37)
+			);
+			if (serviceConfig.ensemblVepConfigConnector.cacheConfig != null) {
+				ensemblVepService = new EnsemblVepCacheService(
+						ensemblVepService, Assembly.GRCh37,
+						serviceConfig.ensemblVepConfigConnector.cacheConfig, (t, e) -> fail(e, arguments)
+				);
+			}
 			anfisaConnector = new AnfisaConnector(
 					sourceService,
 					gnomadConnector,
@@ -228,7 +265,9 @@ public class AnnotationConsole {
 					liftoverConnector,
 					gtfConnector,
 					gtexConnector,
-					pharmGKBConnector
+					pharmGKBConnector,
+					//Потоки обработки и так загружают все ядра, отдельный пул запросов только добавил бы очередь
+					serviceConfig.annotatorConfig.getLookupThreads(0)
 //					,
 //					sourceHttp38
 			);
@@ -237,12 +276,11 @@ public class AnnotationConsole {
 
 			processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
 		} catch (Throwable e) {
-			fail(e, null, arguments);
+			fail(e, arguments);
 		}
 	}
 
 	public void execute() {
-		Path vcfFile = null;
 		try {
 			log.info("Version: {}", AppVersion.getVersion());
 			log.info("Input caseName: {}", caseName);
@@ -250,75 +288,104 @@ public class AnnotationConsole {
 			log.info("Input cohortFile: {}", pathCohorts);
 			log.info("Input vepVcfFile: {}", inputVcfFile);
 			log.info("Input start position: {}", startPosition);
+			log.info("Input shard: {}", shardSpec);
 			log.info("Input vepJsonFile: {}", inputVepJsonFile);
 			log.info("Input cnvFile: {}", cnvFile);
 
-			if (!inputVcfFile.getFileName().toString().endsWith(".gz")) {
-				vcfFile = inputVcfFile;
+			//vcf.gz читается потоком, без распаковки на диск
+			Path vcfFile = inputVcfFile;
+
+			AnnotatorShard shard;
+			if (shardSpec != null) {
+				shard = AnnotatorShard.parse(shardSpec, VCFFileIterator.readHeader(vcfFile));
+				log.info("Shard: {}", shard);
+				if (cnvFile != null && !shard.withCnv) {
+					log.warn("Cnv file is ignored by this shard, it is processed by the last shard i/N or by the shard with '{}' in regions", AnnotatorShard.REGION_CNV);
+				}
 			} else {
-				Path pathDir = outFile.getParent();
-				log.info("unpacking vcf file: {}...", inputVcfFile);
-				vcfFile = gunzipVcfFile(inputVcfFile, pathDir);
-				log.info("unpacking vcf file: {}... complete", inputVcfFile);
+				shard = null;
 			}
-			Path finalVcfFile = vcfFile;
 
-			//Билдим при необходимости vep-json
+			//Билдим при необходимости vep-json: аннотация идет параллельно, vep.json читается по мере записи
 			Path vepJson;
+			TailFileInputStream.Producer vepJsonProducer;
 			if (inputVepJsonFile != null) {
 				vepJson = inputVepJsonFile;
+				vepJsonProducer = null;
+			} else if (shard != null) {
+				//Части кейса иначе строили бы vep.json всего кейса, каждая в один и тот же файл
+				throw new IllegalArgumentException("Shard mode need vep.json file, build it before start shards");
 			} else {
-				Path pathDirVepJson = outFile.getParent();
-				vepJson = buildVepJson(vcfFile, pathDirVepJson);
+				vepJsonBuilder = VepJsonBuilder.start(vcfFile, outFile.getParent());
+				vepJson = vepJsonBuilder.pathVepJson;
+				vepJsonProducer = vepJsonBuilder;
 			}
 
 			Files.deleteIfExists(outFile);
 			Files.createFile(outFile);
 
-			OutputStream os = buildOutputStream(outFile);
+			OutputStream os = buildOutputStream(outFile, serviceConfig.annotatorConfig);
 			BufferedOutputStream bos = new BufferedOutputStream(os);
 
 			Annotator annotator = new Annotator(
-					ensemblVepService, processing,
+					ensemblVepService, processing, serviceConfig.annotatorConfig,
 					caseName, casePlatform,
 					assembly,
 					famFile,
 					patientIdsFile,
 					pathCohorts,
-					vcfFile, vepJson
+					vcfFile, vepJson, vepJsonProducer
 			);
 
 			String outMetadata = annotator.buildMetadata().toJSON().toJSONString();
 			bos.write(outMetadata.getBytes(StandardCharsets.UTF_8));
 			bos.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
 
+			//Записи результата идут через индекс восстановления: при падении продолжение без повторного разбора
+			RecoveryIndexOutputStream ios = new RecoveryIndexOutputStream(bos, RecoveryIndex.getPath(outFile));
+
 			int offset;
 			AtomicInteger countRecords;
 			if (recoveryAnfisaJson != null) {
-				Recovery recovery = new Recovery(vcfFile, recoveryAnfisaJson);
-				RecoveryResult recoveryResult = recovery.execute(bos);
+				Recovery recovery = new Recovery(vcfFile, shard, recoveryAnfisaJson);
+				RecoveryResult recoveryResult = recovery.execute(ios);
 				offset = recoveryResult.offset;
 				countRecords = new AtomicInteger(recoveryResult.countRecords);
 			} else {
 				offset = startPosition;
 				countRecords = new AtomicInteger();
 			}
+			ios.checkpoint(offset, countRecords.get());
 
 			AnnotatorResult annotatorResult = annotator.exec(
 					cnvFile,
-					offset
+					offset,
+					shard,
+					null
 			);
-			annotatorResult.observableAnfisaResult.blockingSubscribe(
-					processingResult -> {
-						String out = processingResult.toJSON().toJSONString();
-						bos.write(out.getBytes(StandardCharsets.UTF_8));
-						bos.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
-
-						if (countRecords.getAndIncrement() % 100 == 0) {
-							log.debug("progress (records): {}", countRecords.get());
+			AtomicInteger position = new AtomicInteger(offset);
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+			annotatorResult.flowableAnfisaResults.blockingSubscribe(
+					processingResults -> {
+						//Записи одной строки vcf попадают в результат целиком, контрольные точки - только между ними
+						for (ProcessingResult processingResult : processingResults) {
+							processingResult.writeJSON(writer);
+							writer.write(System.lineSeparator());
+
+							if (countRecords.getAndIncrement() % 100 == 0) {
+								log.debug("progress (records): {}", countRecords.get());
+							}
+						}
+						writer.flush();
+						buffer.writeTo(ios);
+						buffer.reset();
+
+						if (position.incrementAndGet() % CHECKPOINT_INTERVAL == 0) {
+							ios.checkpoint(position.get(), countRecords.get());
 						}
 					},
-					e -> fail(e, finalVcfFile, arguments),
+					e -> fail(e, arguments),
 					() -> {
 						log.debug("progress completed");
 						sourceService.dataSource.printStatistics();
@@ -341,20 +408,25 @@ public class AnnotationConsole {
 									log.debug("graphql: {}, {}", entry.getKey(), entry.getValue().getStat());
 								});
 
-						bos.close();
-						os.close();
+						ios.close();
+						Files.deleteIfExists(RecoveryIndex.getPath(outFile));
 						anfisaConnector.close();
-						clear(finalVcfFile);
+						ensemblVepService.close();
+						sourceService.close();
 						sendNotification(null, arguments);
 						System.exit(0);
-					}
+					},
+					Flowable.bufferSize()
 			);
 		} catch (Throwable e) {
-			fail(e, vcfFile, arguments);
+			fail(e, arguments);
 		}
 	}
 
-	private void fail(Throwable e, Path vcfFile, Supplier<String> arguments) {
+	private void fail(Throwable e, Supplier<String> arguments) {
+		if (vepJsonBuilder != null) {
+			vepJsonBuilder.close();
+		}
 		if (Files.exists(outFile)) {
 			String newFileName = new StringBuilder()
 					.append(outFile.getFileName().toString())
@@ -365,21 +437,19 @@ public class AnnotationConsole {
 			} catch (Throwable e1) {
 				log.error("Exception clear file: " + outFile, e);
 			}
-		}
-		clear(vcfFile);
-		sendNotification(e, arguments);
-		Main.crash(e);
-	}
 
-	private void clear(Path vcfFile) {
-		try {
-			if (vcfFile != null && !Files.isSameFile(inputVcfFile, vcfFile)) {
-				log.info("clear tmp file: {}", vcfFile);
-				Files.deleteIfExists(vcfFile);
+			//Индекс восстановления остается рядом с результатом: -recovery <файл> продолжит с последней контрольной точки
+			Path pathIndex = RecoveryIndex.getPath(outFile);
+			if (Files.exists(pathIndex)) {
+				try {
+					Files.move(pathIndex, RecoveryIndex.getPath(outFile.getParent().resolve(newFileName)));
+				} catch (Throwable e1) {
+					log.error("Exception clear file: " + pathIndex, e);
+				}
 			}
-		} catch (IOException e) {
-			log.error("Exception clears", e);
 		}
+		sendNotification(e, arguments);
+		Main.crash(e);
 	}
 
 	private void sendNotification(Throwable throwable, Supplier<String> arguments) {
@@ -420,102 +490,15 @@ public class AnnotationConsole {
 		}
 	}
 
-	private static OutputStream buildOutputStream(Path pathOutput) throws IOException {
+	private static OutputStream buildOutputStream(Path pathOutput, AnnotatorConfig annotatorConfig) throws IOException {
 		if (pathOutput.getFileName().toString().endsWith(".gz")) {
-			return new GZIPOutputStream(Files.newOutputStream(pathOutput));
+			return new ParallelBgzfOutputStream(
+					Files.newOutputStream(pathOutput),
+					annotatorConfig.outputThreads, annotatorConfig.outputBlockSize
+			);
 		} else {
 			return Files.newOutputStream(pathOutput);
 		}
 	}
 
-	private static Path gunzipVcfFile(Path vcfFile, Path pathDir) throws IOException {
-		if (!vcfFile.getFileName().toString().endsWith(".vcf.gz")) {
-			throw new RuntimeException("VcfFile does not *.vcf.gz" + vcfFile.toAbsolutePath());
-		}
-
-		String fileNameVcfFile = vcfFile.getFileName().toString();
-		String s = fileNameVcfFile.substring(0, fileNameVcfFile.length() - ".vcf.gz".length());
-		fileNameVcfFile = s + ".vcf";
-		int i = 0;
-		while (Files.exists(pathDir.resolve(fileNameVcfFile))) {
-			fileNameVcfFile = String.format("%s(%s).vcf", s, ++i);
-		}
-		Path pathVcfFile = pathDir.resolve(fileNameVcfFile).toAbsolutePath();
-
-		try (FileInputStream fis = new FileInputStream(vcfFile.toFile())) {
-			try (GZIPInputStream gis = new GZIPInputStream(fis)) {
-				try (FileOutputStream fos = new FileOutputStream(pathVcfFile.toFile())) {
-					byte[] buffer = new byte[1024];
-					int len;
-					while ((len = gis.read(buffer)) != -1) {
-						fos.write(buffer, 0, len);
-					}
-				} catch (Throwable e) {
-					Files.deleteIfExists(pathVcfFile);
-					throw e;
-				}
-			}
-		}
-		return pathVcfFile;
-	}
-
-	private static Path buildVepJson(Path vcfFile, Path pathDirVepJson) {
-		String fileNameVcf = vcfFile.getFileName().toString();
-		String fileNameVepJson;
-		if (fileNameVcf.endsWith(".vcf")) {
-			String s = fileNameVcf.substring(0, fileNameVcf.length() - ".vcf".length());
-			fileNameVepJson = s + ".vep.json";
-			int i = 0;
-			while (Files.exists(pathDirVepJson.resolve(fileNameVepJson))) {
-				fileNameVepJson = String.format("%s(%s).vep.json", s, ++i);
-			}
-		} else {
-			throw new IllegalArgumentException("Bad vcf filename (Need *.vcf): " + vcfFile.toAbsolutePath());
-		}
-		Path pathVepJson = pathDirVepJson.resolve(fileNameVepJson).toAbsolutePath();
-
-		String cmd = new StringBuilder("/db/vep-93/ensembl-vep/vep ")
-				.append("--buffer_size 50000 ")
-				.append("--cache --dir /db/data/vep/cache --dir_cache /db/data/vep/cache ")
-				.append("--fork 4 ")
-				.append("--uniprot --hgvs --symbol --numbers --domains --regulatory --canonical --protein --biotype --tsl --appris --gene_phenotype --variant_class ")
-				.append("--fasta /db/data/vep/cache/homo_sapiens/93_GRCh37/Homo_sapiens.GRCh37.75.dna.primary_assembly.fa.gz ")
-				.append("--force_overwrite ")
-				.append("--merged ")
-				.append("--json ")
-				.append("--port 3337 ")
-				.append("--input_file ").append(vcfFile).append(' ')
-				.append("--output_file ").append(pathVepJson.toAbsolutePath()).append(' ')
-				.append("--plugin ExACpLI,/db/data/misc/ExACpLI_values.txt ")
-				.append("--plugin MaxEntScan,/db/data/MaxEntScan/fordownload ")
-				.append("--plugin LoFtool,/db/data/loftoll/LoFtool_scores.txt ")
-				.append("--plugin dbNSFP,/db/data/dbNSFPa/dbNSFP_hg19.gz,Polyphen2_HDIV_pred,Polyphen2_HVAR_pred,Polyphen2_HDIV_score,Polyphen2_HVAR_score,SIFT_pred,SIFT_score,MutationTaster_pred,MutationTaster_score,FATHMM_pred,FATHMM_score,REVEL_score,CADD_phred,CADD_raw,MutationAssessor_score,MutationAssessor_pred,clinvar_rs,clinvar_clnsig ")
-				.append("--plugin SpliceRegion ")
-				.append("--everything")
-				.toString();
-
-		log.info("run external ensembl-vep, cmd: {}", cmd);
-		long t1 = System.currentTimeMillis();
-
-		RuntimeExec.Result result;
-		try {
-			result = RuntimeExec.runCommand(cmd);
-		} catch (Exception e) {
-			throw new RuntimeException("Exception run ensembl-vep", e);
-		}
-		if (result.exitCode != 0) {
-			throw new RuntimeException("Exception run ensembl-vep, return code: '" + result.exitCode + "' out: '" + result.out + "', error out: " + result.outError);
-		}
-		long t2 = System.currentTimeMillis();
-		long sizeVepJson;
-		try {
-			sizeVepJson = Files.size(pathVepJson);
-		} catch (IOException e) {
-			throw new RuntimeException("Exception", e);
-		}
-		log.info("Run external ensembl-vep complete, time: {}, size vep.json: {}", t2 - t1, sizeVepJson);
-
-		return pathVepJson;
-	}
-
 }
@@ -36,18 +36,23 @@
 
 package org.forome.annotation.annotator;
 
-import io.reactivex.Observable;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
 import net.minidev.json.parser.ParseException;
 import org.forome.annotation.annotator.executor.AnnotatorExecutor;
+import org.forome.annotation.annotator.executor.AnnotatorWorkerPool;
 import org.forome.annotation.annotator.executor.Result;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
 import org.forome.annotation.annotator.struct.AnnotatorResult;
 import org.forome.annotation.annotator.struct.AnnotatorResultMetadata;
 import org.forome.annotation.annotator.utils.CaseUtils;
+import org.forome.annotation.config.annotator.AnnotatorConfig;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
 import org.forome.annotation.struct.CasePlatform;
 import org.forome.annotation.struct.mcase.MCase;
+import org.forome.annotation.utils.TailFileInputStream;
 import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +61,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 
 //curl "localhost:8290/get?array=hg38&loc=12:885081&alt=G"
@@ -67,6 +73,7 @@ public class Annotator {
 
 	private final EnsemblVepService ensemblVepService;
 	private final Processing processing;
+	private final AnnotatorConfig annotatorConfig;
 
 	private final String caseName;
 	private final CasePlatform casePlatform;
@@ -75,10 +82,12 @@ public class Annotator {
 
 	private final Path pathVcf;
 	private final Path pathVepJson;
+	private final TailFileInputStream.Producer vepJsonProducer;
 
 	public Annotator(
 			EnsemblVepService ensemblVepService,
 			Processing processing,
+			AnnotatorConfig annotatorConfig,
 
 			String caseName,
 			CasePlatform casePlatform,
@@ -90,9 +99,38 @@ public class Annotator {
 			Path pathVcf,
 			Path pathVepJson
 
+	) throws IOException, ParseException {
+		this(
+				ensemblVepService, processing, annotatorConfig,
+				caseName, casePlatform, assembly,
+				pathFam, patientIdsFile, pathCohorts,
+				pathVcf, pathVepJson, null
+		);
+	}
+
+	/**
+	 * @param vepJsonProducer процесс, который в это время пишет vep.json, null - vep.json уже готов
+	 */
+	public Annotator(
+			EnsemblVepService ensemblVepService,
+			Processing processing,
+			AnnotatorConfig annotatorConfig,
+
+			String caseName,
+			CasePlatform casePlatform,
+			Assembly assembly,
+
+			Path pathFam,
+			Path patientIdsFile,
+			Path pathCohorts,
+			Path pathVcf,
+			Path pathVepJson,
+			TailFileInputStream.Producer vepJsonProducer
+
 	) throws IOException, ParseException {
 		this.ensemblVepService = ensemblVepService;
 		this.processing = processing;
+		this.annotatorConfig = annotatorConfig;
 
 		this.caseName = caseName;
 		this.casePlatform = casePlatform;
@@ -101,8 +139,9 @@ public class Annotator {
 		if (!Files.exists(pathVcf)) {
 			throw new RuntimeException("Vcf file does not exists: " + pathVcf.toAbsolutePath());
 		}
-		if (!pathVcf.getFileName().toString().endsWith(".vcf")) {
-			throw new IllegalArgumentException("Bad name vcf file (Need *.vcf): " + pathVcf.toAbsolutePath());
+		String fileNameVcf = pathVcf.getFileName().toString();
+		if (!fileNameVcf.endsWith(".vcf") && !fileNameVcf.endsWith(".vcf.gz")) {
+			throw new IllegalArgumentException("Bad name vcf file (Need *.vcf or *.vcf.gz): " + pathVcf.toAbsolutePath());
 		}
 
 		if (!Files.exists(pathFam)) {
@@ -113,6 +152,7 @@ public class Annotator {
 		}
 
 		this.pathVepJson=pathVepJson;
+		this.vepJsonProducer = vepJsonProducer;
 
 		try (InputStream isFam = Files.newInputStream(pathFam);
 			 InputStream isPatientIds = (patientIdsFile != null) ? Files.newInputStream(patientIdsFile) : null;
@@ -132,50 +172,81 @@ public class Annotator {
 			Path cnvFile,
 			int startPosition
 	) {
+		return exec(cnvFile, startPosition, null);
+	}
+
+	public AnnotatorResult exec(
+			Path cnvFile,
+			int startPosition,
+			AnnotatorWorkerPool workerPool
+	) {
+		//Место в общем пуле занимаем сразу: при перегрузке запрос отклоняется до начала обработки
+		return exec(cnvFile, startPosition, null, (workerPool != null) ? workerPool.open() : null);
+	}
+
+	/**
+	 * @param shard часть кейса для обработки, null - кейс целиком
+	 * @param lane место в общем пуле сервера, уже занятое запросом, null - обработка в собственных потоках
+	 */
+	public AnnotatorResult exec(
+			Path cnvFile,
+			int startPosition,
+			AnnotatorShard shard,
+			AnnotatorWorkerPool.Lane lane
+	) {
+		int threads;
+		if (lane != null) {
+			threads = lane.getThreads();
+		} else {
+			threads = (annotatorConfig.threads > 0) ? annotatorConfig.threads : getThreads(mCase);
+		}
+		int maxInFlight = annotatorConfig.getMaxInFlight(threads);
+		int prefetchWindow = annotatorConfig.prefetchWindow;
+
+		//Записи генерируются по запросу потребителя: если запись результата не успевает,
+		//то обработка останавливается после заполнения буфера упорядочивания (maxInFlight)
+		Flowable<List<ProcessingResult>> flowable = Flowable.generate(
+				() -> new AnnotatorExecutor(
+						ensemblVepService, processing,
+						mCase,
+						pathVcf, pathVepJson, vepJsonProducer,
+						cnvFile, shard,
+						startPosition, threads, maxInFlight, prefetchWindow,
+						lane,
+						(t, e) -> log.error("Exception execute annotator", e)
+				),
+				(annotatorExecutor, emitter) -> {
+					Result result = annotatorExecutor.next();
+					List<ProcessingResult> processingResults;
+					try {
+						processingResults = result.future.get();
+					} catch (Throwable e) {
+						log.error("throwable", e);
+						processingResults = Collections.emptyList();
+					}
+
+					Throwable failure = annotatorExecutor.getFailure();
+					if (failure != null) {
+						emitter.onError(failure);
+					} else if (processingResults == null) {
+						emitter.onComplete();
+					} else {
+						emitter.onNext(processingResults);
+					}
+				},
+				annotatorExecutor -> annotatorExecutor.close()
+		);
+
 		return new AnnotatorResult(
-				Observable.create(o -> {
-					new Thread(new Runnable() {
-						@Override
-						public void run() {
-							try (AnnotatorExecutor annotatorExecutor = new AnnotatorExecutor(
-									ensemblVepService, processing,
-									mCase,
-									pathVcf, pathVepJson,
-									cnvFile,
-									startPosition, getThreads(mCase),
-									(t, e) -> o.tryOnError(e)
-							)) {
-								boolean run = true;
-								while (run) {
-									Result result = annotatorExecutor.next();
-									List<ProcessingResult> processingResults;
-									try {
-										processingResults = result.future.get();
-										if (processingResults != null) {
-											for (ProcessingResult processingResult : processingResults) {
-												o.onNext(processingResult);
-											}
-										} else {
-											run = false;
-										}
-									} catch (Throwable e) {
-										log.error("throwable", e);
-									}
-								}
-								o.onComplete();
-							} catch (Throwable e) {
-								o.tryOnError(e);
-							}
-						}
-					}).start();
-				})
+				flowable.subscribeOn(Schedulers.newThread())
 		);
 	}
 
 
 	/**
 	 * Необходимо учитывать, что при большом колличестве samples у нас сильно увеличивается потребления оперативной памяти
-	 * для этого мы усеньшаем кол-во поток и соответсвенно кол-во экземпляторов чтения vcf-файлов
+	 * для этого мы усеньшаем кол-во поток и соответсвенно кол-во одновременно обрабатываемых записей
+	 * (vcf-файл при этом читается один раз, независимо от кол-ва потоков)
 	 */
 	private static int getThreads(MCase mCase) {
 		int maxThread = Runtime.getRuntime().availableProcessors() * 8;
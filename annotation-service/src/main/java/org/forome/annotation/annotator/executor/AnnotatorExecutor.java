@@ -18,22 +18,107 @@
 
 package org.forome.annotation.annotator.executor;
 
-import htsjdk.variant.vcf.VCFFileReader;
 import org.apache.commons.collections4.CollectionUtils;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
 import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.iterator.vcf.VCFFileIterator;
 import org.forome.annotation.processing.Processing;
+import org.forome.annotation.processing.smavariant.SplitMAVariant;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
+import org.forome.annotation.service.source.wrapper.LociLease;
+import org.forome.annotation.struct.mavariant.MAVariantVCF;
 import org.forome.annotation.struct.mcase.MCase;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.ExecutorServiceUtils;
+import org.forome.annotation.utils.TailFileInputStream;
+import org.forome.core.struct.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Схема исполнения:
+ * поток чтения окон (vcf + vep.json) -> поток постановки задач -> ограниченная очередь задач -> пул ThreadExecutor
+ * Результаты выдаются строго в порядке чтения через буфер упорядочивания (results)
+ * Размер буфера упорядочивания - это ограничение на кол-во записей в обработке (maxInFlight):
+ * если потребитель (запись результата) не успевает, то читатель блокируется
+ * Читатель выбирает записи окнами (prefetchWindow), данные источников для окна загружаются одним
+ * запросом в фоне: пока обрабатывается окно N, загружается окно N+1
+ * Загруженное окно освобождается, когда обработана последняя его запись
+ * Если передан общий пул (AnnotatorWorkerPool), то свои потоки обработки не создаются:
+ * записи ставятся в очередь запроса в пуле
+ */
 public class AnnotatorExecutor implements AutoCloseable {
 
+	private final static Logger log = LoggerFactory.getLogger(AnnotatorExecutor.class);
+
+	static class Task {
+
+		static final Task COMPLETED = new Task(null, null);
+
+		final Source source;
+		final Result result;
+
+		Task(Source source, Result result) {
+			this.source = source;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Окно записей и загрузка данных источников для него
+	 */
+	private static class Window {
+
+		final List<Source> sources;
+		final CompletableFuture<LociLease> prefetch;
+		final boolean last;
+
+		Window(List<Source> sources, CompletableFuture<LociLease> prefetch, boolean last) {
+			this.sources = sources;
+			this.prefetch = prefetch;
+			this.last = last;
+		}
+	}
+
+	private final SourceReader sourceReader;
+
+	private final Processing processing;
+	private final MCase mCase;
+
+	private final BlockingQueue<Task> tasks;
+	private final BlockingQueue<Result> results;
+
+	//Окно, прочитанное наперед: его данные загружаются, пока обрабатывается текущее
+	private final BlockingQueue<Window> windows;
+
+	//Загруженные окна, записи которых еще в обработке
+	private final Set<LociLease> leases;
+
+	private final Thread windowReader;
+	private final Thread reader;
 	private final ThreadExecutor[] threadExecutors;
+	private final AnnotatorWorkerPool.Lane lane;
+
+	private final EnsemblVepService ensemblVepService;
+
+	private final Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
 
-	private int activeExecutor;
+	private volatile Result completed;
+	private volatile Throwable failure;
 
 	public AnnotatorExecutor(
 			EnsemblVepService ensemblVepService,
@@ -41,51 +126,301 @@ public class AnnotatorExecutor implements AutoCloseable {
 			MCase mCase,
 			Path pathVcf, Path pathVepJson,
 			Path cnvFile,
-			int start, int thread,
+			int start, int thread, int maxInFlight, int prefetchWindow,
 			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
 	) {
-		if (thread < 1) throw new IllegalArgumentException();
-
-		//Validation samples fam-file and vcf-file
-		VCFFileReader vcfFileReader = new VCFFileReader(pathVcf, false);
-		List<String> vcfSamples = vcfFileReader.getFileHeader().getGenotypeSamples();
-		if (vcfSamples.size() != mCase.samples.size() || !vcfSamples.containsAll(mCase.samples.keySet())) {
-			throw ExceptionBuilder.buildNotEqualSamplesVcfAndFamFile(
-					CollectionUtils.disjunction(vcfSamples, mCase.samples.keySet())
-			);
+		this(ensemblVepService, processing, mCase, pathVcf, pathVepJson, null, cnvFile, null, start, thread, maxInFlight, prefetchWindow, null, uncaughtExceptionHandler);
+	}
+
+	public AnnotatorExecutor(
+			EnsemblVepService ensemblVepService,
+			Processing processing,
+			MCase mCase,
+			Path pathVcf, Path pathVepJson,
+			Path cnvFile,
+			int start, int thread, int maxInFlight, int prefetchWindow,
+			AnnotatorWorkerPool workerPool,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this(
+				ensemblVepService, processing, mCase, pathVcf, pathVepJson, null, cnvFile, null,
+				start, thread, maxInFlight, prefetchWindow,
+				(workerPool != null) ? workerPool.open() : null,
+				uncaughtExceptionHandler
+		);
+	}
+
+	/**
+	 * @param lane место в общем пуле, уже занятое запросом (закрывается вместе с исполнителем),
+	 *             null - обработка в собственных потоках
+	 */
+	public AnnotatorExecutor(
+			EnsemblVepService ensemblVepService,
+			Processing processing,
+			MCase mCase,
+			Path pathVcf, Path pathVepJson, TailFileInputStream.Producer vepJsonProducer,
+			Path cnvFile,
+			AnnotatorShard shard,
+			int start, int thread, int maxInFlight, int prefetchWindow,
+			AnnotatorWorkerPool.Lane lane,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this.lane = lane;
+		if (thread < 1 || maxInFlight < 1 || prefetchWindow < 0) {
+			if (lane != null) {
+				lane.close();
+			}
+			throw new IllegalArgumentException();
 		}
 
-		threadExecutors = new ThreadExecutor[thread];
-		for (int i = 0; i < thread; i++) {
+		try {
+			//Validation samples fam-file and vcf-file
+			List<String> vcfSamples = VCFFileIterator.readHeader(pathVcf).getGenotypeSamples();
+			if (vcfSamples.size() != mCase.samples.size() || !vcfSamples.containsAll(mCase.samples.keySet())) {
+				throw ExceptionBuilder.buildNotEqualSamplesVcfAndFamFile(
+						CollectionUtils.disjunction(vcfSamples, mCase.samples.keySet())
+				);
+			}
+
+			this.sourceReader = new SourceReader(pathVcf, pathVepJson, vepJsonProducer, cnvFile, shard);
+		} catch (Throwable e) {
+			if (lane != null) {
+				lane.close();
+			}
+			throw e;
+		}
+
+		this.ensemblVepService = ensemblVepService;
+		this.processing = processing;
+		this.mCase = mCase;
+
+		this.uncaughtExceptionHandler = (t, e) -> {
+			if (failure == null) {
+				failure = e;
+			}
+			uncaughtExceptionHandler.uncaughtException(t, e);
+		};
+
+		this.tasks = new ArrayBlockingQueue<>(thread);
+		this.results = new ArrayBlockingQueue<>(maxInFlight);
+		this.windows = new SynchronousQueue<>();
+		this.leases = ConcurrentHashMap.newKeySet();
+
+		threadExecutors = new ThreadExecutor[(lane != null) ? 0 : thread];
+		for (int i = 0; i < threadExecutors.length; i++) {
 			threadExecutors[i] = new ThreadExecutor(
 					i + 1,
 					ensemblVepService,
 					processing,
 					mCase,
-					pathVcf, pathVepJson,
-					cnvFile,
-					start + i, thread,
-					uncaughtExceptionHandler
+					tasks,
+					this.uncaughtExceptionHandler
 			);
 		}
 
-		activeExecutor = 0;
+		this.windowReader = new Thread(() -> readWindows(start, prefetchWindow));
+		this.windowReader.start();
+
+		this.reader = new Thread(() -> read(start));
+		this.reader.start();
+	}
+
+	/**
+	 * Чтение окон записей с запуском фоновой загрузки данных источников для каждого
+	 */
+	private void readWindows(int start, int prefetchWindow) {
+		try {
+			//Прокручиваем до начала итерации
+			try {
+				sourceReader.skip(start);
+			} catch (NoSuchElementException e) {
+				log.debug("Start position out of range: {}", start);
+			}
+
+			int windowSize = Math.max(prefetchWindow, 1);
+			while (true) {
+				List<Source> sources = readWindow(windowSize);
+				boolean last = (sources.size() < windowSize);
+				Window window = new Window(sources, prefetch(sources, prefetchWindow), last);
+				//Ожидаем, пока предыдущее окно не будет поставлено в обработку - наперед читается одно окно
+				try {
+					windows.put(window);
+				} catch (InterruptedException e) {
+					window.prefetch.thenAccept(LociLease::release);
+					throw e;
+				}
+				if (last) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			return;
+		} catch (Throwable e) {
+			//Ошибка чтения передается потоку постановки задач как ошибка окна
+			CompletableFuture<LociLease> failure = new CompletableFuture<>();
+			failure.completeExceptionally(e);
+			try {
+				windows.put(new Window(new ArrayList<>(), failure, true));
+			} catch (InterruptedException ignore) {
+			}
+		}
+	}
+
+	private void read(int start) {
+		int position = start;
+		try {
+			while (true) {
+				Window window = windows.take();
+				LociLease lease = awaitPrefetch(window.prefetch);
+				leases.add(lease);
+				AtomicInteger pending = new AtomicInteger(window.sources.size());
+				if (window.sources.isEmpty()) {
+					release(lease);
+				}
+				for (Source source : window.sources) {
+					Result result = new Result(position++, new CompletableFuture<>());
+					result.future.whenComplete((value, throwable) -> {
+						if (pending.decrementAndGet() == 0) {
+							release(lease);
+						}
+					});
+					//Ожидаем, если буфер результатов заполнен - потребитель не успевает
+					results.put(result);
+					if (lane != null) {
+						lane.submit(() -> execute(source, result));
+					} else {
+						tasks.put(new Task(source, result));
+					}
+				}
+				if (window.last) {
+					break;
+				}
+			}
+			log.debug("Reader completed, records: {}", position - start);
+		} catch (InterruptedException e) {
+			return;
+		} catch (Throwable e) {
+			//Ошибку фиксируем до сигнала о завершении, иначе потребитель может принять ее за конец файла
+			uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), e);
+		}
+		complete(position);
+	}
+
+	private List<Source> readWindow(int windowSize) {
+		List<Source> window = new ArrayList<>(windowSize);
+		while (window.size() < windowSize) {
+			try {
+				window.add(sourceReader.next());
+			} catch (NoSuchElementException e) {
+				break;
+			}
+		}
+		return window;
+	}
+
+	/**
+	 * Загрузка данных источников для окна в фоне
+	 */
+	private CompletableFuture<LociLease> prefetch(List<Source> window, int prefetchWindow) {
+		if (prefetchWindow == 0 || window.isEmpty()) {
+			return CompletableFuture.completedFuture(LociLease.EMPTY);
+		}
+		List<Interval> intervals = new ArrayList<>();
+		for (Source source : window) {
+			if (!(source.variant instanceof MAVariantVCF)) {
+				continue;
+			}
+			try {
+				for (Variant variant : SplitMAVariant.build(source.variant).split()) {
+					intervals.add(variant.getInterval());
+				}
+			} catch (Throwable e) {
+				//Ошибка будет получена и обработана при аннотировании этой записи
+				log.debug("Skip prefetch variant: {}", source.variant, e);
+			}
+		}
+		return CompletableFuture.supplyAsync(
+				() -> processing.getAnfisaConnector().sourceService.dataSource.prefetch(mCase.assembly, intervals),
+				ExecutorServiceUtils.poolExecutor
+		);
+	}
+
+	private static LociLease awaitPrefetch(CompletableFuture<LociLease> prefetch) throws InterruptedException {
+		try {
+			return prefetch.get();
+		} catch (InterruptedException e) {
+			prefetch.thenAccept(LociLease::release);
+			throw e;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private void release(LociLease lease) {
+		leases.remove(lease);
+		lease.release();
 	}
 
-	public synchronized Result next() {
-		ThreadExecutor threadExecutor = threadExecutors[activeExecutor];
-		activeExecutor++;
-		if (activeExecutor > threadExecutors.length - 1) {
-			activeExecutor = 0;
+	private void execute(Source source, Result result) {
+		try {
+			ThreadExecutor.execute(ensemblVepService, processing, mCase, source, result);
+		} catch (Throwable e) {
+			uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), e);
+			result.future.completeExceptionally(e);
 		}
+	}
 
-		return threadExecutor.next();
+	private void complete(int position) {
+		try {
+			results.put(new Result(position, CompletableFuture.completedFuture(null)));
+			for (int i = 0; i < threadExecutors.length; i++) {
+				tasks.put(Task.COMPLETED);
+			}
+		} catch (InterruptedException ignore) {
+		}
+	}
+
+	public Result next() {
+		Result result = completed;
+		if (result != null) {
+			return result;
+		}
+		try {
+			result = results.take();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		if (result.future.isDone() && !result.future.isCompletedExceptionally() && result.future.join() == null) {
+			completed = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Фатальная ошибка чтения или обработки, null - если ошибок не было
+	 */
+	public Throwable getFailure() {
+		return failure;
 	}
 
 	@Override
 	public void close() throws IOException {
+		windowReader.interrupt();
+		reader.interrupt();
 		for (ThreadExecutor threadExecutor : threadExecutors) {
 			threadExecutor.close();
 		}
+		if (lane != null) {
+			lane.close();
+		}
+		//Окна прерванной обработки
+		for (LociLease lease : leases) {
+			release(lease);
+		}
+		sourceReader.close();
 	}
 }
@@ -0,0 +1,231 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.executor;
+
+import org.forome.annotation.exception.ExceptionBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общий на сервис пул обработки записей для запросов аннотирования (FormatVcf).
+ * Каждый запрос получает свою очередь (Lane), потоки пула обходят очереди по кругу и берут
+ * из каждой по одной записи - большой vcf не задерживает остальные запросы.
+ * Кол-во одновременных запросов ограничено: сверх лимита запрос сразу отклоняется
+ */
+public class AnnotatorWorkerPool implements AutoCloseable {
+
+	private final static Logger log = LoggerFactory.getLogger(AnnotatorWorkerPool.class);
+
+	public class Stat {
+
+		public final int lanes;
+		public final int queued;
+		public final int running;
+		public final long completed;
+		public final long rejected;
+
+		private Stat(int lanes, int queued, int running, long completed, long rejected) {
+			this.lanes = lanes;
+			this.queued = queued;
+			this.running = running;
+			this.completed = completed;
+			this.rejected = rejected;
+		}
+
+		@Override
+		public String toString() {
+			return "Stat(" +
+					"requests: " + lanes + '/' + maxLanes +
+					", queued: " + queued +
+					", running: " + running + '/' + workers.length +
+					", completed: " + completed +
+					", rejected: " + rejected +
+					')';
+		}
+	}
+
+	/**
+	 * Очередь записей одного запроса
+	 */
+	public class Lane implements AutoCloseable {
+
+		private final ConcurrentLinkedQueue<Runnable> tasks;
+
+		//Очередь уже стоит в списке готовых к обработке
+		private final AtomicBoolean scheduled;
+
+		private volatile boolean closed;
+
+		private Lane() {
+			this.tasks = new ConcurrentLinkedQueue<>();
+			this.scheduled = new AtomicBoolean();
+		}
+
+		/**
+		 * Кол-во потоков пула, между которыми распределяются записи запроса
+		 */
+		public int getThreads() {
+			return workers.length;
+		}
+
+		public void submit(Runnable task) {
+			if (closed) {
+				throw new IllegalStateException("Lane closed");
+			}
+			tasks.add(task);
+			queued.incrementAndGet();
+			schedule();
+		}
+
+		private void schedule() {
+			if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+				ready.add(this);
+			}
+		}
+
+		private Runnable poll() {
+			Runnable task = tasks.poll();
+			if (task != null) {
+				queued.decrementAndGet();
+			}
+			//До выполнения записи возвращаем очередь в конец списка, чтобы ее следующие записи
+			//параллельно забрали другие потоки после записей остальных запросов
+			scheduled.set(false);
+			schedule();
+			return task;
+		}
+
+		/**
+		 * Закрыть может и исполнитель, и владелец запроса - повторное закрытие ничего не делает
+		 */
+		@Override
+		public synchronized void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			//Необработанные записи отменяем
+			while (tasks.poll() != null) {
+				queued.decrementAndGet();
+			}
+			lanes.decrementAndGet();
+		}
+	}
+
+	private final int maxLanes;
+
+	private final LinkedBlockingQueue<Lane> ready;
+	private final Thread[] workers;
+
+	private final AtomicInteger lanes;
+	private final AtomicInteger queued;
+	private final AtomicInteger running;
+	private final AtomicLong completed;
+	private final AtomicLong rejected;
+
+	private final Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+
+	public AnnotatorWorkerPool(int threads, int maxLanes, Thread.UncaughtExceptionHandler uncaughtExceptionHandler) {
+		if (threads < 1) throw new IllegalArgumentException();
+		if (maxLanes < 1) throw new IllegalArgumentException();
+
+		this.maxLanes = maxLanes;
+		this.uncaughtExceptionHandler = uncaughtExceptionHandler;
+
+		this.ready = new LinkedBlockingQueue<>();
+
+		this.lanes = new AtomicInteger();
+		this.queued = new AtomicInteger();
+		this.running = new AtomicInteger();
+		this.completed = new AtomicLong();
+		this.rejected = new AtomicLong();
+
+		this.workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(this::work, "annotator-worker-" + (i + 1));
+			worker.setDaemon(true);
+			worker.start();
+			workers[i] = worker;
+		}
+	}
+
+	/**
+	 * Регистрация запроса, при превышении лимита - ошибка server_overloaded
+	 */
+	public Lane open() {
+		while (true) {
+			int value = lanes.get();
+			if (value >= maxLanes) {
+				rejected.incrementAndGet();
+				log.warn("Annotator worker pool overloaded: {}", getStat());
+				throw ExceptionBuilder.buildServerOverloadedException();
+			}
+			if (lanes.compareAndSet(value, value + 1)) {
+				return new Lane();
+			}
+		}
+	}
+
+	private void work() {
+		while (true) {
+			Lane lane;
+			try {
+				lane = ready.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			Runnable task = lane.poll();
+			if (task == null || lane.closed) {
+				continue;
+			}
+
+			running.incrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable e) {
+				uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), e);
+			} finally {
+				running.decrementAndGet();
+				completed.incrementAndGet();
+			}
+		}
+	}
+
+	public int getThreads() {
+		return workers.length;
+	}
+
+	public Stat getStat() {
+		return new Stat(lanes.get(), queued.get(), running.get(), completed.get(), rejected.get());
+	}
+
+	@Override
+	public void close() {
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.executor;
+
+import net.minidev.json.JSONObject;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
+import org.forome.annotation.iterator.vcf.VCFFileIterator;
+import org.forome.annotation.iterator.vepjson.VepJsonFileIterator;
+import org.forome.annotation.struct.mavariant.MAVariantVCF;
+import org.forome.annotation.struct.mavariant.MAVariantVep;
+import org.forome.annotation.utils.TailFileInputStream;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+/**
+ * Единственный читатель vcf и vep.json файлов - каждая запись читается и парсится один раз
+ */
+class SourceReader implements AutoCloseable {
+
+	private final VCFFileIterator vcfFileIterator;
+	private final VepJsonFileIterator vepJsonIterator;
+
+	/**
+	 * @param vepJsonProducer процесс, который в это время пишет vep.json, null - vep.json уже готов
+	 */
+	public SourceReader(Path pathVcf, Path pathVepJson, TailFileInputStream.Producer vepJsonProducer, Path cnvFile, AnnotatorShard shard) {
+		this.vcfFileIterator = new VCFFileIterator(pathVcf, cnvFile, shard);
+
+		if (pathVepJson != null) {
+			vepJsonIterator = new VepJsonFileIterator(pathVepJson, vepJsonProducer, shard);
+		} else {
+			vepJsonIterator = null;
+		}
+	}
+
+	public Source next() throws NoSuchElementException {
+		MAVariantVep variantVep;
+		try {
+			variantVep = vcfFileIterator.next();
+		} catch (NoSuchElementException ne) {
+			//Валидация того, что в vep.json - тоже не осталось записей
+			if (vepJsonIterator != null) {
+				try {
+					vepJsonIterator.next();
+					throw new RuntimeException("Not equals count rows, vcf file and vep.json file");
+				} catch (NoSuchElementException ignore) {
+				}
+			}
+			throw ne;
+		}
+
+		JSONObject vepJson;
+		if (variantVep instanceof MAVariantVCF && vepJsonIterator != null) {
+			try {
+				vepJson = vepJsonIterator.next();
+			} catch (NoSuchElementException ne) {
+				//Валидация того, что в vep.json - остались записи
+				throw new RuntimeException("Not equals count rows, vcf file and vep.json file");
+			}
+		} else {
+			vepJson = null;
+		}
+		return new Source(variantVep, vepJson);
+	}
+
+	/**
+	 * Пропуск count записей без разбора vep.json и построения вариантов
+	 */
+	public void skip(int count) throws NoSuchElementException {
+		int skippedVcf = 0;
+		try {
+			for (int i = 0; i < count; i++) {
+				if (vcfFileIterator.skip()) {
+					skippedVcf++;
+				}
+			}
+		} finally {
+			//vep.json пропускаем на столько же записей vcf, в том числе если vcf закончился раньше
+			if (vepJsonIterator != null) {
+				try {
+					vepJsonIterator.skip(skippedVcf);
+				} catch (NoSuchElementException ne) {
+					throw new RuntimeException("Not equals count rows, vcf file and vep.json file");
+				}
+			}
+		}
+	}
+
+	public boolean isPresentVepJson() {
+		return vepJsonIterator != null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		vcfFileIterator.close();
+
+		if (vepJsonIterator != null) {
+			vepJsonIterator.close();
+		}
+	}
+}
@@ -18,31 +18,25 @@
 
 package org.forome.annotation.annotator.executor;
 
-import net.minidev.json.JSONObject;
-import org.forome.annotation.iterator.vcf.VCFFileIterator;
-import org.forome.annotation.iterator.vepjson.VepJsonFileIterator;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
 import org.forome.annotation.struct.mavariant.MAVariant;
 import org.forome.annotation.struct.mavariant.MAVariantCNV;
 import org.forome.annotation.struct.mavariant.MAVariantVCF;
-import org.forome.annotation.struct.mavariant.MAVariantVep;
 import org.forome.annotation.struct.mcase.MCase;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.annotation.struct.variant.vep.VariantVep;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.nio.file.Path;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * Обработчик из общего пула: забирает прочитанные записи из общей очереди, сам файлы не читает
+ */
 public class ThreadExecutor implements AutoCloseable {
 
 	private final static Logger log = LoggerFactory.getLogger(ThreadExecutor.class);
@@ -54,26 +48,16 @@ public class ThreadExecutor implements AutoCloseable {
 
 	private final MCase samples;
 
-	private final int start;
-	private final int step;
+	private final BlockingQueue<AnnotatorExecutor.Task> tasks;
 
-	private final VCFFileIterator vcfFileIterator;
-	private final VepJsonFileIterator vepJsonIterator;
-
-	private Result nextResult;
-	private final Deque<Result> waitExecuteVariants;//Варианты ожидающие выполнения
-
-	private int nextPosition;
-	private volatile boolean isCompleted = false;
+	private final Thread executor;
 
 	public ThreadExecutor(
 			int index,
 			EnsemblVepService ensemblVepService,
 			Processing processing,
 			MCase samples,
-			Path pathVcf, Path pathVepJson,
-			Path cnvFile,
-			int start, int step,
+			BlockingQueue<AnnotatorExecutor.Task> tasks,
 			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
 	) {
 		this.index = index;
@@ -83,171 +67,68 @@ public class ThreadExecutor implements AutoCloseable {
 
 		this.samples = samples;
 
-		this.start = start;
-		this.step = step;
-
-		this.vcfFileIterator = new VCFFileIterator(pathVcf, cnvFile);
-
-		if (pathVepJson != null) {
-			vepJsonIterator = new VepJsonFileIterator(pathVepJson);
-		} else {
-			vepJsonIterator = null;
-		}
-
-		this.nextResult = new Result(nextPosition, new CompletableFuture<>());
-		this.waitExecuteVariants = new ConcurrentLinkedDeque<>();
-		this.waitExecuteVariants.add(nextResult);
-
-		nextPosition = start + step;
+		this.tasks = tasks;
 
 		//Исполнитель
-		Thread executor = new Thread(() -> {
+		this.executor = new Thread(() -> {
 			log.debug("Thread: {} start", index);
-
-			Source source = null;
-			try {
-				//Прокручиваем до начала итерации
-				if (start > 0) {
-					nextSource(start);
-				}
-				source = nextSource(1);
-			} catch (NoSuchElementException e) {
-				isCompleted = true;
-				log.debug("Thread: {} completed", index);
-			}
-
 			while (true) {
-
-				//TODO Переписать на засыпание потока
-				while (waitExecuteVariants.isEmpty()) {
-					if (isCompleted) return;
-					try {
-						Thread.sleep(10L);
-					} catch (InterruptedException e) {
-					}
-				}
-				Result result = waitExecuteVariants.poll();
-				if (isCompleted) {
-					result.future.complete(null);
-					continue;
-				}
-
-				MAVariant maVariant = source.variant;
-
-				if (maVariant instanceof MAVariantVCF && vepJsonIterator != null) {
-					List<ProcessingResult> processingResults = processing.exec(samples, maVariant);
-
-					result.future.complete(processingResults);
-				} else {
-//					String alternative;
-//					if (variant instanceof MAVariantVCF) {
-//						VariantContext variantContext = ((MAVariantVCF) variant).variantContext;
-//
-//						Allele allele = variantContext.getAlternateAlleles().stream()
-//								.filter(iAllele -> !iAllele.getDisplayString().equals("*"))
-//								.max(Comparator.comparing(variantContext::getCalledChrCount))
-//								.orElse(null);
-//						alternative = allele.getDisplayString();
-//					} else if (variant instanceof MAVariantCNV) {
-//						alternative = "-";
-//					} else {
-//						throw new RuntimeException("Not support type variant: " + variant);
-//					}
-
-					Variant variant;
-					if (maVariant instanceof MAVariantCNV) {
-						variant = ((MAVariantCNV) maVariant).variantCNV;
-					} else {
-						throw new RuntimeException("Not support type maVariant: " + maVariant);
-					}
-
-					ensemblVepService.getVepJson(variant)
-							.thenApply(iVepJson -> {
-								((VariantVep) variant).setVepJson(iVepJson);
-
-								ProcessingResult processingResult = processing.exec(samples, variant);
-								result.future.complete(Collections.singletonList(processingResult));
-								return null;
-							})
-							.exceptionally(throwable -> {
-								result.future.completeExceptionally(throwable);
-								return null;
-							});
-				}
-
-				//Дожидаемся выполнения
+				AnnotatorExecutor.Task task;
 				try {
-					result.future.join();
-				} catch (Throwable ignore) {
+					task = tasks.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (task == AnnotatorExecutor.Task.COMPLETED) {
+					break;
 				}
 
+				//Асинхронные задачи (cnv) не дожидаемся - кол-во записей в обработке ограничивает AnnotatorExecutor
 				try {
-					source = nextSource(step);
-				} catch (NoSuchElementException e) {
-					isCompleted = true;
-					log.debug("Thread: {} completed", index);
+					execute(ensemblVepService, processing, samples, task.source, task.result);
+				} catch (Throwable e) {
+					uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), e);
+					task.result.future.completeExceptionally(e);
+					break;
 				}
 			}
+			log.debug("Thread: {} completed", index);
 		});
-		executor.setUncaughtExceptionHandler(uncaughtExceptionHandler);
 		executor.start();
 	}
 
-	private Source nextSource(int step) {
-		if (step < 1) throw new IllegalArgumentException();
-		MAVariantVep variantVep = null;
-		JSONObject vepJson = null;
-		for (int i = 0; i < step; i++) {
-			try {
-				variantVep = vcfFileIterator.next();
-			} catch (NoSuchElementException ne) {
-				//Валидация того, что в vep.json - тоже не осталось записей
-				if (vepJsonIterator != null) {
-					try {
-						vepJsonIterator.next();
-						throw new RuntimeException("Not equals count rows, vcf file and vep.json file");
-					} catch (NoSuchElementException ignore) {
-					}
-				}
-				throw ne;
-			}
-			if (variantVep instanceof MAVariantVCF && vepJsonIterator != null) {
-				try {
-					vepJson = vepJsonIterator.next();
-				} catch (NoSuchElementException ne) {
-					//Валидация того, что в vep.json - остались записи
-					throw new RuntimeException("Not equals count rows, vcf file and vep.json file");
-				}
-			} else {
-				vepJson = null;
-			}
-		}
-		return new Source(variantVep, vepJson);
-	}
+	static void execute(EnsemblVepService ensemblVepService, Processing processing, MCase samples, Source source, Result result) {
+		MAVariant maVariant = source.variant;
 
-	public Result next() {
-		Result value;
-		synchronized (waitExecuteVariants) {
-			value = nextResult;
+		if (maVariant instanceof MAVariantVCF && source.vepJson != null) {
+			List<ProcessingResult> processingResults = processing.exec(samples, maVariant);
 
-			nextPosition += step;
-			if (isCompleted) {
-				nextResult = new Result(nextPosition, CompletableFuture.completedFuture(null));
+			result.future.complete(processingResults);
+		} else {
+			Variant variant;
+			if (maVariant instanceof MAVariantCNV) {
+				variant = ((MAVariantCNV) maVariant).variantCNV;
 			} else {
-				nextResult = new Result(nextPosition, new CompletableFuture<>());
-				this.waitExecuteVariants.add(nextResult);
+				throw new RuntimeException("Not support type maVariant: " + maVariant);
 			}
+
+			ensemblVepService.getVepJson(variant)
+					.thenApply(iVepJson -> {
+						((VariantVep) variant).setVepJson(iVepJson);
+
+						ProcessingResult processingResult = processing.exec(samples, variant);
+						result.future.complete(Collections.singletonList(processingResult));
+						return null;
+					})
+					.exceptionally(throwable -> {
+						result.future.completeExceptionally(throwable);
+						return null;
+					});
 		}
-		return value;
 	}
 
-
 	@Override
-	public void close() throws IOException {
-		vcfFileIterator.close();
-
-		if (vepJsonIterator != null) {
-			vepJsonIterator.close();
-		}
+	public void close() {
+		executor.interrupt();
 	}
 }
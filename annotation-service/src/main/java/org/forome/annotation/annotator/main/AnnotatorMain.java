@@ -20,6 +20,7 @@ package org.forome.annotation.annotator.main;
 
 import org.forome.annotation.annotator.AnnotationConsole;
 import org.forome.annotation.annotator.main.argument.*;
+import org.forome.annotation.annotator.shard.ShardMerge;
 import org.forome.annotation.inventory.Inventory;
 import org.forome.annotation.logback.LogbackConfigure;
 import org.forome.annotation.utils.AppVersion;
@@ -30,6 +31,10 @@ import org.slf4j.LoggerFactory;
  * cd /data/bgm/cases/bgm9001/
  * java -cp /home/vulitin/deploy/annotationservice/exec/annotation.jar org.forome.annotation.annotator.main.AnnotatorMain -config /home/vulitin/deploy/annotationservice/exec/config.json -vcf bgm9001_wgs_xbrowse.vep.vcf -vepjson bgm9001_wgs_xbrowse.vep.vep.json -output bgm9001_wgs_xbrowse.out.json
  * Для 6 милионов 37:09:11.460
+ *
+ * По частям (vcf.gz с индексом tabix), каждая часть отдельным процессом:
+ * ... -vcf case.vcf.gz -vepjson case.vep.json -shard 0/8 -output case.0.out.json
+ * ... -merge -output case.out.json case.0.out.json ... case.7.out.json
  */
 public class AnnotatorMain {
 
@@ -62,6 +67,7 @@ public class AnnotatorMain {
 					inventory.vcfFile, inventory.vepJsonFile,
 					inventory.cnvFile,
 					argumentsInventory.start,
+					argumentsInventory.shard,
 					inventory.outFile,
 					argumentsInventory.pathRecoveryAnfisaJson,
 					() -> arguments.getArguments()
@@ -78,11 +84,21 @@ public class AnnotatorMain {
 					argumentsAnnotation.pathVcf, argumentsAnnotation.pathVepJson,
 					argumentsAnnotation.pathCnv,
 					argumentsAnnotation.start,
+					argumentsAnnotation.shard,
 					argumentsAnnotation.pathOutput,
 					argumentsAnnotation.pathRecoveryAnfisaJson,
 					() -> arguments.getArguments()
 			);
 			annotationConsole.execute();
+		} else if (arguments instanceof ArgumentsMerge) {
+			ArgumentsMerge argumentsMerge = (ArgumentsMerge) arguments;
+			try {
+				ShardMerge.merge(argumentsMerge.shardFiles, argumentsMerge.pathOutput);
+			} catch (Throwable e) {
+				getLazyLogger().error("Exception merge shards", e);
+				System.exit(1);
+				return;
+			}
 		} else {
 			getLazyLogger().error("Unknown arguments");
 			System.exit(3);
@@ -78,6 +78,7 @@ public class AnnotatorScanInventory {
 				inventory.vcfFile, inventory.vepJsonFile,
 				inventory.cnvFile,
 				0,
+				null,
 				inventory.outFile,
 				null,
 				() -> arguments.getArguments()
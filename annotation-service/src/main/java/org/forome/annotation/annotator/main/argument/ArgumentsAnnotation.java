@@ -53,6 +53,8 @@ public class ArgumentsAnnotation extends Arguments {
 	public final int start;
 	public final Path pathRecoveryAnfisaJson;
 
+	public final String shard;
+
 	public ArgumentsAnnotation(CommandLine cmd) {
 		super(cmd);
 
@@ -143,6 +145,8 @@ public class ArgumentsAnnotation extends Arguments {
 		if (start != 0 && pathRecoveryAnfisaJson != null) {
 			throw new IllegalArgumentException("Conflict argument recovery file and start position");
 		}
+
+		this.shard = cmd.getOptionValue(ParserArgument.OPTION_SHARD);
 	}
 
 }
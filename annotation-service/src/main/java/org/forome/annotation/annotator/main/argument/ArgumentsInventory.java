@@ -34,6 +34,8 @@ public class ArgumentsInventory extends Arguments {
 	public final int start;
 	public final Path pathRecoveryAnfisaJson;
 
+	public final String shard;
+
 	public ArgumentsInventory(CommandLine cmd) {
 		super(cmd);
 
@@ -70,6 +72,8 @@ public class ArgumentsInventory extends Arguments {
 		if (start != 0 && pathRecoveryAnfisaJson != null) {
 			throw new IllegalArgumentException("Conflict argument recovery file and start position");
 		}
+
+		this.shard = cmd.getOptionValue(ParserArgument.OPTION_SHARD);
 	}
 
 }
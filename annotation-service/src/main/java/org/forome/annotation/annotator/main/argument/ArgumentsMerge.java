@@ -0,0 +1,60 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+
+package org.forome.annotation.annotator.main.argument;
+
+import org.apache.commons.cli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ArgumentsMerge extends Arguments {
+
+	public final List<Path> shardFiles;
+
+	public final Path pathOutput;
+
+	public ArgumentsMerge(CommandLine cmd) {
+		super(cmd);
+
+		List<Path> shardFiles = new ArrayList<>();
+		for (String strShardFile : cmd.getArgList()) {
+			Path shardFile = Paths.get(strShardFile).toAbsolutePath();
+			if (!Files.exists(shardFile)) {
+				throw new IllegalArgumentException("Shard file does not exists: " + shardFile);
+			}
+			shardFiles.add(shardFile);
+		}
+		if (shardFiles.isEmpty()) {
+			throw new IllegalArgumentException("Missing shard files");
+		}
+		this.shardFiles = Collections.unmodifiableList(shardFiles);
+
+		String strOutputFile = cmd.getOptionValue(ParserArgument.OPTION_FILE_OUTPUT);
+		if (strOutputFile == null) {
+			throw new IllegalArgumentException("Missing output file");
+		}
+		this.pathOutput = Paths.get(strOutputFile).toAbsolutePath();
+	}
+
+}
@@ -41,6 +41,9 @@ public class ParserArgument {
 	public static final String OPTION_START_POSITION = "start";
 	public static final String OPTION_FILE_OUTPUT = "output";
 
+	public static final String OPTION_SHARD = "shard";
+	public static final String OPTION_MERGE = "merge";
+
 	public static final String OPTION_FILE_RECOVERY = "recovery";
 
 	public static final String OPTION_FILE_INVENTORY = "inventory";
@@ -134,6 +137,19 @@ public class ParserArgument {
 						.hasArg(true)
 						.optionalArg(false)
 						.desc("Absolute path to recovery file")
+						.build())
+
+				.addOption(Option.builder()
+						.longOpt(OPTION_SHARD)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Shard of case: i/N (equal parts of genome) or regions 1:1-1000000,2,... with 'cnv' item for the shard processing cnv file (need tabix index for vcf)")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_MERGE)
+						.hasArg(false)
+						.optionalArg(false)
+						.desc("Merge shard files (arguments, in shard order) into output file")
 						.build());
 
 		try {
@@ -141,6 +157,8 @@ public class ParserArgument {
 
 			if (cmd.hasOption(OPTION_VERSION)) {
 				arguments = new ArgumentsVersion(cmd);
+			} else if (cmd.hasOption(OPTION_MERGE)) {
+				arguments = new ArgumentsMerge(cmd);
 			} else if (cmd.hasOption(OPTION_SCAN_FILE_INVENTORY)) {
 				arguments = new ArgumentsScanInventory(cmd);
 			} else if (cmd.hasOption(OPTION_FILE_INVENTORY)) {
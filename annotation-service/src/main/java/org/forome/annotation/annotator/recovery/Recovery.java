@@ -19,6 +19,9 @@
 package org.forome.annotation.annotator.recovery;
 
 import net.minidev.json.JSONObject;
+import net.minidev.json.parser.JSONParser;
+import net.minidev.json.parser.ParseException;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
 import org.forome.annotation.exception.AnnotatorException;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.iterator.json.JsonFileIterator;
@@ -26,39 +29,52 @@ import org.forome.annotation.iterator.vcf.VCFFileIterator;
 import org.forome.annotation.processing.smavariant.SplitMAVariant;
 import org.forome.annotation.struct.mavariant.MAVariant;
 import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.compression.ParallelBgzfInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
-import java.io.EOFException;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
 
 public class Recovery {
 
 	private final static Logger log = LoggerFactory.getLogger(Recovery.class);
 
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
 	private final Path vcfFile;
+	private final AnnotatorShard shard;
 	private final Path recoveryAnfisaJson;
 
 	public Recovery(Path vcfFile, Path recoveryAnfisaJson) {
+		this(vcfFile, null, recoveryAnfisaJson);
+	}
+
+	public Recovery(Path vcfFile, AnnotatorShard shard, Path recoveryAnfisaJson) {
 		this.vcfFile = vcfFile;
+		this.shard = shard;
 		this.recoveryAnfisaJson = recoveryAnfisaJson;
 	}
 
-	public RecoveryResult execute(BufferedOutputStream bos) throws IOException {
+	public RecoveryResult execute(OutputStream bos) throws IOException {
+		Path pathIndex = RecoveryIndex.getPath(recoveryAnfisaJson);
+		if (Files.exists(pathIndex)) {
+			return executeByIndex(bos, RecoveryIndex.read(pathIndex));
+		}
+
 		log.debug("Run recovery mode...");
 
 		int offset = 0;
 		int countRecords = 0;
 		try (
-				VCFFileIterator vcfFileIterator = new VCFFileIterator(vcfFile);
+				VCFFileIterator vcfFileIterator = new VCFFileIterator(vcfFile, null, shard);
 				InputStream isRecoveryAnfisaJson = Files.newInputStream(recoveryAnfisaJson);
 				JsonFileIterator recoveryJsonIterator = new JsonFileIterator(isRecoveryAnfisaJson, recoveryAnfisaJson.getFileName().toString().contains(".gz_"))
 		) {
@@ -120,4 +136,110 @@ public class Recovery {
 				offset, countRecords
 		);
 	}
+
+	/**
+	 * Данные результата до последней контрольной точки индекса, совпавшей по CRC32, копируются побайтно,
+	 * без разбора записей и чтения vcf
+	 */
+	private RecoveryResult executeByIndex(OutputStream os, List<RecoveryIndex.Checkpoint> checkpoints) throws IOException {
+		log.debug("Run recovery mode by index, checkpoints: {}", checkpoints.size());
+
+		RecoveryIndex.Checkpoint verified = verify(checkpoints);
+		if (verified == null) {
+			log.debug("Run recovery mode...complete, no verified checkpoints");
+			return new RecoveryResult(0, 0);
+		}
+
+		try (InputStream is = openRecords()) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long length = verified.offset;
+			while (length > 0) {
+				int n = is.read(buffer, 0, (int) Math.min(buffer.length, length));
+				if (n == -1) {
+					throw new EOFException("Recovery file changed during recovery");
+				}
+				os.write(buffer, 0, n);
+				length -= n;
+			}
+		}
+
+		log.debug("Run recovery mode...complete.");
+		log.debug("Recovery variants: " + verified.position);
+		log.debug("Recovery records: " + verified.countRecords);
+		return new RecoveryResult(
+				verified.position, verified.countRecords
+		);
+	}
+
+	/**
+	 * Последняя контрольная точка, данные до которой прочитаны и совпали по CRC32
+	 */
+	private RecoveryIndex.Checkpoint verify(List<RecoveryIndex.Checkpoint> checkpoints) throws IOException {
+		RecoveryIndex.Checkpoint verified = null;
+		CRC32 checksum = new CRC32();
+		long offset = 0;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream is = openRecords()) {
+			for (RecoveryIndex.Checkpoint checkpoint : checkpoints) {
+				long length = checkpoint.offset - offset;
+				if (length < 0) {
+					break;
+				}
+				while (length > 0) {
+					int n = is.read(buffer, 0, (int) Math.min(buffer.length, length));
+					if (n == -1) {
+						return verified;
+					}
+					checksum.update(buffer, 0, n);
+					offset += n;
+					length -= n;
+				}
+				if (checksum.getValue() != checkpoint.checksum) {
+					log.warn("Recovery file does not match index, checkpoint: {}", checkpoint.position);
+					return verified;
+				}
+				verified = checkpoint;
+			}
+		} catch (IOException e) {
+			//Файл оборван при аварийном завершении
+			log.debug("Recovery file is end: {}", e.getMessage());
+		}
+		return verified;
+	}
+
+	/**
+	 * Поток данных результата после строки метаданных
+	 */
+	private InputStream openRecords() throws IOException {
+		String fileName = recoveryAnfisaJson.getFileName().toString();
+		InputStream is = new BufferedInputStream(Files.newInputStream(recoveryAnfisaJson), BUFFER_SIZE);
+		try {
+			if (fileName.endsWith(".gz") || fileName.contains(".gz_")) {
+				if (ParallelBgzfInputStream.isBgzf(is)) {
+					is = new BufferedInputStream(new ParallelBgzfInputStream(is), BUFFER_SIZE);
+				} else {
+					is = new BufferedInputStream(new GZIPInputStream(is), BUFFER_SIZE);
+				}
+			}
+
+			//Проверяем, что первая строка, это матаданные
+			ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+			int b;
+			while ((b = is.read()) != -1 && b != '\n') {
+				metadata.write(b);
+			}
+			JSONObject jMetadata = (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE)
+					.parse(new String(metadata.toByteArray(), StandardCharsets.UTF_8));
+			if (!"metadata".equals(jMetadata.getAsString("record_type"))) {
+				throw new RuntimeException("Bad recovery file, need first line is metadata");
+			}
+			return is;
+		} catch (ParseException e) {
+			is.close();
+			throw new RuntimeException("Bad recovery file, need first line is metadata", e);
+		} catch (Throwable e) {
+			is.close();
+			throw e;
+		}
+	}
 }
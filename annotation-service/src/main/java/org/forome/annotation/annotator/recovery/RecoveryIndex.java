@@ -0,0 +1,92 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.recovery;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Индекс восстановления (файл рядом с результатом, *.idx): контрольные точки записи результата.
+ * Строка: кол-во обработанных записей исходных файлов, размер записанных данных после строки метаданных (в байтах,
+ * без сжатия), кол-во записей результата и CRC32 этих данных
+ */
+public class RecoveryIndex {
+
+	private static final String EXTENSION = ".idx";
+
+	public static class Checkpoint {
+
+		public final int position;
+		public final long offset;
+		public final int countRecords;
+		public final long checksum;
+
+		public Checkpoint(int position, long offset, int countRecords, long checksum) {
+			this.position = position;
+			this.offset = offset;
+			this.countRecords = countRecords;
+			this.checksum = checksum;
+		}
+
+		String toLine() {
+			return position + "\t" + offset + "\t" + countRecords + "\t" + Long.toHexString(checksum);
+		}
+
+		static Checkpoint parse(String line) {
+			String[] values = line.split("\t");
+			if (values.length != 4) {
+				throw new IllegalArgumentException("Bad checkpoint: " + line);
+			}
+			return new Checkpoint(
+					Integer.parseInt(values[0]),
+					Long.parseLong(values[1]),
+					Integer.parseInt(values[2]),
+					Long.parseLong(values[3], 16)
+			);
+		}
+	}
+
+	public static Path getPath(Path anfisaJson) {
+		return anfisaJson.resolveSibling(anfisaJson.getFileName().toString() + EXTENSION);
+	}
+
+	/**
+	 * Контрольные точки по возрастанию, недописанная последняя строка игнорируется
+	 */
+	public static List<Checkpoint> read(Path pathIndex) throws IOException {
+		List<Checkpoint> checkpoints = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(pathIndex, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					checkpoints.add(Checkpoint.parse(line));
+				} catch (IllegalArgumentException e) {
+					break;
+				}
+			}
+		}
+		return Collections.unmodifiableList(checkpoints);
+	}
+}
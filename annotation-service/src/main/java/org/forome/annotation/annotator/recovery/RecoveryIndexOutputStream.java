@@ -0,0 +1,88 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.recovery;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Запись результата (после строки метаданных) с подсчетом размера и CRC32 данных,
+ * в контрольных точках состояние дописывается в индекс восстановления
+ */
+public class RecoveryIndexOutputStream extends OutputStream {
+
+	private final OutputStream target;
+	private final Writer indexWriter;
+
+	private final CRC32 checksum;
+	private long offset;
+
+	public RecoveryIndexOutputStream(OutputStream target, Path pathIndex) throws IOException {
+		this.target = target;
+		this.indexWriter = Files.newBufferedWriter(pathIndex, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+		);
+		this.checksum = new CRC32();
+		this.offset = 0;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		target.write(b);
+		checksum.update(b);
+		offset++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		target.write(b, off, len);
+		checksum.update(b, off, len);
+		offset += len;
+	}
+
+	/**
+	 * @param position кол-во обработанных записей исходных файлов (с учетом пропущенных и восстановленных)
+	 * @param countRecords кол-во записей результата
+	 */
+	public void checkpoint(int position, int countRecords) throws IOException {
+		indexWriter.write(new RecoveryIndex.Checkpoint(position, offset, countRecords, checksum.getValue()).toLine());
+		indexWriter.write('\n');
+		indexWriter.flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		target.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			indexWriter.close();
+		} finally {
+			target.close();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.shard;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.variant.vcf.VCFHeader;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Часть кейса для обработки отдельным процессом - регионы генома в порядке записей vcf.
+ * Спецификация:
+ * "2/16" - третья (нумерация с 0) из 16 равных частей генома по ##contig заголовка vcf;
+ * "1:1-50000000,2,X:100-2000" - явный список регионов (в порядке vcf), элемент "cnv" - часть обрабатывает
+ * и файл cnv (записи cnv идут после записей vcf, поэтому при слиянии такая часть должна быть последней).
+ * Вариант относится к части по позиции начала (POS), поэтому каждая запись vcf попадает ровно в одну часть
+ */
+public class AnnotatorShard {
+
+	//Максимальная позиция, которую адресует индекс tabix
+	private static final int MAX_POSITION = 1 << 29;
+
+	//Элемент списка регионов: часть обрабатывает файл cnv
+	public static final String REGION_CNV = "cnv";
+
+	public final String spec;
+
+	public final List<Interval> regions;
+
+	/**
+	 * Записи cnv идут после всех записей vcf, поэтому их обрабатывает последняя часть i/N
+	 * или часть, в списке регионов которой указан "cnv"
+	 */
+	public final boolean withCnv;
+
+	private AnnotatorShard(String spec, List<Interval> regions, boolean withCnv) {
+		this.spec = spec;
+		this.regions = Collections.unmodifiableList(regions);
+		this.withCnv = withCnv;
+	}
+
+	public boolean contains(Chromosome chromosome, int position) {
+		for (Interval region : regions) {
+			if (region.chromosome.getChar().equals(chromosome.getChar())
+					&& region.start <= position && position <= region.end) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Имена контигов vcf для хромосомы: по заголовку, если в нем есть ##contig, иначе оба варианта именования
+	 */
+	public static List<String> getContigNames(VCFHeader header, Chromosome chromosome) {
+		List<String> names = new ArrayList<>();
+		SAMSequenceDictionary dictionary = header.getSequenceDictionary();
+		if (dictionary != null) {
+			for (SAMSequenceRecord record : dictionary.getSequences()) {
+				String name = record.getSequenceName();
+				if (Chromosome.isSupportChromosome(name) && Chromosome.of(name).getChar().equals(chromosome.getChar())) {
+					names.add(name);
+				}
+			}
+		} else {
+			names.add(chromosome.getChar());
+			names.add(chromosome.getChromosome());
+		}
+		return names;
+	}
+
+	public static AnnotatorShard parse(String spec, VCFHeader header) {
+		String value = spec.trim();
+		if (value.matches("\\d+/\\d+")) {
+			String[] parts = value.split("/");
+			int index = Integer.parseInt(parts[0]);
+			int count = Integer.parseInt(parts[1]);
+			if (count < 1 || index >= count) {
+				throw new IllegalArgumentException("Bad shard: " + spec);
+			}
+			return new AnnotatorShard(spec, split(getGenome(header), index, count), index == count - 1);
+		}
+
+		List<Interval> regions = new ArrayList<>();
+		boolean withCnv = false;
+		for (String region : value.split(",")) {
+			if (REGION_CNV.equalsIgnoreCase(region.trim())) {
+				withCnv = true;
+			} else {
+				regions.add(parseRegion(region.trim()));
+			}
+		}
+		return new AnnotatorShard(spec, regions, withCnv);
+	}
+
+	private static Interval parseRegion(String value) {
+		int index = value.lastIndexOf(':');
+		if (index < 0) {
+			return Interval.of(Chromosome.of(value), 1, MAX_POSITION);
+		}
+		Chromosome chromosome = Chromosome.of(value.substring(0, index));
+		String[] range = value.substring(index + 1).split("-");
+		if (range.length != 2) {
+			throw new IllegalArgumentException("Bad shard region: " + value);
+		}
+		int start = Integer.parseInt(range[0]);
+		int end = Integer.parseInt(range[1]);
+		if (start < 1 || start > end) {
+			throw new IllegalArgumentException("Bad shard region: " + value);
+		}
+		return Interval.of(chromosome, start, end);
+	}
+
+	private static List<Interval> getGenome(VCFHeader header) {
+		SAMSequenceDictionary dictionary = header.getSequenceDictionary();
+		if (dictionary == null) {
+			throw new IllegalArgumentException("Vcf header has no ##contig lines, use explicit shard regions");
+		}
+		List<Interval> genome = new ArrayList<>();
+		for (SAMSequenceRecord record : dictionary.getSequences()) {
+			String name = record.getSequenceName();
+			if (!Chromosome.isSupportChromosome(name)) {
+				continue;
+			}
+			if (record.getSequenceLength() <= 0) {
+				throw new IllegalArgumentException("Vcf header has no length for contig: " + name);
+			}
+			genome.add(Interval.of(Chromosome.of(name), 1, record.getSequenceLength()));
+		}
+		return genome;
+	}
+
+	/**
+	 * Часть index из count равных по длине частей генома (контиги подряд, в порядке заголовка)
+	 */
+	static List<Interval> split(List<Interval> genome, int index, int count) {
+		long total = 0;
+		for (Interval contig : genome) {
+			total += contig.end;
+		}
+		long chunk = (total + count - 1) / count;
+		long shardStart = chunk * index;
+		long shardEnd = Math.min(total, chunk * (index + 1));
+
+		List<Interval> regions = new ArrayList<>();
+		long offset = 0;
+		for (Interval contig : genome) {
+			long start = Math.max(shardStart, offset);
+			long end = Math.min(shardEnd, offset + contig.end);
+			if (start < end) {
+				regions.add(Interval.of(contig.chromosome, (int) (start - offset + 1), (int) (end - offset)));
+			}
+			offset += contig.end;
+		}
+		return regions;
+	}
+
+	@Override
+	public String toString() {
+		StringJoiner joiner = new StringJoiner(",", "AnnotatorShard(" + spec + ": ", ")");
+		for (Interval region : regions) {
+			joiner.add(region.chromosome.getChar() + ":" + region.start + "-" + region.end);
+		}
+		if (withCnv) {
+			joiner.add(REGION_CNV);
+		}
+		return joiner.toString();
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.shard;
+
+import org.forome.annotation.utils.compression.ParallelBgzfOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Склейка результатов частей кейса в один a-json: строка метаданных берется из первой части,
+ * записи остальных частей копируются побайтно в порядке частей (порядок записей vcf)
+ */
+public class ShardMerge {
+
+	private final static Logger log = LoggerFactory.getLogger(ShardMerge.class);
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static final byte[] METADATA_MARKER = "\"record_type\":\"metadata\"".getBytes(StandardCharsets.UTF_8);
+
+	public static void merge(List<Path> shardFiles, Path output) throws IOException {
+		Path tmpOutput = output.resolveSibling(output.getFileName().toString() + ".merge");
+		boolean gzip = output.getFileName().toString().endsWith(".gz");
+		try (OutputStream os = buildOutputStream(tmpOutput, gzip)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			for (int i = 0; i < shardFiles.size(); i++) {
+				Path shardFile = shardFiles.get(i);
+				try (InputStream is = buildInputStream(shardFile)) {
+					byte[] metadata = readLine(is);
+					if (indexOf(metadata, METADATA_MARKER) < 0) {
+						throw new RuntimeException("Bad shard file, need first line is metadata: " + shardFile);
+					}
+					if (i == 0) {
+						os.write(metadata);
+					}
+					int n;
+					while ((n = is.read(buffer)) != -1) {
+						os.write(buffer, 0, n);
+					}
+				}
+				log.debug("Merge shard {}/{}: {}", i + 1, shardFiles.size(), shardFile);
+			}
+		} catch (Throwable e) {
+			Files.deleteIfExists(tmpOutput);
+			throw e;
+		}
+		//Результат появляется только целиком
+		Files.move(tmpOutput, output, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Первая строка вместе с переводом строки
+	 */
+	private static byte[] readLine(InputStream is) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = is.read()) != -1) {
+			line.write(b);
+			if (b == '\n') {
+				break;
+			}
+		}
+		return line.toByteArray();
+	}
+
+	private static int indexOf(byte[] value, byte[] target) {
+		for (int i = 0; i + target.length <= value.length; i++) {
+			int j = 0;
+			while (j < target.length && value[i + j] == target[j]) {
+				j++;
+			}
+			if (j == target.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static InputStream buildInputStream(Path path) throws IOException {
+		InputStream is = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+		if (path.getFileName().toString().endsWith(".gz")) {
+			return new GZIPInputStream(is, BUFFER_SIZE);
+		} else {
+			return is;
+		}
+	}
+
+	private static OutputStream buildOutputStream(Path path, boolean gzip) throws IOException {
+		OutputStream os = Files.newOutputStream(path);
+		if (gzip) {
+			return new ParallelBgzfOutputStream(os);
+		} else {
+			return new BufferedOutputStream(os, BUFFER_SIZE);
+		}
+	}
+}
@@ -18,18 +18,26 @@
 
 package org.forome.annotation.annotator.struct;
 
-import io.reactivex.Observable;
+import io.reactivex.Flowable;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public class AnnotatorResult {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotatorResult.class);
 
-	public final Observable<ProcessingResult> observableAnfisaResult;
+	/**
+	 * Результаты, сгруппированные по записям исходных файлов (в порядке записей, пустой список - запись без результатов)
+	 */
+	public final Flowable<List<ProcessingResult>> flowableAnfisaResults;
+
+	public final Flowable<ProcessingResult> flowableAnfisaResult;
 
-	public AnnotatorResult(Observable<ProcessingResult> observableAnfisaResult) {
-		this.observableAnfisaResult = observableAnfisaResult;
+	public AnnotatorResult(Flowable<List<ProcessingResult>> flowableAnfisaResults) {
+		this.flowableAnfisaResults = flowableAnfisaResults;
+		this.flowableAnfisaResult = flowableAnfisaResults.concatMapIterable(processingResults -> processingResults);
 	}
 }
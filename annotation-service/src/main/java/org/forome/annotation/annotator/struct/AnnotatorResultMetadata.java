@@ -19,13 +19,13 @@
 package org.forome.annotation.annotator.struct;
 
 import com.google.common.base.Strings;
-import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import org.forome.annotation.data.anfisa.AnfisaConnector;
 import org.forome.annotation.data.conservation.ConservationData;
+import org.forome.annotation.iterator.vcf.VCFFileIterator;
 import org.forome.annotation.struct.SourceMetadata;
 import org.forome.annotation.struct.mcase.Cohort;
 import org.forome.annotation.struct.mcase.MCase;
@@ -104,8 +104,7 @@ public class AnnotatorResultMetadata {
 			annotations = AppVersion.getVersionFormat();
 			annotationsBuild = AppVersion.getVersion();
 			if (pathVcf != null) {
-				VCFFileReader vcfFileReader = new VCFFileReader(pathVcf, false);
-				VCFHeader vcfHeader = vcfFileReader.getFileHeader();
+				VCFHeader vcfHeader = VCFFileIterator.readHeader(pathVcf);
 
 				VCFHeaderLine hlPipeline = vcfHeader.getOtherHeaderLine("source");
 				pipeline = (hlPipeline != null) ? hlPipeline.getValue() : null;
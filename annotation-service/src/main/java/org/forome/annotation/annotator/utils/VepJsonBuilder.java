@@ -0,0 +1,142 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.utils;
+
+import org.forome.annotation.utils.RuntimeExec;
+import org.forome.annotation.utils.TailFileInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Внешний ensembl-vep, запущенный параллельно с аннотацией: vep.json читается по мере записи (TailFileInputStream)
+ */
+public class VepJsonBuilder implements TailFileInputStream.Producer, AutoCloseable {
+
+	private final static Logger log = LoggerFactory.getLogger(VepJsonBuilder.class);
+
+	public final Path pathVepJson;
+
+	private final RuntimeExec.Execution execution;
+	private final long timeStart;
+
+	private boolean complete;
+
+	private VepJsonBuilder(Path pathVepJson, RuntimeExec.Execution execution) {
+		this.pathVepJson = pathVepJson;
+		this.execution = execution;
+		this.timeStart = System.currentTimeMillis();
+	}
+
+	@Override
+	public synchronized boolean isComplete() throws IOException {
+		if (complete) {
+			return true;
+		}
+		if (execution.isAlive()) {
+			return false;
+		}
+
+		RuntimeExec.Result result;
+		try {
+			result = execution.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		if (result.exitCode != 0) {
+			throw new IOException("Exception run ensembl-vep, return code: '" + result.exitCode + "' out: '" + result.out + "', error out: " + result.outError);
+		}
+		log.info("Run external ensembl-vep complete, time: {}, size vep.json: {}",
+				System.currentTimeMillis() - timeStart, Files.size(pathVepJson)
+		);
+		complete = true;
+		return true;
+	}
+
+	/**
+	 * Останавливает ensembl-vep, если он еще работает
+	 */
+	@Override
+	public void close() {
+		if (execution.isAlive()) {
+			execution.destroy();
+		}
+	}
+
+	public static VepJsonBuilder start(Path vcfFile, Path pathDirVepJson) {
+		Path pathVepJson = buildPath(vcfFile, pathDirVepJson);
+		return start(buildCommand(vcfFile, pathVepJson), pathVepJson);
+	}
+
+	/**
+	 * @param cmd команда, которая пишет vep.json в pathVepJson
+	 */
+	public static VepJsonBuilder start(String cmd, Path pathVepJson) {
+		log.info("run external ensembl-vep, cmd: {}", cmd);
+		try {
+			return new VepJsonBuilder(pathVepJson, RuntimeExec.startCommand(cmd));
+		} catch (IOException e) {
+			throw new RuntimeException("Exception run ensembl-vep", e);
+		}
+	}
+
+	private static Path buildPath(Path vcfFile, Path pathDirVepJson) {
+		String fileNameVcf = vcfFile.getFileName().toString();
+		String fileNameVepJson;
+		String extension = fileNameVcf.endsWith(".vcf.gz") ? ".vcf.gz" : ".vcf";
+		if (fileNameVcf.endsWith(extension)) {
+			String s = fileNameVcf.substring(0, fileNameVcf.length() - extension.length());
+			fileNameVepJson = s + ".vep.json";
+			int i = 0;
+			while (Files.exists(pathDirVepJson.resolve(fileNameVepJson))) {
+				fileNameVepJson = String.format("%s(%s).vep.json", s, ++i);
+			}
+		} else {
+			throw new IllegalArgumentException("Bad vcf filename (Need *.vcf or *.vcf.gz): " + vcfFile.toAbsolutePath());
+		}
+		return pathDirVepJson.resolve(fileNameVepJson).toAbsolutePath();
+	}
+
+	private static String buildCommand(Path vcfFile, Path pathVepJson) {
+		return new StringBuilder("/db/vep-93/ensembl-vep/vep ")
+				.append("--buffer_size 50000 ")
+				.append("--cache --dir /db/data/vep/cache --dir_cache /db/data/vep/cache ")
+				.append("--fork 4 ")
+				.append("--uniprot --hgvs --symbol --numbers --domains --regulatory --canonical --protein --biotype --tsl --appris --gene_phenotype --variant_class ")
+				.append("--fasta /db/data/vep/cache/homo_sapiens/93_GRCh37/Homo_sapiens.GRCh37.75.dna.primary_assembly.fa.gz ")
+				.append("--force_overwrite ")
+				.append("--merged ")
+				.append("--json ")
+				.append("--port 3337 ")
+				.append("--input_file ").append(vcfFile).append(' ')
+				.append("--output_file ").append(pathVepJson.toAbsolutePath()).append(' ')
+				.append("--plugin ExACpLI,/db/data/misc/ExACpLI_values.txt ")
+				.append("--plugin MaxEntScan,/db/data/MaxEntScan/fordownload ")
+				.append("--plugin LoFtool,/db/data/loftoll/LoFtool_scores.txt ")
+				.append("--plugin dbNSFP,/db/data/dbNSFPa/dbNSFP_hg19.gz,Polyphen2_HDIV_pred,Polyphen2_HVAR_pred,Polyphen2_HDIV_score,Polyphen2_HVAR_score,SIFT_pred,SIFT_score,MutationTaster_pred,MutationTaster_score,FATHMM_pred,FATHMM_score,REVEL_score,CADD_phred,CADD_raw,MutationAssessor_score,MutationAssessor_pred,clinvar_rs,clinvar_clnsig ")
+				.append("--plugin SpliceRegion ")
+				.append("--everything")
+				.toString();
+	}
+}
@@ -20,6 +20,8 @@ package org.forome.annotation.config;
 
 import net.minidev.json.JSONObject;
 import net.minidev.json.parser.JSONParser;
+import org.forome.annotation.config.annotator.AnnotatorConfig;
+import org.forome.annotation.config.connector.ClinvarConfigConnector;
 import org.forome.annotation.config.connector.ForomeConfigConnector;
 import org.forome.annotation.config.connector.GTFConfigConnector;
 import org.forome.annotation.config.connector.HgmdConfigConnector;
@@ -51,9 +53,12 @@ public class ServiceConfig {
 	public final HgmdConfigConnector hgmdConfigConnector;
 	public final GTFConfigConnector gtfConfigConnector;
 	public final RefConfigConnector refConfigConnector;
+	public final ClinvarConfigConnector clinvarConfigConnector;
 
 	public final NotificationSlackConfig notificationSlackConfig;
 
+	public final AnnotatorConfig annotatorConfig;
+
 	public ServiceConfig() throws Exception {
 		this(Paths.get("config.json").toAbsolutePath());
 	}
@@ -80,6 +85,12 @@ public class ServiceConfig {
 		hgmdConfigConnector = new HgmdConfigConnector((JSONObject) jConnectors.get("hgmd"));
 		gtfConfigConnector = new GTFConfigConnector((JSONObject) jConnectors.get("gtf"));
 		refConfigConnector = new RefConfigConnector((JSONObject) jConnectors.get("ref"));
+		JSONObject jClinvar = (JSONObject) jConnectors.get("clinvar");
+		if (jClinvar != null) {
+			clinvarConfigConnector = new ClinvarConfigConnector(jClinvar);
+		} else {
+			clinvarConfigConnector = new ClinvarConfigConnector();
+		}
 
 		JSONObject jNotifications = (JSONObject) configFileJson.get("notification");
 		if (jNotifications != null) {
@@ -92,6 +103,13 @@ public class ServiceConfig {
 		} else {
 			notificationSlackConfig = null;
 		}
+
+		JSONObject jAnnotator = (JSONObject) configFileJson.get("annotator");
+		if (jAnnotator != null) {
+			annotatorConfig = new AnnotatorConfig(jAnnotator);
+		} else {
+			annotatorConfig = new AnnotatorConfig();
+		}
 	}
 
 }
@@ -0,0 +1,136 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.config.annotator;
+
+import net.minidev.json.JSONObject;
+import org.forome.annotation.utils.compression.ParallelBgzfOutputStream;
+
+public class AnnotatorConfig {
+
+	private final static String FIELD_THREADS = "threads";
+	private final static String FIELD_MAX_IN_FLIGHT = "max_in_flight";
+	private final static String FIELD_PREFETCH_WINDOW = "prefetch_window";
+	private final static String FIELD_POOL_THREADS = "pool_threads";
+	private final static String FIELD_POOL_MAX_REQUESTS = "pool_max_requests";
+	private final static String FIELD_OUTPUT_THREADS = "output_threads";
+	private final static String FIELD_OUTPUT_BLOCK_SIZE = "output_block_size";
+	private final static String FIELD_LOOKUP_THREADS = "lookup_threads";
+
+	public static final int DEFAULT_PREFETCH_WINDOW = 500;
+	public static final int DEFAULT_POOL_MAX_REQUESTS = 16;
+
+	/**
+	 * Кол-во потоков обработки, 0 - вычисляется автоматически от кол-ва ядер и samples
+	 */
+	public final int threads;
+
+	/**
+	 * Максимальное кол-во записей, прочитанных, но еще не отданных на запись, 0 - threads * 4
+	 */
+	public final int maxInFlight;
+
+	/**
+	 * Кол-во записей vcf, данные источников для которых загружаются одним запросом, 0 - без предзагрузки
+	 */
+	public final int prefetchWindow;
+
+	/**
+	 * Кол-во потоков общего пула обработки запросов сервера (FormatVcf), 0 - кол-во ядер * 4
+	 */
+	public final int poolThreads;
+
+	/**
+	 * Максимальное кол-во одновременно обрабатываемых запросов, остальные отклоняются
+	 */
+	public final int poolMaxRequests;
+
+	/**
+	 * Кол-во потоков сжатия результата (*.gz, BGZF), 0 - кол-во ядер
+	 */
+	public final int outputThreads;
+
+	/**
+	 * Размер несжатых данных блока BGZF
+	 */
+	public final int outputBlockSize;
+
+	/**
+	 * Кол-во потоков параллельных запросов к источникам при сборке одного варианта,
+	 * 0 - запросы выполняются в потоке, собирающем вариант, null - по умолчанию для режима запуска
+	 */
+	public final Integer lookupThreads;
+
+	public AnnotatorConfig() {
+		this(new JSONObject());
+	}
+
+	public AnnotatorConfig(JSONObject parse) {
+		this.threads = parse.containsKey(FIELD_THREADS) ? parse.getAsNumber(FIELD_THREADS).intValue() : 0;
+		if (threads < 0) {
+			throw new RuntimeException("Exception annotator config, bad threads: " + threads);
+		}
+
+		this.maxInFlight = parse.containsKey(FIELD_MAX_IN_FLIGHT) ? parse.getAsNumber(FIELD_MAX_IN_FLIGHT).intValue() : 0;
+		if (maxInFlight < 0) {
+			throw new RuntimeException("Exception annotator config, bad max_in_flight: " + maxInFlight);
+		}
+
+		this.prefetchWindow = parse.containsKey(FIELD_PREFETCH_WINDOW) ? parse.getAsNumber(FIELD_PREFETCH_WINDOW).intValue() : DEFAULT_PREFETCH_WINDOW;
+		if (prefetchWindow < 0) {
+			throw new RuntimeException("Exception annotator config, bad prefetch_window: " + prefetchWindow);
+		}
+
+		this.poolThreads = parse.containsKey(FIELD_POOL_THREADS) ? parse.getAsNumber(FIELD_POOL_THREADS).intValue() : 0;
+		if (poolThreads < 0) {
+			throw new RuntimeException("Exception annotator config, bad pool_threads: " + poolThreads);
+		}
+
+		this.poolMaxRequests = parse.containsKey(FIELD_POOL_MAX_REQUESTS) ? parse.getAsNumber(FIELD_POOL_MAX_REQUESTS).intValue() : DEFAULT_POOL_MAX_REQUESTS;
+		if (poolMaxRequests < 1) {
+			throw new RuntimeException("Exception annotator config, bad pool_max_requests: " + poolMaxRequests);
+		}
+
+		this.outputThreads = parse.containsKey(FIELD_OUTPUT_THREADS) ? parse.getAsNumber(FIELD_OUTPUT_THREADS).intValue() : 0;
+		if (outputThreads < 0) {
+			throw new RuntimeException("Exception annotator config, bad output_threads: " + outputThreads);
+		}
+
+		this.outputBlockSize = parse.containsKey(FIELD_OUTPUT_BLOCK_SIZE) ? parse.getAsNumber(FIELD_OUTPUT_BLOCK_SIZE).intValue() : ParallelBgzfOutputStream.MAX_BLOCK_SIZE;
+		if (outputBlockSize < 1 || outputBlockSize > ParallelBgzfOutputStream.MAX_BLOCK_SIZE) {
+			throw new RuntimeException("Exception annotator config, bad output_block_size: " + outputBlockSize);
+		}
+
+		this.lookupThreads = parse.containsKey(FIELD_LOOKUP_THREADS) ? parse.getAsNumber(FIELD_LOOKUP_THREADS).intValue() : null;
+		if (lookupThreads != null && lookupThreads < 0) {
+			throw new RuntimeException("Exception annotator config, bad lookup_threads: " + lookupThreads);
+		}
+	}
+
+	public int getPoolThreads() {
+		return (poolThreads > 0) ? poolThreads : Runtime.getRuntime().availableProcessors() * 4;
+	}
+
+	public int getLookupThreads(int defaultValue) {
+		return (lookupThreads != null) ? lookupThreads : defaultValue;
+	}
+
+	public int getMaxInFlight(int threads) {
+		return (maxInFlight > 0) ? maxInFlight : threads * 4;
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.config.connector;
+
+import net.minidev.json.JSONObject;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class ClinvarConfigConnector {
+
+	private static final String FIELD_MEMORY = "memory";
+	private static final String FIELD_SNAPSHOT = "snapshot";
+
+	/**
+	 * Загружать ClinVar в память при старте вместо запросов в mysql на каждый вариант
+	 */
+	public final boolean memory;
+
+	/**
+	 * Файл снимка: если существует - ClinVar читается из него, иначе загружается из mysql и сохраняется в него
+	 */
+	public final Path snapshot;
+
+	public ClinvarConfigConnector() {
+		this(new JSONObject());
+	}
+
+	public ClinvarConfigConnector(JSONObject parse) {
+		this.memory = parse.containsKey(FIELD_MEMORY) && (Boolean) parse.get(FIELD_MEMORY);
+		this.snapshot = parse.containsKey(FIELD_SNAPSHOT) ? Paths.get(parse.getAsString(FIELD_SNAPSHOT)).toAbsolutePath() : null;
+	}
+}
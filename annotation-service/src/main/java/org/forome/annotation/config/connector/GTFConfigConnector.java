@@ -20,10 +20,33 @@ package org.forome.annotation.config.connector;
 
 import net.minidev.json.JSONObject;
 import org.forome.annotation.config.connector.base.DatabaseConfigConnector;
+import org.forome.core.struct.Assembly;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class GTFConfigConnector extends DatabaseConfigConnector {
 
+	private static final String FIELD_FILES = "files";
+
+	/**
+	 * GTF-файлы Ensembl по сборкам, если заданы - GTF загружается в память и mysql не используется
+	 */
+	public final Map<Assembly, Path> files;
+
 	public GTFConfigConnector(JSONObject parse) {
 		super(parse);
+
+		Map<Assembly, Path> files = new EnumMap<>(Assembly.class);
+		JSONObject parseFiles = (JSONObject) parse.get(FIELD_FILES);
+		if (parseFiles != null) {
+			for (String key : parseFiles.keySet()) {
+				files.put(Assembly.valueOf(key), Paths.get(parseFiles.getAsString(key)).toAbsolutePath());
+			}
+		}
+		this.files = Collections.unmodifiableMap(files);
 	}
 }
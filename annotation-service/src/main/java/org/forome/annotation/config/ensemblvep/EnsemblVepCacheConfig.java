@@ -0,0 +1,56 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.config.ensemblvep;
+
+import net.minidev.json.JSONObject;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Локальный кеш ответов Ensembl VEP:
+ * "cache": {"path": "/data/vep-cache", "max_entries": 5000000}
+ */
+public class EnsemblVepCacheConfig {
+
+	private final static String FIELD_PATH = "path";
+	private final static String FIELD_MAX_ENTRIES = "max_entries";
+
+	public static final long DEFAULT_MAX_ENTRIES = 5_000_000L;
+
+	public final Path path;
+
+	/**
+	 * Максимальное кол-во вариантов в кеше, при превышении вытесняются давно не запрашиваемые
+	 */
+	public final long maxEntries;
+
+	public EnsemblVepCacheConfig(JSONObject parse) {
+		String strPath = parse.getAsString(FIELD_PATH);
+		if (strPath == null) {
+			throw new RuntimeException("Exception ensembl-vep cache config, missing path");
+		}
+		this.path = Paths.get(strPath).toAbsolutePath();
+
+		this.maxEntries = parse.containsKey(FIELD_MAX_ENTRIES) ? parse.getAsNumber(FIELD_MAX_ENTRIES).longValue() : DEFAULT_MAX_ENTRIES;
+		if (maxEntries < 1) {
+			throw new RuntimeException("Exception ensembl-vep cache config, bad max_entries: " + maxEntries);
+		}
+	}
+}
@@ -25,10 +25,15 @@ public class EnsemblVepConfig extends SshTunnelConfigConnector {
 
 	public final String cmd;
 
+	public final EnsemblVepCacheConfig cacheConfig;
+
 	public EnsemblVepConfig(JSONObject parse) {
 		super(parse);
 
 		JSONObject parseApp = (JSONObject) parse.get("app");
 		cmd = parseApp.getAsString("cmd");
+
+		JSONObject parseCache = (JSONObject) parse.get("cache");
+		cacheConfig = (parseCache != null) ? new EnsemblVepCacheConfig(parseCache) : null;
 	}
 }
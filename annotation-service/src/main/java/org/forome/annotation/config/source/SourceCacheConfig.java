@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.config.source;
+
+import net.minidev.json.JSONObject;
+import org.forome.annotation.service.source.wrapper.WrapperSourceType;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Настройки кешей WrapperSource, отдельно для каждого типа данных:
+ * "cache": {"size": 4096, "weight": 32, "ttl": 0, "types": {"fasta": {"size": 16384}, "locus": {"size": 8192, "weight": 128, "ttl": 600}}}
+ */
+public class SourceCacheConfig {
+
+	private final static String FIELD_SIZE = "size";
+	private final static String FIELD_WEIGHT = "weight";
+	private final static String FIELD_TTL = "ttl";
+	private final static String FIELD_TYPES = "types";
+
+	public static final long DEFAULT_SIZE = 4096;
+	public static final long DEFAULT_WEIGHT = 32;
+
+	public static class TypeConfig {
+
+		/**
+		 * Максимальное кол-во записей, 0 - кеш отключен
+		 */
+		public final long size;
+
+		/**
+		 * Ограничение по оценке занимаемой памяти в мегабайтах, 0 - только по кол-ву записей
+		 */
+		public final long weight;
+
+		/**
+		 * Время жизни записи после последнего обращения в секундах, 0 - без ограничения
+		 */
+		public final long ttl;
+
+		private TypeConfig(long size, long weight, long ttl) {
+			this.size = size;
+			this.weight = weight;
+			this.ttl = ttl;
+		}
+
+		private TypeConfig(JSONObject parse, TypeConfig defaultConfig) {
+			this(
+					parse.containsKey(FIELD_SIZE) ? parse.getAsNumber(FIELD_SIZE).longValue() : defaultConfig.size,
+					parse.containsKey(FIELD_WEIGHT) ? parse.getAsNumber(FIELD_WEIGHT).longValue() : defaultConfig.weight,
+					parse.containsKey(FIELD_TTL) ? parse.getAsNumber(FIELD_TTL).longValue() : defaultConfig.ttl
+			);
+			if (size < 0) {
+				throw new RuntimeException("Exception source cache config, bad size: " + size);
+			}
+			if (weight < 0) {
+				throw new RuntimeException("Exception source cache config, bad weight: " + weight);
+			}
+			if (ttl < 0) {
+				throw new RuntimeException("Exception source cache config, bad ttl: " + ttl);
+			}
+		}
+	}
+
+	private final Map<WrapperSourceType, TypeConfig> types;
+
+	public SourceCacheConfig() {
+		this(new JSONObject());
+	}
+
+	public SourceCacheConfig(JSONObject parse) {
+		TypeConfig defaultConfig = new TypeConfig(parse, new TypeConfig(DEFAULT_SIZE, DEFAULT_WEIGHT, 0));
+
+		JSONObject jTypes = parse.containsKey(FIELD_TYPES) ? (JSONObject) parse.get(FIELD_TYPES) : new JSONObject();
+		for (String name : jTypes.keySet()) {
+			//Проверка, что тип существует
+			WrapperSourceType.valueOf(name.toUpperCase());
+		}
+
+		this.types = new EnumMap<>(WrapperSourceType.class);
+		for (WrapperSourceType type : WrapperSourceType.values()) {
+			JSONObject jType = (JSONObject) jTypes.get(type.name().toLowerCase());
+			types.put(type, (jType != null) ? new TypeConfig(jType, defaultConfig) : defaultConfig);
+		}
+	}
+
+	public TypeConfig get(WrapperSourceType type) {
+		return types.get(type);
+	}
+}
@@ -24,10 +24,16 @@ public class SourceConfig {
 
 	private final static String FIELD_INTERNAL = "internal";
 	private final static String FIELD_EXTERNAL = "external";
+	private final static String FIELD_CACHE = "cache";
+	private final static String FIELD_FASTA = "fasta";
 
 	public final SourceInternalConfig sourceInternalConfig;
 	public final SourceExternalConfig sourceExternalConfig;
 
+	public final SourceCacheConfig sourceCacheConfig;
+
+	public final SourceFastaConfig sourceFastaConfig;
+
 	public SourceConfig(JSONObject parse) {
 		if (parse.containsKey(FIELD_INTERNAL)) {
 			sourceInternalConfig = new SourceInternalConfig((JSONObject) parse.get(FIELD_INTERNAL));
@@ -44,5 +50,17 @@ public class SourceConfig {
 		if (sourceInternalConfig != null && sourceExternalConfig != null) {
 			throw new RuntimeException("Conflict configuration");
 		}
+
+		if (parse.containsKey(FIELD_CACHE)) {
+			sourceCacheConfig = new SourceCacheConfig((JSONObject) parse.get(FIELD_CACHE));
+		} else {
+			sourceCacheConfig = new SourceCacheConfig();
+		}
+
+		if (parse.containsKey(FIELD_FASTA)) {
+			sourceFastaConfig = new SourceFastaConfig((JSONObject) parse.get(FIELD_FASTA));
+		} else {
+			sourceFastaConfig = null;
+		}
 	}
 }
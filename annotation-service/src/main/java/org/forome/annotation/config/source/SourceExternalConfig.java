@@ -20,6 +20,7 @@ package org.forome.annotation.config.source;
 
 import net.minidev.json.JSONObject;
 import org.forome.annotation.config.sshtunnel.SshTunnelConfig;
+import org.forome.annotation.service.source.external.httprequest.HttpRequest;
 
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -29,6 +30,9 @@ public class SourceExternalConfig {
 	public final SshTunnelConfig sshTunnelConfig;
 	public final URL url;
 
+	public final int maxConnections;
+	public final int maxConnectionsPerRoute;
+
 	public SourceExternalConfig(JSONObject parse) {
 		if (parse.containsKey("ssh_tunnel")) {
 			sshTunnelConfig = new SshTunnelConfig((JSONObject) parse.get("ssh_tunnel"));
@@ -41,5 +45,10 @@ public class SourceExternalConfig {
 		} catch (MalformedURLException e) {
 			throw new RuntimeException(e);
 		}
+
+		maxConnections = parse.containsKey("max_connections") ?
+				parse.getAsNumber("max_connections").intValue() : HttpRequest.DEFAULT_MAX_CONNECTIONS;
+		maxConnectionsPerRoute = parse.containsKey("max_connections_per_route") ?
+				parse.getAsNumber("max_connections_per_route").intValue() : maxConnections;
 	}
 }
@@ -0,0 +1,59 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.config.source;
+
+import net.minidev.json.JSONObject;
+import org.forome.core.struct.Assembly;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Локальный упакованный референс (собирается PackedFastaWriter):
+ * "fasta": {"hg37": "/data/hg19.fa2", "hg38": "/data/hg38.fa2"}
+ */
+public class SourceFastaConfig {
+
+	private final static String FIELD_PATH_HG37 = "hg37";
+	private final static String FIELD_PATH_HG38 = "hg38";
+
+	public final Map<Assembly, Path> files;
+
+	public SourceFastaConfig(JSONObject parse) {
+		Map<Assembly, Path> files = new EnumMap<>(Assembly.class);
+		put(files, Assembly.GRCh37, parse.getAsString(FIELD_PATH_HG37));
+		put(files, Assembly.GRCh38, parse.getAsString(FIELD_PATH_HG38));
+		this.files = Collections.unmodifiableMap(files);
+	}
+
+	private static void put(Map<Assembly, Path> files, Assembly assembly, String value) {
+		if (value == null) {
+			return;
+		}
+		Path path = Paths.get(value).toAbsolutePath();
+		if (!Files.isRegularFile(path)) {
+			throw new RuntimeException("Exception packed fasta path " + assembly + ": " + path);
+		}
+		files.put(assembly, path);
+	}
+}
@@ -30,14 +30,11 @@ import org.forome.annotation.exception.AnnotatorException;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.network.authcontext.BuilderAuthContext;
 import org.forome.annotation.processing.Processing;
-import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
-import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.Allele;
 import org.forome.annotation.struct.variant.custom.VariantCustom;
 import org.forome.annotation.struct.variant.vep.VariantVep;
 import org.forome.annotation.utils.ExecutorServiceUtils;
-import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -84,9 +81,7 @@ public class FormatAnfisaController {
 			throw ExceptionBuilder.buildInvalidOperation("inited");
 		}
 
-		Source source = service.getSourceService().dataSource.getSource(Assembly.GRCh37);
-
-		Processing processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
+		Processing processing = service.getProcessing();
 
 		CompletableFuture<JSONArray> future = new CompletableFuture<>();
 		ExecutorServiceUtils.poolExecutor.execute(() -> {
@@ -113,8 +108,7 @@ public class FormatAnfisaController {
 									})
 									.thenCompose(processingResult -> {
 										List<CompletableFuture<JSONArray>> futureItems = new ArrayList<>();
-										JSONObject result = processingResult.toJSON();
-										CompletableFuture<JSONArray> futureItem = formatAnfisaHttpClient.request(result.toJSONString())
+										CompletableFuture<JSONArray> futureItem = formatAnfisaHttpClient.request(processingResult.toJSONString())
 												.exceptionally(throwable -> {
 													if (throwable instanceof AnnotatorException) {
 														throw (AnnotatorException) throwable;
@@ -21,24 +21,24 @@ package org.forome.annotation.controller;
 import com.google.common.base.Strings;
 import htsjdk.tribble.TribbleException;
 import htsjdk.variant.vcf.VCFFileReader;
-import io.reactivex.Observable;
+import io.reactivex.Flowable;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import net.minidev.json.parser.ParseException;
 import org.forome.annotation.Main;
 import org.forome.annotation.Service;
 import org.forome.annotation.annotator.Annotator;
+import org.forome.annotation.annotator.executor.AnnotatorWorkerPool;
 import org.forome.annotation.annotator.struct.AnnotatorResult;
 import org.forome.annotation.controller.utils.ResponseBuilder;
+import org.forome.annotation.controller.utils.ResponseStream;
 import org.forome.annotation.data.anfisa.AnfisaConnector;
 import org.forome.annotation.data.format.FormatAnfisaHttpClient;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.network.authcontext.BuilderAuthContext;
 import org.forome.annotation.processing.Processing;
-import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
-import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.CasePlatform;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.core.struct.Assembly;
@@ -49,6 +49,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
@@ -66,6 +67,54 @@ public class FormatVcfController {
 
 	@RequestMapping(value = {"/get"})
 	public CompletableFuture<ResponseEntity> get(HttpServletRequest request) {
+		CompletableFuture<ResponseEntity> completableFuture = new CompletableFuture<>();
+		List<JSONObject> ourResults = Collections.synchronizedList(new ArrayList<JSONObject>());
+		execute(request)
+				.subscribe(out -> {
+					ourResults.add(out);
+				}, throwable -> {
+					log.error("Exception execute request", throwable);
+					completableFuture.completeExceptionally(throwable);
+				}, () -> {
+					JSONArray out = new JSONArray();
+					for (JSONObject jsonObject : ourResults) {
+						out.add(jsonObject);
+					}
+					completableFuture.complete(ResponseBuilder.build(out));
+					log.debug("FormatVcfController build response, time: {}", System.currentTimeMillis());
+				});
+		return completableFuture;
+	}
+
+	/**
+	 * Потоковый режим: каждая запись vcf отдается строкой NDJSON по мере готовности.
+	 * Пока клиент не принял строку, следующие записи не запрашиваются (backpressure Flowable)
+	 */
+	@RequestMapping(value = {"/get"}, produces = ResponseStream.MEDIA_TYPE_NDJSON_VALUE)
+	public ResponseEntity<ResponseBodyEmitter> getStream(HttpServletRequest request) {
+		Flowable<JSONObject> flowable = execute(request);
+
+		ResponseStream responseStream = new ResponseStream();
+		flowable
+				.subscribe(out -> {
+					//Исключение при записи отменяет обработку оставшихся записей
+					responseStream.send(out);
+				}, throwable -> {
+					log.error("Exception execute request", throwable);
+					responseStream.completeWithError(throwable);
+				}, () -> {
+					responseStream.complete();
+					log.debug("FormatVcfController complete stream, time: {}", System.currentTimeMillis());
+				});
+		return responseStream.build();
+	}
+
+	@RequestMapping(value = {"/get"}, params = ResponseStream.PARAM_STREAM)
+	public ResponseEntity<ResponseBodyEmitter> getStreamByParam(HttpServletRequest request) {
+		return getStream(request);
+	}
+
+	private Flowable<JSONObject> execute(HttpServletRequest request) {
 		Service service = Service.getInstance();
 
 		BuilderAuthContext builderAuthContext = new BuilderAuthContext(service);
@@ -84,47 +133,57 @@ public class FormatVcfController {
 			throw ExceptionBuilder.buildInvalidOperation("inited");
 		}
 
-		Source source = service.getSourceService().dataSource.getSource(Assembly.GRCh37);
+		Processing processing = service.getProcessing();
 
-		Processing processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
+		//Записи обрабатываются в общем пуле сервиса. Место занимаем до начала ответа:
+		//при перегрузке клиент получает ошибку server_overloaded, а не оборванный поток
+		AnnotatorWorkerPool workerPool = service.getAnnotatorWorkerPool();
+		AnnotatorWorkerPool.Lane lane = workerPool.open();
 
-		TempVCFFile tempVCFFile = buildTempVCFFile(request);
+		TempVCFFile tempVCFFile;
+		try {
+			tempVCFFile = buildTempVCFFile(request);
+		} catch (Throwable e) {
+			lane.close();
+			throw e;
+		}
 
 		Annotator annotator;
+		FormatAnfisaHttpClient formatAnfisaHttpClient;
 		try {
 			annotator = new Annotator(
-					ensemblVepService, processing,
+					ensemblVepService, processing, service.getServiceConfig().annotatorConfig,
 					String.format("%s_wgs", "noname"), CasePlatform.WGS,
 					Assembly.GRCh37,
 					null,null,null,
 					tempVCFFile.path, null
 			);
+			formatAnfisaHttpClient = new FormatAnfisaHttpClient();
 		} catch (IOException e) {
+			lane.close();
+			tempVCFFile.close();
 			throw ExceptionBuilder.buildIOErrorException(e);
 		} catch (ParseException e) {
+			lane.close();
+			tempVCFFile.close();
 			throw ExceptionBuilder.buildInvalidJsonException(e);
-		}
-
-		FormatAnfisaHttpClient formatAnfisaHttpClient;
-		try {
-			formatAnfisaHttpClient = new FormatAnfisaHttpClient();
-		} catch (IOException e) {
-			throw ExceptionBuilder.buildIOErrorException(e);
+		} catch (Throwable e) {
+			lane.close();
+			tempVCFFile.close();
+			throw e;
 		}
 
 		AnnotatorResult annotatorResult = annotator.exec(
-				null,0
+				null, 0, null, lane
 		);
 
-		CompletableFuture<ResponseEntity> completableFuture = new CompletableFuture<>();
-		List<JSONObject> ourResults = Collections.synchronizedList(new ArrayList<JSONObject>());
-		annotatorResult.observableAnfisaResult
+		return annotatorResult.flowableAnfisaResult
 				.map(processingResult -> {
 					log.debug("FormatVcfController requestId: {}, 1: {}", requestId, processingResult);
 					return processingResult;
 				})
 				.flatMap(processingResult ->
-						Observable.fromFuture(formatAnfisaHttpClient.request(processingResult.toJSON().toJSONString())
+						Flowable.fromFuture(formatAnfisaHttpClient.request(processingResult.toJSONString())
 								.thenApply(jsonArray -> {
 									log.debug("FormatVcfController requestId: {}, 2: {}", requestId, jsonArray);
 									return new Object[]{processingResult, jsonArray};
@@ -152,24 +211,12 @@ public class FormatVcfController {
 					}});
 					return out;
 				})
-				.subscribe(jsonArray -> {
-					log.debug("FormatVcfController requestId: {}, 4: {}", requestId, jsonArray.toJSONString().length());
-					ourResults.add(jsonArray);
-				}, throwable -> {
-					log.error("Exception execute request", throwable);
-					completableFuture.completeExceptionally(throwable);
-					tempVCFFile.close();
-				}, () -> {
-					log.debug("FormatVcfController requestId: {}, 5", requestId);
-					JSONArray out = new JSONArray();
-					for (JSONObject jsonObject : ourResults) {
-						out.add(jsonObject);
-					}
-					completableFuture.complete(ResponseBuilder.build(out));
-					log.debug("FormatVcfController build response, time: {}", System.currentTimeMillis());
+				.doFinally(() -> {
+					log.debug("FormatVcfController requestId: {}, 5, pool: {}", requestId, workerPool.getStat());
+					//Если исполнитель не был создан, место в пуле освобождаем здесь (повторное закрытие безопасно)
+					lane.close();
 					tempVCFFile.close();
 				});
-		return completableFuture;
 	}
 
 	private static class TempVCFFile implements AutoCloseable {
@@ -25,27 +25,27 @@ import net.minidev.json.parser.JSONParser;
 import org.forome.annotation.Service;
 import org.forome.annotation.controller.utils.RequestParser;
 import org.forome.annotation.controller.utils.ResponseBuilder;
-import org.forome.annotation.data.anfisa.AnfisaConnector;
+import org.forome.annotation.controller.utils.ResponseStream;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.network.authcontext.BuilderAuthContext;
 import org.forome.annotation.processing.Processing;
-import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
-import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.Allele;
 import org.forome.annotation.struct.variant.custom.VariantCustom;
 import org.forome.annotation.struct.variant.vep.VariantVep;
+import org.forome.annotation.utils.CompletableFutureUtils;
 import org.forome.annotation.utils.ExecutorServiceUtils;
-import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Chromosome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -84,15 +84,8 @@ public class GetAnfisaJSONController {
 
 		log.debug("GetAnfisaJSONController execute, time: {}", System.currentTimeMillis());
 
-		String sRequestData = request.getParameter("data");
-		if (Strings.isNullOrEmpty(sRequestData)) {
-			throw ExceptionBuilder.buildInvalidValueException("data");
-		}
-
-		EnsemblVepService ensemblVepService = service.getEnsemblVepService();
-		if (ensemblVepService == null) {
-			throw ExceptionBuilder.buildInvalidOperation("inited");
-		}
+		String sRequestData = getRequestData(request);
+		EnsemblVepService ensemblVepService = getEnsemblVepService(service);
 
 		CompletableFuture<JSONArray> future = new CompletableFuture<>();
 		ExecutorServiceUtils.poolExecutor.execute(() -> {
@@ -101,49 +94,13 @@ public class GetAnfisaJSONController {
 
 				ArrayList<RequestItem> requestItems = parseRequestData(sRequestData);
 
-				List<CompletableFuture<ProcessingResult>> futureProcessingResults = new ArrayList<>();
-
-				AnfisaConnector anfisaConnector = service.getAnfisaConnector();
-
-				Source source = service.getSourceService().dataSource.getSource(Assembly.GRCh37);
-				Processing processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
-
-				for (RequestItem requestItem : requestItems) {
-					futureProcessingResults.add(
-							ensemblVepService.getVepJson(requestItem.chromosome, requestItem.start, requestItem.end, requestItem.alternative)
-									.thenApply(vepJson -> {
-										VariantVep variantVep = new VariantCustom(
-												requestItem.chromosome,
-												requestItem.start, requestItem.end,
-												null, //TODO Ulitin V. не реализованно
-												new Allele(requestItem.alternative)
-										);
-										variantVep.setVepJson(vepJson);
-										return processing.exec(null, variantVep);
-									})
-					);
-				}
-
-				CompletableFuture.allOf(futureProcessingResults.toArray(new CompletableFuture[futureProcessingResults.size()]))
+				List<CompletableFuture<JSONObject>> futureResults = execute(service, ensemblVepService, requestItems);
+
+				CompletableFuture.allOf(futureResults.toArray(new CompletableFuture[futureResults.size()]))
 						.thenApply(v -> {
 							JSONArray results = new JSONArray();
-							for (int i = 0; i < requestItems.size(); i++) {
-								RequestItem requestItem = requestItems.get(i);
-								ProcessingResult processingResult = futureProcessingResults.get(i).join();
-
-								JSONObject result = new JSONObject();
-								result.put("input", new JSONArray() {{
-									add(requestItem.chromosome);
-									add(requestItem.start);
-									add(requestItem.end);
-									add(requestItem.alternative);
-								}});
-
-								JSONArray outAnfisaResults = new JSONArray();
-								outAnfisaResults.add(processingResult.toJSON());
-								result.put("result", outAnfisaResults);
-
-								results.add(result);
+							for (CompletableFuture<JSONObject> futureResult : futureResults) {
+								results.add(futureResult.join());
 							}
 
 							long t2 = System.currentTimeMillis();
@@ -177,6 +134,116 @@ public class GetAnfisaJSONController {
 				.exceptionally(throwable -> ResponseBuilder.build(throwable));
 	}
 
+	/**
+	 * Потоковый режим: каждый вариант отдается строкой NDJSON по мере готовности, порядок строк - порядок готовности
+	 */
+	@RequestMapping(value = { "", "/" }, produces = ResponseStream.MEDIA_TYPE_NDJSON_VALUE)
+	public ResponseEntity<ResponseBodyEmitter> executeStream(HttpServletRequest request) {
+		Service service = Service.getInstance();
+
+		BuilderAuthContext builderAuthContext = new BuilderAuthContext(service);
+		builderAuthContext.auth(request);
+
+		log.debug("GetAnfisaJSONController execute stream, time: {}", System.currentTimeMillis());
+
+		String sRequestData = getRequestData(request);
+		EnsemblVepService ensemblVepService = getEnsemblVepService(service);
+
+		//Ошибки во входных данных отдаем обычным ответом, до начала потока
+		ArrayList<RequestItem> requestItems = parseRequestData(sRequestData);
+
+		ResponseStream responseStream = new ResponseStream();
+		ExecutorServiceUtils.poolExecutor.execute(() -> {
+			try {
+				long t1 = System.currentTimeMillis();
+
+				List<CompletableFuture<JSONObject>> futureResults = execute(service, ensemblVepService, requestItems);
+				CompletableFutureUtils.thenAcceptAll(futureResults, result -> {
+					if (responseStream.isClosed()) {
+						return;
+					}
+					try {
+						responseStream.send(result);
+					} catch (IOException e) {
+						log.debug("GetAnfisaJSONController stream closed: {}", e.getMessage());
+					}
+				}).whenComplete((v, ex) -> {
+					if (ex != null) {
+						log.error("Exception execute request", ex);
+						responseStream.completeWithError(ex);
+					} else {
+						long t2 = System.currentTimeMillis();
+						log.debug("GetAnfisaJSONController execute stream, size: {}, time: {} ms", requestItems.size(), t2 - t1);
+						responseStream.complete();
+					}
+				});
+			} catch (Throwable ex) {
+				log.error("Exception execute request", ex);
+				responseStream.completeWithError(ex);
+			}
+		});
+		return responseStream.build();
+	}
+
+	@RequestMapping(value = { "", "/" }, params = ResponseStream.PARAM_STREAM)
+	public ResponseEntity<ResponseBodyEmitter> executeStreamByParam(HttpServletRequest request) {
+		return executeStream(request);
+	}
+
+	private static String getRequestData(HttpServletRequest request) {
+		String sRequestData = request.getParameter("data");
+		if (Strings.isNullOrEmpty(sRequestData)) {
+			throw ExceptionBuilder.buildInvalidValueException("data");
+		}
+		return sRequestData;
+	}
+
+	private static EnsemblVepService getEnsemblVepService(Service service) {
+		EnsemblVepService ensemblVepService = service.getEnsemblVepService();
+		if (ensemblVepService == null) {
+			throw ExceptionBuilder.buildInvalidOperation("inited");
+		}
+		return ensemblVepService;
+	}
+
+	private static List<CompletableFuture<JSONObject>> execute(Service service, EnsemblVepService ensemblVepService, List<RequestItem> requestItems) {
+		Processing processing = service.getProcessing();
+
+		List<CompletableFuture<JSONObject>> futureResults = new ArrayList<>();
+		for (RequestItem requestItem : requestItems) {
+			futureResults.add(
+					ensemblVepService.getVepJson(requestItem.chromosome, requestItem.start, requestItem.end, requestItem.alternative)
+							.thenApply(vepJson -> {
+								VariantVep variantVep = new VariantCustom(
+										requestItem.chromosome,
+										requestItem.start, requestItem.end,
+										null, //TODO Ulitin V. не реализованно
+										new Allele(requestItem.alternative)
+								);
+								variantVep.setVepJson(vepJson);
+								ProcessingResult processingResult = processing.exec(null, variantVep);
+								return buildResult(requestItem, processingResult);
+							})
+			);
+		}
+		return futureResults;
+	}
+
+	private static JSONObject buildResult(RequestItem requestItem, ProcessingResult processingResult) {
+		JSONObject result = new JSONObject();
+		result.put("input", new JSONArray() {{
+			add(requestItem.chromosome);
+			add(requestItem.start);
+			add(requestItem.end);
+			add(requestItem.alternative);
+		}});
+
+		JSONArray outAnfisaResults = new JSONArray();
+		outAnfisaResults.add(processingResult.toJSON());
+		result.put("result", outAnfisaResults);
+		return result;
+	}
+
 	public static ArrayList<RequestItem> parseRequestData(String sRequestData) {
 		ArrayList<RequestItem> requestItems = new ArrayList<>();
 		JSONArray jRequestData;
@@ -40,12 +40,7 @@ public class ResponseBuilder {
 		JSONObject out = new JSONObject();
 		out.put(JSON_PROP_DATA, data);
 
-		HttpHeaders headers = new HttpHeaders();
-		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
-		headers.setCacheControl("no-cache, no-store, must-revalidate");
-		headers.setPragma("no-cache");
-		headers.setExpires(0);
-
+		HttpHeaders headers = buildHeaders(MediaType.APPLICATION_JSON_UTF8);
 		return new ResponseEntity(out.toString().getBytes(StandardCharsets.UTF_8), headers, HttpStatus.OK);
 	}
 
@@ -66,6 +61,13 @@ public class ResponseBuilder {
 	}
 
 	public static ResponseEntity build(AnnotatorException e) {
+		JSONObject out = buildError(e);
+
+		HttpHeaders headers = buildHeaders(MediaType.APPLICATION_JSON_UTF8);
+		return new ResponseEntity(out.toString().getBytes(StandardCharsets.UTF_8), headers, HttpStatus.INTERNAL_SERVER_ERROR);
+	}
+
+	static JSONObject buildError(AnnotatorException e) {
 		JSONObject outError = new JSONObject();
 		outError.put("code", e.getCode());
 		if (e.getParameters() != null && !e.getParameters().isEmpty()) {
@@ -81,13 +83,15 @@ public class ResponseBuilder {
 
 		JSONObject out = new JSONObject();
 		out.put(JSON_PROP_ERROR, outError);
+		return out;
+	}
 
+	static HttpHeaders buildHeaders(MediaType contentType) {
 		HttpHeaders headers = new HttpHeaders();
-		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		headers.setContentType(contentType);
 		headers.setCacheControl("no-cache, no-store, must-revalidate");
 		headers.setPragma("no-cache");
 		headers.setExpires(0);
-
-		return new ResponseEntity(out.toString().getBytes(StandardCharsets.UTF_8), headers, HttpStatus.INTERNAL_SERVER_ERROR);
+		return headers;
 	}
 }
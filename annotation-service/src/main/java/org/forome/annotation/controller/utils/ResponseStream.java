@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.controller.utils;
+
+import net.minidev.json.JSONAware;
+import org.forome.annotation.Service;
+import org.forome.annotation.exception.AnnotatorException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Потоковый ответ в формате NDJSON: каждый результат отдается отдельной строкой сразу после готовности.
+ * Запись блокирует отправляющий поток, пока клиент не примет данные - так медленный клиент
+ * притормаживает обработку, а не копит результаты в памяти.
+ * Включается параметром stream=true или заголовком Accept: application/x-ndjson
+ */
+public class ResponseStream {
+
+	public static final String MEDIA_TYPE_NDJSON_VALUE = "application/x-ndjson";
+
+	public static final String PARAM_STREAM = "stream=true";
+
+	private static final MediaType MEDIA_TYPE_NDJSON = new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+
+	private final ResponseBodyEmitter emitter;
+
+	private volatile boolean closed;
+
+	public ResponseStream() {
+		this.emitter = new ResponseBodyEmitter();
+		this.emitter.onCompletion(() -> closed = true);
+		this.emitter.onTimeout(() -> closed = true);
+	}
+
+	/**
+	 * Клиент отключился или ответ уже завершен - продолжать обработку нет смысла
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public synchronized void send(JSONAware value) throws IOException {
+		if (closed) {
+			throw new IOException("Response stream closed");
+		}
+		byte[] line = (value.toJSONString() + '\n').getBytes(StandardCharsets.UTF_8);
+		try {
+			emitter.send(line, MEDIA_TYPE_NDJSON);
+		} catch (IOException | RuntimeException e) {
+			closed = true;
+			throw e;
+		}
+	}
+
+	public synchronized void complete() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		emitter.complete();
+	}
+
+	/**
+	 * Статус ответа уже отправлен, поэтому ошибка приложения пишется последней строкой {"error": {...}}
+	 */
+	public synchronized void completeWithError(Throwable throwable) {
+		Throwable exception;
+		if (throwable instanceof CompletionException) {
+			exception = throwable.getCause();
+		} else {
+			exception = throwable;
+		}
+
+		if (closed) {
+			return;
+		}
+		if (exception instanceof AnnotatorException) {
+			try {
+				send(ResponseBuilder.buildError((AnnotatorException) exception));
+			} catch (IOException ignore) {
+			}
+			complete();
+		} else {
+			closed = true;
+			Service.getInstance().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), throwable);
+			emitter.completeWithError(exception);
+		}
+	}
+
+	public ResponseEntity<ResponseBodyEmitter> build() {
+		return new ResponseEntity<>(emitter, ResponseBuilder.buildHeaders(MEDIA_TYPE_NDJSON), HttpStatus.OK);
+	}
+}
@@ -60,6 +60,7 @@ import org.forome.annotation.struct.variant.custom.VariantCustom;
 import org.forome.annotation.struct.variant.vcf.VariantVCF;
 import org.forome.annotation.struct.variant.vep.VariantVep;
 import org.forome.annotation.utils.AppVersion;
+import org.forome.annotation.utils.DefaultThreadPoolExecutor;
 import org.forome.annotation.utils.MathUtils;
 import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
@@ -72,7 +73,13 @@ import org.slf4j.LoggerFactory;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -80,6 +87,9 @@ public class AnfisaConnector implements AutoCloseable {
 
 	private final static Logger log = LoggerFactory.getLogger(AnfisaConnector.class);
 
+	//Запросы к источникам блокирующие (http, mysql), поэтому потоков больше чем ядер
+	public static final int DEFAULT_LOOKUP_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+
 	private static final Map<String, String> trustedSubmitters = new HashMap<String, String>() {{
 		put("lmm", "Laboratory for Molecular Medicine, Partners HealthCare Personalized Medicine");
 		put("gene_dx", "GeneDx");
@@ -101,6 +111,9 @@ public class AnfisaConnector implements AutoCloseable {
 
 	public final DbNSFPConnector dbNSFPConnector;
 
+	//null - запросы к источникам выполняются в вызывающем потоке
+	private final ExecutorService threadPoolAnfisaExecutor;
+
 	public AnfisaConnector(
 			SourceService sourceService,
 			GnomadConnector gnomadConnector,
@@ -111,6 +124,28 @@ public class AnfisaConnector implements AutoCloseable {
 			GTFConnector gtfConnector,
 			GTEXConnector gtexConnector,
 			PharmGKBConnector pharmGKBConnector
+	) {
+		this(
+				sourceService, gnomadConnector, spliceAIConnector, hgmdConnector, clinvarConnector,
+				liftoverConnector, gtfConnector, gtexConnector, pharmGKBConnector,
+				DEFAULT_LOOKUP_THREADS
+		);
+	}
+
+	/**
+	 * @param lookupThreads кол-во потоков параллельных запросов к источникам, 0 - запросы в вызывающем потоке
+	 */
+	public AnfisaConnector(
+			SourceService sourceService,
+			GnomadConnector gnomadConnector,
+			SpliceAIConnector spliceAIConnector,
+			HgmdConnector hgmdConnector,
+			ClinvarConnector clinvarConnector,
+			LiftoverConnector liftoverConnector,
+			GTFConnector gtfConnector,
+			GTEXConnector gtexConnector,
+			PharmGKBConnector pharmGKBConnector,
+			int lookupThreads
 	) {
 		this.sourceService = sourceService;
 		this.gnomadConnector = gnomadConnector;
@@ -127,6 +162,20 @@ public class AnfisaConnector implements AutoCloseable {
 //		this.aStorageHttp = aStorageHttp;
 
 		this.dbNSFPConnector = new DbNSFPConnector();
+
+		if (lookupThreads > 0) {
+			this.threadPoolAnfisaExecutor = new DefaultThreadPoolExecutor(
+					lookupThreads,
+					lookupThreads,
+					0L,
+					TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>(),
+					"AnfisaExecutorQueue",
+					(t, e) -> log.error("Exception execute anfisa request", e)
+			);
+		} else {
+			this.threadPoolAnfisaExecutor = null;
+		}
 	}
 
 	public AnfisaResult build(
@@ -149,11 +198,22 @@ public class AnfisaConnector implements AutoCloseable {
 
 		Source source = sourceService.dataSource.getSource(assembly);
 
-		callGnomAD(context, variant, anfisaInput.mCase, filters);
-		callSpliceai(source, context, data, filters, variant);
-		callHgmd(record, context, filters, data);
-		callClinvar(context, record, variant.chromosome.getChar(), filters, data, view, vepJson);
-		GtfAnfisaResult gtfAnfisaResult = gtfAnfisaBuilder.build(variant, context);
+		//Независимые запросы к источникам запускаем одновременно, а результат ожидаем только там, где он нужен
+		CompletableFuture<GnomadResult> futureGnomad = requestGnomad(context, variant);
+		CompletableFuture<SpliceAIResult> futureSpliceAI = supplyAsync(() -> context.getSpliceAI(spliceAIConnector, source));
+		CompletableFuture<HgmdResult> futureHgmd = supplyAsync(() -> requestHgmd(context));
+		CompletableFuture<ClinvarData> futureClinvar = supplyAsync(() -> requestClinvar(context, variant.chromosome.getChar()));
+		CompletableFuture<GtfAnfisaResult> futureGtf = supplyAsync(() -> gtfAnfisaBuilder.build(variant, context));
+		CompletableFuture<List<Tissue>> futureTissues = supplyAsync(() -> getTissues(getGenes((VariantVep) variant)));
+		CompletableFuture<List<DbNSFPItem>> futureDbNSFP = supplyAsync(() -> context.getDbNSFP(dbNSFPConnector, source));
+		CompletableFuture<PharmGKBData> futurePharmGKB = supplyAsync(() -> requestPharmGKB(context, source));
+
+		GnomadResult gnomadResult = join(futureGnomad);
+		callGnomAD(context, variant, anfisaInput.mCase, filters, gnomadResult);
+		callSpliceai(data, filters, join(futureSpliceAI));
+		callHgmd(record, filters, data, join(futureHgmd));
+		callClinvar(record, filters, data, view, join(futureClinvar));
+		GtfAnfisaResult gtfAnfisaResult = join(futureGtf);
 		callQuality(filters, variant);
 
 		Sample proband = anfisaInput.mCase.proband;
@@ -225,13 +285,13 @@ public class AnfisaConnector implements AutoCloseable {
 					variantCNV.getGenotype(anfisaInput.mCase.proband.id).lo;
 		}
 
-		createGeneralTab(context, data, filters, view, variant, anfisaInput.mCase);
+		createGeneralTab(context, data, filters, view, variant, anfisaInput.mCase, join(futureTissues));
 		createQualityTab(view, variant, anfisaInput.mCase);
-		createGnomadTab(context, variant, anfisaInput.mCase, view);
+		createGnomadTab(context, variant, anfisaInput.mCase, view, gnomadResult);
 		createDatabasesTab(record, data, view);
-		createPredictionsTab(source, context, variant, view);
+		createPredictionsTab(variant, view, join(futureDbNSFP));
 		createBioinformaticsTab(gtfAnfisaResult, context, filters, data, view);
-		createPharmacogenomicsTab(context, view, filters, variant, source);
+		createPharmacogenomicsTab(view, filters, join(futurePharmGKB));
 		countCohorts(view, filters, anfisaInput.mCase, variant);
 
 		return new AnfisaResult(filters, data, view, context);
@@ -303,16 +363,42 @@ public class AnfisaConnector implements AutoCloseable {
 		return variant.getRef() + "/" + variant.getStrAlt();
 	}
 
-	private void callHgmd(Record record, AnfisaExecuteContext context, AnfisaResultFilters filters, AnfisaResultData data) {
+	private static class HgmdResult {
+
+		private final List<String> accNums;
+		private final HgmdConnector.Data data;
+		private final List<Long[]> hg38;
+
+		private HgmdResult(List<String> accNums, HgmdConnector.Data data, List<Long[]> hg38) {
+			this.accNums = accNums;
+			this.data = data;
+			this.hg38 = hg38;
+		}
+	}
+
+	private HgmdResult requestHgmd(AnfisaExecuteContext context) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
 		Variant variant = context.variant;
 		List<String> accNums = hgmdConnector.getAccNum(assembly, variant.chromosome.getChar(), variant.getStart(), variant.end);
 		if (accNums.size() > 0) {
-			HgmdConnector.Data hgmdData = hgmdConnector.getDataForAccessionNumbers(accNums);
+			return new HgmdResult(
+					accNums,
+					hgmdConnector.getDataForAccessionNumbers(accNums),
+					hgmdConnector.getHg38(accNums)
+			);
+		} else {
+			return new HgmdResult(accNums, null, null);
+		}
+	}
+
+	private void callHgmd(Record record, AnfisaResultFilters filters, AnfisaResultData data, HgmdResult hgmdResult) {
+		List<String> accNums = hgmdResult.accNums;
+		if (accNums.size() > 0) {
+			HgmdConnector.Data hgmdData = hgmdResult.data;
 			record.hgmdData = hgmdData;
 
 			data.hgmd = String.join(",", accNums);
-			List<Long[]> hg38 = hgmdConnector.getHg38(accNums);
+			List<Long[]> hg38 = hgmdResult.hg38;
 
 			data.hgmdHg38 = hg38.stream().map(longs -> String.format("%s-%s", longs[0], longs[1])).collect(Collectors.joining(", "));
 			List<String> tags = hgmdData.hgmdPmidRows.stream().map(hgmdPmidRow -> hgmdPmidRow.tag).collect(Collectors.toList());
@@ -320,7 +406,20 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void callClinvar(AnfisaExecuteContext context, Record record, String _chromosome, AnfisaResultFilters filters, AnfisaResultData data, AnfisaResultView view, JSONObject json) {
+	private static class ClinvarData {
+
+		private final Chromosome chromosome;
+		private final List<ClinvarResult> results;
+		private final ClinvarVariantSummary variantSummary;
+
+		private ClinvarData(Chromosome chromosome, List<ClinvarResult> results, ClinvarVariantSummary variantSummary) {
+			this.chromosome = chromosome;
+			this.results = results;
+			this.variantSummary = variantSummary;
+		}
+	}
+
+	private ClinvarData requestClinvar(AnfisaExecuteContext context, String _chromosome) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
 		Variant variant = context.variant;
 		Chromosome chromosome = variant.chromosome;
@@ -331,6 +430,14 @@ public class AnfisaConnector implements AutoCloseable {
 		} else {
 			clinvarResults = clinvarConnector.getExpandedData(assembly, variant);
 		}
+		ClinvarVariantSummary clinvarVariantSummary = clinvarConnector.getDataVariantSummary(assembly, chromosome, variant.getStart(), variant.end);
+		return new ClinvarData(chromosome, clinvarResults, clinvarVariantSummary);
+	}
+
+	private void callClinvar(Record record, AnfisaResultFilters filters, AnfisaResultData data, AnfisaResultView view, ClinvarData clinvarData) {
+		Chromosome chromosome = clinvarData.chromosome;
+		List<ClinvarResult> clinvarResults = clinvarData.results;
+
 		record.clinvarResults = clinvarResults;
 		if (!clinvarResults.isEmpty()) {
 
@@ -419,7 +526,7 @@ public class AnfisaConnector implements AutoCloseable {
 			filters.clinvarTrustedBenign = Optional.ofNullable(benign);
 		}
 
-		ClinvarVariantSummary clinvarVariantSummary = clinvarConnector.getDataVariantSummary(assembly, chromosome, variant.getStart(), variant.end);
+		ClinvarVariantSummary clinvarVariantSummary = clinvarData.variantSummary;
 		if (clinvarVariantSummary != null) {
 			view.databases.clinvarReviewStatus = clinvarVariantSummary.reviewStatus.text;
 			filters.clinvarReviewStatus = clinvarVariantSummary.reviewStatus;
@@ -443,7 +550,7 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void callGnomAD(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultFilters filters) {
+	private void callGnomAD(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultFilters filters, GnomadResult gnomadResult) {
 		Double af = null;
 		Double _af = null;
 		Double emAf = null;
@@ -458,7 +565,6 @@ public class AnfisaConnector implements AutoCloseable {
 		Long hom = null;
 		Long hem = null;
 
-		GnomadResult gnomadResult = getGnomadResult(context, variant);
 		if (gnomadResult == null) {
 			return;
 		}
@@ -509,47 +615,58 @@ public class AnfisaConnector implements AutoCloseable {
 		filters.gnomadHem = hem;
 	}
 
-	private GnomadResult getGnomadResult(AnfisaExecuteContext context, Variant variant) {
+	private CompletableFuture<GnomadResult> requestGnomad(AnfisaExecuteContext context, Variant variant) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
+		return gnomadConnector.request(
+				context,
+				assembly,
+				variant,
+				variant.chromosome,
+				Math.min(variant.getStart(), variant.end),
+				variant.getRef(), variant.getStrAlt()
+		);
+	}
+
+	private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+		if (threadPoolAnfisaExecutor != null) {
+			return CompletableFuture.supplyAsync(supplier, threadPoolAnfisaExecutor);
+		}
+		CompletableFuture<T> future = new CompletableFuture<>();
 		try {
-			return gnomadConnector.request(
-					context,
-					assembly,
-					variant,
-					variant.chromosome,
-					Math.min(variant.getStart(), variant.end),
-					variant.getRef(), variant.getStrAlt()
-			).get();
+			future.complete(supplier.get());
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.get();
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		} catch (ExecutionException e) {
 			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
 			if (cause instanceof AnnotatorException) {
 				throw (AnnotatorException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
 			} else {
 				throw new RuntimeException(cause);
 			}
 		}
 	}
 
-	private void callSpliceai(Source source, AnfisaExecuteContext context, AnfisaResultData data, AnfisaResultFilters filters, Variant variant) {
-		Assembly assembly = context.anfisaInput.mCase.assembly;
-
-		SpliceAIResult spliceAIResult = spliceAIConnector.getAll(
-				source,
-				context,
-				assembly,
-				variant.chromosome.getChar(),
-				lowest_coord(variant),
-				variant.getRef(),
-				variant.getAlt()
-		);
+	private void callSpliceai(AnfisaResultData data, AnfisaResultFilters filters, SpliceAIResult spliceAIResult) {
 		data.spliceAI = spliceAIResult.dict_sql;
 		filters.spliceAltering = spliceAIResult.cases;
 		filters.spliceAiDsmax = spliceAIResult.max_ds;
 	}
 
-	private void createGeneralTab(AnfisaExecuteContext context, AnfisaResultData data, AnfisaResultFilters filters, AnfisaResultView view, Variant variant, MCase samples) {
+	private void createGeneralTab(AnfisaExecuteContext context, AnfisaResultData data, AnfisaResultFilters filters, AnfisaResultView view, Variant variant, MCase samples, List<Tissue> tissues) {
 		view.general.genes = getGenes((VariantVep) variant).stream().toArray(String[]::new);
 
 		//Особенность связанна с удобством визуального отображением
@@ -610,7 +727,6 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 
 		//Собираем на какие органы может максимально повлияет этот вариант
-		List<Tissue> tissues = getTissues(getGenes((VariantVep) variant));
 		view.general.mostlyExpressed = tissues.stream()
 				.map(tissue -> tissue.toJSON()).collect(Collectors.toList());
 		filters.topTissue = tissues.stream().map(tissue -> tissue.name).findFirst().orElse(null);
@@ -816,7 +932,7 @@ public class AnfisaConnector implements AutoCloseable {
 		return result;
 	}
 
-	private void createGnomadTab(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultView view) {
+	private void createGnomadTab(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultView view, GnomadResult gnomadResult) {
 		Double gnomadAf = context.gnomadAfFam;
 		if (gnomadAf != null && Math.abs(gnomadAf) > 0.000001D) {
 			AnfisaResultView.GnomAD gnomAD = new AnfisaResultView.GnomAD();
@@ -826,7 +942,6 @@ public class AnfisaConnector implements AutoCloseable {
 			gnomAD.pli = getPLIByAllele((VariantVep) variant);
 			gnomAD.proband = (isProbandHasAllele(variant, samples)) ? "Yes" : "No";
 
-			GnomadResult gnomadResult = getGnomadResult(context, variant);
 			if (gnomadResult != null) {
 				if (gnomadResult.exomes != null) {
 					gnomAD.exomeAn = gnomadResult.exomes.an;
@@ -941,7 +1056,7 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void createPredictionsTab(Source source, AnfisaExecuteContext context, Variant variant, AnfisaResultView view) {
+	private void createPredictionsTab(Variant variant, AnfisaResultView view, List<DbNSFPItem> items) {
 		if (variant instanceof VariantVep) {
 			VariantVep variantVep = (VariantVep) variant;
 
@@ -960,8 +1075,6 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 
 
-		List<DbNSFPItem> items = dbNSFPConnector.getAll(source, variant);
-
 		view.predictions.caddRaw = items.stream().map(item -> item.caddRaw).filter(Objects::nonNull).collect(Collectors.toList());
 		view.predictions.caddPhred = items.stream().map(item -> item.caddPhred).filter(Objects::nonNull).collect(Collectors.toList());
 
@@ -1110,29 +1223,62 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void createPharmacogenomicsTab(AnfisaExecuteContext context, AnfisaResultView view, AnfisaResultFilters filters, Variant variant, Source source) {
+	private static class PharmGKBData {
+
+		private final List<AnfisaResultView.Pharmacogenomics.Item> notes;
+		private final List<AnfisaResultView.Pharmacogenomics.Item> pmids;
+		private final List<AnfisaResultView.Pharmacogenomics.Item> diseases;
+		private final List<AnfisaResultView.Pharmacogenomics.Item> chemicals;
+
+		private PharmGKBData(
+				List<AnfisaResultView.Pharmacogenomics.Item> notes,
+				List<AnfisaResultView.Pharmacogenomics.Item> pmids,
+				List<AnfisaResultView.Pharmacogenomics.Item> diseases,
+				List<AnfisaResultView.Pharmacogenomics.Item> chemicals
+		) {
+			this.notes = notes;
+			this.pmids = pmids;
+			this.diseases = diseases;
+			this.chemicals = chemicals;
+		}
+	}
+
+	private PharmGKBData requestPharmGKB(AnfisaExecuteContext context, Source source) {
 		List<String> variantIds = context.getVariantIds(source);
 		if (variantIds.isEmpty()) {
+			return null;
+		}
+
+		return new PharmGKBData(
+				variantIds.stream()
+						.flatMap(variantId -> pharmGKBConnector.getNotes(variantId).stream())
+						.collect(Collectors.toList()),
+				variantIds.stream()
+						.flatMap(variantId -> pharmGKBConnector.getPmids(variantId).stream())
+						.collect(Collectors.toList()),
+				variantIds.stream()
+						.flatMap(variantId -> pharmGKBConnector.getDiseases(variantId).stream())
+						.collect(Collectors.toList()),
+				variantIds.stream()
+						.flatMap(variantId -> pharmGKBConnector.getChemicals(variantId).stream())
+						.collect(Collectors.toList())
+		);
+	}
+
+	private void createPharmacogenomicsTab(AnfisaResultView view, AnfisaResultFilters filters, PharmGKBData pharmGKBData) {
+		if (pharmGKBData == null) {
 			return;
 		}
 
-		view.pharmacogenomics.notes = variantIds.stream()
-				.flatMap(variantId -> pharmGKBConnector.getNotes(variantId).stream())
-				.collect(Collectors.toList());
+		view.pharmacogenomics.notes = pharmGKBData.notes;
 
-		List<AnfisaResultView.Pharmacogenomics.Item> pmids = variantIds.stream()
-				.flatMap(variantId -> pharmGKBConnector.getPmids(variantId).stream())
-				.collect(Collectors.toList());
+		List<AnfisaResultView.Pharmacogenomics.Item> pmids = pharmGKBData.pmids;
 		view.pharmacogenomics.pmids = pmids;
 
-		List<AnfisaResultView.Pharmacogenomics.Item> diseases = variantIds.stream()
-				.flatMap(variantId -> pharmGKBConnector.getDiseases(variantId).stream())
-				.collect(Collectors.toList());
+		List<AnfisaResultView.Pharmacogenomics.Item> diseases = pharmGKBData.diseases;
 		view.pharmacogenomics.diseases = diseases;
 
-		List<AnfisaResultView.Pharmacogenomics.Item> chemicals = variantIds.stream()
-				.flatMap(variantId -> pharmGKBConnector.getChemicals(variantId).stream())
-				.collect(Collectors.toList());
+		List<AnfisaResultView.Pharmacogenomics.Item> chemicals = pharmGKBData.chemicals;
 		view.pharmacogenomics.chemicals = chemicals;
 
 		//Add filters
@@ -1817,6 +1963,8 @@ public class AnfisaConnector implements AutoCloseable {
 
 	@Override
 	public void close() {
-
+		if (threadPoolAnfisaExecutor != null) {
+			threadPoolAnfisaExecutor.shutdownNow();
+		}
 	}
 }
@@ -20,23 +20,32 @@ package org.forome.annotation.data.anfisa.struct;
 
 import net.minidev.json.JSONObject;
 import org.forome.annotation.data.anfisa.AnfisaConnector;
+import org.forome.annotation.data.dbnsfp.DbNSFPConnector;
+import org.forome.annotation.data.dbnsfp.struct.DbNSFPItem;
 import org.forome.annotation.data.dbsnp.DbSNPConnector;
+import org.forome.annotation.data.spliceai.SpliceAIConnector;
+import org.forome.annotation.data.spliceai.struct.SpliceAIResult;
 import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Interval;
 import org.forome.core.struct.sequence.Sequence;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 public class AnfisaExecuteContext {
 
 	private final String CACHE_VARIANT_IDS = "variant_ids";
 	private final String CACHE_MASKED_REGION = "masked_region";
 	private final String CACHE_CDS_TRANSCRIPTS = "cds+transcripts";
+	private final String CACHE_DBNSFP = "dbnsfp";
+	private final String CACHE_SPLICEAI = "spliceai";
 
 	public final AnfisaInput anfisaInput;
 
@@ -45,7 +54,9 @@ public class AnfisaExecuteContext {
 
 	public Double gnomadAfFam;
 
-	private final Map<String, Object> cache;
+	//Контекст используется параллельными запросами к источникам: значение вычисляется один раз,
+	//остальные запросы ожидают его готовности
+	private final ConcurrentMap<String, CompletableFuture<Object>> cache;
 
 	public AnfisaExecuteContext(
 			AnfisaInput anfisaInput,
@@ -57,17 +68,40 @@ public class AnfisaExecuteContext {
 		this.variant = variant;
 		this.vepJson = vepJson;
 
-		this.cache = new HashMap<>();
+		this.cache = new ConcurrentHashMap<>();
 	}
 
 	public List<String> getVariantIds(Source source) {
-		return (List<String>) cache.computeIfAbsent(CACHE_VARIANT_IDS, s -> {
+		return (List<String>) computeIfAbsent(CACHE_VARIANT_IDS, () -> {
 			return new DbSNPConnector().getIds(source, variant);
 		});
 	}
 
+	/**
+	 * Разобранные записи dbNSFP варианта, общие для AnfisaConnector и всех GraphQL-полей
+	 */
+	public List<DbNSFPItem> getDbNSFP(DbNSFPConnector dbNSFPConnector, Source source) {
+		return (List<DbNSFPItem>) computeIfAbsent(CACHE_DBNSFP, () -> {
+			return dbNSFPConnector.getAll(source, variant);
+		});
+	}
+
+	public SpliceAIResult getSpliceAI(SpliceAIConnector spliceAIConnector, Source source) {
+		return (SpliceAIResult) computeIfAbsent(CACHE_SPLICEAI, () -> {
+			return spliceAIConnector.getAll(
+					source,
+					this,
+					anfisaInput.mCase.assembly,
+					variant.chromosome.getChar(),
+					Math.min(variant.getStart(), variant.end),
+					variant.getRef(),
+					variant.getAlt()
+			);
+		});
+	}
+
 	public boolean getMaskedRegion(AnfisaConnector anfisaConnector) {
-		return (boolean) cache.computeIfAbsent(CACHE_MASKED_REGION, s -> {
+		return (boolean) computeIfAbsent(CACHE_MASKED_REGION, () -> {
 			Assembly assembly = anfisaInput.mCase.assembly;
 			Source source = anfisaConnector.sourceService.dataSource.getSource(assembly);
 
@@ -87,9 +121,37 @@ public class AnfisaExecuteContext {
 	}
 
 	public Set<String> getCdsTranscripts(AnfisaConnector anfisaConnector) {
-		return (Set<String>) cache.computeIfAbsent(CACHE_CDS_TRANSCRIPTS, s -> {
+		return (Set<String>) computeIfAbsent(CACHE_CDS_TRANSCRIPTS, () -> {
 			Assembly assembly = anfisaInput.mCase.assembly;
 			return anfisaConnector.gtfConnector.getCdsTranscript(assembly, variant);
 		});
 	}
+
+	private Object computeIfAbsent(String key, Supplier<Object> supplier) {
+		CompletableFuture<Object> future = cache.get(key);
+		if (future == null) {
+			CompletableFuture<Object> newFuture = new CompletableFuture<>();
+			future = cache.putIfAbsent(key, newFuture);
+			if (future == null) {
+				future = newFuture;
+				try {
+					newFuture.complete(supplier.get());
+				} catch (Throwable e) {
+					//Ошибку не кешируем, следующий запрос попробует еще раз
+					cache.remove(key, newFuture);
+					newFuture.completeExceptionally(e);
+				}
+			}
+		}
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw e;
+			}
+		}
+	}
 }
@@ -0,0 +1,239 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.clinvar.memory;
+
+import org.forome.annotation.config.connector.ClinvarConfigConnector;
+import org.forome.annotation.config.connector.ForomeConfigConnector;
+import org.forome.annotation.data.DatabaseConnector;
+import org.forome.annotation.data.clinvar.ClinvarConnector;
+import org.forome.annotation.data.clinvar.struct.ClinvarResult;
+import org.forome.annotation.data.clinvar.struct.ClinvarVariantSummary;
+import org.forome.annotation.data.clinvar.struct.Row;
+import org.forome.annotation.service.database.DatabaseConnectService;
+import org.forome.annotation.struct.SourceMetadata;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.struct.variant.VariantType;
+import org.forome.annotation.utils.Statistics;
+import org.forome.astorage.core.liftover.LiftoverConnector;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Position;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ClinVar целиком в памяти: таблицы загружаются из mysql (или из снимка) при старте,
+ * запросы getData/getExpandedData/getDataVariantSummary выполняются без обращений к базе
+ */
+public class ClinvarConnectorMemory implements ClinvarConnector, AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(ClinvarConnectorMemory.class);
+
+	private static final String CLINVAR_TYPE_SNV = "single nucleotide variant";
+
+	private static final String ALTERNATE_ALLELE_NA = "na";
+
+	private final LiftoverConnector liftoverConnector;
+	private final ClinvarSnapshot snapshot;
+
+	public final Statistics statisticClinvarSubmitters = new Statistics();
+	public final Statistics statisticClinvarData = new Statistics();
+	public final Statistics statisticClinvarExpandedData = new Statistics();
+	public final Statistics statisticClinvarVariantSummary = new Statistics();
+
+	public ClinvarConnectorMemory(
+			DatabaseConnectService databaseConnectService,
+			LiftoverConnector liftoverConnector,
+			ForomeConfigConnector foromeConfigConnector,
+			ClinvarConfigConnector clinvarConfigConnector
+	) throws IOException {
+		this.liftoverConnector = liftoverConnector;
+
+		long t1 = System.currentTimeMillis();
+		if (clinvarConfigConnector.snapshot != null && Files.exists(clinvarConfigConnector.snapshot)) {
+			snapshot = ClinvarSnapshot.read(clinvarConfigConnector.snapshot);
+			log.info("Load clinvar from snapshot: {}, records: {}, time: {} ms",
+					clinvarConfigConnector.snapshot, snapshot.size(), System.currentTimeMillis() - t1);
+		} else {
+			try (DatabaseConnector databaseConnector = new DatabaseConnector(databaseConnectService, foromeConfigConnector)) {
+				snapshot = ClinvarSnapshot.load(databaseConnector);
+			}
+			log.info("Load clinvar from database, records: {}, time: {} ms", snapshot.size(), System.currentTimeMillis() - t1);
+			if (clinvarConfigConnector.snapshot != null) {
+				snapshot.write(clinvarConfigConnector.snapshot);
+				log.info("Save clinvar snapshot: {}", clinvarConfigConnector.snapshot);
+			}
+		}
+	}
+
+	@Override
+	public List<SourceMetadata> getSourceMetadata() {
+		return Collections.emptyList();
+	}
+
+	private ClinvarResult getSubmitters(Row row) {
+		long t1 = System.currentTimeMillis();
+		try {
+			return new ClinvarResult(
+					row.start, row.end,
+					row.referenceAllele, row.alternateAllele,
+					row.variationID, row.clinicalSignificance,
+					row.phenotypeIDs, row.otherIDs,
+					row.phenotypeList,
+					snapshot.getSubmitters(row.rcvAccession)
+			);
+		} finally {
+			statisticClinvarSubmitters.addTime(System.currentTimeMillis() - t1);
+		}
+	}
+
+	@Override
+	public List<ClinvarResult> getExpandedData(Assembly assembly, Variant variant) {
+		long t1 = System.currentTimeMillis();
+		try {
+			Position pStart = liftoverConnector.toHG37(assembly,
+					new Position(variant.chromosome, variant.getStart())
+			);
+			if (pStart == null) {
+				return Collections.emptyList();
+			}
+
+			List<ClinvarResult> results = new ArrayList<>();
+			for (ClinvarRecord record : snapshot.getRecords(variant.chromosome.getChar(), pStart.value)) {
+				//TODO Ulitin V. Необходим комплексный подход - сейчас проверяем только на SNV
+				if (variant.getVariantType() != VariantType.INDEL && variant.getVariantType() != VariantType.SEQUENCE_ALTERATION) {
+					if (CLINVAR_TYPE_SNV.equals(record.row.type) && variant.getVariantType() != VariantType.SNV) {
+						continue;
+					}
+				}
+				results.add(getSubmitters(record.row));
+			}
+			return results;
+		} finally {
+			statisticClinvarExpandedData.addTime(System.currentTimeMillis() - t1);
+		}
+	}
+
+	@Override
+	public List<ClinvarResult> getData(Assembly assembly, String chromosome, long qStart, long qEnd, String alt) {
+		long t1 = System.currentTimeMillis();
+		try {
+			Position pStart = liftoverConnector.toHG37(assembly,
+					new Position(Chromosome.of(chromosome), (int) qStart)
+			);
+			Position pEnd = liftoverConnector.toHG37(assembly,
+					new Position(Chromosome.of(chromosome), (int) qEnd)
+			);
+			if (pStart == null || pEnd == null) {
+				return Collections.emptyList();
+			}
+
+			List<ClinvarRecord> records = snapshot.getRecords(chromosome, pStart.value);
+
+			//Сначала точное совпадение по alt, если нет - записи с alt = 'na' (сравнение без учета регистра, как в mysql)
+			List<ClinvarResult> results = new ArrayList<>();
+			for (ClinvarRecord record : records) {
+				if (record.row.end == pEnd.value && alt != null && alt.equalsIgnoreCase(record.row.alternateAllele)) {
+					results.add(getSubmitters(record.row));
+				}
+			}
+			if (results.isEmpty()) {
+				for (ClinvarRecord record : records) {
+					if (record.row.end == pEnd.value && ALTERNATE_ALLELE_NA.equalsIgnoreCase(record.row.alternateAllele)) {
+						results.add(getSubmitters(record.row));
+					}
+				}
+			}
+			return results;
+		} finally {
+			statisticClinvarData.addTime(System.currentTimeMillis() - t1);
+		}
+	}
+
+	@Override
+	public ClinvarVariantSummary getDataVariantSummary(Assembly assembly, Chromosome chromosome, long start, long end) {
+		long t1 = System.currentTimeMillis();
+		try {
+			Position pStart = liftoverConnector.toHG37(assembly,
+					new Position(chromosome, (int) start)
+			);
+			Position pEnd = liftoverConnector.toHG37(assembly,
+					new Position(chromosome, (int) end)
+			);
+			if (pStart == null || pEnd == null) {
+				return null;
+			}
+
+			List<ClinvarVariantSummary> results = new ArrayList<>();
+			for (ClinvarRecord record : snapshot.getRecords(chromosome.getChar(), pStart.value)) {
+				if (record.row.end != pEnd.value) continue;
+				results.add(new ClinvarVariantSummary(record.reviewStatus, record.numberSubmitters, record.guidelines));
+			}
+
+			if (results.isEmpty()) {
+				return null;
+			} else if (results.size() == 1) {
+				return results.get(0);
+			} else {
+				//TODO Пока не найденно решение пытаемся найти "лучше", исходим: что лучше добавить неправильную, чем пропустить правильную.
+				results.sort((o1, o2) -> {
+					int i1 = (o1.reviewStatus.conflicts == null) ? 0 : (o1.reviewStatus.conflicts) ? 1 : 2;
+					int i2 = (o2.reviewStatus.conflicts == null) ? 0 : (o2.reviewStatus.conflicts) ? 1 : 2;
+					return i2 - i1;
+				});
+				ClinvarVariantSummary result = results.get(0);
+				log.warn("WARNING!!! Many record({}), chromosome: {}, start: {}, end: {}, select: {}",
+						results.size(), chromosome.getChar(), pStart.value, pEnd.value, result.reviewStatus.text);
+				return result;
+			}
+		} finally {
+			statisticClinvarVariantSummary.addTime(System.currentTimeMillis() - t1);
+		}
+	}
+
+	@Override
+	public Statistics getStatisticClinvarSubmitters() {
+		return statisticClinvarSubmitters;
+	}
+
+	@Override
+	public Statistics getStatisticClinvarData() {
+		return statisticClinvarData;
+	}
+
+	@Override
+	public Statistics getStatisticClinvarExpandedData() {
+		return statisticClinvarExpandedData;
+	}
+
+	@Override
+	public Statistics getStatisticClinvarVariantSummary() {
+		return statisticClinvarVariantSummary;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.clinvar.memory;
+
+import org.forome.annotation.data.clinvar.struct.Row;
+
+/**
+ * Строка ClinVar_variant_summary (только GRCh37)
+ */
+class ClinvarRecord {
+
+	final String chromosome;
+	final Row row;
+
+	final String reviewStatus;
+	final int numberSubmitters;
+	final String guidelines;
+
+	ClinvarRecord(String chromosome, Row row, String reviewStatus, int numberSubmitters, String guidelines) {
+		this.chromosome = chromosome;
+		this.row = row;
+		this.reviewStatus = reviewStatus;
+		this.numberSubmitters = numberSubmitters;
+		this.guidelines = guidelines;
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.clinvar.memory;
+
+import org.forome.annotation.data.DatabaseConnector;
+import org.forome.annotation.data.clinvar.struct.Row;
+import org.forome.annotation.exception.ExceptionBuilder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Таблицы ClinVar_variant_summary, ClinVar_Submitters и ClinVar2Sub_Sig в памяти,
+ * строки проиндексированы по (chromosome, start)
+ */
+class ClinvarSnapshot {
+
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private static final String QUERY_VARIANT_SUMMARY = "SELECT " +
+			"Chromosome, `Start`, `Stop`, `Type`, ReferenceAllele, AlternateAllele, " +
+			"RCVaccession, VariationID, ClinicalSignificance, PhenotypeIDS, OtherIDs, PhenotypeList, " +
+			"ReviewStatus, NumberSubmitters, Guidelines " +
+			"FROM `forome`.ClinVar_variant_summary WHERE Assembly = 'GRCh37'";
+
+	private static final String QUERY_SUBMITTERS = "SELECT SubmitterID, SubmitterName FROM `forome`.`ClinVar_Submitters`";
+
+	private static final String QUERY_SIGNIFICANCES = "SELECT RCVaccession, SubmitterID, ClinicalSignificance FROM `forome`.`ClinVar2Sub_Sig`";
+
+	private static class Submission {
+
+		private final String submitter;
+		private final String clinicalSignificance;
+
+		private Submission(String submitter, String clinicalSignificance) {
+			this.submitter = submitter;
+			this.clinicalSignificance = clinicalSignificance;
+		}
+	}
+
+	private final Map<String, Map<Integer, List<ClinvarRecord>>> records;
+	private final Map<String, List<Submission>> submissions;
+
+	//Повторяющиеся значения (тип, значимость, сабмиттеры...) храним в одном экземпляре
+	private final Map<String, String> strings;
+
+	private int size;
+
+	private ClinvarSnapshot() {
+		this.records = new HashMap<>();
+		this.submissions = new HashMap<>();
+		this.strings = new HashMap<>();
+	}
+
+	int size() {
+		return size;
+	}
+
+	List<ClinvarRecord> getRecords(String chromosome, int start) {
+		Map<Integer, List<ClinvarRecord>> chromosomeRecords = records.get(chromosome);
+		if (chromosomeRecords == null) {
+			return Collections.emptyList();
+		}
+		return chromosomeRecords.getOrDefault(start, Collections.emptyList());
+	}
+
+	/**
+	 * Аналог: SubmitterName, ClinicalSignificance из ClinVar_Submitters NATURAL JOIN ClinVar2Sub_Sig по списку RCVaccession
+	 */
+	Map<String, String> getSubmitters(String rcvAccession) {
+		Map<String, String> result = new HashMap<>();
+		if (rcvAccession == null) {
+			return result;
+		}
+		for (String rcv : rcvAccession.split(";")) {
+			for (Submission submission : submissions.getOrDefault(rcv.trim(), Collections.emptyList())) {
+				result.put(submission.submitter, submission.clinicalSignificance);
+			}
+		}
+		return result;
+	}
+
+	private void add(ClinvarRecord record) {
+		records
+				.computeIfAbsent(record.chromosome, s -> new HashMap<>())
+				.computeIfAbsent(record.row.start, s -> new ArrayList<>(1))
+				.add(record);
+		size++;
+	}
+
+	private void addSubmission(String rcvAccession, String submitter, String clinicalSignificance) {
+		submissions
+				.computeIfAbsent(rcvAccession, s -> new ArrayList<>(1))
+				.add(new Submission(submitter, clinicalSignificance));
+	}
+
+	private String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		return strings.computeIfAbsent(value, s -> s);
+	}
+
+	static ClinvarSnapshot load(DatabaseConnector databaseConnector) {
+		ClinvarSnapshot snapshot = new ClinvarSnapshot();
+		try (Connection connection = databaseConnector.createConnection()) {
+			Map<Integer, String> submitters = new HashMap<>();
+			try (Statement statement = createStreamingStatement(connection)) {
+				try (ResultSet resultSet = statement.executeQuery(QUERY_SUBMITTERS)) {
+					while (resultSet.next()) {
+						submitters.putIfAbsent(resultSet.getInt(1), snapshot.intern(resultSet.getString(2)));
+					}
+				}
+			}
+
+			try (Statement statement = createStreamingStatement(connection)) {
+				try (ResultSet resultSet = statement.executeQuery(QUERY_SIGNIFICANCES)) {
+					while (resultSet.next()) {
+						String submitter = submitters.get(resultSet.getInt(2));
+						if (submitter == null) continue;
+						snapshot.addSubmission(
+								resultSet.getString(1),
+								submitter,
+								snapshot.intern(resultSet.getString(3))
+						);
+					}
+				}
+			}
+
+			try (Statement statement = createStreamingStatement(connection)) {
+				try (ResultSet resultSet = statement.executeQuery(QUERY_VARIANT_SUMMARY)) {
+					while (resultSet.next()) {
+						Row row = new Row(
+								(int) resultSet.getLong("Start"),
+								(int) resultSet.getLong("Stop"),
+								snapshot.intern(resultSet.getString("Type")),
+								resultSet.getString("ReferenceAllele"),
+								resultSet.getString("AlternateAllele"),
+								resultSet.getString("RCVaccession"),
+								resultSet.getString("VariationID"),
+								snapshot.intern(resultSet.getString("ClinicalSignificance")),
+								resultSet.getString("PhenotypeIDS"),
+								resultSet.getString("OtherIDs"),
+								resultSet.getString("PhenotypeList")
+						);
+						snapshot.add(new ClinvarRecord(
+								snapshot.intern(resultSet.getString("Chromosome")),
+								row,
+								snapshot.intern(resultSet.getString("ReviewStatus")),
+								resultSet.getInt("NumberSubmitters"),
+								snapshot.intern(resultSet.getString("Guidelines"))
+						));
+					}
+				}
+			}
+		} catch (SQLException ex) {
+			throw ExceptionBuilder.buildExternalDatabaseException(ex);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Построчная выборка без загрузки всего ResultSet в память драйвером mysql
+	 */
+	private static Statement createStreamingStatement(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statement.setFetchSize(Integer.MIN_VALUE);
+		return statement;
+	}
+
+	static ClinvarSnapshot read(Path file) throws IOException {
+		ClinvarSnapshot snapshot = new ClinvarSnapshot();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			int version = in.readInt();
+			if (version != SNAPSHOT_VERSION) {
+				throw new IOException("Not support clinvar snapshot version: " + version);
+			}
+
+			int submissionCount = in.readInt();
+			for (int i = 0; i < submissionCount; i++) {
+				snapshot.addSubmission(
+						readString(in),
+						snapshot.intern(readString(in)),
+						snapshot.intern(readString(in))
+				);
+			}
+
+			int recordCount = in.readInt();
+			for (int i = 0; i < recordCount; i++) {
+				String chromosome = snapshot.intern(readString(in));
+				Row row = new Row(
+						in.readInt(), in.readInt(),
+						snapshot.intern(readString(in)),
+						readString(in), readString(in),
+						readString(in), readString(in), snapshot.intern(readString(in)),
+						readString(in), readString(in),
+						readString(in)
+				);
+				snapshot.add(new ClinvarRecord(
+						chromosome,
+						row,
+						snapshot.intern(readString(in)),
+						in.readInt(),
+						snapshot.intern(readString(in))
+				));
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Запись во временный файл с последующим переименованием, чтобы не оставить недописанный снимок
+	 */
+	void write(Path file) throws IOException {
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmpFile))))) {
+			out.writeInt(SNAPSHOT_VERSION);
+
+			int submissionCount = 0;
+			for (List<Submission> items : submissions.values()) {
+				submissionCount += items.size();
+			}
+			out.writeInt(submissionCount);
+			for (Map.Entry<String, List<Submission>> entry : submissions.entrySet()) {
+				for (Submission submission : entry.getValue()) {
+					writeString(out, entry.getKey());
+					writeString(out, submission.submitter);
+					writeString(out, submission.clinicalSignificance);
+				}
+			}
+
+			out.writeInt(size);
+			for (Map<Integer, List<ClinvarRecord>> chromosomeRecords : records.values()) {
+				for (List<ClinvarRecord> items : chromosomeRecords.values()) {
+					for (ClinvarRecord record : items) {
+						Row row = record.row;
+						writeString(out, record.chromosome);
+						out.writeInt(row.start);
+						out.writeInt(row.end);
+						writeString(out, row.type);
+						writeString(out, row.referenceAllele);
+						writeString(out, row.alternateAllele);
+						writeString(out, row.rcvAccession);
+						writeString(out, row.variationID);
+						writeString(out, row.clinicalSignificance);
+						writeString(out, row.phenotypeIDs);
+						writeString(out, row.otherIDs);
+						writeString(out, row.phenotypeList);
+						writeString(out, record.reviewStatus);
+						out.writeInt(record.numberSubmitters);
+						writeString(out, record.guidelines);
+					}
+				}
+			}
+		}
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -18,7 +18,6 @@
 
 package org.forome.annotation.data.gnomad;
 
-import com.google.common.collect.ImmutableList;
 import org.forome.annotation.data.anfisa.struct.AnfisaExecuteContext;
 import org.forome.annotation.data.gnomad.datasource.GnomadDataSource;
 import org.forome.annotation.data.gnomad.struct.GnamadGroup;
@@ -88,17 +87,15 @@ public class GnomadConnectorImpl implements GnomadConnector {
 	}
 
 	private GnomadResult syncRequest(AnfisaExecuteContext context, Assembly assembly, Variant variant, Chromosome chromosome, int position, String reference, String alternative) throws Exception {
-		List<GnomadDataResponse> exomes = gnomadDataSource.getData(
-				context, assembly, variant, chromosome, position, reference, alternative, "e"
+		//Один запрос к источнику, exome и genome разделяем по SOURCE
+		List<GnomadDataResponse> overall = gnomadDataSource.getData(
+				context, assembly, variant, chromosome, position, reference, alternative, null
 		);
-		List<GnomadDataResponse> genomes = gnomadDataSource.getData(
-				context, assembly, variant, chromosome, position, reference, alternative, "g"
-		);
-
-		List<GnomadDataResponse> overall = new ImmutableList.Builder().addAll(exomes).addAll(genomes).build();
 		if (overall.isEmpty()) {
 			return null;
 		}
+		List<GnomadDataResponse> exomes = filterSource(overall, "e");
+		List<GnomadDataResponse> genomes = filterSource(overall, "g");
 
 		GnomadResult.Sum sumExomes = null;
 		if (!exomes.isEmpty()) {
@@ -177,6 +174,16 @@ public class GnomadConnectorImpl implements GnomadConnector {
 		gnomadDataSource.close();
 	}
 
+	private static List<GnomadDataResponse> filterSource(List<GnomadDataResponse> items, String source) {
+		List<GnomadDataResponse> result = new ArrayList<>();
+		for (GnomadDataResponse item : items) {
+			if (source.equals(item.getValue("SOURCE"))) {
+				result.add(item);
+			}
+		}
+		return result;
+	}
+
 	private static long countAN(List<GnomadDataResponse> items, GnamadGroup group) {
 		long an = 0;
 		String anColumn;
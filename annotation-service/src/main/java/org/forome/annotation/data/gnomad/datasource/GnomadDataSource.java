@@ -30,6 +30,9 @@ import java.util.List;
 
 public interface GnomadDataSource {
 
+	/**
+	 * @param fromWhat "e" - exome, "g" - genome, null - обе выборки (записи различаются по колонке SOURCE)
+	 */
 	List<GnomadDataResponse> getData(
 			AnfisaExecuteContext context,
 			Assembly assembly,
@@ -46,6 +46,8 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 
 	private final static Logger log = LoggerFactory.getLogger(GnomadDataSourceHttp.class);
 
+	private static final List<String> SOURCES = Arrays.asList("e", "g");
+
 	private final LiftoverConnector liftoverConnector;
 	private final DataSource dataSource;
 
@@ -68,28 +70,48 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 			String sAlt,
 			String fromWhat
 	) {
+		if (fromWhat != null && !SOURCES.contains(fromWhat)) {
+			throw new RuntimeException("Not support many fromWhat");
+		}
+
 		СollapseNucleotideSequence.Sequence sequence = СollapseNucleotideSequence.collapseRight(
 				new Position(chromosome, sPosition), sRef, sAlt
 		);
 		Position pos37 = liftoverConnector.toHG37(assembly, sequence.position);
 
+		//Записи позиций запрашиваются у источника один раз, exome и genome разбираются в памяти
+		Lookup lookup = new Lookup(context, variant);
+		List<GnomadDataResponse> dataResponses = new ArrayList<>();
+		for (String source : (fromWhat == null) ? SOURCES : Collections.singletonList(fromWhat)) {
+			dataResponses.addAll(getData(lookup, assembly, sequence, pos37, source));
+		}
+		return dataResponses;
+	}
+
+	private List<GnomadDataResponse> getData(
+			Lookup lookup,
+			Assembly assembly,
+			СollapseNucleotideSequence.Sequence sequence,
+			Position pos37,
+			String fromWhat
+	) {
 		boolean isSNV = (sequence.ref.length() == 1 && sequence.alt.length() == 1);
 
 		if (pos37 == null) {
 			if (assembly == Assembly.GRCh38) {
-				return tryFindRefertData(context, variant, fromWhat);
+				return tryFindRefertData(lookup, fromWhat);
 			} else {
 				return Collections.emptyList();
 			}
 		}
 
-		List<JSONObject> records = getRecord(
-				pos37,
+		List<JSONObject> records = filter(
+				lookup.getRecords(pos37),
 				sequence.ref, sequence.alt,
 				fromWhat, isSNV
 		);
 		if (records.isEmpty() && assembly == Assembly.GRCh38) {
-			List<GnomadDataResponse> resultTryFindRefertData = tryFindRefertData(context, variant, fromWhat);
+			List<GnomadDataResponse> resultTryFindRefertData = tryFindRefertData(lookup, fromWhat);
 			if (!resultTryFindRefertData.isEmpty()) {
 				return resultTryFindRefertData;
 			}
@@ -97,13 +119,13 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 
 		if (records.isEmpty() && !isSNV) {
 			pos37 = new Position(pos37.chromosome, pos37.value - 1);
-			records = getRecord(
-					pos37,
+			records = filter(
+					lookup.getRecords(pos37),
 					sequence.ref, sequence.alt,
 					fromWhat, isSNV
 			);
 			if (records.isEmpty() && assembly == Assembly.GRCh38) {
-				List<GnomadDataResponse> resultTryFindRefertData = tryFindRefertData(context, variant, fromWhat);
+				List<GnomadDataResponse> resultTryFindRefertData = tryFindRefertData(lookup, fromWhat);
 				if (!resultTryFindRefertData.isEmpty()) {
 					return resultTryFindRefertData;
 				}
@@ -123,15 +145,14 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 		return dataResponses;
 	}
 
-	private List<JSONObject> getRecord(
-			Position pos37,
+	private static List<JSONObject> filter(
+			List<JSONObject> jRecords,
 			String ref,
 			String alt,
 			String fromWhat,
 			boolean isSNV
 	) {
-		List<JSONObject> jRecords = getData(pos37);
-		if (jRecords == null) {
+		if (jRecords.isEmpty()) {
 			return Collections.emptyList();
 		}
 
@@ -149,9 +170,6 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 		}
 
 		if (fromWhat != null) {
-			if (!(fromWhat.equals("e") || fromWhat.equals("g"))) {
-				throw new RuntimeException("Not support many fromWhat");
-			}
 			records = records.stream()
 					.filter(item -> item.getAsString("SOURCE").equals(fromWhat))
 					.collect(Collectors.toList());
@@ -180,9 +198,37 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 	 *
 	 * @return
 	 */
-	private List<GnomadDataResponse> tryFindRefertData(
-			AnfisaExecuteContext context, Variant variant, String fromWhat
-	) {
+	private List<GnomadDataResponse> tryFindRefertData(Lookup lookup, String fromWhat) {
+		RefertRange refertRange = lookup.getRefertRange();
+		if (refertRange == null) {
+			return Collections.emptyList();
+		}
+
+		Variant variant = lookup.variant;
+		for (int i = 0; i < refertRange.records.size(); i++) {
+			Position iPosition = new Position(refertRange.start.chromosome, refertRange.start.value + i);
+			List<JSONObject> jRecords = filter(
+					refertRange.records.get(i),
+					variant.getStrAlt(),
+					variant.getRef(),
+					fromWhat,
+					false
+			);
+			if (!jRecords.isEmpty()) {
+				return jRecords.stream()
+						.map(jsonObject -> buildRevert(iPosition, jsonObject))
+						.collect(Collectors.toList());
+			}
+		}
+
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Диапазон hg19, на котором мутация hg38 совпадает с референсом hg19, с записями gnomAD всех его позиций
+	 * или null, если такого диапазона нет
+	 */
+	private RefertRange buildRefertRange(AnfisaExecuteContext context, Variant variant) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
 		if (assembly != Assembly.GRCh38) throw new IllegalArgumentException();
 		Chromosome chromosome = variant.chromosome;
@@ -199,60 +245,95 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 			mergeSequence = new MergeSequence(sequence38).merge(variant);
 		} catch (AnnotatorException ex) {
 			log.error("Exception build mergeSequence: {}", ex.toString());
-			return Collections.emptyList();
+			return null;
 		}
 
 		Position sequence19Start = liftoverConnector.toHG19(new Position(chromosome, sequence38.interval.start));
 		Position sequence19End = liftoverConnector.toHG19(new Position(chromosome, sequence38.interval.end));
 		if (sequence19Start == null || sequence19End == null || sequence19Start.value > sequence19End.value) {
-			return Collections.emptyList();
+			return null;
 		}
 		if (Math.abs(sequence19End.value - sequence19Start.value) > 1000) {
-			return Collections.emptyList();
+			return null;
 		}
 
-		Sequence sequence19 = dataSource.getSource(Assembly.GRCh37).getFastaSequence(
-				Interval.of(chromosome, sequence19Start.value, sequence19End.value)
-		);
+		Interval interval19 = Interval.of(chromosome, sequence19Start.value, sequence19End.value);
+		Sequence sequence19 = dataSource.getSource(Assembly.GRCh37).getFastaSequence(interval19);
 		if (sequence19 == null) {
-			return Collections.emptyList();
+			return null;
 		}
 
 		//Проверяем, что при наложеная мутация на ref (hg38) мы получим ref (hg19) - обязательное услови
 		if (!sequence19.getValue().equals(mergeSequence)) {
-			return Collections.emptyList();
-		}
-
-		for (int pos = sequence19Start.value; pos <= sequence19End.value; pos++) {
-			Position iPosition = new Position(chromosome, pos);
-			List<JSONObject> jRecords = getRecord(
-					iPosition,
-					variant.getStrAlt(),
-					variant.getRef(),
-					fromWhat,
-					false
-			);
-			if (!jRecords.isEmpty()) {
-				return jRecords.stream()
-						.map(jsonObject -> buildRevert(iPosition, jsonObject))
-						.collect(Collectors.toList());
-			}
+			return null;
 		}
 
-		return Collections.emptyList();
+		//Все позиции диапазона одним запросом
+		List<List<JSONObject>> records = dataSource.getSource(Assembly.GRCh37).getGnomad(interval19).stream()
+				.map(GnomadDataSourceHttp::toRecords)
+				.collect(Collectors.toList());
+		return new RefertRange(sequence19Start, records);
 	}
 
-
 	private List<JSONObject> getData(Position pos37) {
-		JSONArray jRecords = dataSource.getSource(Assembly.GRCh37).getGnomad(pos37);
+		return toRecords(dataSource.getSource(Assembly.GRCh37).getGnomad(pos37));
+	}
+
+	private static List<JSONObject> toRecords(JSONArray jRecords) {
 		if (jRecords == null) {
-			return null;
+			return Collections.emptyList();
 		}
 		return jRecords.stream()
 				.map(o -> (JSONObject) o)
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Записи gnomAD, уже полученные при обработке одного варианта
+	 */
+	private class Lookup {
+
+		private final AnfisaExecuteContext context;
+		private final Variant variant;
+
+		private final Map<String, List<JSONObject>> records;
+
+		private boolean refertRangeBuilt;
+		private RefertRange refertRange;
+
+		private Lookup(AnfisaExecuteContext context, Variant variant) {
+			this.context = context;
+			this.variant = variant;
+			this.records = new HashMap<>();
+		}
+
+		private List<JSONObject> getRecords(Position pos37) {
+			return records.computeIfAbsent(
+					pos37.chromosome.getChar() + ":" + pos37.value,
+					key -> getData(pos37)
+			);
+		}
+
+		private RefertRange getRefertRange() {
+			if (!refertRangeBuilt) {
+				refertRange = buildRefertRange(context, variant);
+				refertRangeBuilt = true;
+			}
+			return refertRange;
+		}
+	}
+
+	private static class RefertRange {
+
+		private final Position start;
+		private final List<List<JSONObject>> records;
+
+		private RefertRange(Position start, List<List<JSONObject>> records) {
+			this.start = start;
+			this.records = records;
+		}
+	}
+
 	@Override
 	public List<SourceMetadata> getSourceMetadata() {
 		return Collections.emptyList();
@@ -270,6 +351,7 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 		columns.put("POS", pos37.value);
 		columns.put("REF", record.get("REF"));
 		columns.put("ALT", record.get("ALT"));
+		columns.put("SOURCE", record.get("SOURCE"));
 
 		columns.put("AC", record.get("AC"));
 		columns.put("AF", record.get("AF"));
@@ -307,6 +389,7 @@ public class GnomadDataSourceHttp implements GnomadDataSource {
 		columns.put("POS", pos37.value);
 		columns.put("REF", record.get("REF"));
 		columns.put("ALT", record.get("ALT"));
+		columns.put("SOURCE", record.get("SOURCE"));
 
 		Number nAN = record.getAsNumber("AN");
 		columns.put("AN", nAN);
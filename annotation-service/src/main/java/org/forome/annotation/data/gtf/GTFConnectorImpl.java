@@ -18,9 +18,11 @@
 
 package org.forome.annotation.data.gtf;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.forome.annotation.data.anfisa.struct.AnfisaExecuteContext;
 import org.forome.annotation.data.gtf.datasource.GTFDataSource;
-import org.forome.annotation.data.gtf.datasource.mysql.GTFDataConnector;
 import org.forome.annotation.data.gtf.mysql.struct.GTFRegion;
 import org.forome.annotation.data.gtf.mysql.struct.GTFResult;
 import org.forome.annotation.data.gtf.mysql.struct.GTFResultLookup;
@@ -34,9 +36,12 @@ import org.forome.core.struct.Chromosome;
 import org.forome.core.struct.Position;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -45,15 +50,19 @@ public class GTFConnectorImpl implements GTFConnector {
 
 	private static final int MAX_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
 
+	private static final int EXONS_CACHE_SIZE = 50_000;
+
 	private final GTFDataSource gtfDataSource;
 
 	//	private final DatabaseConnector databaseConnector;
-	private final GTFDataConnector gtfDataConnector;
 
 //	private final LiftoverConnector liftoverConnector;
 
 	private final ExecutorService threadPoolGTFExecutor;
 
+	//Экзоны транскриптов, одновременные запросы одного транскрипта ждут одну загрузку
+	private final Map<Assembly, Cache<String, GTFTranscriptExons>> exonsCaches;
+
 	public final Statistics statisticCds = new Statistics();
 
 	public GTFConnectorImpl(
@@ -67,7 +76,6 @@ public class GTFConnectorImpl implements GTFConnector {
 
 //        this.databaseConnector = new DatabaseConnector(databaseConnectService, gtfConfigConnector);
 //		this.gtfDataConnector = new GTFDataConnector(databaseConnector);
-		gtfDataConnector = (GTFDataConnector) gtfDataSource;
 
 //		this.liftoverConnector = liftoverConnector;
 
@@ -80,6 +88,14 @@ public class GTFConnectorImpl implements GTFConnector {
 				"GnomadExecutorQueue",
 				uncaughtExceptionHandler
 		);
+
+		exonsCaches = new EnumMap<>(Assembly.class);
+		for (Assembly assembly : Assembly.values()) {
+			exonsCaches.put(assembly, CacheBuilder.newBuilder()
+					.maximumSize(EXONS_CACHE_SIZE)
+					.build()
+			);
+		}
 	}
 
 	@Override
@@ -87,7 +103,7 @@ public class GTFConnectorImpl implements GTFConnector {
 		CompletableFuture<GTFResult> future = new CompletableFuture();
 		threadPoolGTFExecutor.submit(() -> {
 			try {
-				GTFResult result = gtfDataConnector.getGene(assembly, chromosome, position);
+				GTFResult result = gtfDataSource.getGene(assembly, chromosome, position);
 				future.complete(result);
 			} catch (Throwable e) {
 				future.completeExceptionally(e);
@@ -126,7 +142,22 @@ public class GTFConnectorImpl implements GTFConnector {
 
 	@Override
 	public List<GTFTranscriptRow> getTranscriptRows(Assembly assembly, String transcript) {
-		return gtfDataConnector.getTranscriptRows(assembly, transcript);
+		return getTranscriptExons(assembly, transcript).rows;
+	}
+
+	private GTFTranscriptExons getTranscriptExons(Assembly assembly, String transcript) {
+		try {
+			return exonsCaches.get(assembly).get(transcript, () -> {
+				List<GTFTranscriptRow> rows = gtfDataSource.getTranscriptRows(assembly, transcript);
+				return (rows.isEmpty()) ? GTFTranscriptExons.EMPTY : new GTFTranscriptExons(rows);
+			});
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
 	}
 
 	@Override
@@ -135,56 +166,51 @@ public class GTFConnectorImpl implements GTFConnector {
 //		if (rows == null) return null;
 //		return lookup(position.value, rows);
 
-		List<GTFTranscriptRow> rows = gtfDataConnector.getTranscriptRows(assembly, transcript);
-		if (rows.isEmpty()) return null;
+		GTFTranscriptExons exons = getTranscriptExons(assembly, transcript);
+		if (exons.isEmpty()) return null;
 
-		return lookup(position, rows);
+		return lookup(position, exons);
 	}
 
 	public List<GTFResultLookup> lookupByChromosomeAndPositions(AnfisaExecuteContext context, String chromosome, long[] positions) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
 		List<GTFResultLookup> result = new ArrayList<>();
 
-		List<String> transcripts = gtfDataConnector.getTranscriptsByChromosomeAndPositions(assembly, chromosome, positions);
+		List<String> transcripts = gtfDataSource.getTranscriptsByChromosomeAndPositions(assembly, chromosome, positions);
 		for (String transcript : transcripts) {
-			for (long position : positions) {
-				List<GTFTranscriptRow> rows = gtfDataConnector.getTranscriptRows(assembly, transcript);
-				if (rows.isEmpty()) continue;
+			GTFTranscriptExons exons = getTranscriptExons(assembly, transcript);
+			if (exons.isEmpty()) continue;
 
-				Object[] iResult = lookup(context, context.anfisaInput.mCase.assembly, new Position(Chromosome.of(chromosome), (int) position), transcript);
+			for (long position : positions) {
+				Object[] iResult = lookup(new Position(Chromosome.of(chromosome), (int) position), exons);
 				GTFRegion region = (GTFRegion) iResult[1];
-				result.add(new GTFResultLookup(transcript, rows.get(0).gene, position, region.region, region.indexRegion));
+				result.add(new GTFResultLookup(transcript, exons.getGene(), position, region.region, region.indexRegion));
 			}
 		}
 
 		return result;
 	}
 
-	public Object[] lookup(Position position, List<GTFTranscriptRow> rows) {
+	private static Object[] lookup(Position position, GTFTranscriptExons exons) {
 		int pos = position.value;
+		int[] a = exons.bounds;
 
-		long inf = rows.get(0).start;
+		long inf = a[0];
 		if (pos < inf) {
 			return new Object[]{ (inf - pos), GTFRegion.UPSTREAM };
 		}
 
-		long sup = rows.get(rows.size() - 1).end;
+		long sup = a[a.length - 1];
 		if (pos > sup) {
 			return new Object[]{ (pos - sup), GTFRegion.DOWNSTREAM };
 		}
 
-		List<Integer> a = new ArrayList<>();
-		for (GTFTranscriptRow row : rows) {
-			a.add(row.start);
-			a.add(row.end);
-		}
-
 		//Аналог: i = bisect.bisect(a, pos)
 		int lo = 0;
-		int hi = a.size();
+		int hi = a.length;
 		while (lo < hi) {
 			int mid = (lo + hi) / 2;
-			if (pos < a.get(mid)) {
+			if (pos < a[mid]) {
 				hi = mid;
 			} else {
 				lo = mid + 1;
@@ -196,7 +222,7 @@ public class GTFConnectorImpl implements GTFConnector {
 		if (pos == inf || pos == sup) {
 			d = 0;
 		} else {
-			d = Math.min(pos - a.get(i - 1), a.get(i) - pos);
+			d = Math.min(pos - a[i - 1], a[i] - pos);
 		}
 
 		long index;
@@ -209,7 +235,7 @@ public class GTFConnectorImpl implements GTFConnector {
 			region = "intron";
 		}
 
-		return new Object[]{ d, new GTFRegion(region, (int) index), rows.size() };
+		return new Object[]{ d, new GTFRegion(region, (int) index), exons.rows.size() };
 	}
 
 	public Set<String> getCdsTranscript(Assembly assembly, Variant variant) {
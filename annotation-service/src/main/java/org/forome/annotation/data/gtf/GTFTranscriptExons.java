@@ -0,0 +1,54 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.gtf;
+
+import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRow;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Экзоны транскрипта: строки как их отдает GTFDataSource и их границы подряд
+ * в примитивном массиве (start0, end0, start1, end1...) для бинарного поиска
+ */
+class GTFTranscriptExons {
+
+	static final GTFTranscriptExons EMPTY = new GTFTranscriptExons(Collections.emptyList());
+
+	final List<GTFTranscriptRow> rows;
+	final int[] bounds;
+
+	GTFTranscriptExons(List<GTFTranscriptRow> rows) {
+		this.rows = Collections.unmodifiableList(rows);
+		this.bounds = new int[rows.size() * 2];
+		for (int i = 0; i < rows.size(); i++) {
+			GTFTranscriptRow row = rows.get(i);
+			bounds[i * 2] = row.start;
+			bounds[i * 2 + 1] = row.end;
+		}
+	}
+
+	boolean isEmpty() {
+		return rows.isEmpty();
+	}
+
+	String getGene() {
+		return rows.get(0).gene;
+	}
+}
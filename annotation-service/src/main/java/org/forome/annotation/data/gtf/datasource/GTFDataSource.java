@@ -19,6 +19,7 @@
 package org.forome.annotation.data.gtf.datasource;
 
 import org.forome.annotation.data.anfisa.struct.AnfisaExecuteContext;
+import org.forome.annotation.data.gtf.mysql.struct.GTFResult;
 import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRow;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.core.struct.Assembly;
@@ -30,6 +31,18 @@ import java.util.Set;
 
 public interface GTFDataSource extends Closeable {
 
+	GTFResult getGene(Assembly assembly, String chromosome, long position);
+
+	/**
+	 * Экзоны транскрипта, отсортированные по start, end
+	 */
+	List<GTFTranscriptRow> getTranscriptRows(Assembly assembly, String transcript);
+
+	/**
+	 * Транскрипты, которые содержат хотя бы одну из позиций, в порядке start, end
+	 */
+	List<String> getTranscriptsByChromosomeAndPositions(Assembly assembly, String chromosome, long[] positions);
+
 	List<GTFTranscriptRow> lookup(AnfisaExecuteContext context, Assembly assembly, Position position, String transcript);
 
 	Set<String> getCdsTranscript(Assembly assembly, Variant variant);
@@ -36,6 +36,7 @@ import org.apache.http.util.EntityUtils;
 import org.forome.annotation.data.anfisa.struct.AnfisaExecuteContext;
 import org.forome.annotation.data.gnomad.datasource.http.GnomadDataSourceHttp;
 import org.forome.annotation.data.gtf.datasource.GTFDataSource;
+import org.forome.annotation.data.gtf.mysql.struct.GTFResult;
 import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRow;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.service.source.DataSource;
@@ -126,6 +127,21 @@ public class GTFDataSourceHttp implements GTFDataSource {
 		throw new RuntimeException("Not implemented");
 	}
 
+	@Override
+	public GTFResult getGene(Assembly assembly, String chromosome, long position) {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public List<GTFTranscriptRow> getTranscriptRows(Assembly assembly, String transcript) {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public List<String> getTranscriptsByChromosomeAndPositions(Assembly assembly, String chromosome, long[] positions) {
+		throw new RuntimeException("Not implemented");
+	}
+
 	private GTFTranscriptRow build(JSONObject item) {
 		return new GTFTranscriptRow(
 				item.getAsString("gene"),
@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.gtf.datasource.memory;
+
+import org.forome.annotation.data.anfisa.struct.AnfisaExecuteContext;
+import org.forome.annotation.data.gtf.datasource.GTFDataSource;
+import org.forome.annotation.data.gtf.mysql.struct.GTFResult;
+import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRow;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Position;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * GTF целиком в памяти: при старте разбираем GTF-файлы Ensembl (.gtf или .gtf.gz)
+ * и отвечаем на запросы по интервальному индексу без обращений к mysql
+ */
+public class GTFDataSourceMemory implements GTFDataSource {
+
+	private final static Logger log = LoggerFactory.getLogger(GTFDataSourceMemory.class);
+
+	private final Map<Assembly, GTFIndex> indexes;
+
+	public GTFDataSourceMemory(Map<Assembly, Path> files) throws IOException {
+		this.indexes = new EnumMap<>(Assembly.class);
+		for (Map.Entry<Assembly, Path> entry : files.entrySet()) {
+			long t1 = System.currentTimeMillis();
+			indexes.put(entry.getKey(), GTFIndex.load(entry.getValue()));
+			log.info("Load gtf {}: {}, time: {} ms", entry.getKey(), entry.getValue(), System.currentTimeMillis() - t1);
+		}
+	}
+
+	@Override
+	public GTFResult getGene(Assembly assembly, String chromosome, long position) {
+		return new GTFResult(getIndex(assembly).getGene(chromosome, position));
+	}
+
+	@Override
+	public List<GTFTranscriptRow> getTranscriptRows(Assembly assembly, String transcript) {
+		GTFIndex.Exons exons = getIndex(assembly).getExons(transcript);
+		if (exons == null) {
+			return Collections.emptyList();
+		}
+		List<GTFTranscriptRow> rows = new ArrayList<>(exons.bounds.length / 2);
+		for (int i = 0; i < exons.bounds.length; i += 2) {
+			rows.add(new GTFTranscriptRow(exons.gene, exons.bounds[i], exons.bounds[i + 1], "exon"));
+		}
+		return rows;
+	}
+
+	@Override
+	public List<String> getTranscriptsByChromosomeAndPositions(Assembly assembly, String chromosome, long[] positions) {
+		return getIndex(assembly).getTranscripts(chromosome, positions);
+	}
+
+	@Override
+	public List<GTFTranscriptRow> lookup(AnfisaExecuteContext context, Assembly assembly, Position position, String transcript) {
+		throw new RuntimeException("Not implemented");
+	}
+
+	@Override
+	public Set<String> getCdsTranscript(Assembly assembly, Variant variant) {
+		int start = Math.min(variant.getStart(), variant.end);
+		int end = Math.max(variant.getStart(), variant.end);
+		return getIndex(assembly).getCdsTranscripts(variant.chromosome.getChar(), start, end);
+	}
+
+	private GTFIndex getIndex(Assembly assembly) {
+		GTFIndex index = indexes.get(assembly);
+		if (index == null) {
+			throw new RuntimeException("Not support assembly: " + assembly);
+		}
+		return index;
+	}
+
+	@Override
+	public void close() {
+	}
+}
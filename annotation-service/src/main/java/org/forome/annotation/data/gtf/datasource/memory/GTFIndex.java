@@ -0,0 +1,254 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.gtf.datasource.memory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Индекс GTF-файла Ensembl одной сборки
+ * Из файла берутся только строки, которые нужны запросам GTFDataSource: gene, transcript, exon и CDS
+ */
+class GTFIndex {
+
+	static class Exons {
+
+		final String gene;
+
+		/**
+		 * Границы экзонов подряд: start0, end0, start1, end1... отсортированы по (start, end)
+		 */
+		final int[] bounds;
+
+		Exons(String gene, int[] bounds) {
+			this.gene = gene;
+			this.bounds = bounds;
+		}
+	}
+
+	private final Map<String, IntervalIndex> genes;
+	private final Map<String, IntervalIndex> transcripts;
+	private final Map<String, IntervalIndex> cds;
+	private final Map<String, Exons> exons;
+
+	private GTFIndex(
+			Map<String, IntervalIndex> genes,
+			Map<String, IntervalIndex> transcripts,
+			Map<String, IntervalIndex> cds,
+			Map<String, Exons> exons
+	) {
+		this.genes = genes;
+		this.transcripts = transcripts;
+		this.cds = cds;
+		this.exons = exons;
+	}
+
+	/**
+	 * Ген, содержащий позицию (start <= position <= end), при нескольких - с меньшим start
+	 */
+	String getGene(String chromosome, long position) {
+		IntervalIndex index = genes.get(chromosome);
+		if (index == null) {
+			return null;
+		}
+		int[] first = { -1 };
+		index.find(position, false, i -> first[0] = i);
+		return (first[0] == -1) ? null : index.getName(first[0]);
+	}
+
+	Exons getExons(String transcript) {
+		return exons.get(transcript);
+	}
+
+	List<String> getTranscripts(String chromosome, long[] positions) {
+		IntervalIndex index = transcripts.get(chromosome);
+		if (index == null) {
+			return Collections.emptyList();
+		}
+		BitSet found = new BitSet(index.size());
+		for (long position : positions) {
+			index.find(position, true, found::set);
+		}
+		LinkedHashSet<String> result = new LinkedHashSet<>();
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+			result.add(index.getName(i));
+		}
+		return new ArrayList<>(result);
+	}
+
+	Set<String> getCdsTranscripts(String chromosome, int start, int end) {
+		IntervalIndex index = cds.get(chromosome);
+		Set<String> result = new HashSet<>();
+		if (index == null) {
+			return result;
+		}
+		index.find(start, false, i -> result.add(index.getName(i)));
+		index.find(end, false, i -> result.add(index.getName(i)));
+		return result;
+	}
+
+	static GTFIndex load(Path file) throws IOException {
+		try (InputStream is = Files.newInputStream(file);
+			 InputStream uis = (file.getFileName().toString().endsWith(".gz")) ? new GZIPInputStream(is) : is;
+			 BufferedReader reader = new BufferedReader(new InputStreamReader(uis, StandardCharsets.UTF_8))
+		) {
+			return load(reader);
+		}
+	}
+
+	static GTFIndex load(BufferedReader reader) throws IOException {
+		Map<String, IntervalIndex.Builder> genes = new HashMap<>();
+		Map<String, IntervalIndex.Builder> transcripts = new HashMap<>();
+		Map<String, IntervalIndex.Builder> cds = new HashMap<>();
+		Map<String, String> exonGenes = new HashMap<>();
+		Map<String, int[]> exonBounds = new HashMap<>();
+		Map<String, Integer> exonSizes = new HashMap<>();
+
+		//Одинаковые имена генов и транскриптов храним в одном экземпляре
+		Map<String, String> names = new HashMap<>();
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty() || line.charAt(0) == '#') {
+				continue;
+			}
+			String[] fields = line.split("\t");
+			if (fields.length < 9) {
+				throw new IOException("Bad gtf line: " + line);
+			}
+			String chromosome = fields[0].trim();
+			//Аналогично загрузке в mysql: пропускаем контиги (scaffold и т.п.)
+			if (chromosome.length() > 4) {
+				continue;
+			}
+			String feature = fields[2].trim();
+			int start = Integer.parseInt(fields[3].trim());
+			int end = Integer.parseInt(fields[4].trim());
+
+			switch (feature) {
+				case "gene": {
+					String gene = intern(names, getAttribute(fields[8], "gene_name"));
+					builder(genes, chromosome).add(start, end, gene);
+					break;
+				}
+				case "transcript": {
+					String transcript = intern(names, getAttribute(fields[8], "transcript_id"));
+					if (transcript != null) {
+						builder(transcripts, chromosome).add(start, end, transcript);
+					}
+					break;
+				}
+				case "CDS": {
+					String transcript = intern(names, getAttribute(fields[8], "transcript_id"));
+					if (transcript != null) {
+						builder(cds, chromosome).add(start, end, transcript);
+					}
+					break;
+				}
+				case "exon": {
+					String transcript = intern(names, getAttribute(fields[8], "transcript_id"));
+					if (transcript == null) {
+						break;
+					}
+					exonGenes.putIfAbsent(transcript, intern(names, getAttribute(fields[8], "gene_name")));
+
+					int size = exonSizes.getOrDefault(transcript, 0);
+					int[] bounds = exonBounds.get(transcript);
+					if (bounds == null) {
+						bounds = new int[8];
+					} else if (bounds.length == size) {
+						bounds = Arrays.copyOf(bounds, size * 2);
+					}
+					bounds[size] = start;
+					bounds[size + 1] = end;
+					exonBounds.put(transcript, bounds);
+					exonSizes.put(transcript, size + 2);
+					break;
+				}
+				default:
+					break;
+			}
+		}
+
+		Map<String, Exons> exons = new HashMap<>(exonBounds.size() * 2);
+		for (Map.Entry<String, int[]> entry : exonBounds.entrySet()) {
+			String transcript = entry.getKey();
+			exons.put(transcript, new Exons(
+					exonGenes.get(transcript),
+					sortBounds(entry.getValue(), exonSizes.get(transcript))
+			));
+		}
+
+		return new GTFIndex(build(genes), build(transcripts), build(cds), exons);
+	}
+
+	/**
+	 * Сортировка пар (start, end) через упаковку в long
+	 */
+	private static int[] sortBounds(int[] bounds, int size) {
+		long[] pairs = new long[size / 2];
+		for (int i = 0; i < pairs.length; i++) {
+			pairs[i] = ((long) bounds[i * 2] << 32) | (bounds[i * 2 + 1] & 0xFFFFFFFFL);
+		}
+		Arrays.sort(pairs);
+		int[] result = new int[size];
+		for (int i = 0; i < pairs.length; i++) {
+			result[i * 2] = (int) (pairs[i] >>> 32);
+			result[i * 2 + 1] = (int) pairs[i];
+		}
+		return result;
+	}
+
+	static String getAttribute(String attributes, String key) {
+		for (String pair : attributes.split(";")) {
+			String[] values = pair.trim().split(" ");
+			if (values.length < 2 || !values[0].equals(key)) {
+				continue;
+			}
+			return values[1].replace("\"", "");
+		}
+		return null;
+	}
+
+	private static String intern(Map<String, String> names, String value) {
+		if (value == null) {
+			return null;
+		}
+		return names.computeIfAbsent(value, s -> s);
+	}
+
+	private static IntervalIndex.Builder builder(Map<String, IntervalIndex.Builder> builders, String chromosome) {
+		return builders.computeIfAbsent(chromosome, s -> new IntervalIndex.Builder());
+	}
+
+	private static Map<String, IntervalIndex> build(Map<String, IntervalIndex.Builder> builders) {
+		Map<String, IntervalIndex> result = new HashMap<>();
+		for (Map.Entry<String, IntervalIndex.Builder> entry : builders.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().build());
+		}
+		return result;
+	}
+}
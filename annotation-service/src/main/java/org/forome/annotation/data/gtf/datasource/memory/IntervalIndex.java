@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.gtf.datasource.memory;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Интервалы одной хромосомы в отсортированных по (start, end) примитивных массивах
+ * maxEnds[i] - максимальный end среди интервалов 0..i, позволяет остановить обратный проход при поиске
+ */
+class IntervalIndex {
+
+	private final int[] starts;
+	private final int[] ends;
+	private final int[] maxEnds;
+	private final String[] names;
+
+	private IntervalIndex(int[] starts, int[] ends, String[] names) {
+		this.starts = starts;
+		this.ends = ends;
+		this.names = names;
+
+		this.maxEnds = new int[ends.length];
+		int maxEnd = Integer.MIN_VALUE;
+		for (int i = 0; i < ends.length; i++) {
+			maxEnd = Math.max(maxEnd, ends[i]);
+			maxEnds[i] = maxEnd;
+		}
+	}
+
+	int size() {
+		return starts.length;
+	}
+
+	String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * Индексы интервалов, содержащих позицию, в порядке убывания
+	 *
+	 * @param strict true: start < position < end, false: start <= position <= end
+	 */
+	void find(long position, boolean strict, IntConsumer consumer) {
+		//Первый интервал, начало которого уже не подходит
+		int lo = 0;
+		int hi = starts.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (strict ? starts[mid] < position : starts[mid] <= position) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+
+		for (int i = lo - 1; i >= 0; i--) {
+			if (strict ? maxEnds[i] <= position : maxEnds[i] < position) {
+				break;
+			}
+			if (strict ? ends[i] > position : ends[i] >= position) {
+				consumer.accept(i);
+			}
+		}
+	}
+
+	static class Builder {
+
+		private int size;
+		private int[] starts = new int[16];
+		private int[] ends = new int[16];
+		private String[] names = new String[16];
+
+		void add(int start, int end, String name) {
+			if (size == starts.length) {
+				int capacity = size * 2;
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				names = Arrays.copyOf(names, capacity);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			names[size] = name;
+			size++;
+		}
+
+		IntervalIndex build() {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (i1, i2) -> {
+				int compare = Integer.compare(starts[i1], starts[i2]);
+				return (compare != 0) ? compare : Integer.compare(ends[i1], ends[i2]);
+			});
+
+			int[] sortedStarts = new int[size];
+			int[] sortedEnds = new int[size];
+			String[] sortedNames = new String[size];
+			for (int i = 0; i < size; i++) {
+				sortedStarts[i] = starts[order[i]];
+				sortedEnds[i] = ends[order[i]];
+				sortedNames[i] = names[order[i]];
+			}
+			return new IntervalIndex(sortedStarts, sortedEnds, sortedNames);
+		}
+	}
+}
@@ -46,6 +46,7 @@ public class GTFDataConnector implements GTFDataSource {
 		this.databaseConnector = databaseConnector;
 	}
 
+	@Override
 	public GTFResult getGene(Assembly assembly, String chromosome, long position) {
 		long bucket = (position / GENE_BUCKET_SIZE) * GENE_BUCKET_SIZE;
 
@@ -70,6 +71,7 @@ public class GTFDataConnector implements GTFDataSource {
 		return new GTFResult(symbol);
 	}
 
+	@Override
 	public List<GTFTranscriptRow> getTranscriptRows(Assembly assembly, String transcript) {
 		String sql = String.format(
 				"SELECT `gene`, `start`, `end`, `feature` from %s.GTF WHERE transcript = '%s' AND feature = 'exon' ORDER BY `start`, `end`",
@@ -139,6 +141,7 @@ public class GTFDataConnector implements GTFDataSource {
 	}
 
 
+	@Override
 	public List<String> getTranscriptsByChromosomeAndPositions(Assembly assembly, String chromosome, long[] positions) {
 		String sqlWherePosition = Arrays.stream(positions)
 				.mapToObj(position -> String.format("(`start` < %s and %s < `end`)", position, position))
@@ -31,6 +31,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 import java.util.zip.GZIPInputStream;
 
 public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
@@ -38,14 +39,27 @@ public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
 	private final InputStream inputStream;
 	private final BufferedReader bufferedReader;
 
+	//Строки, не прошедшие фильтр, пропускаются без разбора json
+	private final Predicate<String> lineFilter;
+
+	private String nextLine;
 	private JSONObject nextValue;
 
 	public JsonFileIterator(Path pathVepJson) {
-		this(getInputStream(pathVepJson), pathVepJson.getFileName().toString().endsWith(".gz"));
+		this(pathVepJson, null);
+	}
+
+	public JsonFileIterator(Path pathVepJson, Predicate<String> lineFilter) {
+		this(getInputStream(pathVepJson), pathVepJson.getFileName().toString().endsWith(".gz"), lineFilter);
 	}
 
 	public JsonFileIterator(InputStream inputStream, boolean gzip) {
+		this(inputStream, gzip, null);
+	}
+
+	public JsonFileIterator(InputStream inputStream, boolean gzip, Predicate<String> lineFilter) {
 		this.inputStream = inputStream;
+		this.lineFilter = lineFilter;
 		if (gzip) {
 			try {
 				this.bufferedReader = new BufferedReader(new InputStreamReader(new GZIPInputStream(inputStream)));
@@ -56,7 +70,7 @@ public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
 			this.bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
 		}
 
-		nextValue = readNextValue();
+		readNext();
 	}
 
 	@Override
@@ -71,22 +85,52 @@ public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
 		}
 
 		JSONObject value = nextValue;
-		nextValue = readNextValue();
+		readNext();
 
 		return value;
 	}
 
-	private JSONObject readNextValue() {
-		String line = null;
-		try {
-			line = bufferedReader.readLine();
-			if (line == null) {
-				return null;
-			} else {
-				return (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(line);
+	/**
+	 * Пропуск записей без разбора json
+	 * @param counted строки, которые засчитываются в count (остальные пропускаются сверх count)
+	 */
+	protected void skip(int count, Predicate<String> counted) throws NoSuchElementException {
+		int skipped = 0;
+		while (skipped < count) {
+			if (nextLine == null) {
+				throw new NoSuchElementException();
+			}
+			if (counted.test(nextLine)) {
+				skipped++;
 			}
+			nextLine = readNextLine();
+		}
+		nextValue = parse(nextLine);
+	}
+
+	private void readNext() {
+		nextLine = readNextLine();
+		nextValue = parse(nextLine);
+	}
+
+	private String readNextLine() {
+		try {
+			String line;
+			do {
+				line = bufferedReader.readLine();
+			} while (line != null && lineFilter != null && !lineFilter.test(line));
+			return line;
 		} catch (IOException e) {
 			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+	}
+
+	protected static JSONObject parse(String line) {
+		if (line == null) {
+			return null;
+		}
+		try {
+			return (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(line);
 		} catch (ParseException e) {
 			throw ExceptionBuilder.buildInvalidVepJsonException(line, e);
 		}
@@ -98,7 +142,7 @@ public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
 		inputStream.close();
 	}
 
-	private static InputStream getInputStream(Path file) {
+	protected static InputStream getInputStream(Path file) {
 		try {
 			return Files.newInputStream(file);
 		} catch (IOException e) {
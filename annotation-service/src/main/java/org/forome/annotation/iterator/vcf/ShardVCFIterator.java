@@ -0,0 +1,130 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.iterator.vcf;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
+import org.forome.core.struct.Interval;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+/**
+ * Записи vcf только из регионов части, через индекс tabix (.tbi рядом с BGZF файлом).
+ * Запись, начинающаяся до региона и перекрывающая его, отдается только той частью, где ее начало
+ */
+class ShardVCFIterator implements VCFIterator {
+
+	private final VCFFileReader vcfFileReader;
+	private final VCFHeader vcfHeader;
+
+	//Пары (регион, имя контига), которые еще предстоит запросить
+	private final Deque<Query> queries;
+
+	private Interval region;
+	private CloseableIterator<VariantContext> regionIterator;
+
+	private VariantContext nextValue;
+
+	ShardVCFIterator(Path pathVcf, AnnotatorShard shard) {
+		this.vcfFileReader = new VCFFileReader(pathVcf, true);
+		this.vcfHeader = vcfFileReader.getFileHeader();
+
+		this.queries = new ArrayDeque<>();
+		for (Interval region : shard.regions) {
+			for (String contig : AnnotatorShard.getContigNames(vcfHeader, region.chromosome)) {
+				queries.add(new Query(region, contig));
+			}
+		}
+
+		this.nextValue = readNextValue();
+	}
+
+	@Override
+	public VCFHeader getHeader() {
+		return vcfHeader;
+	}
+
+	@Override
+	public VariantContext peek() {
+		return nextValue;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextValue != null;
+	}
+
+	@Override
+	public VariantContext next() {
+		if (nextValue == null) {
+			throw new NoSuchElementException();
+		}
+		VariantContext value = nextValue;
+		nextValue = readNextValue();
+		return value;
+	}
+
+	private VariantContext readNextValue() {
+		while (true) {
+			if (regionIterator != null) {
+				while (regionIterator.hasNext()) {
+					VariantContext variantContext = regionIterator.next();
+					if (variantContext.getStart() >= region.start) {
+						return variantContext;
+					}
+				}
+				regionIterator.close();
+				regionIterator = null;
+			}
+
+			Query query = queries.poll();
+			if (query == null) {
+				return null;
+			}
+			region = query.region;
+			regionIterator = vcfFileReader.query(query.contig, region.start, region.end);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (regionIterator != null) {
+			regionIterator.close();
+		}
+		vcfFileReader.close();
+	}
+
+	private static class Query {
+
+		private final Interval region;
+		private final String contig;
+
+		private Query(Interval region, String contig) {
+			this.region = region;
+			this.contig = contig;
+		}
+	}
+}
@@ -18,17 +18,25 @@
 
 package org.forome.annotation.iterator.vcf;
 
-import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+import htsjdk.variant.vcf.VCFIteratorBuilder;
+import org.apache.commons.io.IOUtils;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.iterator.cnv.CNVFileIterator;
 import org.forome.annotation.struct.mavariant.MAVariantVCF;
 import org.forome.annotation.struct.mavariant.MAVariantVep;
+import org.forome.annotation.utils.compression.ParallelBgzfInputStream;
 import org.forome.core.struct.Chromosome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -37,8 +45,9 @@ public class VCFFileIterator implements AutoCloseable {
 
 	private final static Logger log = LoggerFactory.getLogger(VCFFileIterator.class);
 
-	private final VCFFileReader vcfFileReader;
-	private final CloseableIterator<VariantContext> vcfFileReaderIterator;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private final VCFIterator vcfIterator;
 
 	private final CNVFileIterator cnvFileIterator;
 
@@ -47,14 +56,20 @@ public class VCFFileIterator implements AutoCloseable {
 	}
 
 	public VCFFileIterator(Path pathVcf, Path cnvFile) {
-		this.vcfFileReader = new VCFFileReader(pathVcf, false);
-		this.vcfFileReaderIterator = vcfFileReader.iterator();
+		this(pathVcf, cnvFile, null);
+	}
+
+	/**
+	 * @param shard часть кейса, null - весь файл
+	 */
+	public VCFFileIterator(Path pathVcf, Path cnvFile, AnnotatorShard shard) {
+		this.vcfIterator = (shard != null) ? new ShardVCFIterator(pathVcf, shard) : open(pathVcf);
 
-		if (cnvFile != null) {
+		if (cnvFile != null && (shard == null || shard.withCnv)) {
 			cnvFileIterator = new CNVFileIterator(cnvFile);
 
 			//Validation equals samples
-			List<String> vcfSamples = vcfFileReader.getFileHeader().getGenotypeSamples();
+			List<String> vcfSamples = vcfIterator.getHeader().getGenotypeSamples();
 			List<String> cnvSamples = cnvFileIterator.getSamples();
 			if (vcfSamples.size() != cnvSamples.size() || !vcfSamples.containsAll(cnvSamples)) {
 				throw ExceptionBuilder.buildNotEqualSamplesVcfAndCnvFile();
@@ -66,8 +81,8 @@ public class VCFFileIterator implements AutoCloseable {
 
 	public MAVariantVep next() throws NoSuchElementException {
 		while (true) {
-			if (vcfFileReaderIterator.hasNext()) {
-				VariantContext variantContext = vcfFileReaderIterator.next();
+			if (vcfIterator.hasNext()) {
+				VariantContext variantContext = vcfIterator.next();
 				if (!Chromosome.isSupportChromosome(variantContext.getContig())) {
 					continue;//Игнорируем непонятные хромосомы
 				}
@@ -80,9 +95,55 @@ public class VCFFileIterator implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Пропуск записи без разбора варианта
+	 * @return true - пропущена запись vcf, false - запись cnv
+	 */
+	public boolean skip() throws NoSuchElementException {
+		while (true) {
+			if (vcfIterator.hasNext()) {
+				VariantContext variantContext = vcfIterator.next();
+				if (!Chromosome.isSupportChromosome(variantContext.getContig())) {
+					continue;//Игнорируем непонятные хромосомы
+				}
+				return true;
+			} else if (cnvFileIterator != null && cnvFileIterator.hasNext()) {
+				cnvFileIterator.next();
+				return false;
+			} else {
+				throw new NoSuchElementException();
+			}
+		}
+	}
+
+	public static VCFHeader readHeader(Path pathVcf) {
+		try (VCFIterator vcfIterator = open(pathVcf)) {
+			return vcfIterator.getHeader();
+		}
+	}
+
+	/**
+	 * Файл читается потоком без распаковки на диск: vcf, vcf.gz (gzip) и BGZF - с параллельной распаковкой блоков
+	 */
+	private static VCFIterator open(Path pathVcf) {
+		InputStream inputStream = null;
+		try {
+			inputStream = new BufferedInputStream(Files.newInputStream(pathVcf), BUFFER_SIZE);
+			if (ParallelBgzfInputStream.isBgzf(inputStream)) {
+				inputStream = new BufferedInputStream(new ParallelBgzfInputStream(inputStream), BUFFER_SIZE);
+			}
+			return new VCFIteratorBuilder().open(inputStream);
+		} catch (IOException e) {
+			IOUtils.closeQuietly(inputStream);
+			throw ExceptionBuilder.buildIOErrorException(e);
+		} catch (RuntimeException e) {
+			IOUtils.closeQuietly(inputStream);
+			throw e;
+		}
+	}
+
 	@Override
 	public void close() {
-		this.vcfFileReaderIterator.close();
-		this.vcfFileReader.close();
+		this.vcfIterator.close();
 	}
 }
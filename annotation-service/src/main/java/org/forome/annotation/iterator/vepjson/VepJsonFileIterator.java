@@ -19,18 +19,44 @@
 package org.forome.annotation.iterator.vepjson;
 
 import net.minidev.json.JSONObject;
+import org.forome.annotation.annotator.shard.AnnotatorShard;
 import org.forome.annotation.iterator.json.JsonFileIterator;
+import org.forome.annotation.utils.TailFileInputStream;
 import org.forome.core.struct.Chromosome;
 
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class VepJsonFileIterator extends JsonFileIterator {
 
+	//Первые две колонки исходной строки vcf (CHROM и POS) в поле input
+	private static final Pattern PATTERN_INPUT = Pattern.compile("\"input\"\\s*:\\s*\"([^\"\\\\]+)\\\\t(\\d+)\\\\t");
+
 	public VepJsonFileIterator(Path pathVepJson) {
 		super(pathVepJson);
 	}
 
+	/**
+	 * Только записи, исходная строка vcf которых относится к части кейса
+	 */
+	public VepJsonFileIterator(Path pathVepJson, AnnotatorShard shard) {
+		this(pathVepJson, null, shard);
+	}
+
+	/**
+	 * @param producer процесс, который в это время пишет vep.json: записи читаются по мере появления
+	 */
+	public VepJsonFileIterator(Path pathVepJson, TailFileInputStream.Producer producer, AnnotatorShard shard) {
+		super(
+				(producer != null) ? new TailFileInputStream(pathVepJson, producer) : getInputStream(pathVepJson),
+				pathVepJson.getFileName().toString().endsWith(".gz"),
+				(shard != null) ? line -> isShardLine(line, shard) : null
+		);
+	}
+
 	public VepJsonFileIterator(InputStream inputStream, boolean gzip) {
 		super(inputStream, gzip);
 	}
@@ -49,4 +75,30 @@ public class VepJsonFileIterator extends JsonFileIterator {
 		return value;
 	}
 
+	/**
+	 * Пропуск count записей поддерживаемых хромосом без разбора json
+	 */
+	public void skip(int count) throws NoSuchElementException {
+		skip(count, line -> {
+			Matcher matcher = PATTERN_INPUT.matcher(line);
+			if (matcher.find()) {
+				return Chromosome.isSupportChromosome(matcher.group(1));
+			} else {
+				return Chromosome.isSupportChromosome(parse(line).getAsString("seq_region_name"));
+			}
+		});
+	}
+
+	private static boolean isShardLine(String line, AnnotatorShard shard) {
+		Matcher matcher = PATTERN_INPUT.matcher(line);
+		if (!matcher.find()) {
+			throw new RuntimeException("Vep.json record has no input field, can not split by shard");
+		}
+		String contig = matcher.group(1);
+		if (!Chromosome.isSupportChromosome(contig)) {
+			return false;
+		}
+		return shard.contains(Chromosome.of(contig), Integer.parseInt(matcher.group(2)));
+	}
+
 }
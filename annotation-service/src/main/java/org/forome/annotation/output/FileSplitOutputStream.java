@@ -18,6 +18,7 @@
 
 package org.forome.annotation.output;
 
+import org.forome.annotation.utils.compression.ParallelBgzfOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +29,6 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.GZIPOutputStream;
 
 public class FileSplitOutputStream implements Closeable {
 
@@ -37,11 +37,22 @@ public class FileSplitOutputStream implements Closeable {
 	private final Path target;
 	private final int limit;
 
+	private final int compressThreads;
+	private final int compressBlockSize;
+
 	private int index;
 	private BufferedOutputStream activeOutputStream;
 	private int countLimit;
 
 	public FileSplitOutputStream(Path target, int limit) throws IOException {
+		this(target, limit, 0, ParallelBgzfOutputStream.MAX_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param compressThreads кол-во потоков сжатия (BGZF), 0 - кол-во ядер
+	 * @param compressBlockSize размер несжатых данных блока BGZF
+	 */
+	public FileSplitOutputStream(Path target, int limit, int compressThreads, int compressBlockSize) throws IOException {
 		if (!target.getFileName().toString().endsWith(".gz")) {
 			throw new IllegalArgumentException();
 		}
@@ -49,15 +60,18 @@ public class FileSplitOutputStream implements Closeable {
 		this.target = target;
 		this.limit = limit;
 
+		this.compressThreads = compressThreads;
+		this.compressBlockSize = compressBlockSize;
+
 		this.index = 0;
-		this.activeOutputStream = buildOutputStream(target, index);
+		this.activeOutputStream = buildOutputStream(index);
 		this.countLimit = 0;
 	}
 
 	public void writeLine(byte[] b) throws IOException {
 		if (countLimit >= limit) {
 			close(activeOutputStream);
-			activeOutputStream = buildOutputStream(target, ++index);
+			activeOutputStream = buildOutputStream(++index);
 			countLimit = 0;
 		}
 
@@ -70,7 +84,7 @@ public class FileSplitOutputStream implements Closeable {
 		activeOutputStream.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
 	}
 
-	private static BufferedOutputStream buildOutputStream(Path target, int index) throws IOException {
+	private BufferedOutputStream buildOutputStream(int index) throws IOException {
 		Path path;
 		if (index == 0) {
 			path = target;
@@ -84,7 +98,7 @@ public class FileSplitOutputStream implements Closeable {
 
 		log.debug("Build new output file: {}" + path);
 
-		OutputStream os = new GZIPOutputStream(Files.newOutputStream(path));
+		OutputStream os = new ParallelBgzfOutputStream(Files.newOutputStream(path), compressThreads, compressBlockSize);
 		return new BufferedOutputStream(os);
 	}
 
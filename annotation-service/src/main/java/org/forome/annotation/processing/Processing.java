@@ -21,17 +21,10 @@ package org.forome.annotation.processing;
 import graphql.ExecutionInput;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
-import graphql.annotations.AnnotationsSchemaCreator;
-import graphql.schema.GraphQLSchema;
-import net.minidev.json.JSONObject;
-import net.minidev.json.JSONStyle;
-import net.minidev.json.parser.JSONParser;
-import net.minidev.json.parser.ParseException;
-import org.apache.commons.io.IOUtils;
 import org.forome.annotation.data.anfisa.AnfisaConnector;
 import org.forome.annotation.data.anfisa.struct.AnfisaInput;
 import org.forome.annotation.data.anfisa.struct.AnfisaResult;
-import org.forome.annotation.processing.graphql.record.GRecord;
+import org.forome.annotation.processing.graphql.GraphQLEngine;
 import org.forome.annotation.processing.smavariant.SplitMAVariant;
 import org.forome.annotation.processing.statistics.StatisticsInstrumentation;
 import org.forome.annotation.processing.struct.GContext;
@@ -49,7 +42,6 @@ import org.forome.core.struct.sequence.Sequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -79,20 +71,8 @@ public class Processing {
 
 		this.anfisaConnector = anfisaConnector;
 
-		GraphQLSchema graphQLSchema = AnnotationsSchemaCreator.newAnnotationsSchema()
-				.query(GRecord.class)
-				.build();
-
-		graphQL = GraphQL
-				.newGraphQL(graphQLSchema)
-				.instrumentation(statisticsInstrumentation)
-				.build();
-
-		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("graphql/annotator/" + typeQuery.fileNameGraphQLQuery)) {
-			graphQLQuery = IOUtils.toString(inputStream, "utf8");
-		} catch (Throwable e) {
-			throw new RuntimeException(e);
-		}
+		graphQL = GraphQLEngine.build(statisticsInstrumentation);
+		graphQLQuery = GraphQLEngine.getQuery(typeQuery);
 	}
 
 	public AnfisaConnector getAnfisaConnector() {
@@ -124,8 +104,6 @@ public class Processing {
 			if (mCase == null) throw new IllegalArgumentException();
 			if (variant == null) throw new IllegalArgumentException();
 
-			JSONObject result = new JSONObject();
-
 			long t1 = System.currentTimeMillis();
 			AnfisaResult anfisaResult = anfisaConnector.build(
 					new AnfisaInput.Builder(mCase.assembly).withSamples(mCase).build(),
@@ -133,8 +111,6 @@ public class Processing {
 			);
 			anfisaStatistics.addTime(System.currentTimeMillis() - t1);
 
-			result.merge(anfisaResult.toJSON());
-
 			t1 = System.currentTimeMillis();
 			ExecutionResult graphQLExecutionResult = graphQL.execute(
 					ExecutionInput.newExecutionInput()
@@ -155,21 +131,11 @@ public class Processing {
 			}
 			graphqlStatistics.addTime(System.currentTimeMillis() - t1);
 
-			//TODO Ulitin V. удалить временный костыль, введен из-за проблем мержинга данных
-			JSONObject graphQLResult;
-			try {
-				graphQLResult = (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(
-						new JSONObject(graphQLExecutionResult.getData()).toJSONString(JSONStyle.NO_COMPRESS)
-				);
-			} catch (ParseException e) {
-				throw new RuntimeException(e);
-			}
-
-			result.merge(graphQLResult);
-
+			//Данные GraphQL не перегоняем через строку в JSONObject - слияние с результатом anfisa выполняется при выводе
 			return new ProcessingResult(
 					variant,
-					result
+					anfisaResult.toJSON(),
+					graphQLExecutionResult.getData()
 			);
 		} catch (Throwable e) {
 			throw new RuntimeException("Exception build variant: " + variant.toString(), e);
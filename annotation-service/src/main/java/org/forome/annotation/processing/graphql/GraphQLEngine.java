@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.processing.graphql;
+
+import graphql.ExecutionInput;
+import graphql.GraphQL;
+import graphql.annotations.AnnotationsSchemaCreator;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.schema.GraphQLSchema;
+import org.apache.commons.io.IOUtils;
+import org.forome.annotation.processing.TypeQuery;
+import org.forome.annotation.processing.graphql.record.GRecord;
+
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Общие на весь процесс схема GraphQL, тексты запросов и кеш разобранных и провалидированных запросов.
+ * Построение схемы через рефлексию и разбор запроса дорогие - делаем их один раз, а не на каждый Processing и вариант
+ */
+public class GraphQLEngine {
+
+	private static class SchemaHolder {
+		private static final GraphQLSchema SCHEMA = AnnotationsSchemaCreator.newAnnotationsSchema()
+				.query(GRecord.class)
+				.build();
+	}
+
+	private static final Map<TypeQuery, String> QUERIES = loadQueries();
+
+	private static final PreparsedDocumentProvider PREPARSED_DOCUMENT_PROVIDER = new CachedPreparsedDocumentProvider();
+
+	private GraphQLEngine() {
+	}
+
+	public static GraphQLSchema getSchema() {
+		return SchemaHolder.SCHEMA;
+	}
+
+	public static String getQuery(TypeQuery typeQuery) {
+		return QUERIES.get(typeQuery);
+	}
+
+	public static GraphQL build(Instrumentation instrumentation) {
+		return GraphQL
+				.newGraphQL(getSchema())
+				.instrumentation(instrumentation)
+				.preparsedDocumentProvider(PREPARSED_DOCUMENT_PROVIDER)
+				.build();
+	}
+
+	private static Map<TypeQuery, String> loadQueries() {
+		Map<TypeQuery, String> queries = new EnumMap<>(TypeQuery.class);
+		for (TypeQuery typeQuery : TypeQuery.values()) {
+			try (InputStream inputStream = GraphQLEngine.class.getClassLoader().getResourceAsStream("graphql/annotator/" + typeQuery.fileNameGraphQLQuery)) {
+				queries.put(typeQuery, IOUtils.toString(inputStream, "utf8"));
+			} catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * Кеш по тексту запроса, запросов немного (по одному на TypeQuery) - размер не ограничиваем.
+	 * Запросы с ошибками разбора не кешируются
+	 */
+	private static class CachedPreparsedDocumentProvider implements PreparsedDocumentProvider {
+
+		private final ConcurrentMap<String, PreparsedDocumentEntry> documents = new ConcurrentHashMap<>();
+
+		@Override
+		public PreparsedDocumentEntry getDocument(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+			PreparsedDocumentEntry entry = documents.get(executionInput.getQuery());
+			if (entry != null) {
+				return entry;
+			}
+			entry = parseAndValidateFunction.apply(executionInput);
+			if (!entry.hasErrors()) {
+				documents.putIfAbsent(executionInput.getQuery(), entry);
+			}
+			return entry;
+		}
+	}
+}
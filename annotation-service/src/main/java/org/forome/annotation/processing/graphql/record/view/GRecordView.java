@@ -77,9 +77,7 @@ public class GRecordView {
 	@GraphQLField
 	@GraphQLName("facets")
 	public List<GRecordViewFacet> getFacets() {
-		List<DbNSFPItem> items = gContext.anfisaConnector.dbNSFPConnector.getAll(
-				gContext.source, variant
-		);
+		List<DbNSFPItem> items = gContext.executeContext.getDbNSFP();
 
 		List<GRecordViewFacet> facets = items.stream()
 				.flatMap(item -> item.facets.stream())
@@ -93,9 +91,7 @@ public class GRecordView {
 	@GraphQLField
 	@GraphQLName("transcripts")
 	public List<GRecordViewTranscript> getTranscripts() {
-		List<DbNSFPItem> items = gContext.anfisaConnector.dbNSFPConnector.getAll(
-				gContext.source, variant
-		);
+		List<DbNSFPItem> items = gContext.executeContext.getDbNSFP();
 
 		if (variant instanceof VariantVep) {
 			VariantVep variantVep = (VariantVep) variant;
@@ -19,10 +19,12 @@
 package org.forome.annotation.processing.struct;
 
 import org.forome.annotation.data.conservation.ConservationData;
+import org.forome.annotation.data.dbnsfp.struct.DbNSFPItem;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.astorage.core.data.Conservation;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -49,4 +51,8 @@ public class ExecuteContext {
 		});
 		return oConservation.orElse(null);
 	}
+
+	public List<DbNSFPItem> getDbNSFP() {
+		return gContext.context.getDbNSFP(gContext.anfisaConnector.dbNSFPConnector, gContext.source);
+	}
 }
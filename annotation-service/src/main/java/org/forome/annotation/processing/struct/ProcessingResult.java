@@ -19,20 +19,54 @@
 package org.forome.annotation.processing.struct;
 
 import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import org.forome.annotation.processing.utils.JSONMergeUtils;
 import org.forome.annotation.struct.variant.Variant;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
 public class ProcessingResult {
 
 	public final Variant variant;
 
 	private final JSONObject out;
 
+	//Данные GraphQL, сливаются с out только при выводе
+	private final Map<String, Object> graphQLData;
+
 	public ProcessingResult(Variant variant, JSONObject out) {
+		this(variant, out, Collections.emptyMap());
+	}
+
+	public ProcessingResult(Variant variant, JSONObject out, Map<String, Object> graphQLData) {
 		this.variant = variant;
 		this.out = out;
+		this.graphQLData = (graphQLData != null) ? graphQLData : Collections.emptyMap();
+	}
+
+	public JSONObject toJSON() {
+		if (graphQLData.isEmpty()) {
+			return out;
+		}
+		return JSONMergeUtils.merge(out, graphQLData);
+	}
+
+	/**
+	 * Запись записи в поток за один проход, без промежуточных JSONObject и строки
+	 */
+	public void writeJSON(Appendable appendable) throws IOException {
+		JSONMergeUtils.write(out, graphQLData, appendable, JSONValue.COMPRESSION);
 	}
 
-	public JSONObject toJSON(){
-		return out;
+	public String toJSONString() {
+		StringBuilder builder = new StringBuilder();
+		try {
+			writeJSON(builder);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return builder.toString();
 	}
 }
@@ -0,0 +1,172 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.processing.utils;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Слияние двух json-деревьев по правилам JSONObject.merge: объекты сливаются рекурсивно,
+ * массивы склеиваются, одинаковые значения допустимы, разные - ошибка.
+ * В отличие от JSONObject.merge работает с любыми Map/List (например, с данными GraphQL) без их перегонки в JSONObject
+ */
+public class JSONMergeUtils {
+
+	/**
+	 * Запись результата слияния сразу в поток, без построения промежуточного дерева и строки
+	 */
+	public static void write(Map<String, ?> o1, Map<String, ?> o2, Appendable out, JSONStyle style) throws IOException {
+		style.objectStart(out);
+		boolean first = true;
+		for (Map.Entry<String, ?> entry : o1.entrySet()) {
+			Object value1 = entry.getValue();
+			Object value2 = (o2 == null) ? null : o2.get(entry.getKey());
+			if (value1 == null && value2 == null && style.ignoreNull()) continue;
+
+			first = writeKey(entry.getKey(), first, out, style);
+			writeValue(value1, value2, out, style);
+			style.objectElmStop(out);
+		}
+		if (o2 != null) {
+			for (Map.Entry<String, ?> entry : o2.entrySet()) {
+				if (o1.containsKey(entry.getKey())) continue;
+				if (entry.getValue() == null && style.ignoreNull()) continue;
+
+				first = writeKey(entry.getKey(), first, out, style);
+				JSONValue.writeJSONString(entry.getValue(), out, style);
+				style.objectElmStop(out);
+			}
+		}
+		style.objectStop(out);
+	}
+
+	public static JSONObject merge(Map<String, ?> o1, Map<String, ?> o2) {
+		JSONObject result = new JSONObject();
+		for (Map.Entry<String, ?> entry : o1.entrySet()) {
+			Object value2 = (o2 == null) ? null : o2.get(entry.getKey());
+			result.put(entry.getKey(), mergeValue(entry.getValue(), value2));
+		}
+		if (o2 != null) {
+			for (Map.Entry<String, ?> entry : o2.entrySet()) {
+				if (o1.containsKey(entry.getKey())) continue;
+				result.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	private static Object mergeValue(Object value1, Object value2) {
+		if (value2 == null) return value1;
+		if (value1 == null) return value2;
+		if (value1 instanceof List) {
+			JSONArray result = new JSONArray();
+			result.addAll((List<?>) value1);
+			if (value2 instanceof List) {
+				result.addAll((List<?>) value2);
+			} else {
+				result.add(value2);
+			}
+			return result;
+		}
+		if (value1 instanceof Map) {
+			return merge((Map<String, ?>) value1, toMap(value2));
+		}
+		checkEquals(value1, value2);
+		return value1;
+	}
+
+	private static void writeValue(Object value1, Object value2, Appendable out, JSONStyle style) throws IOException {
+		if (value2 == null) {
+			JSONValue.writeJSONString(value1, out, style);
+		} else if (value1 == null) {
+			JSONValue.writeJSONString(value2, out, style);
+		} else if (value1 instanceof List) {
+			style.arrayStart(out);
+			boolean first = writeElements((List<?>) value1, true, out, style);
+			if (value2 instanceof List) {
+				writeElements((List<?>) value2, first, out, style);
+			} else {
+				writeElement(value2, first, out, style);
+			}
+			style.arrayStop(out);
+		} else if (value1 instanceof Map) {
+			write((Map<String, ?>) value1, toMap(value2), out, style);
+		} else {
+			checkEquals(value1, value2);
+			JSONValue.writeJSONString(value1, out, style);
+		}
+	}
+
+	private static boolean writeKey(String key, boolean first, Appendable out, JSONStyle style) throws IOException {
+		if (first) {
+			style.objectFirstStart(out);
+		} else {
+			style.objectNext(out);
+		}
+		if (style.mustProtectKey(key)) {
+			out.append('"');
+			JSONValue.escape(key, out, style);
+			out.append('"');
+		} else {
+			out.append(key);
+		}
+		out.append(':');
+		return false;
+	}
+
+	private static boolean writeElements(List<?> values, boolean first, Appendable out, JSONStyle style) throws IOException {
+		for (Object value : values) {
+			first = writeElement(value, first, out, style);
+		}
+		return first;
+	}
+
+	private static boolean writeElement(Object value, boolean first, Appendable out, JSONStyle style) throws IOException {
+		if (first) {
+			style.arrayfirstObject(out);
+		} else {
+			style.arrayNextElm(out);
+		}
+		JSONValue.writeJSONString(value, out, style);
+		style.arrayObjectEnd(out);
+		return false;
+	}
+
+	private static Map<String, ?> toMap(Object value) {
+		if (!(value instanceof Map)) {
+			throw new RuntimeException("JSON merge can not merge JSONObject with " + value.getClass());
+		}
+		return (Map<String, ?>) value;
+	}
+
+	/**
+	 * Числа из разных источников могут отличаться типом (Float/Double, Integer/Long) - сравниваем и по json-представлению
+	 */
+	private static void checkEquals(Object value1, Object value2) {
+		if (value1.equals(value2)) return;
+		if (JSONValue.toJSONString(value1).equals(JSONValue.toJSONString(value2))) return;
+		throw new RuntimeException("JSON merge can not merge " + value1.getClass() + " with " + value2.getClass());
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.ensemblvep.cache;
+
+import org.forome.annotation.utils.compression.GZIPCompression;
+import org.rocksdb.*;
+import org.rocksdb.util.SizeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранилище ответов VEP на диске.
+ * data: ключ варианта -> [время последнего обращения: 8 байт][gzip json]
+ * access: [время последнего обращения: 8 байт][ключ варианта] - порядок вытеснения
+ * Базу на запись держит один процесс (блокировка RocksDB), остальные могут открыть ее только на чтение
+ */
+public class EnsemblVepCacheDatabase implements AutoCloseable {
+
+	private final static Logger log = LoggerFactory.getLogger(EnsemblVepCacheDatabase.class);
+
+	public static final String COLUMN_FAMILY_DATA = "data";
+	public static final String COLUMN_FAMILY_ACCESS = "access";
+
+	//Время обращения обновляем не чаще, чтобы чтение не превращалось в запись
+	private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	private static final int EVICT_BATCH_SIZE = 1000;
+
+	static {
+		RocksDB.loadLibrary();
+	}
+
+	public final Path path;
+
+	//Открыта только на чтение: время обращения не обновляется, запись и вытеснение недоступны
+	public final boolean readOnly;
+
+	private final DBOptions options;
+	private final ColumnFamilyOptions columnFamilyOptions;
+	private final RocksDB rocksDB;
+	private final List<ColumnFamilyHandle> columnFamilyHandles;
+	private final ColumnFamilyHandle dataColumnFamily;
+	private final ColumnFamilyHandle accessColumnFamily;
+
+	private final AtomicLong entries;
+
+	public EnsemblVepCacheDatabase(Path path) throws RocksDBException {
+		this(path, false);
+	}
+
+	public EnsemblVepCacheDatabase(Path path, boolean readOnly) throws RocksDBException {
+		this.path = path;
+		this.readOnly = readOnly;
+
+		if (!readOnly) {
+			try {
+				Files.createDirectories(path);
+			} catch (Exception e) {
+				throw new RocksDBException("Exception create directory: " + path + ", " + e.getMessage());
+			}
+		}
+
+		this.options = new DBOptions()
+				.setCreateIfMissing(true)
+				.setCreateMissingColumnFamilies(true)
+				.setInfoLogLevel(InfoLogLevel.WARN_LEVEL)
+				.setMaxTotalWalSize(100L * SizeUnit.MB);
+		//Значения уже сжаты gzip
+		this.columnFamilyOptions = new ColumnFamilyOptions()
+				.setCompressionType(CompressionType.NO_COMPRESSION);
+
+		List<ColumnFamilyDescriptor> columnFamilyDescriptors = Arrays.asList(
+				new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, columnFamilyOptions),
+				new ColumnFamilyDescriptor(COLUMN_FAMILY_DATA.getBytes(StandardCharsets.UTF_8), columnFamilyOptions),
+				new ColumnFamilyDescriptor(COLUMN_FAMILY_ACCESS.getBytes(StandardCharsets.UTF_8), columnFamilyOptions)
+		);
+		this.columnFamilyHandles = new ArrayList<>();
+		try {
+			if (readOnly) {
+				this.rocksDB = RocksDB.openReadOnly(options, path.toString(), columnFamilyDescriptors, columnFamilyHandles);
+			} else {
+				this.rocksDB = RocksDB.open(options, path.toString(), columnFamilyDescriptors, columnFamilyHandles);
+			}
+		} catch (RocksDBException e) {
+			columnFamilyOptions.close();
+			options.close();
+			throw e;
+		}
+		this.dataColumnFamily = columnFamilyHandles.get(1);
+		this.accessColumnFamily = columnFamilyHandles.get(2);
+
+		this.entries = new AtomicLong(rocksDB.getLongProperty(dataColumnFamily, "rocksdb.estimate-num-keys"));
+		log.debug("Load vep cache: {}, entries: {}, read only: {}", path, entries.get(), readOnly);
+	}
+
+	/**
+	 * Оценка кол-ва вариантов в кеше
+	 */
+	public long getEntries() {
+		return entries.get();
+	}
+
+	public String get(byte[] key) throws RocksDBException {
+		byte[] value = rocksDB.get(dataColumnFamily, key);
+		if (value == null) {
+			return null;
+		}
+
+		long accessTime = ByteBuffer.wrap(value).getLong();
+		long now = System.currentTimeMillis();
+		if (!readOnly && now - accessTime > TOUCH_INTERVAL_MILLIS) {
+			try (WriteBatch batch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+				batch.delete(accessColumnFamily, buildAccessKey(accessTime, key));
+				batch.put(accessColumnFamily, buildAccessKey(now, key), new byte[0]);
+				value = Arrays.copyOf(value, value.length);
+				ByteBuffer.wrap(value).putLong(now);
+				batch.put(dataColumnFamily, key, value);
+				rocksDB.write(writeOptions, batch);
+			}
+		}
+
+		return GZIPCompression.decompress(Arrays.copyOfRange(value, Long.BYTES, value.length));
+	}
+
+	public void put(byte[] key, String json) throws RocksDBException {
+		checkWritable();
+		byte[] compressed = GZIPCompression.compress(json);
+
+		//Проверка наличия и запись под одной блокировкой: иначе параллельные промахи по одному ключу
+		//посчитали бы вариант дважды
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			byte[] value = ByteBuffer.allocate(Long.BYTES + compressed.length)
+					.putLong(now)
+					.put(compressed)
+					.array();
+
+			byte[] oldValue = rocksDB.get(dataColumnFamily, key);
+			try (WriteBatch batch = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+				if (oldValue != null) {
+					batch.delete(accessColumnFamily, buildAccessKey(ByteBuffer.wrap(oldValue).getLong(), key));
+				}
+				batch.put(dataColumnFamily, key, value);
+				batch.put(accessColumnFamily, buildAccessKey(now, key), new byte[0]);
+				rocksDB.write(writeOptions, batch);
+			}
+			if (oldValue == null) {
+				entries.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Вытесняет давно не запрашиваемые варианты, пока их не станет не больше maxEntries
+	 *
+	 * @return кол-во удаленных вариантов
+	 */
+	public long evict(long maxEntries) throws RocksDBException {
+		checkWritable();
+		long excess = entries.get() - maxEntries;
+		if (excess <= 0) {
+			return 0;
+		}
+		//Удаляем с запасом в 1%, чтобы не вытеснять после каждой вставки
+		long target = excess + maxEntries / 100;
+
+		long removed = 0;
+		try (RocksIterator iterator = rocksDB.newIterator(accessColumnFamily);
+			 WriteOptions writeOptions = new WriteOptions()) {
+			WriteBatch batch = new WriteBatch();
+			try {
+				iterator.seekToFirst();
+				while (iterator.isValid() && removed < target) {
+					byte[] accessKey = iterator.key();
+					long accessTime = ByteBuffer.wrap(accessKey).getLong();
+					byte[] key = Arrays.copyOfRange(accessKey, Long.BYTES, accessKey.length);
+
+					batch.delete(accessColumnFamily, accessKey);
+					byte[] value = rocksDB.get(dataColumnFamily, key);
+					if (value != null && ByteBuffer.wrap(value).getLong() == accessTime) {
+						batch.delete(dataColumnFamily, key);
+						removed++;
+					}
+
+					if (batch.count() >= EVICT_BATCH_SIZE) {
+						rocksDB.write(writeOptions, batch);
+						batch.close();
+						batch = new WriteBatch();
+					}
+					iterator.next();
+				}
+				rocksDB.write(writeOptions, batch);
+			} finally {
+				batch.close();
+			}
+		}
+
+		entries.addAndGet(-removed);
+		return removed;
+	}
+
+	private void checkWritable() throws RocksDBException {
+		if (readOnly) {
+			throw new RocksDBException("Vep cache is read only: " + path);
+		}
+	}
+
+	private static byte[] buildAccessKey(long accessTime, byte[] key) {
+		return ByteBuffer.allocate(Long.BYTES + key.length)
+				.putLong(accessTime)
+				.put(key)
+				.array();
+	}
+
+	@Override
+	public void close() {
+		for (ColumnFamilyHandle columnFamilyHandle : columnFamilyHandles) {
+			columnFamilyHandle.close();
+		}
+		rocksDB.close();
+		columnFamilyOptions.close();
+		options.close();
+	}
+}
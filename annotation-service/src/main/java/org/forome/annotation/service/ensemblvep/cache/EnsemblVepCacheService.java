@@ -0,0 +1,282 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.ensemblvep.cache;
+
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.JSONParser;
+import org.forome.annotation.config.ensemblvep.EnsemblVepCacheConfig;
+import org.forome.annotation.service.ensemblvep.EnsemblVepService;
+import org.forome.annotation.service.ensemblvep.external.EnsemblVepHttpClient;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.DefaultThreadFactory;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.rocksdb.RocksDBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Постоянный кеш перед EnsemblVepService: повторные запросы варианта читаются с диска.
+ * Ошибки кеша не прерывают аннотацию - вариант запрашивается у исходного сервиса.
+ * Если база занята другим процессом, она открывается только на чтение, если и это не удалось - работаем без кеша.
+ */
+public class EnsemblVepCacheService implements EnsemblVepService {
+
+	private final static Logger log = LoggerFactory.getLogger(EnsemblVepCacheService.class);
+
+	//Формы запроса: аллель последовательностью (A/G, -) или символьный аллель структурного варианта (<DEL>)
+	public static final String FORM_SEQUENCE = "seq";
+	public static final String FORM_SYMBOLIC = "sv";
+
+	//Ответ зависит от параметров запроса к VEP, при их смене старые записи не используются и со временем вытесняются
+	private static final String QUERY_VERSION = Integer.toHexString(EnsemblVepHttpClient.PARAMS.hashCode());
+
+	public class Stat {
+
+		public final long hits;
+		public final long misses;
+		public final long evictions;
+		public final long entries;
+
+		private Stat(long hits, long misses, long evictions, long entries) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.entries = entries;
+		}
+
+		public double getHitRate() {
+			long requests = hits + misses;
+			return (requests == 0) ? 1.0D : hits / (double) requests;
+		}
+
+		@Override
+		public String toString() {
+			return "Stat(" +
+					"entries: " + entries +
+					", hits: " + hits +
+					", misses: " + misses +
+					", evictions: " + evictions +
+					", hit rate: " + String.format("%.3f", getHitRate()) +
+					')';
+		}
+	}
+
+	private final EnsemblVepService ensemblVepService;
+	private final Assembly assembly;
+	private final long maxEntries;
+
+	//null - кеш недоступен
+	private final EnsemblVepCacheDatabase database;
+
+	//Сжатие и запись в базу - не в потоке ввода-вывода http-клиента
+	private final ExecutorService writeExecutor;
+	private final ExecutorService evictExecutor;
+	private final AtomicBoolean evicting;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+
+	public EnsemblVepCacheService(
+			EnsemblVepService ensemblVepService,
+			Assembly assembly,
+			EnsemblVepCacheConfig cacheConfig,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this.ensemblVepService = ensemblVepService;
+		this.assembly = assembly;
+		this.maxEntries = cacheConfig.maxEntries;
+
+		this.database = openDatabase(cacheConfig.path);
+
+		this.writeExecutor = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new DefaultThreadFactory("vep-cache-write", uncaughtExceptionHandler)
+		);
+		this.evictExecutor = Executors.newSingleThreadExecutor(
+				new DefaultThreadFactory("vep-cache-evict", uncaughtExceptionHandler)
+		);
+		this.evicting = new AtomicBoolean(false);
+
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+
+		scheduleEvict();
+	}
+
+	private static EnsemblVepCacheDatabase openDatabase(Path path) {
+		try {
+			return new EnsemblVepCacheDatabase(path);
+		} catch (Throwable e) {
+			log.warn("Exception open vep cache: {} ({}), try read only", path, e.getMessage());
+		}
+		try {
+			return new EnsemblVepCacheDatabase(path, true);
+		} catch (Throwable e) {
+			log.warn("Exception open vep cache: {} ({}), continue without cache", path, e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getVepJson(Variant variant) {
+		return getVepJson(
+				buildKey(assembly, variant.chromosome, variant.getStart(), variant.end, variant.getStrAlt()),
+				() -> ensemblVepService.getVepJson(variant)
+		);
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getVepJson(Chromosome chromosome, int start, int end, String alternative) {
+		return getVepJson(
+				buildKey(assembly, chromosome, start, end, alternative),
+				() -> ensemblVepService.getVepJson(chromosome, start, end, alternative)
+		);
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getVepJson(String id) {
+		return getVepJson(
+				buildKey(assembly, id),
+				() -> ensemblVepService.getVepJson(id)
+		);
+	}
+
+	private CompletableFuture<JSONObject> getVepJson(byte[] key, Supplier<CompletableFuture<JSONObject>> loader) {
+		JSONObject value = read(key);
+		if (value != null) {
+			hits.incrementAndGet();
+			return CompletableFuture.completedFuture(value);
+		}
+
+		misses.incrementAndGet();
+		return loader.get().thenApplyAsync(vepJson -> {
+			//Сериализуем до выдачи результата - дальше обработка дополняет json
+			write(key, vepJson);
+			return vepJson;
+		}, writeExecutor);
+	}
+
+	private JSONObject read(byte[] key) {
+		if (database == null) {
+			return null;
+		}
+		try {
+			String value = database.get(key);
+			if (value == null) {
+				return null;
+			}
+			return (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(value);
+		} catch (Throwable e) {
+			log.warn("Exception read vep cache", e);
+			return null;
+		}
+	}
+
+	private void write(byte[] key, JSONObject vepJson) {
+		if (database == null || database.readOnly) {
+			return;
+		}
+		try {
+			database.put(key, vepJson.toJSONString());
+		} catch (Throwable e) {
+			log.warn("Exception write vep cache", e);
+			return;
+		}
+		if (database.getEntries() > maxEntries) {
+			scheduleEvict();
+		}
+	}
+
+	private void scheduleEvict() {
+		if (database == null || database.readOnly) {
+			return;
+		}
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		evictExecutor.execute(() -> {
+			try {
+				long removed = database.evict(maxEntries);
+				if (removed > 0) {
+					evictions.addAndGet(removed);
+					log.debug("Evict vep cache: {}", removed);
+				}
+			} catch (RocksDBException e) {
+				log.warn("Exception evict vep cache", e);
+			} finally {
+				evicting.set(false);
+			}
+		});
+	}
+
+	public Stat getStat() {
+		return new Stat(hits.get(), misses.get(), evictions.get(), (database != null) ? database.getEntries() : 0);
+	}
+
+	/**
+	 * Нормализованный ключ варианта, общий для запросов сервиса и импорта из vep.json.
+	 * Содержит версию параметров запроса и форму аллеля: ответы VEP на них различаются
+	 */
+	public static byte[] buildKey(Assembly assembly, Chromosome chromosome, int start, int end, String alternative) {
+		String alt = (alternative == null || alternative.isEmpty()) ? "-" : alternative.toUpperCase();
+		return String.format("%s:%s:%s:%s:%s:%s:%s", assembly.name(), QUERY_VERSION, getForm(alt), chromosome.getChar(), start, end, alt)
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	public static byte[] buildKey(Assembly assembly, String id) {
+		return String.format("%s:%s:id:%s", assembly.name(), QUERY_VERSION, id)
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String getForm(String alternative) {
+		return (alternative.startsWith("<") && alternative.endsWith(">")) ? FORM_SYMBOLIC : FORM_SEQUENCE;
+	}
+
+	@Override
+	public void close() {
+		log.debug("vep cache: {}", getStat());
+		ensemblVepService.close();
+
+		//Дожидаемся текущих записей и вытеснения, иначе они пойдут по закрытой базе
+		writeExecutor.shutdown();
+		evictExecutor.shutdown();
+		try {
+			writeExecutor.awaitTermination(1, TimeUnit.MINUTES);
+			evictExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (database != null) {
+			database.close();
+		}
+	}
+}
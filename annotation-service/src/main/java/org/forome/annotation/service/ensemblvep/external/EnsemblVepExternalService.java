@@ -20,40 +20,82 @@ package org.forome.annotation.service.ensemblvep.external;
 
 import net.minidev.json.JSONObject;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
+import org.forome.annotation.service.source.struct.Source;
+import org.forome.annotation.struct.Allele;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.sequence.Sequence;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 
 public class EnsemblVepExternalService implements EnsemblVepService {
 
+	//Более длинные регионы (крупные CNV) запрашиваем одиночным GET, чтобы не раздувать тело пакетного запроса
+	private static final int MAX_BATCH_REFERENCE_LENGTH = 10_000;
+
 	private final EnsemblVepHttpClient ensemblVepHttpClient;
 
+	//Референс GRCh37 для пакетных запросов, null - только одиночные запросы
+	private final Source referenceSource;
+
 	public EnsemblVepExternalService(Thread.UncaughtExceptionHandler uncaughtExceptionHandler) throws IOException {
-		this.ensemblVepHttpClient = new EnsemblVepHttpClient(uncaughtExceptionHandler);
+		this(uncaughtExceptionHandler, null);
+	}
+
+	public EnsemblVepExternalService(Thread.UncaughtExceptionHandler uncaughtExceptionHandler, Source referenceSource) throws IOException {
+		this(new EnsemblVepHttpClient(uncaughtExceptionHandler), referenceSource);
+	}
+
+	EnsemblVepExternalService(EnsemblVepHttpClient ensemblVepHttpClient, Source referenceSource) {
+		this.ensemblVepHttpClient = ensemblVepHttpClient;
+		this.referenceSource = referenceSource;
 	}
 
 	@Override
 	public CompletableFuture<JSONObject> getVepJson(Variant variant) {
-		String region = String.format("%s:%s:%s", variant.chromosome.getChar(), variant.getStart(), variant.end);
-		String endpoint = String.format("/vep/human/region/%s/%s?hgvs=true&canonical=true&merged=true&protein=true&variant_class=true", region, variant.getStrAlt());
-		return ensemblVepHttpClient.request(endpoint).thenApply(jsonArray -> (JSONObject) jsonArray.get(0));
+		return getVepJson(variant.chromosome, variant.getStart(), variant.end, variant.getStrAlt());
 	}
 
 	@Override
 	public CompletableFuture<JSONObject> getVepJson(Chromosome chromosome, int start, int end, String alternative) {
 		String region = String.format("%s:%s:%s", chromosome.getChar(), start, end);
-		String endpoint = String.format("/vep/human/region/%s/%s?hgvs=true&canonical=true&merged=true&protein=true&variant_class=true", region, alternative);
+		String endpoint = EnsemblVepHttpClient.buildEndpoint(String.format("/vep/human/region/%s/%s", region, alternative));
+
+		//Пакетный запрос требует явного референса, его Ensembl для одиночного GET берет сам
+		String reference = getReference(chromosome, start, end);
+		if (reference != null) {
+			String input = String.format("%s %s %s %s/%s +", chromosome.getChar(), start, end, reference, alternative);
+			return ensemblVepHttpClient.requestRegion(input, endpoint);
+		}
 		return ensemblVepHttpClient.request(endpoint).thenApply(jsonArray -> (JSONObject) jsonArray.get(0));
 	}
 
 	@Override
 	public CompletableFuture<JSONObject> getVepJson(String id) {
-		String endpoint = String.format("/vep/human/id/%s?hgvs=true&canonical=true&merged=true&protein=true&variant_class=true", id);
+		String endpoint = EnsemblVepHttpClient.buildEndpoint(String.format("/vep/human/id/%s", id));
 		return ensemblVepHttpClient.request(endpoint).thenApply(jsonArray -> (JSONObject) jsonArray.get(0));
 	}
 
+	private String getReference(Chromosome chromosome, int start, int end) {
+		if (referenceSource == null) {
+			return null;
+		}
+		if (start > end) {
+			//Вставка
+			return Allele.EMPTY.getBaseString();
+		}
+		if (end - start + 1 > MAX_BATCH_REFERENCE_LENGTH) {
+			return null;
+		}
+		Sequence sequence = referenceSource.getFastaSequence(Interval.of(chromosome, start, end));
+		if (sequence == null) {
+			return null;
+		}
+		return sequence.getValue().toUpperCase();
+	}
+
 	@Override
 	public void close() {
 		ensemblVepHttpClient.close();
@@ -21,19 +21,22 @@ package org.forome.annotation.service.ensemblvep.external;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import net.minidev.json.parser.JSONParser;
-import org.apache.http.HttpEntity;
+import org.apache.http.Header;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
-import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
+import org.forome.annotation.exception.AnnotatorException;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,168 +44,436 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedDeque;
-
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Клиент Ensembl REST VEP.
+ * Запросы по регионам с известным референсом копятся и отправляются пачками (POST /vep/human/region),
+ * остальные - одиночными GET. Частоту запросов ограничивает TokenBucket, на 429 выдерживается Retry-After,
+ * на ошибки - повтор с экспоненциальной задержкой. Соединения общие (keep-alive) на весь клиент
+ */
 public class EnsemblVepHttpClient implements Closeable {
 
 	private final static Logger log = LoggerFactory.getLogger(EnsemblVepHttpClient.class);
 
-	private class QueueRequest {
+	public static final URI DEFAULT_URL = URI.create("http://grch37.rest.ensembl.org");
+
+	//Параметры запроса определяют состав ответа, от них зависит ключ кеша ответов
+	public static final String PARAMS = "hgvs=true&canonical=true&merged=true&protein=true&variant_class=true";
+
+	private static final int MAX_REQUEST_IN_SECOND = 10;
+
+	//Ограничение Ensembl на кол-во вариантов в одном POST
+	private static final int MAX_BATCH_SIZE = 200;
 
-		public final String endpoint;
-		public final CompletableFuture<JSONArray> future;
+	private static final int MAX_ATTEMPTS = 8;
+	private static final long BACKOFF_BASE = 500L;
+	private static final long BACKOFF_MAX = 60 * 1000L;
 
-		public QueueRequest(String endpoint, CompletableFuture<JSONArray> future) {
+	private static final long IDLE_PAUSE = 10L;
+
+	/**
+	 * Вариант для пакетного запроса, input - строка в формате VEP default: "1 881907 881906 -/C +"
+	 */
+	private static class RegionRequest {
+
+		final String input;
+		final String endpoint;
+		final CompletableFuture<JSONObject> future;
+
+		RegionRequest(String input, String endpoint, CompletableFuture<JSONObject> future) {
+			this.input = input;
 			this.endpoint = endpoint;
 			this.future = future;
 		}
 	}
 
-	private static String HOST = "grch37.rest.ensembl.org";
+	/**
+	 * Один http-запрос: одиночный GET (endpoint) или пачка регионов (regions)
+	 */
+	private static class Call implements Delayed {
+
+		final String endpoint;
+		final CompletableFuture<JSONArray> future;
 
-	private static int MAX_REQUEST_IN_SECOND = 10;
-	private static long REQUEST_PAUSE = 1000L / MAX_REQUEST_IN_SECOND;
+		final List<RegionRequest> regions;
 
-	private final RequestConfig requestConfig;
-	private final PoolingNHttpClientConnectionManager connectionManager;
+		int attempt;
+		long readyAt;
 
+		Call(String endpoint, CompletableFuture<JSONArray> future) {
+			this.endpoint = endpoint;
+			this.future = future;
+			this.regions = null;
+		}
+
+		Call(List<RegionRequest> regions) {
+			this.endpoint = null;
+			this.future = null;
+			this.regions = regions;
+		}
+
+		boolean isBatch() {
+			return regions != null;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(readyAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return Long.compare(readyAt, ((Call) o).readyAt);
+		}
+
+		@Override
+		public String toString() {
+			return isBatch() ? "batch(" + regions.size() + ")" : endpoint;
+		}
+	}
+
+	private final URI url;
 	private final HttpHost httpHost;
 
-	private final ConcurrentLinkedDeque<QueueRequest> qequeRequests;
+	private final CloseableHttpAsyncClient httpClient;
+
+	private final TokenBucket tokenBucket;
+
+	private final DelayQueue<Call> calls;
+	private final ConcurrentLinkedQueue<RegionRequest> regions;
+
+	private final Thread dispatcher;
 
-	private boolean active = true;
+	private volatile boolean active = true;
+
+	//Пока true, диспетчер не отправляет запросы, а только копит их (для тестов)
+	private volatile boolean suspended;
 
 	private Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
 
 	protected EnsemblVepHttpClient(
 			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
 	) throws IOException {
-		requestConfig = RequestConfig.custom()
+		this(DEFAULT_URL, MAX_REQUEST_IN_SECOND, uncaughtExceptionHandler);
+	}
+
+	protected EnsemblVepHttpClient(
+			URI url,
+			double maxRequestInSecond,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) throws IOException {
+		this.url = url;
+		this.httpHost = new HttpHost(url.getHost(), url.getPort(), url.getScheme());
+
+		RequestConfig requestConfig = RequestConfig.custom()
 				.setConnectTimeout(2000)//Таймаут на подключение
 				.setSocketTimeout(1 * 60 * 1000)//Таймаут между пакетами
 				.setConnectionRequestTimeout(1 * 60 * 1000)//Таймаут на ответ
 				.build();
 
-		connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+		PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
 		connectionManager.setMaxTotal(100);
 		connectionManager.setDefaultMaxPerRoute(100);
 
-		httpHost = new HttpHost(HOST);
+		this.httpClient = HttpAsyncClients.custom()
+				.setDefaultRequestConfig(requestConfig)
+				.setConnectionManager(connectionManager)
+				.build();
+		this.httpClient.start();
+
+		this.tokenBucket = new TokenBucket(maxRequestInSecond, (int) Math.max(1, maxRequestInSecond));
 
-		qequeRequests = new ConcurrentLinkedDeque<>();
+		this.calls = new DelayQueue<>();
+		this.regions = new ConcurrentLinkedQueue<>();
 
 		this.uncaughtExceptionHandler = uncaughtExceptionHandler;
 
-		Thread thread = new Thread(new Runnable() {
-			@Override
-			public void run() {
-				while (active) {
-					execute();
-					try {
-						Thread.sleep(REQUEST_PAUSE);
-					} catch (InterruptedException e) {
-					}
-				}
-			}
-		});
-		thread.setDaemon(true);
-		thread.start();
+		this.dispatcher = new Thread(this::dispatch, "ensembl-vep-client");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
 	}
 
+	/**
+	 * Одиночный GET, endpoint - путь с параметрами
+	 */
 	protected CompletableFuture<JSONArray> request(String endpoint) {
 		CompletableFuture<JSONArray> future = new CompletableFuture<>();
-		qequeRequests.add(new QueueRequest(endpoint, future));
+		if (!active) {
+			future.completeExceptionally(buildClosedException());
+			return future;
+		}
+		calls.add(new Call(endpoint, future));
 		return future;
 	}
 
-	private void execute() {
-		QueueRequest queueRequest = qequeRequests.poll();
-		if (queueRequest == null) return;
+	/**
+	 * Вариант уходит в ближайшую пачку, endpoint - одиночный запрос на случай,
+	 * если пачка не вернула результат для этого варианта
+	 */
+	protected CompletableFuture<JSONObject> requestRegion(String input, String endpoint) {
+		CompletableFuture<JSONObject> future = new CompletableFuture<>();
+		if (!active) {
+			future.completeExceptionally(buildClosedException());
+			return future;
+		}
+		regions.add(new RegionRequest(input, endpoint, future));
+		return future;
+	}
 
-		String endpoint = queueRequest.endpoint;
-		CompletableFuture<JSONArray> future = queueRequest.future;
+	void suspend() {
+		suspended = true;
+	}
 
-		try {
+	void resume() {
+		suspended = false;
+	}
+
+	static String buildEndpoint(String path) {
+		return path + "?" + PARAMS;
+	}
 
-			HttpRequest httpRequest = new HttpGet(new URI("http://" + HOST + endpoint));
-			httpRequest.addHeader(new BasicHeader("Content-Type", "application/json"));
-
-			CloseableHttpAsyncClient httpclient = HttpAsyncClients.custom()
-					.setDefaultRequestConfig(requestConfig)
-//					.setConnectionManager(connectionManager)
-//					.setConnectionManagerShared(true)
-					.build();
-			httpclient.start();
-
-			httpclient.execute(httpHost, httpRequest, new FutureCallback<HttpResponse>() {
-				@Override
-				public void completed(HttpResponse response) {
-					try {
-						HttpEntity entity = response.getEntity();
-						String entityBody = EntityUtils.toString(entity);
-
-						Object rawResponse;
-						try {
-							rawResponse = new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(entityBody);
-						} catch (Exception e) {
-							throw ExceptionBuilder.buildExternalServiceException(e, "Error parse response, endpoint: " + endpoint + " response: '" + entityBody + "'");
-						}
-
-						if (rawResponse instanceof JSONArray) {
-							future.complete((JSONArray) rawResponse);
-						} else if (rawResponse instanceof JSONObject && ((JSONObject) rawResponse).containsKey("error")) {
-							throw ExceptionBuilder.buildExternalServiceException(new RuntimeException(), "Error parse response, endpoint: " + endpoint + " response: '" + entityBody + "'");
-						} else if (response.getStatusLine().getStatusCode() == 429) {
-							//Повторно кладем в очередь на расчет
-							log.warn("External service response: Too many request - to repeat: {}", endpoint);
-							qequeRequests.addFirst(queueRequest);
-						} else {
-							uncaughtExceptionHandler.uncaughtException(
-									Thread.currentThread(),
-									new IOException("Unknown response, endpoint: " + endpoint + " response: '" + entityBody + "'")
-							);
-						}
-					} catch (Throwable ex) {
-						future.completeExceptionally(ex);
-					}
-
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
+	private void dispatch() {
+		while (active) {
+			try {
+				if (suspended || (calls.peek() == null && regions.isEmpty())) {
+					Thread.sleep(IDLE_PAUSE);
+					continue;
 				}
 
-				@Override
-				public void failed(Exception ex) {
-					log.warn("External service: exception {} - to repeat: {}", ex.getMessage(), endpoint);
-					qequeRequests.addFirst(queueRequest);
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
+				//Пока ждем токен, пачка успевает наполниться
+				tokenBucket.acquire();
+
+				Call call = calls.poll();
+				if (call == null) {
+					call = buildBatch();
+				}
+				if (call == null) {
+					//Повторы еще не готовы, а новых вариантов нет
+					Thread.sleep(IDLE_PAUSE);
+					continue;
 				}
+				execute(call);
+			} catch (InterruptedException e) {
+				break;
+			} catch (Throwable e) {
+				uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), e);
+			}
+		}
+	}
 
-				@Override
-				public void cancelled() {
-					future.cancel(true);
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
+	private Call buildBatch() {
+		List<RegionRequest> batch = new ArrayList<>();
+		RegionRequest regionRequest;
+		while (batch.size() < MAX_BATCH_SIZE && (regionRequest = regions.poll()) != null) {
+			batch.add(regionRequest);
+		}
+		if (batch.isEmpty()) {
+			return null;
+		}
+		return new Call(batch);
+	}
+
+	private void execute(Call call) {
+		HttpRequestBase httpRequest;
+		if (call.isBatch()) {
+			JSONArray variants = new JSONArray();
+			for (RegionRequest regionRequest : call.regions) {
+				variants.add(regionRequest.input);
+			}
+			JSONObject body = new JSONObject();
+			body.put("variants", variants);
+
+			HttpPost httpPost = new HttpPost(url.resolve(buildEndpoint("/vep/human/region")));
+			httpPost.setEntity(new StringEntity(body.toJSONString(), ContentType.APPLICATION_JSON));
+			httpRequest = httpPost;
+		} else {
+			httpRequest = new HttpGet(url.resolve(call.endpoint));
+		}
+		httpRequest.addHeader("Accept", "application/json");
+		httpRequest.addHeader("Content-Type", "application/json");
+
+		httpClient.execute(httpHost, httpRequest, new FutureCallback<HttpResponse>() {
+			@Override
+			public void completed(HttpResponse response) {
+				try {
+					handle(call, response);
+				} catch (Throwable ex) {
+					fail(call, ex);
 				}
-			});
-		} catch (Throwable ex) {
-			log.error("Exception close connect", ex);
-			future.completeExceptionally(ex);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				log.warn("External service: exception {} - to repeat: {}", ex.getMessage(), call);
+				retry(call, backoff(call.attempt), ex);
+			}
+
+			@Override
+			public void cancelled() {
+				fail(call, new IOException("Request cancelled: " + call));
+			}
+		});
+	}
+
+	private void handle(Call call, HttpResponse response) throws IOException {
+		int statusCode = response.getStatusLine().getStatusCode();
+		String entityBody = (response.getEntity() != null) ? EntityUtils.toString(response.getEntity()) : "";
+
+		if (statusCode == 429 || statusCode == 503) {
+			long pause = getRetryAfter(response);
+			if (pause < 0) {
+				pause = backoff(call.attempt);
+			}
+			log.warn("External service response: {} - pause {} ms, to repeat: {}", statusCode, pause, call);
+			tokenBucket.pause(pause);
+			retry(call, pause, new IOException("External service response: " + statusCode));
+			return;
+		}
+		if (statusCode >= 500) {
+			retry(call, backoff(call.attempt), new IOException("External service response: " + statusCode + " '" + entityBody + "'"));
+			return;
+		}
+
+		Object rawResponse;
+		try {
+			rawResponse = new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(entityBody);
+		} catch (Exception e) {
+			throw ExceptionBuilder.buildExternalServiceException(e, "Error parse response, endpoint: " + call + " response: '" + entityBody + "'");
+		}
+
+		if (rawResponse instanceof JSONArray && statusCode < 300) {
+			if (call.isBatch()) {
+				completeBatch(call, (JSONArray) rawResponse);
+			} else {
+				call.future.complete((JSONArray) rawResponse);
+			}
+		} else if (call.isBatch()) {
+			//Пачка отклонена целиком (например, из-за одного некорректного варианта) - каждый вариант запрашиваем отдельно
+			log.warn("External service rejected batch: {}, response: '{}'", call, entityBody);
+			for (RegionRequest regionRequest : call.regions) {
+				fallback(regionRequest);
+			}
+		} else {
+			throw ExceptionBuilder.buildExternalServiceException(new RuntimeException(), "Error parse response, endpoint: " + call + " response: '" + entityBody + "'");
 		}
 	}
 
+	private void completeBatch(Call call, JSONArray results) {
+		Map<String, JSONObject> byInput = new HashMap<>();
+		for (Object item : results) {
+			if (item instanceof JSONObject) {
+				JSONObject result = (JSONObject) item;
+				String input = result.getAsString("input");
+				if (input != null) {
+					byInput.put(input.trim(), result);
+				}
+			}
+		}
+		for (RegionRequest regionRequest : call.regions) {
+			JSONObject result = byInput.get(regionRequest.input);
+			if (result != null) {
+				regionRequest.future.complete(result);
+			} else {
+				fallback(regionRequest);
+			}
+		}
+	}
+
+	private void fallback(RegionRequest regionRequest) {
+		request(regionRequest.endpoint).whenComplete((jsonArray, throwable) -> {
+			if (throwable != null) {
+				regionRequest.future.completeExceptionally(throwable);
+			} else {
+				regionRequest.future.complete((JSONObject) jsonArray.get(0));
+			}
+		});
+	}
+
+	private void retry(Call call, long delay, Throwable cause) {
+		call.attempt++;
+		if (call.attempt >= MAX_ATTEMPTS || !active) {
+			fail(call, ExceptionBuilder.buildExternalServiceException(cause, "Ensembl VEP", "Attempts exceeded: " + call));
+			return;
+		}
+		call.readyAt = System.currentTimeMillis() + delay;
+		calls.add(call);
+	}
+
+	private static void fail(Call call, Throwable throwable) {
+		if (call.isBatch()) {
+			for (RegionRequest regionRequest : call.regions) {
+				regionRequest.future.completeExceptionally(throwable);
+			}
+		} else {
+			call.future.completeExceptionally(throwable);
+		}
+	}
+
+	/**
+	 * Экспоненциальная задержка со случайной добавкой, чтобы повторы не приходили одновременно
+	 */
+	private static long backoff(int attempt) {
+		long delay = Math.min(BACKOFF_MAX, BACKOFF_BASE << Math.min(attempt, 16));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	/**
+	 * Retry-After в секундах, -1 - заголовка нет
+	 */
+	private static long getRetryAfter(HttpResponse response) {
+		Header header = response.getFirstHeader("Retry-After");
+		if (header == null) {
+			return -1;
+		}
+		try {
+			return (long) (Double.parseDouble(header.getValue().trim()) * 1000);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static AnnotatorException buildClosedException() {
+		return ExceptionBuilder.buildExternalServiceException(new IOException("Client closed"), "Ensembl VEP", "Client closed");
+	}
+
+	/**
+	 * Запросы, которые еще не отправлены, завершаются ошибкой, чтобы вызывающие не ждали их вечно
+	 */
 	@Override
 	public void close() {
 		active = false;
+		dispatcher.interrupt();
+		try {
+			dispatcher.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			log.error("Exception close http client", e);
+		}
+
+		AnnotatorException exception = buildClosedException();
+		//DelayQueue.poll отдает только готовые к повтору, поэтому забираем очередь целиком
+		List<Call> pending = new ArrayList<>(calls);
+		calls.clear();
+		for (Call call : pending) {
+			fail(call, exception);
+		}
+		RegionRequest regionRequest;
+		while ((regionRequest = regions.poll()) != null) {
+			regionRequest.future.completeExceptionally(exception);
+		}
 	}
 }
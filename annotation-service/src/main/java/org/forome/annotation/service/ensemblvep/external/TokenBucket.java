@@ -0,0 +1,88 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.ensemblvep.external;
+
+/**
+ * Ограничение частоты запросов к внешнему сервису: ведро на capacity токенов,
+ * пополняется со скоростью permitsPerSecond. Ответ сервиса с Retry-After приостанавливает выдачу токенов
+ */
+class TokenBucket {
+
+	private final double permitsPerNano;
+	private final double capacity;
+
+	private double tokens;
+	private long lastRefill;
+
+	//Время (System.nanoTime), до которого запросы не отправляются
+	private long pausedUntil;
+
+	TokenBucket(double permitsPerSecond, int capacity) {
+		if (permitsPerSecond <= 0) throw new IllegalArgumentException();
+		if (capacity < 1) throw new IllegalArgumentException();
+
+		this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+		this.capacity = capacity;
+		this.tokens = capacity;
+		this.lastRefill = System.nanoTime();
+		this.pausedUntil = lastRefill;
+	}
+
+	/**
+	 * Ожидание токена
+	 */
+	synchronized void acquire() throws InterruptedException {
+		while (true) {
+			long now = System.nanoTime();
+			long wait = pausedUntil - now;
+			if (wait <= 0) {
+				refill(now);
+				if (tokens >= 1) {
+					tokens -= 1;
+					return;
+				}
+				wait = (long) Math.ceil((1 - tokens) / permitsPerNano);
+			}
+			long millis = Math.max(1, wait / 1_000_000);
+			wait(millis);
+		}
+	}
+
+	/**
+	 * Сервис попросил подождать (429, Retry-After): до истечения паузы токены не выдаются,
+	 * накопленный запас сбрасывается, чтобы после паузы не отправить сразу пачку запросов
+	 */
+	synchronized void pause(long millis) {
+		long until = System.nanoTime() + millis * 1_000_000;
+		if (until - pausedUntil > 0) {
+			pausedUntil = until;
+			tokens = 0;
+			lastRefill = until;
+		}
+		notifyAll();
+	}
+
+	private void refill(long now) {
+		long elapsed = now - lastRefill;
+		if (elapsed > 0) {
+			tokens = Math.min(capacity, tokens + elapsed * permitsPerNano);
+			lastRefill = now;
+		}
+	}
+}
@@ -25,4 +25,9 @@ public interface DataSource {
 
 	Source getSource(Assembly assembly);
 
+	/**
+	 * Освобождение соединений с источником
+	 */
+	void close();
+
 }
@@ -22,7 +22,14 @@ import com.infomaximum.database.exception.DatabaseException;
 import org.forome.annotation.config.source.SourceConfig;
 import org.forome.annotation.service.source.external.ExternalDataSource;
 import org.forome.annotation.service.source.internal.InternalDataSource;
+import org.forome.annotation.service.source.packed.PackedFasta;
 import org.forome.annotation.service.source.wrapper.WrapperDataSource;
+import org.forome.core.struct.Assembly;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class SourceService {
 
@@ -43,7 +50,22 @@ public class SourceService {
 			throw new RuntimeException();
 		}
 
-		dataSource = new WrapperDataSource(ds);
+		Map<Assembly, PackedFasta> packedFastas = new EnumMap<>(Assembly.class);
+		if (config.sourceFastaConfig != null) {
+			for (Map.Entry<Assembly, Path> entry : config.sourceFastaConfig.files.entrySet()) {
+				try {
+					packedFastas.put(entry.getKey(), PackedFasta.open(entry.getValue()));
+				} catch (IOException e) {
+					throw new RuntimeException("Exception open packed fasta: " + entry.getValue(), e);
+				}
+			}
+		}
+
+		dataSource = new WrapperDataSource(ds, config.sourceCacheConfig, packedFastas);
+	}
+
+	public void close() {
+		dataSource.close();
 	}
 
 }
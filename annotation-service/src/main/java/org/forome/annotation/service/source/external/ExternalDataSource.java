@@ -42,7 +42,10 @@ public class ExternalDataSource implements DataSource {
 
 	public ExternalDataSource(SourceExternalConfig sourceHttpConfig) {
 		this.url = buildUrl(sourceHttpConfig);
-		this.httpRequest = new HttpRequest(url);
+		this.httpRequest = new HttpRequest(
+				url,
+				sourceHttpConfig.maxConnections, sourceHttpConfig.maxConnectionsPerRoute
+		);
 
 		try {
 			this.liftoverConnector = new LiftoverConnector();
@@ -56,6 +59,11 @@ public class ExternalDataSource implements DataSource {
 		return new ExternalSource(this, assembly);
 	}
 
+	@Override
+	public void close() {
+		httpRequest.close();
+	}
+
 	private final URL buildUrl(SourceExternalConfig sourceHttpConfig) {
 		if (sourceHttpConfig.sshTunnelConfig == null) {
 			return sourceHttpConfig.url;
@@ -31,6 +31,7 @@ import org.forome.core.struct.Interval;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * curl -d '{"variants":[{"chrom":"chr1","pos":16044572}], "fasta":"hg38", "arrays":["dbNSFP"]}' -H "Content-Type: application/json" -X POST "localhost:8290/collect"
@@ -51,6 +52,10 @@ public class DbNSFPHttpRequest {
 	}
 
 	public JSONArray get(Interval interval) throws URISyntaxException {
+		return HttpRequest.get(getAsync(interval));
+	}
+
+	public CompletableFuture<JSONArray> getAsync(Interval interval) throws URISyntaxException {
 		JSONObject params = new JSONObject();
 		params.put("variants", new JSONArray() {{
 			add(new JSONObject() {{
@@ -73,9 +78,7 @@ public class DbNSFPHttpRequest {
 		URI uri = new URI(String.format("http://%s:%s/collect", httpRequest.url.getHost(), httpRequest.url.getPort()));
 		HttpPost httpPostRequest = new HttpPost(uri);
 		httpPostRequest.setEntity(new StringEntity(params.toJSONString(), ContentType.APPLICATION_JSON));
-		JSONObject response = httpRequest.request(httpPostRequest);
-
-		JSONArray jRecords = (JSONArray) response.get("dbNSFP");
-		return jRecords;
+		return httpRequest.requestAsync(httpPostRequest)
+				.thenApply(response -> (JSONArray) response.get("dbNSFP"));
 	}
 }
@@ -26,6 +26,8 @@ import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Position;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * curl "localhost:8290/get?array=hg19&loc=18:67760501"
  * {"chrom": "chr18", "array": "hg19", "pos": 67760501, "Gerp": {"GerpN": 2.45, "GerpRS": -1.87}, "gnomAD": [{"ALT": "C", "REF": "A", "SOURCE": "g", "AC": 2, "AN": 31248, "AF": 6.4e-05, "nhomalt": 0, "faf95": 1.06e-05, "faf99": 1.096e-05, "male": {"AC": 1, "AN": 17400, "AF": 5.747e-05}, "female": {"AC": 1, "AN": 13848, "AF": 7.221e-05}, "afr": {"AC": 2, "AN": 8692, "AF": 0.0002301}, "amr": {"AC": 0, "AN": 842, "AF": 0}, "asj": {"AC": 0, "AN": 290, "AF": 0}, "eas": {"AC": 0, "AN": 1560, "AF": 0}, "fin": {"AC": 0, "AN": 3408, "AF": 0}, "nfe": {"AC": 0, "AN": 15380, "AF": 0}, "oth": {"AC": 0, "AN": 1076, "AF": 0}, "raw": {"AC": 2, "AN": 31416, "AF": 6.366e-05}, "hem": null}]}
@@ -46,15 +48,17 @@ public class GnomadHttpRequest {
 	}
 
 	public JSONArray get(Position position) {
+		return HttpRequest.get(getAsync(position));
+	}
+
+	public CompletableFuture<JSONArray> getAsync(Position position) {
 		Position position19 = liftoverConnector.toHG37(assembly, position);
 		if (position19 == null) {
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
-		JSONObject response = httpRequest.request(
+		return httpRequest.requestAsync(
 				String.format("http://%s:%s/get?array=hg19&loc=%s:%s", httpRequest.url.getHost(), httpRequest.url.getPort(), position19.chromosome.getChar(), position19.value)
-		);
-		JSONArray jRecords = (JSONArray) response.get("gnomAD");
-		return jRecords;
+		).thenApply(response -> (JSONArray) response.get("gnomAD"));
 	}
 }
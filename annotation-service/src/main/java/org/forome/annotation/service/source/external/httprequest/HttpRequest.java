@@ -44,17 +44,28 @@ import java.net.URL;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
-public class HttpRequest {
+/**
+ * Общий для всех запросов к AStorage http-клиент: один долгоживущий клиент с пулом keep-alive соединений
+ */
+public class HttpRequest implements AutoCloseable {
 
 	private final static Logger log = LoggerFactory.getLogger(HttpRequest.class);
 
+	public static final int DEFAULT_MAX_CONNECTIONS = 100;
+
 	public final URL url;
 
 	private final RequestConfig requestConfig;
 	private final PoolingNHttpClientConnectionManager connectionManager;
 	private final HttpHost httpHost;
 
+	private final CloseableHttpAsyncClient httpclient;
+
 	public HttpRequest(URL url) {
+		this(url, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	public HttpRequest(URL url, int maxConnections, int maxConnectionsPerRoute) {
 		this.url = url;
 
 		requestConfig = RequestConfig.custom()
@@ -65,32 +76,70 @@ public class HttpRequest {
 
 		try {
 			connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
-			connectionManager.setMaxTotal(100);
-			connectionManager.setDefaultMaxPerRoute(100);
+			connectionManager.setMaxTotal(maxConnections);
+			connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
 		} catch (IOReactorException e) {
 			throw new RuntimeException(e);
 		}
 
 		httpHost = new HttpHost(url.getHost(), url.getPort(), "http");
+
+		httpclient = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+		httpclient.start();
 	}
 
 	public JSONObject request(String url) {
+		return get(requestAsync(url));
+	}
+
+	public JSONObject request(HttpPost httpPostRequest) {
+		return get(requestAsync(httpPostRequest));
+	}
+
+	public CompletableFuture<JSONObject> requestAsync(String url) {
 		try {
 			HttpPost httpPostRequest = new HttpPost(new URI(url));
-			return request(httpPostRequest);
+			return requestAsync(httpPostRequest);
 		} catch (URISyntaxException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public JSONObject request(HttpPost httpPostRequest) {
-		CompletableFuture<JSONObject> future = new CompletableFuture<>();
-		try {
-			CloseableHttpAsyncClient httpclient = HttpAsyncClients.custom()
-					.setDefaultRequestConfig(requestConfig)
-					.build();
-			httpclient.start();
+	/**
+	 * Запрос с несколькими объектами в ответе (например, /collect по нескольким вариантам)
+	 */
+	public JSONArray requestArray(HttpPost httpPostRequest) {
+		return get(requestArrayAsync(httpPostRequest));
+	}
 
+	public CompletableFuture<JSONObject> requestAsync(HttpPost httpPostRequest) {
+		return execute(httpPostRequest).thenApply(rawResponse -> {
+			if (rawResponse instanceof JSONArray) {
+				return (JSONObject) ((JSONArray) rawResponse).get(0);
+			} else {
+				return (JSONObject) rawResponse;
+			}
+		});
+	}
+
+	public CompletableFuture<JSONArray> requestArrayAsync(HttpPost httpPostRequest) {
+		return execute(httpPostRequest).thenApply(rawResponse -> {
+			if (rawResponse instanceof JSONArray) {
+				return (JSONArray) rawResponse;
+			} else {
+				return new JSONArray() {{
+					add(rawResponse);
+				}};
+			}
+		});
+	}
+
+	private CompletableFuture<Object> execute(HttpPost httpPostRequest) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		try {
 			URI uri = httpPostRequest.getURI();
 
 			httpclient.execute(httpHost, httpPostRequest, new FutureCallback<HttpResponse>() {
@@ -106,11 +155,8 @@ public class HttpRequest {
 						} catch (Exception e) {
 							throw ExceptionBuilder.buildExternalServiceException(new RuntimeException("Exception parse response external service, response: " + entityBody));
 						}
-						if (rawResponse instanceof JSONArray) {
-							JSONObject jResponse = (JSONObject) ((JSONArray) rawResponse).get(0);
-							future.complete(jResponse);
-						} else if (rawResponse instanceof JSONObject) {
-							future.complete((JSONObject)rawResponse);
+						if (rawResponse instanceof JSONArray || rawResponse instanceof JSONObject) {
+							future.complete(rawResponse);
 						} else {
 							throw ExceptionBuilder.buildExternalServiceException(
 									new RuntimeException("Exception external service(AStorage), request: " + uri
@@ -121,39 +167,29 @@ public class HttpRequest {
 					} catch (Throwable ex) {
 						future.completeExceptionally(ex);
 					}
-
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
 				}
 
 				@Override
 				public void failed(Exception ex) {
 					future.completeExceptionally(ex);
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
 				}
 
 				@Override
 				public void cancelled() {
 					future.cancel(true);
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
 				}
 			});
 		} catch (Throwable t) {
-			log.error("Exception close connect", t);
+			log.error("Exception execute request", t);
 			future.completeExceptionally(t);
 		}
+		return future;
+	}
 
+	/**
+	 * Ожидание ответа для синхронных вызовов, ошибка запроса пробрасывается как RuntimeException
+	 */
+	public static <T> T get(CompletableFuture<T> future) {
 		try {
 			return future.get();
 		} catch (InterruptedException e) {
@@ -163,4 +199,12 @@ public class HttpRequest {
 		}
 	}
 
+	@Override
+	public void close() {
+		try {
+			httpclient.close();
+		} catch (IOException e) {
+			log.error("Exception close connect", e);
+		}
+	}
 }
@@ -0,0 +1,143 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.external.locus;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.forome.annotation.service.source.external.conservation.ConservationHttpRequest;
+import org.forome.annotation.service.source.external.httprequest.HttpRequest;
+import org.forome.annotation.service.source.external.source.ExternalSource;
+import org.forome.annotation.service.source.struct.Locus;
+import org.forome.astorage.core.data.Conservation;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Interval;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Все массивы для позиции одним запросом
+ *
+ * curl -d '{"variants":[{"chrom":"chr1","pos":6484880,"last":6484882}], "fasta":"hg19", "arrays":["gnomAD","Gerp","dbSNP","dbNSFP","SpliceAI","fasta/hg19"]}' -H "Content-Type: application/json" -X POST "localhost:8290/collect"
+ */
+public class LocusHttpRequest {
+
+	private final HttpRequest httpRequest;
+
+	private final Assembly assembly;
+
+	public LocusHttpRequest(ExternalSource httpSource) {
+		this.httpRequest = httpSource.httpDataSource.httpRequest;
+		this.assembly = httpSource.assembly;
+	}
+
+	public Locus get(Interval interval) throws URISyntaxException {
+		return get(Collections.singletonList(interval)).get(0);
+	}
+
+	/**
+	 * Пакетный запрос: все позиции одним POST, ответы в порядке запроса
+	 */
+	public List<Locus> get(List<Interval> intervals) throws URISyntaxException {
+		List<Interval> locusIntervals = intervals.stream()
+				.map(interval -> Interval.of(
+						interval.chromosome,
+						interval.start,
+						(interval.start < interval.end) ? interval.end : interval.start
+				))
+				.collect(Collectors.toList());
+
+		String fasta;
+		if (assembly == Assembly.GRCh37) {
+			fasta = "hg19";
+		} else if (assembly == Assembly.GRCh38) {
+			fasta = "hg38";
+		} else {
+			throw new RuntimeException("Unknown assembly: " + assembly);
+		}
+		String fastaArray = "fasta/" + fasta;
+
+		JSONArray jVariants = new JSONArray();
+		for (Interval locusInterval : locusIntervals) {
+			jVariants.add(new JSONObject() {{
+				put("chrom", locusInterval.chromosome.getChromosome());
+				put("pos", locusInterval.start);
+				put("last", locusInterval.end);
+			}});
+		}
+
+		JSONObject params = new JSONObject();
+		params.put("variants", jVariants);
+		params.put("fasta", fasta);
+		params.put("arrays", new JSONArray() {{
+			add("gnomAD");
+			add("Gerp");
+			add("dbSNP");
+			add("dbNSFP");
+			add("SpliceAI");
+			add(fastaArray);
+		}});
+
+		URI uri = new URI(String.format("http://%s:%s/collect", httpRequest.url.getHost(), httpRequest.url.getPort()));
+		HttpPost httpPostRequest = new HttpPost(uri);
+		httpPostRequest.setEntity(new StringEntity(params.toJSONString(), ContentType.APPLICATION_JSON));
+		JSONArray response = httpRequest.requestArray(httpPostRequest);
+		if (response.size() != locusIntervals.size()) {
+			throw new RuntimeException(
+					String.format("Not equals count loci, request: %s, response: %s", locusIntervals.size(), response.size())
+			);
+		}
+
+		List<Locus> loci = new ArrayList<>(locusIntervals.size());
+		for (int i = 0; i < locusIntervals.size(); i++) {
+			loci.add(build(locusIntervals.get(i), fastaArray, (JSONObject) response.get(i)));
+		}
+		return loci;
+	}
+
+	public static Locus build(Interval interval, String fastaArray, JSONObject response) {
+		Conservation conservation;
+		JSONObject jGerp = (JSONObject) response.get("Gerp");
+		if (jGerp == null) {
+			conservation = new Conservation(null, null);
+		} else {
+			conservation = new Conservation(
+					ConservationHttpRequest.toFloat(jGerp.getAsNumber("GerpRS")),
+					ConservationHttpRequest.toFloat(jGerp.getAsNumber("GerpN"))
+			);
+		}
+
+		return new Locus(
+				interval,
+				(JSONArray) response.get("gnomAD"),
+				conservation,
+				(JSONArray) response.get("dbSNP"),
+				(JSONArray) response.get("dbNSFP"),
+				(JSONArray) response.get("SpliceAI"),
+				response.getAsString(fastaArray)
+		);
+	}
+}
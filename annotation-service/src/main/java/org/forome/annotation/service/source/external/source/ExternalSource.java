@@ -19,14 +19,16 @@
 package org.forome.annotation.service.source.external.source;
 
 import net.minidev.json.JSONArray;
-import org.apache.http.nio.reactor.IOReactorException;
 import org.forome.annotation.service.source.external.ExternalDataSource;
 import org.forome.annotation.service.source.external.conservation.ConservationHttpRequest;
 import org.forome.annotation.service.source.external.dbNSFP.DbNSFPHttpRequest;
 import org.forome.annotation.service.source.external.dbSNP.DbSNPHttpRequest;
 import org.forome.annotation.service.source.external.fasta.FastaHttpRequest;
 import org.forome.annotation.service.source.external.gnomad.GnomadHttpRequest;
+import org.forome.annotation.service.source.external.locus.LocusHttpRequest;
 import org.forome.annotation.service.source.external.spliceai.SpliceAIHttpRequest;
+import org.forome.annotation.service.source.struct.Locus;
+import org.forome.annotation.service.source.struct.LocusSource;
 import org.forome.annotation.service.source.struct.Record;
 import org.forome.annotation.service.source.struct.Source;
 import org.forome.astorage.core.data.Conservation;
@@ -36,15 +38,21 @@ import org.forome.core.struct.Position;
 import org.forome.core.struct.sequence.Sequence;
 
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public class ExternalSource implements Source {
+public class ExternalSource implements Source, LocusSource {
 
 	public final ExternalDataSource httpDataSource;
 	public final Assembly assembly;
 
+	private final FastaHttpRequest fastaHttpRequest;
+
 	public ExternalSource(ExternalDataSource httpDataSource, Assembly assembly) {
 		this.httpDataSource = httpDataSource;
 		this.assembly = assembly;
+
+		this.fastaHttpRequest = new FastaHttpRequest(httpDataSource.httpRequest);
 	}
 
 	@Override
@@ -54,12 +62,11 @@ public class ExternalSource implements Source {
 
 	@Override
 	public Sequence getFastaSequence(Interval interval) {
-		try {
-			FastaHttpRequest fastaSourcePython = new FastaHttpRequest(httpDataSource.url);
-			return fastaSourcePython.getSequence(assembly, interval);
-		} catch (IOReactorException e) {
-			throw new RuntimeException(e);
-		}
+		return fastaHttpRequest.getSequence(assembly, interval);
+	}
+
+	public CompletableFuture<Sequence> getFastaSequenceAsync(Interval interval) {
+		return fastaHttpRequest.getSequenceAsync(assembly, interval);
 	}
 
 	@Override
@@ -68,6 +75,11 @@ public class ExternalSource implements Source {
 		return gnomadHttpRequest.get(position);
 	}
 
+	public CompletableFuture<JSONArray> getGnomadAsync(Position position) {
+		GnomadHttpRequest gnomadHttpRequest = new GnomadHttpRequest(this);
+		return gnomadHttpRequest.getAsync(position);
+	}
+
 	@Override
 	public JSONArray getDbSNP(Interval interval) {
 		try {
@@ -88,6 +100,15 @@ public class ExternalSource implements Source {
 		}
 	}
 
+	public CompletableFuture<JSONArray> getDbNSFPAsync(Interval interval) {
+		try {
+			DbNSFPHttpRequest dbNSFPHttpRequest = new DbNSFPHttpRequest(this);
+			return dbNSFPHttpRequest.getAsync(interval);
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	@Override
 	public JSONArray getSpliceAI(Interval interval) {
 		try {
@@ -98,9 +119,38 @@ public class ExternalSource implements Source {
 		}
 	}
 
+	public CompletableFuture<JSONArray> getSpliceAIAsync(Interval interval) {
+		try {
+			SpliceAIHttpRequest spliceAIHttpRequest = new SpliceAIHttpRequest(this);
+			return spliceAIHttpRequest.getAsync(interval);
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	@Override
 	public Conservation getConservation(Position position) {
 		ConservationHttpRequest conservationHttpRequest = new ConservationHttpRequest(this);
 		return conservationHttpRequest.getConservation(position);
 	}
+
+	@Override
+	public Locus getLocus(Interval interval) {
+		try {
+			LocusHttpRequest locusHttpRequest = new LocusHttpRequest(this);
+			return locusHttpRequest.get(interval);
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public List<Locus> getLoci(List<Interval> intervals) {
+		try {
+			LocusHttpRequest locusHttpRequest = new LocusHttpRequest(this);
+			return locusHttpRequest.get(intervals);
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+	}
 }
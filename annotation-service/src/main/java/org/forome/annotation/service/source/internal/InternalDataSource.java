@@ -66,5 +66,10 @@ public class InternalDataSource implements DataSource {
 		}
 	}
 
+	@Override
+	public void close() {
+		httpDataSource.close();
+	}
+
 
 }
@@ -0,0 +1,144 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.internal.fasta;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.Position;
+import org.forome.core.struct.nucleotide.Nucleotide;
+import org.forome.core.struct.sequence.Sequence;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Чтение референса блоками фиксированного размера.
+ * Хранилище отдает только отдельные позиции, поэтому блок загружается целиком один раз (по позиции за запрос),
+ * а интервал собирается копированием из покрывающих блоков.
+ */
+public class FastaBlockReader {
+
+	@FunctionalInterface
+	public interface Reader {
+
+		/**
+		 * Нуклеотид позиции, null - данных нет
+		 */
+		Nucleotide read(Assembly assembly, Position position);
+	}
+
+	private static final int BLOCK_SHIFT = 10;
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	//16 Мб на 1024-нуклеотидные блоки
+	private static final int MAX_BLOCKS = 16 * 1024;
+
+	private static final Nucleotide[] NUCLEOTIDES = Nucleotide.values();
+
+	private final Reader reader;
+
+	//В блоке хранится ordinal() нуклеотида
+	private final Cache<BlockKey, byte[]> blocks;
+
+	public FastaBlockReader(Reader reader) {
+		this.reader = reader;
+		this.blocks = CacheBuilder.newBuilder()
+				.maximumSize(MAX_BLOCKS)
+				.build();
+	}
+
+	public Sequence getSequence(Assembly assembly, Interval interval) {
+		Nucleotide[] nucleotides = new Nucleotide[interval.end - interval.start + 1];
+
+		int start = interval.start;
+		while (start <= interval.end) {
+			int blockIndex = start >> BLOCK_SHIFT;
+			int end = Math.min(interval.end, ((blockIndex + 1) << BLOCK_SHIFT) - 1);
+
+			byte[] block = getBlock(assembly, interval.chromosome, blockIndex);
+			for (int value = start; value <= end; value++) {
+				nucleotides[value - interval.start] = NUCLEOTIDES[block[value & BLOCK_MASK]];
+			}
+			start = end + 1;
+		}
+
+		return new Sequence(interval, nucleotides);
+	}
+
+	private byte[] getBlock(Assembly assembly, Chromosome chromosome, int blockIndex) {
+		try {
+			//Параллельные промахи по одному блоку ждут одну загрузку
+			return blocks.get(
+					new BlockKey(assembly, chromosome.getChar(), blockIndex),
+					() -> readBlock(assembly, chromosome, blockIndex)
+			);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private byte[] readBlock(Assembly assembly, Chromosome chromosome, int blockIndex) {
+		byte[] block = new byte[BLOCK_SIZE];
+		//Позиции 1-based, у нулевого блока позиция 0 не существует
+		block[0] = (byte) Nucleotide.NONE.ordinal();
+
+		int start = Math.max(1, blockIndex << BLOCK_SHIFT);
+		int end = ((blockIndex + 1) << BLOCK_SHIFT) - 1;
+		for (int value = start; value <= end; value++) {
+			Nucleotide nucleotide = reader.read(assembly, new Position(chromosome, value));
+			if (nucleotide == null) {
+				nucleotide = Nucleotide.NONE;
+			}
+			block[value & BLOCK_MASK] = (byte) nucleotide.ordinal();
+		}
+		return block;
+	}
+
+	private static final class BlockKey {
+
+		private final Assembly assembly;
+		private final String chromosome;
+		private final int index;
+
+		private BlockKey(Assembly assembly, String chromosome, int index) {
+			this.assembly = assembly;
+			this.chromosome = chromosome;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			BlockKey that = (BlockKey) o;
+			return index == that.index && assembly == that.assembly && chromosome.equals(that.chromosome);
+		}
+
+		@Override
+		public int hashCode() {
+			int h = assembly.hashCode();
+			h = 31 * h + chromosome.hashCode();
+			h = 31 * h + index;
+			return h;
+		}
+	}
+}
@@ -31,32 +31,20 @@ public class FastaSourcePortPython {
 
 	private final PAStorage paStorage;
 
+	private final FastaBlockReader blockReader;
+
 	public FastaSourcePortPython(PAStorage paStorage) {
 		this.paStorage = paStorage;
+		this.blockReader = new FastaBlockReader(this::getNucleotide);
 	}
 
 	public Sequence getSequence(Assembly assembly, Interval interval) {
-		SchemaFasta schemaFasta = (SchemaFasta) paStorage.getSchema(SchemaFasta.SCHEMA_FASTA_NAME);
+		return blockReader.getSequence(assembly, interval);
+	}
 
-		Nucleotide[] nucleotides = new Nucleotide[interval.end - interval.start + 1];
-		for (int i = 0; i < nucleotides.length; i++) {
-			Position position = new Position(interval.chromosome, interval.start + i);
-			RecordFasta recordFasta = schemaFasta.getRecord(assembly, position);
-
-			Nucleotide nucleotide;
-			if (recordFasta == null) {
-				nucleotide = Nucleotide.NONE;
-			} else {
-				nucleotide = recordFasta.nucleotide;
-				if (nucleotide == null) {
-					nucleotide = Nucleotide.NONE;
-				}
-			}
-			nucleotides[i] = nucleotide;
-		}
-
-		Sequence sequence = new Sequence(interval, nucleotides);
-
-		return sequence;
+	private Nucleotide getNucleotide(Assembly assembly, Position position) {
+		SchemaFasta schemaFasta = (SchemaFasta) paStorage.getSchema(SchemaFasta.SCHEMA_FASTA_NAME);
+		RecordFasta recordFasta = schemaFasta.getRecord(assembly, position);
+		return (recordFasta == null) ? null : recordFasta.nucleotide;
 	}
 }
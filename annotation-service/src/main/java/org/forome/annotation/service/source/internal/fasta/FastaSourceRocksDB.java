@@ -32,43 +32,33 @@ public class FastaSourceRocksDB {
 
 	private final AStorage aStorage;
 
+	private final FastaBlockReader blockReader;
+
 	private final Statistics statistics;
 
 	public FastaSourceRocksDB(AStorage aStorage) {
 		this.aStorage = aStorage;
+		this.blockReader = new FastaBlockReader(this::getNucleotide);
 
 		this.statistics = new Statistics();
 	}
 
 	public Sequence getSequence(Assembly assembly, Interval interval) {
-		Source source = aStorage.getSource(assembly);
-
 		long t1 = System.currentTimeMillis();
 
-		Nucleotide[] nucleotides = new Nucleotide[interval.end - interval.start + 1];
-		for (int i = 0; i < nucleotides.length; i++) {
-			Position position = new Position(interval.chromosome, interval.start + i);
-			Record record = source.getRecord(position);
-
-			Nucleotide nucleotide;
-			if (record == null) {
-				nucleotide = Nucleotide.NONE;
-			} else {
-				nucleotide = record.getNucleotide();
-				if (nucleotide == null) {
-					nucleotide = Nucleotide.NONE;
-				}
-			}
-			nucleotides[i] = nucleotide;
-		}
-
-		Sequence sequence = new Sequence(interval, nucleotides);
+		Sequence sequence = blockReader.getSequence(assembly, interval);
 
 		statistics.addTime(System.currentTimeMillis() - t1);
 
 		return sequence;
 	}
 
+	private Nucleotide getNucleotide(Assembly assembly, Position position) {
+		Source source = aStorage.getSource(assembly);
+		Record record = source.getRecord(position);
+		return (record == null) ? null : record.getNucleotide();
+	}
+
 	public Statistics.Stat getStatistics() {
 		return statistics.getStat();
 	}
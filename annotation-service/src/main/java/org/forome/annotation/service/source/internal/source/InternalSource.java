@@ -48,6 +48,8 @@ public class InternalSource implements Source {
 
 	public final ExternalSource externalSource;
 
+	private final FastaSourcePortPython fastaSource;
+
 	public InternalSource(Assembly assembly, PAStorage paStorage, org.forome.astorage.core.source.Source source, ExternalSource externalSource) {
 		this.assembly = assembly;
 		this.paStorage = paStorage;
@@ -60,6 +62,8 @@ public class InternalSource implements Source {
 		}
 
 		this.externalSource = externalSource;
+
+		this.fastaSource = new FastaSourcePortPython(paStorage);
 	}
 
 	@Override
@@ -69,8 +73,7 @@ public class InternalSource implements Source {
 
 	@Override
 	public Sequence getFastaSequence(Interval interval) {
-		FastaSourcePortPython fastaSourcePortPython = new FastaSourcePortPython(paStorage);
-		return fastaSourcePortPython.getSequence(assembly, interval);
+		return fastaSource.getSequence(assembly, interval);
 	}
 
 	@Override
@@ -0,0 +1,204 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.packed;
+
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.sequence.Sequence;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Референсный геном в упакованном виде (см. PackedFastaWriter), отображенный в память.
+ * Файл открывается один раз и разделяется всеми потоками через page cache ОС.
+ */
+public class PackedFasta implements Closeable {
+
+	static final int MAGIC = 0x32424641;
+	static final int VERSION = 1;
+
+	static final char[] BASES = { 'A', 'C', 'G', 'T' };
+
+	private final FileChannel channel;
+
+	private final Map<String, Contig> contigs;
+
+	private PackedFasta(FileChannel channel, Map<String, Contig> contigs) {
+		this.channel = channel;
+		this.contigs = contigs;
+	}
+
+	public boolean contains(Chromosome chromosome) {
+		return contigs.containsKey(chromosome.getChar());
+	}
+
+	/**
+	 * @return null, если хромосомы нет в файле
+	 */
+	public Sequence getSequence(Interval interval) {
+		String value = getValue(interval.chromosome.getChar(), interval.start, interval.end);
+		if (value == null) {
+			return null;
+		}
+		return Sequence.build(interval, value);
+	}
+
+	/**
+	 * Последовательность [start, end] в 1-based координатах, замаскированные позиции - маленькими буквами
+	 */
+	public String getValue(String chromosome, int start, int end) {
+		Contig item = contigs.get(chromosome);
+		if (item == null) {
+			return null;
+		}
+
+		char[] value = new char[Math.max(0, end - start + 1)];
+
+		//Первый N-регион, который может накрыть интервал
+		int nIndex = item.findGap(start - 1);
+		for (int i = 0; i < value.length; i++) {
+			int index = start - 1 + i;
+			if (index < 0 || index >= item.length) {
+				value[i] = 'N';
+				continue;
+			}
+
+			while (nIndex < item.gapStarts.length && item.gapEnds[nIndex] <= index) {
+				nIndex++;
+			}
+			char c;
+			if (nIndex < item.gapStarts.length && item.gapStarts[nIndex] <= index) {
+				c = 'N';
+			} else {
+				int code = (item.bases.get(index >>> 2) >>> ((3 - (index & 3)) << 1)) & 0x03;
+				c = BASES[code];
+			}
+			if ((item.mask.get(index >>> 3) & (0x80 >>> (index & 7))) != 0) {
+				c = Character.toLowerCase(c);
+			}
+			value[i] = c;
+		}
+		return new String(value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public static PackedFasta open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+
+			ByteBuffer header = ByteBuffer.allocate(8);
+			channel.read(header, 0);
+			header.flip();
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not a packed fasta file: " + file);
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported packed fasta version: " + version + ", file: " + file);
+			}
+
+			ByteBuffer trailer = ByteBuffer.allocate(8);
+			channel.read(trailer, size - 8);
+			trailer.flip();
+			long indexOffset = trailer.getLong();
+
+			Map<String, Contig> contigs = new HashMap<>();
+			channel.position(indexOffset);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				int length = in.readInt();
+				long basesOffset = in.readLong();
+				long maskOffset = in.readLong();
+				int gapCount = in.readInt();
+				int[] gapStarts = new int[gapCount];
+				int[] gapEnds = new int[gapCount];
+				for (int j = 0; j < gapCount; j++) {
+					gapStarts[j] = in.readInt();
+					gapEnds[j] = in.readInt();
+				}
+
+				MappedByteBuffer bases = channel.map(FileChannel.MapMode.READ_ONLY, basesOffset, (length + 3L) >>> 2);
+				MappedByteBuffer mask = channel.map(FileChannel.MapMode.READ_ONLY, maskOffset, (length + 7L) >>> 3);
+				contigs.put(name, new Contig(length, bases, mask, gapStarts, gapEnds));
+			}
+			return new PackedFasta(channel, contigs);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static class Contig {
+
+		private final int length;
+
+		//2 бита на нуклеотид, 4 нуклеотида в байте, старшие биты - первый нуклеотид
+		private final ByteBuffer bases;
+
+		//1 бит на нуклеотид: 1 - soft-mask (маленькая буква в исходном fasta)
+		private final ByteBuffer mask;
+
+		//N-регионы [start, end) в 0-based координатах, отсортированы
+		private final int[] gapStarts;
+		private final int[] gapEnds;
+
+		private Contig(int length, ByteBuffer bases, ByteBuffer mask, int[] gapStarts, int[] gapEnds) {
+			this.length = length;
+			this.bases = bases;
+			this.mask = mask;
+			this.gapStarts = gapStarts;
+			this.gapEnds = gapEnds;
+		}
+
+		/**
+		 * Индекс первого N-региона, заканчивающегося после index
+		 */
+		private int findGap(int index) {
+			int low = 0;
+			int high = gapEnds.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (gapEnds[mid] <= index) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+}
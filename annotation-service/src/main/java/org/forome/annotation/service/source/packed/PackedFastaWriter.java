@@ -0,0 +1,254 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.packed;
+
+import org.forome.core.struct.Chromosome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Сборка упакованного референса из fasta (.fa или .fa.gz), один раз для каждой сборки.
+ * Формат файла:
+ * MAGIC, VERSION,
+ * для каждой хромосомы: 2-битные нуклеотиды, затем битовая маска маленьких букв,
+ * индекс: имя, длина, смещения данных и N-регионы каждой хромосомы,
+ * последние 8 байт - смещение индекса
+ */
+public class PackedFastaWriter {
+
+	private final static Logger log = LoggerFactory.getLogger(PackedFastaWriter.class);
+
+	private final DataOutputStream out;
+	private long offset;
+
+	private final List<Contig> contigs;
+
+	private PackedFastaWriter(OutputStream out) {
+		this.out = new DataOutputStream(out);
+		this.contigs = new ArrayList<>();
+	}
+
+	public static void write(Path fasta, Path target) throws IOException {
+		try (InputStream is = Files.newInputStream(fasta);
+			 InputStream in = fasta.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(is, 1 << 16) : is;
+			 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16)) {
+			write(reader, target);
+		}
+	}
+
+	public static void write(BufferedReader reader, Path target) throws IOException {
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+			PackedFastaWriter writer = new PackedFastaWriter(os);
+			writer.writeHeader();
+
+			Contig contig = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(">")) {
+					if (contig != null) {
+						writer.writeContig(contig);
+					}
+					String name = toChromosome(line);
+					if (Chromosome.isSupportChromosome(name)) {
+						contig = new Contig(name);
+					} else {
+						log.debug("Skip sequence: {}", line);
+						contig = null;
+					}
+				} else if (contig != null) {
+					contig.append(line);
+				}
+			}
+			if (contig != null) {
+				writer.writeContig(contig);
+			}
+
+			writer.writeIndex();
+		}
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * ">chr1 AC:CM000663.2 ..." -> "1", ">chrMT" -> "M"
+	 */
+	static String toChromosome(String line) {
+		String name = line.substring(1).trim();
+		int space = indexOfWhitespace(name);
+		if (space >= 0) {
+			name = name.substring(0, space);
+		}
+		if (name.startsWith("chr")) {
+			name = name.substring(3);
+		}
+		if ("MT".equals(name)) {
+			name = "M";
+		}
+		return name;
+	}
+
+	private static int indexOfWhitespace(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (Character.isWhitespace(value.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void writeHeader() throws IOException {
+		out.writeInt(PackedFasta.MAGIC);
+		out.writeInt(PackedFasta.VERSION);
+		offset += 8;
+	}
+
+	private void writeContig(Contig contig) throws IOException {
+		contig.closeGap(contig.length);
+
+		contig.basesOffset = offset;
+		int basesLength = (int) ((contig.length + 3L) >>> 2);
+		out.write(contig.bases, 0, basesLength);
+		offset += basesLength;
+
+		contig.maskOffset = offset;
+		int maskLength = (int) ((contig.length + 7L) >>> 3);
+		out.write(contig.mask, 0, maskLength);
+		offset += maskLength;
+
+		//Данные больше не нужны, в индекс идут только смещения
+		contig.bases = null;
+		contig.mask = null;
+		contigs.add(contig);
+
+		log.debug("Packed chromosome: {}, length: {}, gaps: {}", contig.name, contig.length, contig.gapCount);
+	}
+
+	private void writeIndex() throws IOException {
+		long indexOffset = offset;
+		out.writeInt(contigs.size());
+		for (Contig contig : contigs) {
+			out.writeUTF(contig.name);
+			out.writeInt(contig.length);
+			out.writeLong(contig.basesOffset);
+			out.writeLong(contig.maskOffset);
+			out.writeInt(contig.gapCount);
+			for (int i = 0; i < contig.gapCount; i++) {
+				out.writeInt(contig.gaps[i * 2]);
+				out.writeInt(contig.gaps[i * 2 + 1]);
+			}
+		}
+		out.writeLong(indexOffset);
+		out.flush();
+	}
+
+	private static class Contig {
+
+		private final String name;
+
+		private int length;
+		private byte[] bases;
+		private byte[] mask;
+
+		//Пары [start, end) N-регионов
+		private int[] gaps;
+		private int gapCount;
+		private int gapStart;
+
+		private long basesOffset;
+		private long maskOffset;
+
+		private Contig(String name) {
+			this.name = name;
+			this.bases = new byte[1 << 16];
+			this.mask = new byte[1 << 15];
+			this.gaps = new int[16];
+			this.gapStart = -1;
+		}
+
+		private void append(String line) {
+			ensureCapacity(length + line.length());
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+				int index = length++;
+
+				int code;
+				switch (c) {
+					case 'A': case 'a': code = 0; break;
+					case 'C': case 'c': code = 1; break;
+					case 'G': case 'g': code = 2; break;
+					case 'T': case 't': code = 3; break;
+					default: code = -1;
+				}
+
+				if (code < 0) {
+					//N и прочие IUPAC-коды храним как N-регион
+					if (gapStart < 0) {
+						gapStart = index;
+					}
+				} else {
+					closeGap(index);
+					bases[index >>> 2] |= code << ((3 - (index & 3)) << 1);
+				}
+				if (Character.isLowerCase(c)) {
+					mask[index >>> 3] |= 0x80 >>> (index & 7);
+				}
+			}
+		}
+
+		private void closeGap(int end) {
+			if (gapStart < 0) {
+				return;
+			}
+			if ((gapCount + 1) * 2 > gaps.length) {
+				gaps = Arrays.copyOf(gaps, gaps.length * 2);
+			}
+			gaps[gapCount * 2] = gapStart;
+			gaps[gapCount * 2 + 1] = end;
+			gapCount++;
+			gapStart = -1;
+		}
+
+		private void ensureCapacity(int capacity) {
+			int basesLength = (capacity + 3) >>> 2;
+			if (basesLength > bases.length) {
+				bases = Arrays.copyOf(bases, Math.max(basesLength, bases.length * 2));
+			}
+			int maskLength = (capacity + 7) >>> 3;
+			if (maskLength > mask.length) {
+				mask = Arrays.copyOf(mask, Math.max(maskLength, mask.length * 2));
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.struct;
+
+import net.minidev.json.JSONArray;
+import org.forome.astorage.core.data.Conservation;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.sequence.Sequence;
+
+/**
+ * Данные всех источников для одной позиции, полученные за один запрос.
+ * Записи gnomAD, Gerp, dbSNP, dbNSFP и SpliceAI относятся к interval.start,
+ * fasta - ко всему interval
+ */
+public class Locus {
+
+	public final Interval interval;
+
+	public final JSONArray gnomad;
+	public final Conservation conservation;
+	public final JSONArray dbSNP;
+	public final JSONArray dbNSFP;
+	public final JSONArray spliceAI;
+
+	private final String fasta;
+
+	public Locus(
+			Interval interval,
+			JSONArray gnomad, Conservation conservation,
+			JSONArray dbSNP, JSONArray dbNSFP, JSONArray spliceAI,
+			String fasta
+	) {
+		this.interval = interval;
+		this.gnomad = gnomad;
+		this.conservation = conservation;
+		this.dbSNP = dbSNP;
+		this.dbNSFP = dbNSFP;
+		this.spliceAI = spliceAI;
+		this.fasta = fasta;
+	}
+
+	public boolean containsSequence(Interval value) {
+		return fasta != null
+				&& interval.chromosome.equals(value.chromosome)
+				&& interval.start <= value.start && value.start <= value.end && value.end <= interval.end
+				&& fasta.length() == interval.end - interval.start + 1;
+	}
+
+	public Sequence getFastaSequence(Interval value) {
+		if (!containsSequence(value)) {
+			throw new IllegalArgumentException("Interval: " + value + " out of locus: " + interval);
+		}
+		return Sequence.build(value, fasta.substring(value.start - interval.start, value.end - interval.start + 1));
+	}
+}
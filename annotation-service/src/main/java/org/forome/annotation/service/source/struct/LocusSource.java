@@ -0,0 +1,36 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.struct;
+
+import org.forome.core.struct.Interval;
+
+import java.util.List;
+
+/**
+ * Источник, умеющий за один запрос отдать данные всех массивов для позиции
+ */
+public interface LocusSource {
+
+	Locus getLocus(Interval interval);
+
+	/**
+	 * Данные сразу для нескольких позиций, ответ в порядке запроса
+	 */
+	List<Locus> getLoci(List<Interval> intervals);
+}
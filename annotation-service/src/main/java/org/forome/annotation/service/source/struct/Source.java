@@ -24,6 +24,9 @@ import org.forome.core.struct.Interval;
 import org.forome.core.struct.Position;
 import org.forome.core.struct.sequence.Sequence;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface Source {
 
 	Record getRecord(Position position);
@@ -34,6 +37,17 @@ public interface Source {
 
 	JSONArray getGnomad(Position position);
 
+	/**
+	 * gnomAD для всех позиций интервала, ответ в порядке позиций (null - нет данных)
+	 */
+	default List<JSONArray> getGnomad(Interval interval) {
+		List<JSONArray> records = new ArrayList<>(interval.end - interval.start + 1);
+		for (int pos = interval.start; pos <= interval.end; pos++) {
+			records.add(getGnomad(new Position(interval.chromosome, pos)));
+		}
+		return records;
+	}
+
 	JSONArray getDbSNP(Interval interval);
 
 	JSONArray getDbNSFP(Interval interval);
@@ -0,0 +1,48 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Окно позиций, загруженное наперед (WrapperSource.prefetch).
+ * Окно доступно для чтения, пока владелец его не освободит - обычно после обработки последней записи окна
+ */
+public final class LociLease {
+
+	public static final LociLease EMPTY = new LociLease(() -> {
+	});
+
+	private final Runnable release;
+	private final AtomicBoolean released;
+
+	LociLease(Runnable release) {
+		this.release = release;
+		this.released = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Повторный вызов ничего не делает
+	 */
+	public void release() {
+		if (released.compareAndSet(false, true)) {
+			release.run();
+		}
+	}
+}
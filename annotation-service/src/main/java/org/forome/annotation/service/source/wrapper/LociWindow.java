@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import org.forome.annotation.service.source.struct.Locus;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Хранилище заранее загруженных позиций для окон вариантов
+ * Каждое окно держится, пока его не освободит владелец (LociLease): окна разных запросов
+ * и еще не обработанные записи окна не вытесняются новыми окнами
+ */
+class LociWindow {
+
+	private final List<Map<WrapperSourceKey, Locus>> windows;
+
+	LociWindow() {
+		this.windows = new CopyOnWriteArrayList<>();
+	}
+
+	LociLease put(List<Locus> loci, Function<Locus, WrapperSourceKey> key) {
+		Map<WrapperSourceKey, Locus> window = new HashMap<>(loci.size() * 2);
+		for (Locus locus : loci) {
+			window.put(key.apply(locus), locus);
+		}
+		windows.add(window);
+		return new LociLease(() -> remove(window));
+	}
+
+	Locus get(WrapperSourceKey key) {
+		for (Map<WrapperSourceKey, Locus> window : windows) {
+			Locus locus = window.get(key);
+			if (locus != null) {
+				return locus;
+			}
+		}
+		return null;
+	}
+
+	int size() {
+		return windows.size();
+	}
+
+	private void remove(Map<WrapperSourceKey, Locus> window) {
+		//Удаляем именно этот экземпляр: окна с одинаковым содержимым равны по equals
+		for (int i = 0; i < windows.size(); i++) {
+			if (windows.get(i) == window) {
+				windows.remove(i);
+				return;
+			}
+		}
+	}
+}
@@ -19,24 +19,31 @@
 package org.forome.annotation.service.source.wrapper;
 
 import org.forome.annotation.annotator.AnnotationConsole;
+import org.forome.annotation.config.source.SourceCacheConfig;
 import org.forome.annotation.service.source.DataSource;
+import org.forome.annotation.service.source.packed.PackedFasta;
 import org.forome.annotation.service.source.struct.Source;
 import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Interval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class WrapperDataSource implements DataSource {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotationConsole.class);
 
+	private final DataSource dataSource;
 	private final HashMap<Assembly, WrapperSource> sources;
 
-	public WrapperDataSource(DataSource dataSource) {
+	public WrapperDataSource(DataSource dataSource, SourceCacheConfig cacheConfig, Map<Assembly, PackedFasta> packedFastas) {
+		this.dataSource = dataSource;
 		this.sources = new HashMap<>();
 		for (Assembly assembly : Assembly.values()) {
-			sources.put(assembly, new WrapperSource(dataSource.getSource(assembly)));
+			sources.put(assembly, new WrapperSource(dataSource.getSource(assembly), cacheConfig, packedFastas.get(assembly)));
 		}
 	}
 
@@ -45,6 +52,15 @@ public class WrapperDataSource implements DataSource {
 		return sources.get(assembly);
 	}
 
+	public LociLease prefetch(Assembly assembly, List<Interval> intervals) {
+		return sources.get(assembly).prefetch(intervals);
+	}
+
+	@Override
+	public void close() {
+		dataSource.close();
+	}
+
 	public void printStatistics() {
 		for (Assembly assembly : Assembly.values()) {
 			WrapperSource wrapperSource = sources.get(assembly);
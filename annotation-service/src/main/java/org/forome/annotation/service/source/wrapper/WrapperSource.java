@@ -20,8 +20,13 @@ package org.forome.annotation.service.source.wrapper;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import net.minidev.json.JSONArray;
 import org.forome.annotation.annotator.AnnotationConsole;
+import org.forome.annotation.config.source.SourceCacheConfig;
+import org.forome.annotation.service.source.packed.PackedFasta;
+import org.forome.annotation.service.source.struct.Locus;
+import org.forome.annotation.service.source.struct.LocusSource;
 import org.forome.annotation.service.source.struct.Record;
 import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.utils.Statistics;
@@ -32,118 +37,234 @@ import org.forome.core.struct.sequence.Sequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class WrapperSource implements Source {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotationConsole.class);
 
+	//Guava Cache не хранит null, отсутствие данных в источнике кешируется этим значением
+	private final static Object NULL_VALUE = new Object();
+
 	private final Source source;
 
-	private final Cache<String, Object> cache;
+	//Если источник умеет отдавать все массивы одним запросом, то запрашиваем позицию целиком
+	private final LocusSource locusSource;
+
+	//Отдельный кеш на каждый тип данных, чтобы частые запросы одного типа не вытесняли остальные
+	private final Map<WrapperSourceType, Cache<WrapperSourceKey, Object>> caches;
+
+	//Локальный референс, если задан - последовательности читаются из него без кеша и запросов к источнику
+	private final PackedFasta packedFasta;
+
+	private final LociWindow lociWindow;
+	private final AtomicLong lociWindowHits;
 
 	private final Map<WrapperSourceType, Statistics> statistics;
 
-	public WrapperSource(Source source) {
+	public WrapperSource(Source source, SourceCacheConfig cacheConfig, PackedFasta packedFasta) {
 		this.source = source;
-		this.cache = CacheBuilder.newBuilder()
-				.maximumSize(100)
-				.build();
+		this.packedFasta = packedFasta;
+		this.locusSource = (source instanceof LocusSource) ? (LocusSource) source : null;
 
-		this.statistics = new HashMap<>();
+		this.caches = new EnumMap<>(WrapperSourceType.class);
+		for (WrapperSourceType type : WrapperSourceType.values()) {
+			caches.put(type, buildCache(cacheConfig.get(type)));
+		}
+
+		this.lociWindow = new LociWindow();
+		this.lociWindowHits = new AtomicLong();
+
+		this.statistics = new EnumMap<>(WrapperSourceType.class);
 		for (WrapperSourceType type : WrapperSourceType.values()) {
 			statistics.put(type, new Statistics());
 		}
 	}
 
+	private static Cache<WrapperSourceKey, Object> buildCache(SourceCacheConfig.TypeConfig config) {
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+		if (config.weight > 0 && config.size > 0) {
+			//Ограничение по памяти, минимальный вес записи сохраняет и ограничение по кол-ву записей
+			long maxWeight = config.weight * 1024L * 1024L;
+			int minWeight = (int) Math.min(Integer.MAX_VALUE, (maxWeight + config.size - 1) / config.size);
+			builder.maximumWeight(maxWeight).weigher(new WrapperSourceWeigher(minWeight));
+		} else {
+			builder.maximumSize(config.size);
+		}
+		if (config.ttl > 0) {
+			builder.expireAfterAccess(config.ttl, TimeUnit.SECONDS);
+		}
+		return builder.build();
+	}
+
 	@Override
 	public Record getRecord(Position position) {
-		try {
-			Optional<Record> value = (Optional<Record>) cache.get(getCacheKey(WrapperSourceType.RECORD, position), () -> callable(WrapperSourceType.RECORD, () -> source.getRecord(position)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.RECORD, WrapperSourceKey.of(position), () -> source.getRecord(position));
 	}
 
 	@Override
 	public Sequence getFastaSequence(Interval interval) {
-		try {
-			Optional<Sequence> value = (Optional<Sequence>) cache.get(getCacheKey(WrapperSourceType.FASTA, interval), () -> callable(WrapperSourceType.FASTA, () -> source.getFastaSequence(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
+		if (packedFasta != null && packedFasta.contains(interval.chromosome)) {
+			return packedFasta.getSequence(interval);
 		}
+		return get(WrapperSourceType.FASTA, WrapperSourceKey.of(interval), () -> getFastaSequenceFromSource(interval));
 	}
 
 	@Override
 	public Conservation getConservation(Position position) {
-		try {
-			Optional<Conservation> value = (Optional<Conservation>) cache.get(getCacheKey(WrapperSourceType.CONSERVATION, position), () -> callable(WrapperSourceType.CONSERVATION, () -> source.getConservation(position)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.CONSERVATION, WrapperSourceKey.of(position),
+				() -> (locusSource != null) ? getLocus(Interval.of(position)).conservation : source.getConservation(position)
+		);
 	}
 
 	@Override
 	public JSONArray getGnomad(Position position) {
+		return get(WrapperSourceType.GNOMAD, WrapperSourceKey.of(position),
+				() -> (locusSource != null) ? getLocus(Interval.of(position)).gnomad : source.getGnomad(position)
+		);
+	}
+
+	/**
+	 * Позиции, которых нет в кеше, запрашиваются у источника одним запросом
+	 */
+	@Override
+	public List<JSONArray> getGnomad(Interval interval) {
+		Cache<WrapperSourceKey, Object> cache = caches.get(WrapperSourceType.GNOMAD);
+
+		List<JSONArray> records = new ArrayList<>(interval.end - interval.start + 1);
+		List<Integer> missingIndexes = new ArrayList<>();
+		List<Interval> missing = new ArrayList<>();
+		for (int pos = interval.start; pos <= interval.end; pos++) {
+			Position position = new Position(interval.chromosome, pos);
+			Object value = cache.getIfPresent(WrapperSourceKey.of(position));
+			if (value == null) {
+				missingIndexes.add(records.size());
+				missing.add(Interval.of(position));
+			}
+			records.add((JSONArray) unwrap(value));
+		}
+		if (missing.isEmpty()) {
+			return records;
+		}
+
+		if (locusSource == null) {
+			for (int i = 0; i < missing.size(); i++) {
+				records.set(missingIndexes.get(i), getGnomad(new Position(interval.chromosome, missing.get(i).start)));
+			}
+			return records;
+		}
+
+		List<Locus> loci;
 		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.GNOMAD, position), () -> callable(WrapperSourceType.GNOMAD, () -> source.getGnomad(position)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
+			loci = (List<Locus>) unwrap(callable(WrapperSourceType.GNOMAD, () -> locusSource.getLoci(missing)).call());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		for (int i = 0; i < loci.size(); i++) {
+			Locus locus = loci.get(i);
+			cache.put(WrapperSourceKey.of(new Position(interval.chromosome, locus.interval.start)), wrap(locus.gnomad));
+			records.set(missingIndexes.get(i), locus.gnomad);
 		}
+		return records;
 	}
 
 	@Override
 	public JSONArray getDbSNP(Interval interval) {
-		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.DBSNP, interval), () -> callable(WrapperSourceType.DBSNP, () -> source.getDbSNP(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.DBSNP, WrapperSourceKey.of(interval),
+				() -> (locusSource != null) ? getLocus(interval).dbSNP : source.getDbSNP(interval)
+		);
 	}
 
 	@Override
 	public JSONArray getDbNSFP(Interval interval) {
-		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.DBNSFP, interval), () -> callable(WrapperSourceType.DBNSFP, () -> source.getDbNSFP(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.DBNSFP, WrapperSourceKey.of(interval),
+				() -> (locusSource != null) ? getLocus(interval).dbNSFP : source.getDbNSFP(interval)
+		);
 	}
 
 	@Override
 	public JSONArray getSpliceAI(Interval interval) {
+		return get(WrapperSourceType.SPLICEAI, WrapperSourceKey.of(interval),
+				() -> (locusSource != null) ? getLocus(interval).spliceAI : source.getSpliceAI(interval)
+		);
+	}
+
+	private Sequence getFastaSequenceFromSource(Interval interval) {
+		if (locusSource != null && interval.start <= interval.end) {
+			Locus locus = getLocus(interval);
+			if (locus.containsSequence(interval)) {
+				return locus.getFastaSequence(interval);
+			}
+		}
+		return source.getFastaSequence(interval);
+	}
+
+	/**
+	 * Загрузка одним запросом позиций для окна следующих вариантов
+	 * Обработка вариантов окна затем обходится без сетевых запросов к источнику
+	 *
+	 * @return окно, которое вызывающий освобождает, когда его записи обработаны
+	 */
+	public LociLease prefetch(List<Interval> intervals) {
+		if (locusSource == null || intervals.isEmpty()) {
+			return LociLease.EMPTY;
+		}
+
+		//Позиция кешируется по началу интервала, поэтому оставляем самый длинный интервал
+		Map<WrapperSourceKey, Interval> unique = new LinkedHashMap<>();
+		for (Interval interval : intervals) {
+			unique.merge(WrapperSourceKey.ofStart(interval), interval, (i1, i2) -> (i1.end >= i2.end) ? i1 : i2);
+		}
+
 		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.SPLICEAI, interval), () -> callable(WrapperSourceType.SPLICEAI, () -> source.getSpliceAI(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
+			List<Locus> loci = (List<Locus>) unwrap(callable(WrapperSourceType.LOCI_WINDOW,
+					() -> locusSource.getLoci(new ArrayList<>(unique.values()))
+			).call());
+			if (loci != null) {
+				return lociWindow.put(loci, locus -> WrapperSourceKey.ofStart(locus.interval));
+			}
+		} catch (Exception e) {
+			//Без предзагрузки варианты будут запрошены по одному
+			log.error("Exception prefetch loci", e);
 		}
+		return LociLease.EMPTY;
 	}
 
-	private static String getCacheKey(WrapperSourceType type, Position position){
-		return type.name() + position.toString();
+	/**
+	 * Позиция кешируется по началу интервала, fasta в ней - до конца интервала первого запроса
+	 */
+	private Locus getLocus(Interval interval) {
+		WrapperSourceKey key = WrapperSourceKey.ofStart(interval);
+		Locus locus = lociWindow.get(key);
+		if (locus != null) {
+			lociWindowHits.incrementAndGet();
+			return locus;
+		}
+		return get(WrapperSourceType.LOCUS, key, () -> locusSource.getLocus(interval));
 	}
 
-	private static String getCacheKey(WrapperSourceType type, Interval interval){
-		return type.name() + interval.toString();
+	private <T> T get(WrapperSourceType type, WrapperSourceKey key, Callable<T> callable) {
+		try {
+			return (T) unwrap(caches.get(type).get(key, callable(type, callable)));
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
 	}
 
-	private Callable callable(WrapperSourceType type, Callable callable) {
+	private Callable<Object> callable(WrapperSourceType type, Callable<?> callable) {
 		return () -> {
 			long t1 = System.currentTimeMillis();
-			Optional result;
+			Object result;
 			try {
-				result = Optional.ofNullable(callable.call());
+				result = wrap(callable.call());
 			} catch (Exception e) {
 				throw new RuntimeException(e);
 			}
@@ -152,17 +273,36 @@ public class WrapperSource implements Source {
 		};
 	}
 
+	private static Object wrap(Object value) {
+		return (value != null) ? value : NULL_VALUE;
+	}
+
+	private static Object unwrap(Object value) {
+		return (value != NULL_VALUE) ? value : null;
+	}
+
 	public boolean isEmptyStatistics() {
-		return (statistics.values().stream().mapToInt(istatistics -> istatistics.count.get()).sum() == 0);
+		return (statistics.values().stream().mapToInt(istatistics -> istatistics.count.get()).sum() == 0)
+				&& (caches.values().stream().mapToLong(cache -> cache.stats().requestCount()).sum() == 0);
 	}
 
 	public void printStatistics() {
 		for (Map.Entry<WrapperSourceType, Statistics> entry : statistics.entrySet()) {
 			WrapperSourceType type = entry.getKey();
 			Statistics iStatistics = entry.getValue();
+			Cache<WrapperSourceKey, Object> cache = caches.get(type);
+			CacheStats cacheStats = cache.stats();
 
-			if (iStatistics.count.get() == 0) continue;
-			log.debug("{}: {}", type, iStatistics.getStat());
+			if (iStatistics.count.get() == 0 && cacheStats.requestCount() == 0) continue;
+			if (type == WrapperSourceType.LOCI_WINDOW) {
+				log.debug("{}: {}, hits: {}, windows: {}", type, iStatistics.getStat(), lociWindowHits.get(), lociWindow.size());
+			} else {
+				log.debug("{}: {}, cache(size: {}, hits: {}, misses: {}, evictions: {}, hit rate: {})",
+						type, iStatistics.getStat(),
+						cache.size(), cacheStats.hitCount(), cacheStats.missCount(), cacheStats.evictionCount(),
+						String.format("%.3f", cacheStats.hitRate())
+				);
+			}
 		}
 	}
 }
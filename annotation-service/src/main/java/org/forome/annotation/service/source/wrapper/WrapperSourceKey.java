@@ -0,0 +1,78 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.Position;
+
+/**
+ * Ключ кеша: хромосома и координаты, без склейки строк на каждый запрос
+ */
+final class WrapperSourceKey {
+
+	private final String chromosome;
+	private final int start;
+	private final int end;
+
+	private final int hash;
+
+	private WrapperSourceKey(String chromosome, int start, int end) {
+		this.chromosome = chromosome;
+		this.start = start;
+		this.end = end;
+
+		int h = chromosome.hashCode();
+		h = 31 * h + start;
+		h = 31 * h + end;
+		this.hash = h;
+	}
+
+	static WrapperSourceKey of(Position position) {
+		return new WrapperSourceKey(position.chromosome.getChar(), position.value, position.value);
+	}
+
+	static WrapperSourceKey of(Interval interval) {
+		return new WrapperSourceKey(interval.chromosome.getChar(), interval.start, interval.end);
+	}
+
+	/**
+	 * Позиция запроса всех массивов - только начало интервала
+	 */
+	static WrapperSourceKey ofStart(Interval interval) {
+		return new WrapperSourceKey(interval.chromosome.getChar(), interval.start, interval.start);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		WrapperSourceKey that = (WrapperSourceKey) o;
+		return start == that.start && end == that.end && chromosome.equals(that.chromosome);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return chromosome + ':' + start + '-' + end;
+	}
+}
@@ -32,5 +32,9 @@ public enum WrapperSourceType {
 
 	DBNSFP,
 
-	SPLICEAI
+	SPLICEAI,
+
+	LOCUS,
+
+	LOCI_WINDOW
 }
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import com.google.common.cache.Weigher;
+import org.forome.annotation.service.source.struct.Locus;
+import org.forome.core.struct.sequence.Sequence;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Оценка занимаемой записью кеша памяти в байтах (без точного учета заголовков объектов и выравнивания).
+ * Вес записи не меньше minWeight: тогда ограничение по весу maxWeight дает и ограничение по кол-ву maxWeight / minWeight
+ */
+class WrapperSourceWeigher implements Weigher<WrapperSourceKey, Object> {
+
+	private static final int OBJECT_WEIGHT = 16;
+	private static final int REFERENCE_WEIGHT = 8;
+	private static final int KEY_WEIGHT = 64;
+
+	private final int minWeight;
+
+	WrapperSourceWeigher(int minWeight) {
+		this.minWeight = minWeight;
+	}
+
+	@Override
+	public int weigh(WrapperSourceKey key, Object value) {
+		long weight = KEY_WEIGHT + estimate(value);
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, weight));
+	}
+
+	static long estimate(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof String) {
+			return 40 + 2L * ((String) value).length();
+		} else if (value instanceof Map) {
+			long weight = 48;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				weight += 32 + estimate(entry.getKey()) + estimate(entry.getValue());
+			}
+			return weight;
+		} else if (value instanceof Collection) {
+			long weight = 40;
+			for (Object item : (Collection<?>) value) {
+				weight += REFERENCE_WEIGHT + estimate(item);
+			}
+			return weight;
+		} else if (value instanceof Sequence) {
+			Sequence sequence = (Sequence) value;
+			return OBJECT_WEIGHT + 16 + (long) REFERENCE_WEIGHT * getLength(sequence);
+		} else if (value instanceof Locus) {
+			Locus locus = (Locus) value;
+			return OBJECT_WEIGHT
+					+ estimate(locus.gnomad) + estimate(locus.dbSNP) + estimate(locus.dbNSFP) + estimate(locus.spliceAI)
+					+ 64 //conservation
+					+ 40 + 2L * Math.max(0, locus.interval.end - locus.interval.start + 1); //fasta
+		} else {
+			//Record, Conservation, числа - небольшие объекты фиксированного размера
+			return 64;
+		}
+	}
+
+	private static int getLength(Sequence sequence) {
+		return Math.max(0, sequence.interval.end - sequence.interval.start + 1);
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.utils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public class CompletableFutureUtils {
+
+	/**
+	 * Передает каждый результат в consumer по мере готовности.
+	 * Возвращаемый future завершается только после того, как consumer отработал для всех результатов:
+	 * allOf строится по стадиям thenAccept, а не по исходным future - зависимые стадии одного future
+	 * выполняются в обратном порядке регистрации, и иначе завершение могло бы обогнать последний consumer
+	 */
+	public static <T> CompletableFuture<Void> thenAcceptAll(List<CompletableFuture<T>> futures, Consumer<? super T> consumer) {
+		CompletableFuture<?>[] stages = new CompletableFuture[futures.size()];
+		for (int i = 0; i < futures.size(); i++) {
+			stages[i] = futures.get(i).thenAccept(consumer);
+		}
+		return CompletableFuture.allOf(stages);
+	}
+}
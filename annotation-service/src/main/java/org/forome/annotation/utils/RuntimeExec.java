@@ -19,6 +19,7 @@
 package org.forome.annotation.utils;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -39,6 +40,65 @@ public class RuntimeExec {
 		}
 	}
 
+	/**
+	 * Запущенный процесс: выходные потоки вычитываются фоновыми потоками, чтобы процесс не блокировался на записи
+	 */
+	public static class Execution {
+
+		private final Process process;
+		private final StringBuffer out;
+		private final StringBuffer outError;
+		private final Thread[] readers;
+
+		private Execution(Process process) {
+			this.process = process;
+			this.out = new StringBuffer();
+			this.outError = new StringBuffer();
+			this.readers = new Thread[]{
+					startReader(process.getInputStream(), out),
+					startReader(process.getErrorStream(), outError)
+			};
+		}
+
+		public boolean isAlive() {
+			return process.isAlive();
+		}
+
+		public Result waitFor() throws InterruptedException {
+			int exitCode = process.waitFor();
+			for (Thread reader : readers) {
+				reader.join();
+			}
+			return new Result(exitCode, out.toString(), outError.toString());
+		}
+
+		public void destroy() {
+			process.destroy();
+		}
+
+		private static Thread startReader(InputStream inputStream, StringBuffer buffer) {
+			Thread thread = new Thread(() -> {
+				try (BufferedReader in = new BufferedReader(new InputStreamReader(inputStream))) {
+					String line;
+					while ((line = in.readLine()) != null) {
+						buffer.append(line);
+					}
+				} catch (IOException ignore) {
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+			return thread;
+		}
+	}
+
+	/**
+	 * Запуск без ожидания завершения
+	 */
+	public static Execution startCommand(String command) throws IOException {
+		return new Execution(new ProcessBuilder(command.split(" ")).start());
+	}
+
 	public static Result runCommand(String command) throws Exception{
 		return runCommand(command, null);
 	}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Чтение файла, который в это время дописывает другой процесс: при достижении конца файла ожидаем новые данные,
+ * конец потока - только после того, как запись файла завершена
+ */
+public class TailFileInputStream extends InputStream {
+
+	public interface Producer {
+
+		/**
+		 * @return true - файл записан полностью
+		 * @throws IOException запись файла завершилась ошибкой
+		 */
+		boolean isComplete() throws IOException;
+	}
+
+	private static final long POLL_INTERVAL = 200L;
+
+	private final Path file;
+	private final Producer producer;
+
+	private InputStream inputStream;
+	private boolean complete;
+
+	public TailFileInputStream(Path file, Producer producer) {
+		this.file = file;
+		this.producer = producer;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] value = new byte[1];
+		int n = read(value, 0, 1);
+		return (n == -1) ? -1 : value[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (true) {
+			if (inputStream == null) {
+				if (Files.exists(file)) {
+					inputStream = Files.newInputStream(file);
+				} else if (producer.isComplete()) {
+					throw new NoSuchFileException(file.toString());
+				} else {
+					await();
+					continue;
+				}
+			}
+
+			int n = inputStream.read(b, off, len);
+			if (n != -1) {
+				return n;
+			}
+			if (complete) {
+				return -1;
+			}
+			if (producer.isComplete()) {
+				//Дочитываем то, что было дописано до завершения
+				complete = true;
+			} else {
+				await();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (inputStream != null) {
+			inputStream.close();
+		}
+	}
+
+	private static void await() throws InterruptedIOException {
+		try {
+			Thread.sleep(POLL_INTERVAL);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+}
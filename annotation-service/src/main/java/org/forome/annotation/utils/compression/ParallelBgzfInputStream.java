@@ -0,0 +1,257 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.utils.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение BGZF (vcf.gz, сжатый bgzip) с распаковкой блоков параллельно на всех ядрах.
+ * Блоки читаются из файла последовательно, распаковываются в общем пуле и отдаются в исходном порядке
+ */
+public class ParallelBgzfInputStream extends InputStream {
+
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	//Кол-во блоков (до 64 Кб каждый), распаковываемых с опережением чтения
+	private static final int WINDOW = THREADS * 4;
+
+	private static final int HEADER_LENGTH = 12;
+	private static final int FOOTER_LENGTH = 8;
+
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, r -> {
+		Thread thread = new Thread(r, "bgzf-inflate");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final InputStream source;
+
+	private final ArrayDeque<Future<byte[]>> blocks;
+	private boolean sourceEnd;
+
+	private byte[] current;
+	private int offset;
+
+	public ParallelBgzfInputStream(InputStream source) {
+		this.source = source;
+		this.blocks = new ArrayDeque<>();
+		this.sourceEnd = false;
+		this.current = new byte[0];
+		this.offset = 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureCurrent()) {
+			return -1;
+		}
+		return current[offset++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureCurrent()) {
+			return -1;
+		}
+		int n = Math.min(len, current.length - offset);
+		System.arraycopy(current, offset, b, off, n);
+		offset += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return current.length - offset;
+	}
+
+	private boolean ensureCurrent() throws IOException {
+		while (offset >= current.length) {
+			fill();
+			Future<byte[]> block = blocks.poll();
+			if (block == null) {
+				return false;
+			}
+			try {
+				current = block.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+			offset = 0;
+		}
+		return true;
+	}
+
+	private void fill() throws IOException {
+		while (!sourceEnd && blocks.size() < WINDOW) {
+			byte[] raw = readRawBlock(source);
+			if (raw == null) {
+				sourceEnd = true;
+			} else {
+				blocks.add(EXECUTOR.submit(() -> inflate(raw)));
+			}
+		}
+	}
+
+	/**
+	 * Блок целиком (заголовок, сжатые данные, CRC32 и ISIZE) или null в конце файла
+	 */
+	private static byte[] readRawBlock(InputStream in) throws IOException {
+		byte[] header = new byte[HEADER_LENGTH];
+		int first = in.read();
+		if (first == -1) {
+			return null;
+		}
+		header[0] = (byte) first;
+		readFully(in, header, 1, HEADER_LENGTH - 1);
+		if (!isBgzfHeader(header)) {
+			throw new IOException("Invalid BGZF block header");
+		}
+
+		int xlen = readUInt16(header, 10);
+		byte[] extra = new byte[xlen];
+		readFully(in, extra, 0, xlen);
+
+		int blockSize = -1;
+		for (int i = 0; i + 4 <= xlen; ) {
+			int slen = readUInt16(extra, i + 2);
+			if (extra[i] == 'B' && extra[i + 1] == 'C' && slen == 2) {
+				blockSize = readUInt16(extra, i + 4) + 1;
+			}
+			i += 4 + slen;
+		}
+		if (blockSize < HEADER_LENGTH + xlen + FOOTER_LENGTH) {
+			throw new IOException("Invalid BGZF block size");
+		}
+
+		byte[] raw = Arrays.copyOf(header, blockSize);
+		System.arraycopy(extra, 0, raw, HEADER_LENGTH, xlen);
+		readFully(in, raw, HEADER_LENGTH + xlen, blockSize - HEADER_LENGTH - xlen);
+		return raw;
+	}
+
+	private static byte[] inflate(byte[] raw) throws IOException {
+		int dataOffset = HEADER_LENGTH + readUInt16(raw, 10);
+		int dataLength = raw.length - dataOffset - FOOTER_LENGTH;
+		long crc = readUInt32(raw, raw.length - FOOTER_LENGTH);
+		int size = (int) readUInt32(raw, raw.length - 4);
+
+		byte[] data = new byte[size];
+		Inflater inflater = new Inflater(true);
+		try {
+			//Для nowrap zlib нужен лишний байт после данных, им служит начало CRC32
+			inflater.setInput(raw, dataOffset, dataLength + 1);
+			int n = 0;
+			while (n < size) {
+				int count = inflater.inflate(data, n, size - n);
+				if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				n += count;
+			}
+			if (n != size) {
+				throw new IOException("Invalid BGZF block: unexpected size");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+
+		CRC32 crc32 = new CRC32();
+		crc32.update(data, 0, size);
+		if (crc32.getValue() != crc) {
+			throw new IOException("Invalid BGZF block: CRC32 mismatch");
+		}
+		return data;
+	}
+
+	/**
+	 * Проверка, что поток начинается с блока BGZF, поток должен поддерживать mark
+	 */
+	public static boolean isBgzf(InputStream in) throws IOException {
+		byte[] header = new byte[HEADER_LENGTH + 4];
+		in.mark(header.length);
+		try {
+			int n = 0;
+			while (n < header.length) {
+				int count = in.read(header, n, header.length - n);
+				if (count == -1) {
+					return false;
+				}
+				n += count;
+			}
+		} finally {
+			in.reset();
+		}
+		return isBgzfHeader(header) && header[12] == 'B' && header[13] == 'C';
+	}
+
+	private static boolean isBgzfHeader(byte[] header) {
+		return (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139
+				&& header[2] == 8 && (header[3] & 4) != 0;
+	}
+
+	private static int readUInt16(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+	}
+
+	private static long readUInt32(byte[] bytes, int offset) {
+		return (readUInt16(bytes, offset) | ((long) readUInt16(bytes, offset + 2) << 16));
+	}
+
+	private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int count = in.read(b, off, len);
+			if (count == -1) {
+				throw new EOFException("Unexpected end of BGZF file");
+			}
+			off += count;
+			len -= count;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Future<byte[]> block : blocks) {
+			block.cancel(false);
+		}
+		blocks.clear();
+		source.close();
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.utils.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Запись в формате BGZF (как bgzip) со сжатием блоков параллельно в пуле потоков.
+ * Блоки сжимаются независимо и пишутся в исходном порядке, результат читается обычным gzip
+ */
+public class ParallelBgzfOutputStream extends OutputStream {
+
+	//Максимальный размер данных блока: сжатый блок (с заголовком) должен уместиться в 64 Кб даже без сжатия
+	public static final int MAX_BLOCK_SIZE = 0xff00;
+
+	private static final int HEADER_LENGTH = 18;
+	private static final int FOOTER_LENGTH = 8;
+
+	//Пустой блок - признак конца файла BGZF
+	private static final byte[] EOF_BLOCK = {
+			0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43,
+			0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+	};
+
+	private final OutputStream target;
+	private final ExecutorService executor;
+
+	//Кол-во блоков, сжимаемых одновременно (ожидающих записи)
+	private final int window;
+
+	private final ArrayDeque<Future<byte[]>> blocks;
+
+	private byte[] buffer;
+	private int count;
+
+	private boolean closed;
+
+	public ParallelBgzfOutputStream(OutputStream target) {
+		this(target, 0, MAX_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param threads кол-во потоков сжатия, 0 - кол-во ядер
+	 * @param blockSize размер несжатых данных блока, не больше MAX_BLOCK_SIZE
+	 */
+	public ParallelBgzfOutputStream(OutputStream target, int threads, int blockSize) {
+		if (threads < 0) throw new IllegalArgumentException("Bad threads: " + threads);
+		if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) throw new IllegalArgumentException("Bad block size: " + blockSize);
+
+		int poolSize = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+		this.target = target;
+		this.executor = Executors.newFixedThreadPool(poolSize, r -> {
+			Thread thread = new Thread(r, "bgzf-deflate");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.window = poolSize * 4;
+		this.blocks = new ArrayDeque<>();
+		this.buffer = new byte[blockSize];
+		this.count = 0;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		buffer[count++] = (byte) b;
+		if (count == buffer.length) {
+			submit();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == buffer.length) {
+				submit();
+			}
+		}
+	}
+
+	/**
+	 * Недописанный блок закрывается: данные, записанные до flush, попадают в файл целиком
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (count > 0) {
+			submit();
+		}
+		while (!blocks.isEmpty()) {
+			writeBlock(blocks.poll());
+		}
+		target.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+			target.write(EOF_BLOCK);
+			target.close();
+		} finally {
+			for (Future<byte[]> block : blocks) {
+				block.cancel(false);
+			}
+			executor.shutdown();
+		}
+	}
+
+	private void submit() throws IOException {
+		byte[] data = Arrays.copyOf(buffer, count);
+		count = 0;
+		blocks.add(executor.submit(() -> deflate(data)));
+		while (blocks.size() > window) {
+			writeBlock(blocks.poll());
+		}
+	}
+
+	private void writeBlock(Future<byte[]> block) throws IOException {
+		try {
+			target.write(block.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static byte[] deflate(byte[] data) {
+		byte[] block = deflate(data, Deflater.DEFAULT_COMPRESSION);
+		if (block == null) {
+			//Несжимаемые данные
+			block = deflate(data, Deflater.NO_COMPRESSION);
+		}
+		return block;
+	}
+
+	/**
+	 * Блок целиком или null, если сжатые данные не умещаются в блок
+	 */
+	private static byte[] deflate(byte[] data, int level) {
+		byte[] block = new byte[65536];
+		int maxLength = block.length - HEADER_LENGTH - FOOTER_LENGTH;
+
+		Deflater deflater = new Deflater(level, true);
+		int length = 0;
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			while (!deflater.finished() && length < maxLength) {
+				length += deflater.deflate(block, HEADER_LENGTH + length, maxLength - length);
+			}
+			if (!deflater.finished()) {
+				return null;
+			}
+		} finally {
+			deflater.end();
+		}
+
+		int blockSize = HEADER_LENGTH + length + FOOTER_LENGTH;
+		//Заголовок gzip с дополнительным полем BC (размер блока - 1)
+		block[0] = 0x1f;
+		block[1] = (byte) 0x8b;
+		block[2] = 0x08;
+		block[3] = 0x04;
+		block[9] = (byte) 0xff;
+		writeUInt16(block, 10, 6);
+		block[12] = 'B';
+		block[13] = 'C';
+		writeUInt16(block, 14, 2);
+		writeUInt16(block, 16, blockSize - 1);
+
+		CRC32 crc32 = new CRC32();
+		crc32.update(data, 0, data.length);
+		writeUInt32(block, HEADER_LENGTH + length, crc32.getValue());
+		writeUInt32(block, HEADER_LENGTH + length + 4, data.length);
+		return Arrays.copyOf(block, blockSize);
+	}
+
+	private static void writeUInt16(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) value;
+		bytes[offset + 1] = (byte) (value >>> 8);
+	}
+
+	private static void writeUInt32(byte[] bytes, int offset, long value) {
+		writeUInt16(bytes, offset, (int) value);
+		writeUInt16(bytes, offset + 2, (int) (value >>> 16));
+	}
+}
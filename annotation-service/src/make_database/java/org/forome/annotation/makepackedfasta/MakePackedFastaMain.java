@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.makepackedfasta;
+
+import com.google.common.base.Strings;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.forome.annotation.service.source.packed.PackedFastaWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Сборка упакованного референса для "source.fasta":
+ * -input hg38.fa.gz -output hg38.fa2
+ */
+public class MakePackedFastaMain {
+
+	private final static Logger log = LoggerFactory.getLogger(MakePackedFastaMain.class);
+
+	public static final String OPTION_FILE_INPUT = "input";
+	public static final String OPTION_FILE_OUTPUT = "output";
+
+	public static void main(String[] args) {
+		Options options = new Options()
+				.addOption(Option.builder()
+						.longOpt(OPTION_FILE_INPUT)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Absolute path to fasta file (.fa or .fa.gz)")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_FILE_OUTPUT)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Absolute path to packed fasta file")
+						.build());
+
+		Path input;
+		Path output;
+		try {
+			CommandLine cmd = new DefaultParser().parse(options, args);
+
+			String strInput = cmd.getOptionValue(OPTION_FILE_INPUT);
+			if (Strings.isNullOrEmpty(strInput)) {
+				throw new IllegalArgumentException("Missing input file");
+			}
+			input = Paths.get(strInput).toAbsolutePath();
+			if (!Files.exists(input)) {
+				throw new IllegalArgumentException("Input file does not exists: " + input);
+			}
+
+			String strOutput = cmd.getOptionValue(OPTION_FILE_OUTPUT);
+			if (Strings.isNullOrEmpty(strOutput)) {
+				throw new IllegalArgumentException("Missing output file");
+			}
+			output = Paths.get(strOutput).toAbsolutePath();
+		} catch (Throwable e) {
+			log.error("Exception arguments parser", e);
+			new HelpFormatter().printHelp("", options);
+			System.exit(2);
+			return;
+		}
+
+		try {
+			long t1 = System.currentTimeMillis();
+			PackedFastaWriter.write(input, output);
+			log.debug("Packed fasta: {}, time: {} (millis)", output, System.currentTimeMillis() - t1);
+			System.exit(0);
+		} catch (Throwable e) {
+			log.error("Exception", e);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.makevepcache;
+
+import com.google.common.base.Strings;
+import net.minidev.json.JSONObject;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.forome.annotation.iterator.vepjson.VepJsonFileIterator;
+import org.forome.annotation.service.ensemblvep.cache.EnsemblVepCacheDatabase;
+import org.forome.annotation.service.ensemblvep.cache.EnsemblVepCacheService;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Прогрев кеша VEP ("ensembl-vep.cache") из готового vep.json:
+ * -input sample.vep.json.gz -database /data/vep-cache [-assembly GRCh37]
+ */
+public class MakeVepCacheMain {
+
+	private final static Logger log = LoggerFactory.getLogger(MakeVepCacheMain.class);
+
+	public static final String OPTION_FILE_INPUT = "input";
+	public static final String OPTION_DATABASE = "database";
+	public static final String OPTION_ASSEMBLY = "assembly";
+
+	public static void main(String[] args) {
+		Options options = new Options()
+				.addOption(Option.builder()
+						.longOpt(OPTION_FILE_INPUT)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Absolute path to vep.json file (.json or .json.gz)")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_DATABASE)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Absolute path to vep cache database")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_ASSEMBLY)
+						.hasArg(true)
+						.optionalArg(true)
+						.desc("Assembly of vep.json (default: GRCh37)")
+						.build());
+
+		Path input;
+		Path database;
+		Assembly assembly;
+		try {
+			CommandLine cmd = new DefaultParser().parse(options, args);
+
+			String strInput = cmd.getOptionValue(OPTION_FILE_INPUT);
+			if (Strings.isNullOrEmpty(strInput)) {
+				throw new IllegalArgumentException("Missing input file");
+			}
+			input = Paths.get(strInput).toAbsolutePath();
+			if (!Files.exists(input)) {
+				throw new IllegalArgumentException("Input file does not exists: " + input);
+			}
+
+			String strDatabase = cmd.getOptionValue(OPTION_DATABASE);
+			if (Strings.isNullOrEmpty(strDatabase)) {
+				throw new IllegalArgumentException("Missing database");
+			}
+			database = Paths.get(strDatabase).toAbsolutePath();
+
+			assembly = Assembly.valueOf(cmd.getOptionValue(OPTION_ASSEMBLY, Assembly.GRCh37.name()));
+		} catch (Throwable e) {
+			log.error("Exception arguments parser", e);
+			new HelpFormatter().printHelp("", options);
+			System.exit(2);
+			return;
+		}
+
+		try (EnsemblVepCacheDatabase cacheDatabase = new EnsemblVepCacheDatabase(database);
+			 VepJsonFileIterator vepJsonFileIterator = new VepJsonFileIterator(input)) {
+			long t1 = System.currentTimeMillis();
+			int imported = 0;
+			int skipped = 0;
+			while (vepJsonFileIterator.hasNext()) {
+				JSONObject vepJson = vepJsonFileIterator.next();
+
+				//Ключ сервиса содержит один альтернативный аллель, мультиаллельные записи ему не соответствуют
+				String[] alleles = vepJson.getAsString("allele_string").split("/");
+				if (alleles.length != 2) {
+					skipped++;
+					continue;
+				}
+
+				byte[] key = EnsemblVepCacheService.buildKey(
+						assembly,
+						Chromosome.of(vepJson.getAsString("seq_region_name")),
+						vepJson.getAsNumber("start").intValue(),
+						vepJson.getAsNumber("end").intValue(),
+						alleles[1]
+				);
+				cacheDatabase.put(key, vepJson.toJSONString());
+
+				if (++imported % 100_000 == 0) {
+					log.debug("progress (records): {}", imported);
+				}
+			}
+			log.debug("Vep cache: {}, imported: {}, skipped: {}, entries: {}, time: {} (millis)",
+					database, imported, skipped, cacheDatabase.getEntries(), System.currentTimeMillis() - t1);
+		} catch (Throwable e) {
+			log.error("Exception", e);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.recovery;
+
+import org.forome.annotation.utils.compression.ParallelBgzfOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class RecoveryIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recovery() throws Exception {
+		Path anfisaJson = folder.getRoot().toPath().resolve("case.out.json.gz_invalid_1");
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (OutputStream os = new ParallelBgzfOutputStream(Files.newOutputStream(anfisaJson), 2, 200)) {
+			os.write("{\"record_type\":\"metadata\"}\n".getBytes(StandardCharsets.UTF_8));
+			RecoveryIndexOutputStream ios = new RecoveryIndexOutputStream(os, RecoveryIndex.getPath(anfisaJson));
+			ios.checkpoint(0, 0);
+			for (int i = 1; i <= 100; i++) {
+				byte[] record = ("{\"record_type\":\"variant\",\"position\":" + i + "}\n").getBytes(StandardCharsets.UTF_8);
+				ios.write(record);
+				expected.write(record);
+				if (i % 10 == 0) {
+					ios.checkpoint(i, i);
+				}
+			}
+			ios.flush();
+		}
+		Assert.assertEquals(11, RecoveryIndex.read(RecoveryIndex.getPath(anfisaJson)).size());
+
+		//Аварийное завершение: файл оборван
+		byte[] compressed = Files.readAllBytes(anfisaJson);
+		Files.write(anfisaJson, Arrays.copyOf(compressed, compressed.length / 2));
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		RecoveryResult result = new Recovery(null, anfisaJson).execute(actual);
+
+		Assert.assertTrue(result.offset > 0 && result.offset < 100);
+		Assert.assertEquals(0, result.offset % 10);
+		Assert.assertEquals(result.offset, result.countRecords);
+		Assert.assertArrayEquals(Arrays.copyOf(expected.toByteArray(), actual.size()), actual.toByteArray());
+		Assert.assertTrue(new String(actual.toByteArray(), StandardCharsets.UTF_8)
+				.endsWith("\"position\":" + result.offset + "}\n"));
+	}
+
+	@Test
+	public void mismatch() throws Exception {
+		Path anfisaJson = folder.getRoot().toPath().resolve("case.out.json_invalid_1");
+
+		try (OutputStream os = Files.newOutputStream(anfisaJson)) {
+			os.write("{\"record_type\":\"metadata\"}\n".getBytes(StandardCharsets.UTF_8));
+			RecoveryIndexOutputStream ios = new RecoveryIndexOutputStream(os, RecoveryIndex.getPath(anfisaJson));
+			ios.checkpoint(0, 0);
+			ios.write("{\"position\":1}\n".getBytes(StandardCharsets.UTF_8));
+			ios.checkpoint(1, 1);
+			ios.write("{\"position\":2}\n".getBytes(StandardCharsets.UTF_8));
+			ios.checkpoint(2, 1);
+			ios.flush();
+		}
+
+		//Запись после первой контрольной точки повреждена
+		byte[] bytes = Files.readAllBytes(anfisaJson);
+		bytes[bytes.length - 3] = '3';
+		Files.write(anfisaJson, bytes);
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		RecoveryResult result = new Recovery(null, anfisaJson).execute(actual);
+		Assert.assertEquals(1, result.offset);
+		Assert.assertEquals("{\"position\":1}\n", new String(actual.toByteArray(), StandardCharsets.UTF_8));
+	}
+}
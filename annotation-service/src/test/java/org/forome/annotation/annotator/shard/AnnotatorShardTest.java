@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.shard;
+
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AnnotatorShardTest {
+
+	@Test
+	public void split() {
+		List<Interval> genome = Arrays.asList(
+				Interval.of(Chromosome.of("1"), 1, 100),
+				Interval.of(Chromosome.of("2"), 1, 50)
+		);
+
+		assertRegions(AnnotatorShard.split(genome, 0, 3), "1:1-50");
+		assertRegions(AnnotatorShard.split(genome, 1, 3), "1:51-100");
+		assertRegions(AnnotatorShard.split(genome, 2, 3), "2:1-50");
+
+		assertRegions(AnnotatorShard.split(genome, 0, 2), "1:1-75");
+		assertRegions(AnnotatorShard.split(genome, 1, 2), "1:76-100", "2:1-50");
+	}
+
+	@Test
+	public void splitCoverage() {
+		List<Interval> genome = Arrays.asList(
+				Interval.of(Chromosome.of("1"), 1, 1001),
+				Interval.of(Chromosome.of("2"), 1, 17),
+				Interval.of(Chromosome.of("X"), 1, 333)
+		);
+		int count = 7;
+		for (Interval contig : genome) {
+			for (int position = 1; position <= contig.end; position++) {
+				int shards = 0;
+				for (int index = 0; index < count; index++) {
+					for (Interval region : AnnotatorShard.split(genome, index, count)) {
+						if (region.chromosome.getChar().equals(contig.chromosome.getChar())
+								&& region.start <= position && position <= region.end) {
+							shards++;
+						}
+					}
+				}
+				Assert.assertEquals(1, shards);
+			}
+		}
+	}
+
+	@Test
+	public void parseRegions() {
+		AnnotatorShard shard = AnnotatorShard.parse("1:100-200,chr2", null);
+		Assert.assertFalse(shard.withCnv);
+
+		Assert.assertTrue(shard.contains(Chromosome.of("1"), 100));
+		Assert.assertTrue(shard.contains(Chromosome.of("1"), 200));
+		Assert.assertFalse(shard.contains(Chromosome.of("1"), 99));
+		Assert.assertFalse(shard.contains(Chromosome.of("1"), 201));
+		Assert.assertTrue(shard.contains(Chromosome.of("2"), 1));
+		Assert.assertTrue(shard.contains(Chromosome.of("2"), 200_000_000));
+		Assert.assertFalse(shard.contains(Chromosome.of("3"), 150));
+	}
+
+	@Test
+	public void parseRegionsWithCnv() {
+		AnnotatorShard shard = AnnotatorShard.parse("X:100-2000,Y,cnv", null);
+		Assert.assertTrue(shard.withCnv);
+		Assert.assertEquals(2, shard.regions.size());
+		Assert.assertTrue(shard.contains(Chromosome.of("Y"), 1));
+
+		//Часть только для cnv
+		shard = AnnotatorShard.parse("cnv", null);
+		Assert.assertTrue(shard.withCnv);
+		Assert.assertTrue(shard.regions.isEmpty());
+	}
+
+	private static void assertRegions(List<Interval> regions, String... expected) {
+		Assert.assertEquals(expected.length, regions.size());
+		for (int i = 0; i < expected.length; i++) {
+			Interval region = regions.get(i);
+			Assert.assertEquals(expected[i], region.chromosome.getChar() + ":" + region.start + "-" + region.end);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.utils;
+
+import org.forome.annotation.iterator.vepjson.VepJsonFileIterator;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Вместо ensembl-vep - скрипт, который пишет vep.json частями
+ */
+public class VepJsonBuilderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void streaming() throws Exception {
+		Path vepJson = folder.getRoot().toPath().resolve("case.vep.json");
+		File resume = new File(folder.getRoot(), "resume");
+
+		//Остальные записи появляются только после того, как первые прочитаны (итератор читает одну запись вперед)
+		Path script = writeScript(
+				"for i in 1 2 3 4; do echo '{\"id\":\"'$i'\",\"seq_region_name\":\"1\"}' >> $1; done",
+				"n=0; while [ ! -f $2 ] && [ $n -lt 100 ]; do sleep 0.1; n=$((n+1)); done",
+				"for i in 5 6; do echo '{\"id\":\"'$i'\",\"seq_region_name\":\"1\"}' >> $1; done"
+		);
+
+		try (VepJsonBuilder builder = VepJsonBuilder.start("sh " + script + " " + vepJson + " " + resume, vepJson);
+			 VepJsonFileIterator iterator = new VepJsonFileIterator(vepJson, builder, null)) {
+			for (int i = 1; i <= 3; i++) {
+				Assert.assertEquals(String.valueOf(i), iterator.next().getAsString("id"));
+			}
+			Assert.assertFalse(builder.isComplete());
+
+			Assert.assertTrue(resume.createNewFile());
+			for (int i = 4; i <= 6; i++) {
+				Assert.assertEquals(String.valueOf(i), iterator.next().getAsString("id"));
+			}
+			Assert.assertFalse(iterator.hasNext());
+			Assert.assertTrue(builder.isComplete());
+		}
+	}
+
+	@Test
+	public void fail() throws Exception {
+		Path vepJson = folder.getRoot().toPath().resolve("case.vep.json");
+		Path script = writeScript(
+				"echo '{\"id\":\"1\",\"seq_region_name\":\"1\"}' >> $1",
+				"exit 3"
+		);
+
+		try (VepJsonBuilder builder = VepJsonBuilder.start("sh " + script + " " + vepJson, vepJson);
+			 VepJsonFileIterator iterator = new VepJsonFileIterator(vepJson, builder, null)) {
+			Assert.assertEquals("1", iterator.next().getAsString("id"));
+			Assert.fail();
+		} catch (RuntimeException expected) {
+		}
+	}
+
+	private Path writeScript(String... lines) throws Exception {
+		Path script = folder.newFile("vep.sh").toPath();
+		Files.write(script, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+		return script;
+	}
+}
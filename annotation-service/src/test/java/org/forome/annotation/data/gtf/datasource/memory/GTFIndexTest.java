@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.data.gtf.datasource.memory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+public class GTFIndexTest {
+
+	private static final String GTF = String.join("\n",
+			"#!genome-build GRCh37.p13",
+			"1\thavana\tgene\t100\t500\t.\t+\t.\tgene_id \"G1\"; gene_name \"GENE1\"; gene_biotype \"protein_coding\";",
+			"1\thavana\ttranscript\t100\t500\t.\t+\t.\tgene_id \"G1\"; transcript_id \"T1\"; gene_name \"GENE1\";",
+			"1\thavana\texon\t300\t500\t.\t+\t.\tgene_id \"G1\"; transcript_id \"T1\"; gene_name \"GENE1\";",
+			"1\thavana\texon\t100\t200\t.\t+\t.\tgene_id \"G1\"; transcript_id \"T1\"; gene_name \"GENE1\";",
+			"1\thavana\tCDS\t150\t200\t.\t+\t0\tgene_id \"G1\"; transcript_id \"T1\"; gene_name \"GENE1\";",
+			"1\thavana\tgene\t400\t900\t.\t-\t.\tgene_id \"G2\"; gene_name \"GENE2\";",
+			"1\thavana\ttranscript\t400\t900\t.\t-\t.\tgene_id \"G2\"; transcript_id \"T2\"; gene_name \"GENE2\";",
+			"1\thavana\tCDS\t450\t800\t.\t-\t0\tgene_id \"G2\"; transcript_id \"T2\"; gene_name \"GENE2\";",
+			"GL000192.1\tensembl\tgene\t1\t1000\t.\t+\t.\tgene_id \"G3\"; gene_name \"GENE3\";"
+	);
+
+	@Test
+	public void test() throws IOException {
+		GTFIndex index = GTFIndex.load(new BufferedReader(new StringReader(GTF)));
+
+		Assert.assertEquals("GENE1", index.getGene("1", 100));
+		Assert.assertEquals("GENE1", index.getGene("1", 450));
+		Assert.assertEquals("GENE2", index.getGene("1", 900));
+		Assert.assertNull(index.getGene("1", 99));
+		Assert.assertNull(index.getGene("1", 901));
+		Assert.assertNull(index.getGene("GL000192.1", 10));
+
+		GTFIndex.Exons exons = index.getExons("T1");
+		Assert.assertEquals("GENE1", exons.gene);
+		Assert.assertArrayEquals(new int[]{ 100, 200, 300, 500 }, exons.bounds);
+		Assert.assertNull(index.getExons("T2"));
+
+		//Границы транскрипта не включаются
+		Assert.assertEquals(Collections.emptyList(), index.getTranscripts("1", new long[]{ 100 }));
+		Assert.assertEquals(Arrays.asList("T1", "T2"), index.getTranscripts("1", new long[]{ 450 }));
+		Assert.assertEquals(Arrays.asList("T1", "T2"), index.getTranscripts("1", new long[]{ 600, 150 }));
+		Assert.assertEquals(Collections.emptyList(), index.getTranscripts("2", new long[]{ 450 }));
+
+		Assert.assertEquals(new HashSet<>(Arrays.asList("T1")), index.getCdsTranscripts("1", 150, 150));
+		Assert.assertEquals(new HashSet<>(Arrays.asList("T1", "T2")), index.getCdsTranscripts("1", 200, 450));
+		Assert.assertEquals(Collections.emptySet(), index.getCdsTranscripts("1", 201, 449));
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.processing.utils;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+import net.minidev.json.parser.JSONParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JSONMergeUtilsTest {
+
+	@Test
+	public void test() throws Exception {
+		JSONObject anfisa = new JSONObject();
+		anfisa.put("_view", new JSONObject() {{
+			put("general", new JSONObject() {{
+				put("genes", new JSONArray() {{
+					add("BRCA1");
+				}});
+				put("ref", "A");
+			}});
+		}});
+		anfisa.put("__data", new JSONObject() {{
+			put("label", "1:100 A>G");
+		}});
+		anfisa.put("empty", null);
+
+		Map<String, Object> graphQL = new LinkedHashMap<>();
+		Map<String, Object> general = new LinkedHashMap<>();
+		general.put("genes", Arrays.asList("BRCA2"));
+		general.put("ref", "A");
+		general.put("score", 0.5f);
+		graphQL.put("_view", new LinkedHashMap<String, Object>() {{
+			put("general", general);
+		}});
+		graphQL.put("record_type", "variant");
+
+		//Эталон - прежний путь: данные GraphQL через строку в JSONObject и JSONObject.merge
+		JSONObject expected = (JSONObject) parse(anfisa.toJSONString());
+		expected.merge(new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(
+				new JSONObject(graphQL).toJSONString(JSONStyle.NO_COMPRESS)
+		));
+
+		Assert.assertEquals(expected, parse(write(anfisa, graphQL)));
+		Assert.assertEquals(expected, parse(JSONMergeUtils.merge(anfisa, graphQL).toJSONString()));
+	}
+
+	@Test
+	public void testConflict() throws IOException {
+		JSONObject anfisa = new JSONObject();
+		anfisa.put("ref", "A");
+
+		Map<String, Object> graphQL = new LinkedHashMap<>();
+		graphQL.put("ref", "G");
+
+		try {
+			write(anfisa, graphQL);
+			Assert.fail();
+		} catch (RuntimeException ignore) {
+		}
+	}
+
+	private static String write(Map<String, ?> o1, Map<String, ?> o2) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		JSONMergeUtils.write(o1, o2, builder, JSONValue.COMPRESSION);
+		return builder.toString();
+	}
+
+	private static Object parse(String value) throws Exception {
+		return new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(value);
+	}
+}
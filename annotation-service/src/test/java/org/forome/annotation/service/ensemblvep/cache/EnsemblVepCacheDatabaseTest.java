@@ -0,0 +1,136 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.ensemblvep.cache;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class EnsemblVepCacheDatabaseTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void putAndGet() throws Exception {
+		try (EnsemblVepCacheDatabase database = new EnsemblVepCacheDatabase(folder.getRoot().toPath())) {
+			Assert.assertNull(database.get(key(1)));
+
+			database.put(key(1), "{\"id\":1}");
+			Assert.assertEquals("{\"id\":1}", database.get(key(1)));
+			Assert.assertEquals(1, database.getEntries());
+		}
+
+		//Данные переживают перезапуск
+		try (EnsemblVepCacheDatabase database = new EnsemblVepCacheDatabase(folder.getRoot().toPath())) {
+			Assert.assertEquals("{\"id\":1}", database.get(key(1)));
+		}
+	}
+
+	@Test
+	public void evict() throws Exception {
+		try (EnsemblVepCacheDatabase database = new EnsemblVepCacheDatabase(folder.getRoot().toPath())) {
+			for (int i = 0; i < 10; i++) {
+				database.put(key(i), "{\"id\":" + i + "}");
+				Thread.sleep(2);
+			}
+
+			Assert.assertEquals(0, database.evict(10));
+			Assert.assertEquals(4, database.evict(6));
+			Assert.assertEquals(6, database.getEntries());
+
+			//Вытесняются самые старые
+			for (int i = 0; i < 4; i++) {
+				Assert.assertNull(database.get(key(i)));
+			}
+			for (int i = 4; i < 10; i++) {
+				Assert.assertEquals("{\"id\":" + i + "}", database.get(key(i)));
+			}
+		}
+	}
+
+	@Test
+	public void overwrite() throws Exception {
+		try (EnsemblVepCacheDatabase database = new EnsemblVepCacheDatabase(folder.getRoot().toPath())) {
+			database.put(key(1), "{\"id\":1}");
+			database.put(key(1), "{\"id\":2}");
+			Assert.assertEquals("{\"id\":2}", database.get(key(1)));
+			Assert.assertEquals(1, database.getEntries());
+
+			//Параллельные промахи по одному ключу
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int i = 0; i < 16; i++) {
+					futures.add(executor.submit(() -> {
+						database.put(key(2), "{\"id\":2}");
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				executor.shutdown();
+			}
+			Assert.assertEquals(2, database.getEntries());
+
+			//Перезапись не оставляет лишних записей порядка вытеснения
+			Assert.assertEquals(1, database.evict(1));
+			Assert.assertEquals(1, database.getEntries());
+		}
+	}
+
+	@Test
+	public void readOnly() throws Exception {
+		try (EnsemblVepCacheDatabase database = new EnsemblVepCacheDatabase(folder.getRoot().toPath())) {
+			database.put(key(1), "{\"id\":1}");
+
+			//База уже занята на запись - второе открытие на запись невозможно, на чтение - да
+			try {
+				new EnsemblVepCacheDatabase(folder.getRoot().toPath()).close();
+				Assert.fail();
+			} catch (RocksDBException e) {
+				//ожидаемо
+			}
+			try (EnsemblVepCacheDatabase readOnly = new EnsemblVepCacheDatabase(folder.getRoot().toPath(), true)) {
+				Assert.assertEquals("{\"id\":1}", readOnly.get(key(1)));
+				try {
+					readOnly.put(key(2), "{\"id\":2}");
+					Assert.fail();
+				} catch (RocksDBException e) {
+					//ожидаемо
+				}
+			}
+		}
+	}
+
+	private static byte[] key(int i) {
+		return ("GRCh37:1:" + i + ":" + i + ":A").getBytes(StandardCharsets.UTF_8);
+	}
+}
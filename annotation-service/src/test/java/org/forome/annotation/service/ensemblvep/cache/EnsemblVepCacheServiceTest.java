@@ -0,0 +1,100 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.ensemblvep.cache;
+
+import net.minidev.json.JSONObject;
+import org.forome.annotation.config.ensemblvep.EnsemblVepCacheConfig;
+import org.forome.annotation.service.ensemblvep.EnsemblVepService;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EnsemblVepCacheServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final EnsemblVepService source = new EnsemblVepService() {
+
+		@Override
+		public CompletableFuture<JSONObject> getVepJson(Variant variant) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CompletableFuture<JSONObject> getVepJson(Chromosome chromosome, int start, int end, String alternative) {
+			requests.incrementAndGet();
+			JSONObject result = new JSONObject();
+			result.put("input", alternative);
+			return CompletableFuture.completedFuture(result);
+		}
+
+		@Override
+		public CompletableFuture<JSONObject> getVepJson(String id) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@Test
+	public void buildKey() {
+		byte[] sequence = EnsemblVepCacheService.buildKey(Assembly.GRCh37, Chromosome.of("1"), 100, 200, "-");
+		byte[] symbolic = EnsemblVepCacheService.buildKey(Assembly.GRCh37, Chromosome.of("1"), 100, 200, "<DEL>");
+		Assert.assertFalse(Arrays.equals(sequence, symbolic));
+		Assert.assertEquals(EnsemblVepCacheService.FORM_SEQUENCE, EnsemblVepCacheService.getForm("-"));
+		Assert.assertEquals(EnsemblVepCacheService.FORM_SYMBOLIC, EnsemblVepCacheService.getForm("<DEL>"));
+	}
+
+	@Test
+	public void lockedDatabase() throws Exception {
+		JSONObject jConfig = new JSONObject();
+		jConfig.put("path", folder.getRoot().getAbsolutePath());
+		EnsemblVepCacheConfig config = new EnsemblVepCacheConfig(jConfig);
+
+		EnsemblVepCacheService owner = new EnsemblVepCacheService(source, Assembly.GRCh37, config, (t, e) -> e.printStackTrace());
+		try {
+			owner.getVepJson(Chromosome.of("1"), 100, 100, "G").get(10, TimeUnit.SECONDS);
+
+			//База занята - второй экземпляр работает с ней только на чтение и не падает при старте
+			EnsemblVepCacheService other = new EnsemblVepCacheService(source, Assembly.GRCh37, config, (t, e) -> e.printStackTrace());
+			try {
+				Assert.assertEquals("T", other.getVepJson(Chromosome.of("1"), 200, 200, "T").get(10, TimeUnit.SECONDS).getAsString("input"));
+				Assert.assertEquals(2, requests.get());
+			} finally {
+				other.close();
+			}
+		} finally {
+			owner.close();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.ensemblvep.external;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.JSONParser;
+import org.forome.core.struct.Chromosome;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Клиент против локальной заглушки Ensembl REST
+ */
+public class EnsemblVepHttpClientTest {
+
+	private HttpServer server;
+
+	private final AtomicInteger posts = new AtomicInteger();
+	private final AtomicInteger gets = new AtomicInteger();
+	private final List<Integer> batchSizes = new ArrayList<>();
+
+	private EnsemblVepHttpClient client;
+
+	@Before
+	public void init() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/vep/human/region", this::handle);
+		server.start();
+
+		URI url = URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+		client = new EnsemblVepHttpClient(url, 100, (t, e) -> e.printStackTrace());
+	}
+
+	@After
+	public void destroy() {
+		client.close();
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		if ("POST".equals(exchange.getRequestMethod())) {
+			//Первая пачка - отказ с Retry-After
+			if (posts.incrementAndGet() == 1) {
+				exchange.getResponseHeaders().add("Retry-After", "0.2");
+				send(exchange, 429, "{\"error\": \"Too many requests\"}");
+				return;
+			}
+
+			JSONObject body;
+			try {
+				body = (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE)
+						.parse(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+			JSONArray variants = (JSONArray) body.get("variants");
+			synchronized (batchSizes) {
+				batchSizes.add(variants.size());
+			}
+
+			JSONArray results = new JSONArray();
+			for (Object variant : variants) {
+				//Для этого варианта результата нет - клиент должен запросить его отдельно
+				if (((String) variant).startsWith("3 ")) {
+					continue;
+				}
+				JSONObject result = new JSONObject();
+				result.put("input", variant);
+				result.put("source", "batch");
+				results.add(result);
+			}
+			send(exchange, 200, results.toJSONString());
+		} else {
+			gets.incrementAndGet();
+			JSONObject result = new JSONObject();
+			result.put("input", exchange.getRequestURI().getPath());
+			result.put("source", "get");
+			JSONArray results = new JSONArray();
+			results.add(result);
+			send(exchange, 200, results.toJSONString());
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+	@Test
+	public void batch() throws Exception {
+		//Диспетчер не должен отправить пачку, пока в очереди не все варианты
+		client.suspend();
+		List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			String input = i + " 100 100 A/G +";
+			String endpoint = EnsemblVepHttpClient.buildEndpoint("/vep/human/region/" + i + ":100:100/G");
+			futures.add(client.requestRegion(input, endpoint));
+		}
+		client.resume();
+
+		for (int i = 1; i <= 5; i++) {
+			JSONObject result = futures.get(i - 1).get(10, TimeUnit.SECONDS);
+			if (i == 3) {
+				Assert.assertEquals("get", result.getAsString("source"));
+				Assert.assertEquals("/vep/human/region/3:100:100/G", result.getAsString("input"));
+			} else {
+				Assert.assertEquals("batch", result.getAsString("source"));
+				Assert.assertEquals(i + " 100 100 A/G +", result.getAsString("input"));
+			}
+		}
+
+		//Отказ, затем все варианты одной пачкой и один одиночный запрос
+		Assert.assertEquals(2, posts.get());
+		Assert.assertEquals(1, batchSizes.size());
+		Assert.assertEquals(5, (int) batchSizes.get(0));
+		Assert.assertEquals(1, gets.get());
+	}
+
+	@Test
+	public void longDeletion() throws Exception {
+		EnsemblVepExternalService service = new EnsemblVepExternalService(client, null);
+
+		//Без референса и для длинной делеции - одиночный GET с исходным аллелем
+		JSONObject result = service.getVepJson(Chromosome.of("1"), 100000, 200000, "-").get(10, TimeUnit.SECONDS);
+		Assert.assertEquals("get", result.getAsString("source"));
+		Assert.assertEquals("/vep/human/region/1:100000:200000/-", result.getAsString("input"));
+		Assert.assertEquals(0, batchSizes.size());
+	}
+
+	@Test
+	public void close() throws Exception {
+		client.suspend();
+		CompletableFuture<JSONObject> region = client.requestRegion("1 100 100 A/G +",
+				EnsemblVepHttpClient.buildEndpoint("/vep/human/region/1:100:100/G"));
+		CompletableFuture<JSONArray> single = client.request(EnsemblVepHttpClient.buildEndpoint("/vep/human/region/2:100:100/G"));
+		client.close();
+
+		//Неотправленные запросы завершаются ошибкой, а не ждут вечно
+		Assert.assertTrue(region.isCompletedExceptionally());
+		Assert.assertTrue(single.isCompletedExceptionally());
+		Assert.assertTrue(client.request("/vep/human/id/rs1").isCompletedExceptionally());
+	}
+}
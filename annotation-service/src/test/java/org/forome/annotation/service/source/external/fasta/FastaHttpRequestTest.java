@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.external.fasta;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.forome.annotation.service.source.external.httprequest.HttpRequest;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.sequence.Sequence;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронные запросы fasta против локальной заглушки AStorage
+ */
+public class FastaHttpRequestTest {
+
+	private HttpServer server;
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private volatile boolean failing;
+
+	private HttpRequest httpRequest;
+
+	@Before
+	public void init() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/get", this::handle);
+		server.start();
+
+		httpRequest = new HttpRequest(new URL("http://127.0.0.1:" + server.getAddress().getPort()));
+	}
+
+	@After
+	public void destroy() {
+		httpRequest.close();
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			release.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		byte[] bytes = (failing ? "not json" : "{\"fasta\": \"ACGT\"}").getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+	@Test
+	public void async() throws Exception {
+		FastaHttpRequest fastaHttpRequest = new FastaHttpRequest(httpRequest);
+		Interval interval = Interval.of(Chromosome.of("1"), 100, 103);
+
+		//Запрос не блокирует вызывающего, параллельные промахи ждут один ответ
+		CompletableFuture<Sequence> first = fastaHttpRequest.getSequenceAsync(Assembly.GRCh37, interval);
+		CompletableFuture<Sequence> second = fastaHttpRequest.getSequenceAsync(Assembly.GRCh37, interval);
+		Assert.assertFalse(first.isDone());
+		release.countDown();
+
+		Assert.assertEquals("ACGT", first.get(10, TimeUnit.SECONDS).getValue());
+		Assert.assertEquals("ACGT", second.get(10, TimeUnit.SECONDS).getValue());
+		Assert.assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void failure() throws Exception {
+		FastaHttpRequest fastaHttpRequest = new FastaHttpRequest(httpRequest);
+		Interval interval = Interval.of(Chromosome.of("1"), 100, 103);
+		release.countDown();
+
+		failing = true;
+		try {
+			fastaHttpRequest.getSequence(Assembly.GRCh37, interval);
+			Assert.fail();
+		} catch (RuntimeException e) {
+			//ожидаемо
+		}
+
+		//Ошибка не кешируется
+		failing = false;
+		Assert.assertEquals("ACGT", fastaHttpRequest.getSequence(Assembly.GRCh37, interval).getValue());
+		Assert.assertEquals(2, requests.get());
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.internal.fasta;
+
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.Position;
+import org.forome.core.struct.nucleotide.Nucleotide;
+import org.forome.core.struct.sequence.Sequence;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FastaBlockReaderTest {
+
+	private static final String BASES = "ACGT";
+
+	//Нуклеотид позиции определяется самой позицией
+	private static char base(int position) {
+		return BASES.charAt(position % BASES.length());
+	}
+
+	private static Nucleotide nucleotide(int position) {
+		return Nucleotide.valueOf(String.valueOf(base(position)));
+	}
+
+	private static String expected(int start, int end) {
+		StringBuilder builder = new StringBuilder();
+		for (int position = start; position <= end; position++) {
+			builder.append(base(position));
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void test() {
+		List<Position> reads = new ArrayList<>();
+		FastaBlockReader blockReader = new FastaBlockReader((assembly, position) -> {
+			reads.add(position);
+			return nucleotide(position.value);
+		});
+
+		Chromosome chromosome = Chromosome.of("1");
+
+		//Интервал через границу блоков - каждая позиция обоих блоков читается один раз
+		Sequence sequence = blockReader.getSequence(Assembly.GRCh37, Interval.of(chromosome, 1000, 1100));
+		Assert.assertEquals(expected(1000, 1100), sequence.getValue());
+		Assert.assertEquals(1023 + 1024, reads.size());
+		Assert.assertEquals(1, reads.get(0).value);
+		Assert.assertEquals(2047, reads.get(reads.size() - 1).value);
+
+		//Повторные интервалы в тех же блоках хранилище не трогают
+		Assert.assertEquals(expected(5, 5), blockReader.getSequence(Assembly.GRCh37, Interval.of(chromosome, 5, 5)).getValue());
+		Assert.assertEquals(expected(1500, 2000), blockReader.getSequence(Assembly.GRCh37, Interval.of(chromosome, 1500, 2000)).getValue());
+		Assert.assertEquals(1023 + 1024, reads.size());
+	}
+
+	@Test
+	public void testMissing() {
+		//Конец хромосомы: позиций после 1030 в хранилище нет
+		FastaBlockReader blockReader = new FastaBlockReader((assembly, position) ->
+				(position.value <= 1030) ? nucleotide(position.value) : null
+		);
+
+		Sequence sequence = blockReader.getSequence(Assembly.GRCh37, Interval.of(Chromosome.of("1"), 1025, 1035));
+		Assert.assertEquals(11, sequence.nucleotides.length);
+		for (int i = 0; i < 11; i++) {
+			int position = 1025 + i;
+			Assert.assertEquals((position <= 1030) ? nucleotide(position) : Nucleotide.NONE, sequence.nucleotides[i]);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.packed;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class PackedFastaTest {
+
+	private static final String FASTA = String.join("\n",
+			">chr1 AC:CM000663.2",
+			"NNNNACGTac",
+			"gtNNRNacgT",
+			"A",
+			">chrMT",
+			"gatc"
+	);
+
+	@Test
+	public void test() throws IOException {
+		Path file = Files.createTempFile("packed", ".fa2");
+		try {
+			PackedFastaWriter.write(new BufferedReader(new StringReader(FASTA)), file);
+
+			try (PackedFasta packedFasta = PackedFasta.open(file)) {
+				Assert.assertEquals("NNNNACGTacgtNNNNacgTA", packedFasta.getValue("1", 1, 21));
+				Assert.assertEquals("Tac", packedFasta.getValue("1", 8, 10));
+				Assert.assertEquals("tNNNNa", packedFasta.getValue("1", 12, 17));
+				Assert.assertEquals("", packedFasta.getValue("1", 5, 4));
+
+				//За пределами хромосомы
+				Assert.assertEquals("AN", packedFasta.getValue("1", 21, 22));
+
+				Assert.assertEquals("gatc", packedFasta.getValue("M", 1, 4));
+				Assert.assertNull(packedFasta.getValue("2", 1, 4));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void toChromosome() {
+		Assert.assertEquals("1", PackedFastaWriter.toChromosome(">chr1 AC:CM000663.2"));
+		Assert.assertEquals("X", PackedFastaWriter.toChromosome(">X"));
+		Assert.assertEquals("M", PackedFastaWriter.toChromosome(">MT"));
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import org.forome.annotation.service.source.struct.Locus;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class LociWindowTest {
+
+	@Test
+	public void lease() {
+		LociWindow lociWindow = new LociWindow();
+
+		Locus locus1 = locus(100);
+		Locus locus2 = locus(200);
+		LociLease lease1 = lociWindow.put(Collections.singletonList(locus1), locus -> WrapperSourceKey.ofStart(locus.interval));
+		LociLease lease2 = lociWindow.put(Collections.singletonList(locus2), locus -> WrapperSourceKey.ofStart(locus.interval));
+		//Окно с тем же содержимым (другой запрос)
+		LociLease lease3 = lociWindow.put(Collections.singletonList(locus1), locus -> WrapperSourceKey.ofStart(locus.interval));
+
+		//Новые окна не вытесняют еще не освобожденные
+		LociLease lease4 = lociWindow.put(Collections.singletonList(locus(300)), locus -> WrapperSourceKey.ofStart(locus.interval));
+		Assert.assertSame(locus1, lociWindow.get(WrapperSourceKey.ofStart(locus1.interval)));
+		Assert.assertSame(locus2, lociWindow.get(WrapperSourceKey.ofStart(locus2.interval)));
+
+		lease1.release();
+		lease1.release();
+		Assert.assertEquals(3, lociWindow.size());
+		Assert.assertSame(locus1, lociWindow.get(WrapperSourceKey.ofStart(locus1.interval)));
+
+		lease3.release();
+		Assert.assertNull(lociWindow.get(WrapperSourceKey.ofStart(locus1.interval)));
+
+		lease2.release();
+		lease4.release();
+		Assert.assertEquals(0, lociWindow.size());
+	}
+
+	private static Locus locus(int position) {
+		return new Locus(Interval.of(Chromosome.of("1"), position, position), null, null, null, null, null, "A");
+	}
+}
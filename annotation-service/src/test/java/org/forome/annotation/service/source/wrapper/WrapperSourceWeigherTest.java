@@ -0,0 +1,55 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Position;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WrapperSourceWeigherTest {
+
+	@Test
+	public void weigh() {
+		WrapperSourceKey key = WrapperSourceKey.of(new Position(Chromosome.of("1"), 100));
+		WrapperSourceWeigher weigher = new WrapperSourceWeigher(0);
+
+		JSONArray small = new JSONArray();
+		small.add(new JSONObject());
+
+		JSONArray large = new JSONArray();
+		for (int i = 0; i < 100; i++) {
+			JSONObject item = new JSONObject();
+			item.put("af", "0.0001");
+			item.put("id", "rs" + i);
+			large.add(item);
+		}
+		Assert.assertTrue(weigher.weigh(key, large) > 10 * weigher.weigh(key, small));
+	}
+
+	@Test
+	public void minWeight() {
+		WrapperSourceKey key = WrapperSourceKey.of(new Position(Chromosome.of("1"), 100));
+		WrapperSourceWeigher weigher = new WrapperSourceWeigher(4096);
+		Assert.assertEquals(4096, weigher.weigh(key, new Object()));
+		Assert.assertEquals(4096, weigher.weigh(key, new JSONArray()));
+	}
+}
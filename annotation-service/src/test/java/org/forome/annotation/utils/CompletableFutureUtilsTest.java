@@ -0,0 +1,92 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class CompletableFutureUtilsTest {
+
+	/**
+	 * Завершение не должно обгонять обработку последнего результата
+	 */
+	@Test
+	public void testCompleteAfterLastAccept() {
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(new CompletableFuture<>());
+		}
+
+		List<Integer> accepted = new ArrayList<>();
+		List<Integer> acceptedOnComplete = new ArrayList<>();
+		CompletableFutureUtils.thenAcceptAll(futures, accepted::add)
+				.thenRun(() -> acceptedOnComplete.addAll(accepted));
+
+		for (int i = futures.size() - 1; i >= 0; i--) {
+			futures.get(i).complete(i);
+		}
+
+		Assert.assertEquals(futures.size(), acceptedOnComplete.size());
+	}
+
+	@Test
+	public void testAllItemsConcurrent() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (int iteration = 0; iteration < 100; iteration++) {
+				List<CompletableFuture<Integer>> futures = new ArrayList<>();
+				for (int i = 0; i < 50; i++) {
+					int value = i;
+					futures.add(CompletableFuture.supplyAsync(() -> value, executor));
+				}
+
+				List<Integer> accepted = new CopyOnWriteArrayList<>();
+				int countOnComplete = CompletableFutureUtils.thenAcceptAll(futures, accepted::add)
+						.thenApply(v -> accepted.size())
+						.get(10, TimeUnit.SECONDS);
+				Assert.assertEquals(futures.size(), countOnComplete);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testExceptionally() {
+		CompletableFuture<Integer> failed = new CompletableFuture<>();
+		failed.completeExceptionally(new RuntimeException("test"));
+
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		futures.add(CompletableFuture.completedFuture(1));
+		futures.add(failed);
+
+		List<Integer> accepted = new ArrayList<>();
+		CompletableFuture<Void> result = CompletableFutureUtils.thenAcceptAll(futures, accepted::add);
+		Assert.assertTrue(result.isCompletedExceptionally());
+		Assert.assertEquals(1, accepted.size());
+	}
+}
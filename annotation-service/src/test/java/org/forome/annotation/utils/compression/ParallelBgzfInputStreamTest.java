@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.utils.compression;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+public class ParallelBgzfInputStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void read() throws Exception {
+		StringBuilder builder = new StringBuilder("##fileformat=VCFv4.2\n");
+		for (int i = 0; i < 200_000; i++) {
+			builder.append("1\t").append(i).append("\t.\tA\tG\t50\tPASS\t.\n");
+		}
+		byte[] expected = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+		File file = folder.newFile("test.vcf.gz");
+		try (BlockCompressedOutputStream os = new BlockCompressedOutputStream(file)) {
+			os.write(expected);
+		}
+
+		try (InputStream is = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+			Assert.assertTrue(ParallelBgzfInputStream.isBgzf(is));
+			try (InputStream bgzf = new ParallelBgzfInputStream(is)) {
+				Assert.assertArrayEquals(expected, IOUtils.toByteArray(bgzf));
+			}
+		}
+	}
+
+	@Test
+	public void notBgzf() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (GZIPOutputStream os = new GZIPOutputStream(baos)) {
+			os.write("##fileformat=VCFv4.2\n".getBytes(StandardCharsets.UTF_8));
+		}
+		Assert.assertFalse(ParallelBgzfInputStream.isBgzf(new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray()))));
+		Assert.assertFalse(ParallelBgzfInputStream.isBgzf(new BufferedInputStream(new ByteArrayInputStream(new byte[0]))));
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.utils.compression;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelBgzfOutputStreamTest {
+
+	@Test
+	public void write() throws Exception {
+		Random random = new Random(1);
+		ByteArrayOutputStream source = new ByteArrayOutputStream();
+		for (int i = 0; i < 100_000; i++) {
+			source.write(("{\"record_type\":\"variant\",\"pos\":" + random.nextInt() + "}\n").getBytes());
+		}
+		//Несжимаемые данные
+		byte[] noise = new byte[200_000];
+		random.nextBytes(noise);
+		source.write(noise);
+		byte[] expected = source.toByteArray();
+
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		try (ParallelBgzfOutputStream os = new ParallelBgzfOutputStream(target, 3, ParallelBgzfOutputStream.MAX_BLOCK_SIZE)) {
+			os.write(expected, 0, 1234);
+			os.flush();
+			os.write(expected[1234]);
+			os.write(expected, 1235, expected.length - 1235);
+		}
+		byte[] compressed = target.toByteArray();
+
+		byte[] eof = Arrays.copyOfRange(compressed, compressed.length - BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length, compressed.length);
+		Assert.assertArrayEquals(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK, eof);
+
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			Assert.assertArrayEquals(expected, IOUtils.toByteArray(is));
+		}
+		try (InputStream is = new BlockCompressedInputStream(new ByteArrayInputStream(compressed))) {
+			Assert.assertArrayEquals(expected, IOUtils.toByteArray(is));
+		}
+		try (InputStream is = new ParallelBgzfInputStream(new ByteArrayInputStream(compressed))) {
+			Assert.assertArrayEquals(expected, IOUtils.toByteArray(is));
+		}
+	}
+
+	@Test
+	public void blockSize() throws Exception {
+		byte[] expected = new byte[25_000];
+		new Random(2).nextBytes(expected);
+
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		try (ParallelBgzfOutputStream os = new ParallelBgzfOutputStream(target, 1, 10_000)) {
+			os.write(expected);
+		}
+
+		byte[] compressed = target.toByteArray();
+		try (InputStream is = new BlockCompressedInputStream(new ByteArrayInputStream(compressed))) {
+			Assert.assertArrayEquals(expected, IOUtils.toByteArray(is));
+		}
+
+		//3 блока данных и пустой блок конца файла: размер блока (BSIZE - 1) в заголовке по смещению 16
+		int blocks = 0;
+		for (int offset = 0; offset < compressed.length; blocks++) {
+			offset += ((compressed[offset + 16] & 0xFF) | ((compressed[offset + 17] & 0xFF) << 8)) + 1;
+		}
+		Assert.assertEquals(4, blocks);
+	}
+}